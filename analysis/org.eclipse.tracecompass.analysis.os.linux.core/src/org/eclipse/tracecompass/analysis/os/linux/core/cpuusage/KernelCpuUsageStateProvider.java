@@ -15,6 +15,8 @@ package org.eclipse.tracecompass.analysis.os.linux.core.cpuusage;
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -83,6 +85,11 @@ public class KernelCpuUsageStateProvider extends AbstractTmfStateProvider {
         return new KernelCpuUsageStateProvider(this.getTrace(), this.fLayout);
     }
 
+    @Override
+    public Collection<String> getEventNames() {
+        return Collections.singleton(fLayout.eventSchedSwitch());
+    }
+
     @Override
     protected void eventHandle(@Nullable ITmfEvent event) {
         if (event == null) {
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.common.core.tests.perf.collect;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.test.performance.Dimension;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+import org.eclipse.tracecompass.common.core.collect.BufferedBlockingQueue;
+import org.eclipse.tracecompass.common.core.collect.RingBufferBlockingQueue;
+import org.eclipse.tracecompass.common.core.collect.RingBufferBlockingQueue.WaitStrategy;
+import org.junit.Test;
+
+/**
+ * Benchmark of the handoff of elements from one producer thread to one
+ * consumer thread, through the {@link BufferedBlockingQueue} and through the
+ * {@link RingBufferBlockingQueue} with each of its wait strategies. The queues
+ * have the sizes used by the state providers and the coalesced requests.
+ */
+public class BlockingQueueBenchmark {
+
+    private static final String TEST_SUITE_NAME = "Blocking Queue Benchmark";
+    private static final String TEST_ID = "org.eclipse.linuxtools#" + TEST_SUITE_NAME;
+    private static final int LOOP_COUNT = 25;
+    private static final int NB_ELEMENTS = 1000000;
+
+    private static final int QUEUE_SIZE = 127;
+    private static final int CHUNK_SIZE = 127;
+
+    /* The last element, compared by identity */
+    private static final Integer END = new Integer(-1);
+
+    /**
+     * The operations of the two queues, which do not share an interface
+     */
+    private interface IQueue {
+        void put(Integer element);
+
+        void flushInputBuffer();
+
+        Integer take();
+    }
+
+    /**
+     * Benchmark the {@link BufferedBlockingQueue}
+     */
+    @Test
+    public void testBufferedBlockingQueue() {
+        runBenchmark("buffered-queue", new IQueue() {
+            private final BufferedBlockingQueue<Integer> fQueue = new BufferedBlockingQueue<>(QUEUE_SIZE, CHUNK_SIZE);
+
+            @Override
+            public void put(Integer element) {
+                fQueue.put(element);
+            }
+
+            @Override
+            public void flushInputBuffer() {
+                fQueue.flushInputBuffer();
+            }
+
+            @Override
+            public Integer take() {
+                return fQueue.take();
+            }
+        });
+    }
+
+    /**
+     * Benchmark the {@link RingBufferBlockingQueue}, spinning while waiting
+     */
+    @Test
+    public void testRingBufferSpin() {
+        runBenchmark("ring-buffer-spin", ringBuffer(WaitStrategy.SPIN));
+    }
+
+    /**
+     * Benchmark the {@link RingBufferBlockingQueue}, yielding while waiting
+     */
+    @Test
+    public void testRingBufferYield() {
+        runBenchmark("ring-buffer-yield", ringBuffer(WaitStrategy.YIELD));
+    }
+
+    /**
+     * Benchmark the {@link RingBufferBlockingQueue}, parking while waiting
+     */
+    @Test
+    public void testRingBufferPark() {
+        runBenchmark("ring-buffer-park", ringBuffer(WaitStrategy.PARK));
+    }
+
+    private static IQueue ringBuffer(final WaitStrategy waitStrategy) {
+        return new IQueue() {
+            private final RingBufferBlockingQueue<Integer> fQueue = new RingBufferBlockingQueue<>(QUEUE_SIZE, CHUNK_SIZE, waitStrategy);
+
+            @Override
+            public void put(Integer element) {
+                fQueue.put(element);
+            }
+
+            @Override
+            public void flushInputBuffer() {
+                fQueue.flushInputBuffer();
+            }
+
+            @Override
+            public Integer take() {
+                return fQueue.take();
+            }
+        };
+    }
+
+    private static void runBenchmark(String testName, final IQueue queue) {
+        Performance perf = Performance.getDefault();
+        PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + '#' + testName);
+        perf.tagAsSummary(pm, TEST_SUITE_NAME + ':' + testName, Dimension.ELAPSED_PROCESS);
+
+        /* The elements are boxed beforehand, to only measure the handoff */
+        final Integer[] elements = new Integer[NB_ELEMENTS];
+        for (int i = 0; i < NB_ELEMENTS; i++) {
+            elements[i] = i;
+        }
+
+        for (int loop = 0; loop < LOOP_COUNT; loop++) {
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    for (Integer element : elements) {
+                        queue.put(element);
+                    }
+                    queue.put(END);
+                    queue.flushInputBuffer();
+                }
+            };
+
+            pm.start();
+            producer.start();
+            int nbTaken = 0;
+            while (queue.take() != END) {
+                nbTaken++;
+            }
+            pm.stop();
+
+            try {
+                producer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            assertEquals(NB_ELEMENTS, nbTaken);
+        }
+        pm.commit();
+    }
+}
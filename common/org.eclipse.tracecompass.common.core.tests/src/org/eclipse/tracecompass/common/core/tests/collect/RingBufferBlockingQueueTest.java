@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.common.core.tests.collect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.tracecompass.common.core.collect.RingBufferBlockingQueue;
+import org.eclipse.tracecompass.common.core.collect.RingBufferBlockingQueue.WaitStrategy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Iterators;
+
+/**
+ * Test suite for the {@link RingBufferBlockingQueue}, with each of its wait
+ * strategies
+ */
+@RunWith(Parameterized.class)
+public class RingBufferBlockingQueueTest {
+
+    /** Timeout the tests after 2 minutes */
+    @Rule
+    public TestRule timeoutRule = new Timeout(2, TimeUnit.MINUTES);
+
+    private static final String testString = "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz" +
+            "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz" +
+            "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz";
+
+    private final WaitStrategy fWaitStrategy;
+    private RingBufferBlockingQueue<Character> charQueue;
+
+    /**
+     * @return The wait strategies to test
+     */
+    @Parameters(name = "{0}")
+    public static Iterable<Object[]> getParameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            parameters.add(new Object[] { waitStrategy });
+        }
+        return parameters;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param waitStrategy
+     *            The wait strategy of the tested queues
+     */
+    public RingBufferBlockingQueueTest(WaitStrategy waitStrategy) {
+        fWaitStrategy = waitStrategy;
+    }
+
+    /**
+     * Test setup
+     */
+    @Before
+    public void init() {
+        charQueue = new RingBufferBlockingQueue<>(15, 15, fWaitStrategy);
+    }
+
+    /**
+     * Test inserting one element and removing it.
+     */
+    @Test
+    public void testSingleInsertion() {
+        Character element = 'x';
+        charQueue.put(element);
+        charQueue.flushInputBuffer();
+
+        Character out = charQueue.take();
+        assertEquals(element, out);
+    }
+
+    /**
+     * Test insertion of elements that will require more than one input buffer,
+     * and wrap around the ring buffer several times.
+     */
+    @Test
+    public void testLargeInsertion() {
+        for (int i = 0; i < 5; i++) {
+            String string = testString.substring(0, 222);
+            for (char elem : string.toCharArray()) {
+                charQueue.put(elem);
+            }
+            charQueue.flushInputBuffer();
+
+            StringBuilder sb = new StringBuilder();
+            while (!charQueue.isEmpty()) {
+                sb.append(charQueue.take());
+            }
+            assertEquals(string, sb.toString());
+        }
+    }
+
+    /**
+     * Test the state of the {@link RingBufferBlockingQueue#isEmpty()} method
+     * at various moments.
+     */
+    @Test
+    public void testIsEmpty() {
+        RingBufferBlockingQueue<String> stringQueue = new RingBufferBlockingQueue<>(15, 15, fWaitStrategy);
+        assertTrue(stringQueue.isEmpty());
+
+        stringQueue.put("Hello");
+        assertFalse(stringQueue.isEmpty());
+
+        stringQueue.flushInputBuffer();
+        assertFalse(stringQueue.isEmpty());
+
+        stringQueue.take();
+        assertTrue(stringQueue.isEmpty());
+
+        stringQueue.flushInputBuffer();
+        assertTrue(stringQueue.isEmpty());
+    }
+
+    /**
+     * Read with a producer and a consumer, through a queue much smaller than
+     * the inserted data, so both threads have to wait for each other.
+     *
+     * @throws InterruptedException
+     *             The test was interrupted
+     */
+    @Test
+    public void testMultiThread() throws InterruptedException {
+        final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(4, 7, fWaitStrategy);
+        final int nbElements = 10000;
+        final List<Integer> consumed = new ArrayList<>(nbElements);
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < nbElements; i++) {
+                    queue.put(i);
+                }
+                queue.put(-1);
+                queue.flushInputBuffer();
+            }
+        };
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                Integer element = queue.take();
+                while (element != -1) {
+                    consumed.add(element);
+                    element = queue.take();
+                }
+            }
+        };
+        consumer.start();
+        producer.start();
+        consumer.join();
+        producer.join();
+
+        assertEquals(nbElements, consumed.size());
+        for (int i = 0; i < nbElements; i++) {
+            assertEquals(i, consumed.get(i).intValue());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Test the contents returned by {@link RingBufferBlockingQueue#iterator()}.
+     */
+    @Test
+    public void testIteratorContents() {
+        Deque<Character> expected = new LinkedList<>();
+
+        /* Iterator should be empty initially */
+        assertFalse(charQueue.iterator().hasNext());
+
+        /* Insert the first 50 elements, the iterator sees the unflushed ones */
+        for (int i = 0; i < 50; i++) {
+            char c = testString.charAt(i);
+            charQueue.put(c);
+            expected.addFirst(c);
+        }
+        assertSameElements(expected, iterate(charQueue));
+
+        /* Consume the 30 last elements from the queue */
+        charQueue.flushInputBuffer();
+        for (int i = 0; i < 30; i++) {
+            charQueue.take();
+            expected.removeLast();
+        }
+        assertSameElements(expected, iterate(charQueue));
+
+        /* Now empty the queue */
+        while (!charQueue.isEmpty()) {
+            charQueue.take();
+            expected.removeLast();
+        }
+        assertFalse(charQueue.iterator().hasNext());
+    }
+
+    /**
+     * Test the invalid sizes passed to the constructor.
+     */
+    @Test
+    public void testInvalidSizes() {
+        for (int[] sizes : Arrays.asList(new int[] { 0, 15 }, new int[] { 15, 0 }, new int[] { 1 << 16, 1 << 16 })) {
+            try {
+                new RingBufferBlockingQueue<>(sizes[0], sizes[1], fWaitStrategy);
+                fail();
+            } catch (IllegalArgumentException e) {
+                /* Expected */
+            }
+        }
+    }
+
+    private static <T> List<T> iterate(RingBufferBlockingQueue<T> queue) {
+        List<T> elements = new LinkedList<>();
+        Iterators.addAll(elements, queue.iterator());
+        return elements;
+    }
+
+    private static <T> void assertSameElements(Collection<T> c1, Collection<T> c2) {
+        assertEquals(HashMultiset.create(c1), HashMultiset.create(c2));
+    }
+}
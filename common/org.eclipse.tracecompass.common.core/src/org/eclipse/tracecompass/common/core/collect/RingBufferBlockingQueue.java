@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.common.core.collect;
+
+import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.common.core.Activator;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A variant of the {@link BufferedBlockingQueue} for exactly one thread
+ * inserting elements and one thread removing them. It has the same API, but
+ * the elements are stored in a ring buffer allocated once, and the two threads
+ * do not take any lock.
+ *
+ * As in the {@link BufferedBlockingQueue}, the inserted elements become
+ * visible to the {@link #take} method by chunks, or when the input buffer is
+ * flushed. The threads wait for elements or for free space according to the
+ * {@link WaitStrategy} of the queue.
+ *
+ * The {@link #isEmpty} and {@link #iterator} methods can be called by any
+ * thread, but {@link #put} and {@link #flushInputBuffer} must always be
+ * called by the same thread, and {@link #take} by the same other thread.
+ *
+ * @param <T>
+ *            The data type of the elements contained by the queue
+ * @since 1.1
+ */
+public class RingBufferBlockingQueue<T> implements Iterable<T> {
+
+    /**
+     * How a thread waits for the other thread to insert or remove elements
+     */
+    public enum WaitStrategy {
+        /**
+         * Keep checking without ever giving up the processor. It has the
+         * lowest latency, but it uses a whole processor while waiting, and
+         * only makes sense if each thread has its own processor.
+         */
+        SPIN,
+
+        /**
+         * Yield the processor to the other threads between checks
+         */
+        YIELD,
+
+        /**
+         * Block the thread until the other thread wakes it up, at most once
+         * per chunk. It uses the least processor time.
+         */
+        PARK
+    }
+
+    /**
+     * A producer waiting for free space may miss the wake up of the consumer,
+     * it then checks again after this delay.
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final @Nullable Object[] fBuffer;
+    private final int fMask;
+    private final int fChunkSize;
+    private final WaitStrategy fWaitStrategy;
+
+    /* Number of elements inserted, published, and removed */
+    private final AtomicLong fWritten = new AtomicLong();
+    private final AtomicLong fPublished = new AtomicLong();
+    private final AtomicLong fTaken = new AtomicLong();
+
+    /* The state of the producer thread, only used by it */
+    private long fWriteIndex = 0;
+    private long fPublishIndex = 0;
+    private long fCachedTaken = 0;
+
+    /* The state of the consumer thread, only used by it */
+    private long fReadIndex = 0;
+    private long fCachedPublished = 0;
+
+    private volatile @Nullable Thread fWaitingProducer = null;
+    private volatile @Nullable Thread fWaitingConsumer = null;
+
+    /**
+     * Constructor, using the {@link WaitStrategy#PARK} wait strategy
+     *
+     * @param queueSize
+     *            The number of chunks the queue can hold
+     * @param chunkSize
+     *            The size of an individual chunk
+     */
+    public RingBufferBlockingQueue(int queueSize, int chunkSize) {
+        this(queueSize, chunkSize, WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param queueSize
+     *            The number of chunks the queue can hold
+     * @param chunkSize
+     *            The size of an individual chunk
+     * @param waitStrategy
+     *            How the threads wait for each other
+     */
+    public RingBufferBlockingQueue(int queueSize, int chunkSize, WaitStrategy waitStrategy) {
+        if (queueSize < 1 || chunkSize < 1 || (long) queueSize * chunkSize > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        /* The capacity is rounded up to a power of two, to mask the indexes */
+        int capacity = Integer.highestOneBit(queueSize * chunkSize - 1) << 1;
+        capacity = Math.max(capacity, 1);
+        fBuffer = new Object[capacity];
+        fMask = capacity - 1;
+        fChunkSize = chunkSize;
+        fWaitStrategy = waitStrategy;
+    }
+
+    /**
+     * Put an element into the queue.
+     *
+     * This method will block the caller if the queue is full, waiting for
+     * space to become available.
+     *
+     * @param element
+     *            The element to insert
+     */
+    public void put(T element) {
+        long index = fWriteIndex;
+        if (index - fCachedTaken > fMask) {
+            fCachedTaken = waitForSpace(index);
+        }
+        fBuffer[(int) index & fMask] = element;
+        fWriteIndex = index + 1;
+        fWritten.lazySet(index + 1);
+        if (index + 1 - fPublishIndex >= fChunkSize) {
+            publish();
+        }
+    }
+
+    /**
+     * Flush the current input buffer, disregarding the expected buffer size
+     * limit.
+     *
+     * This will guarantee that an element that was inserted via the
+     * {@link #put} method becomes visible to the {@link #take} method.
+     */
+    public void flushInputBuffer() {
+        if (fWriteIndex != fPublishIndex) {
+            publish();
+        }
+    }
+
+    /**
+     * Retrieve an element from the queue.
+     *
+     * If the queue is empty, this call will block until an element is inserted.
+     *
+     * @return The retrieved element. It will be removed from the queue.
+     */
+    public T take() {
+        long index = fReadIndex;
+        if (index == fCachedPublished) {
+            fCachedPublished = waitForElements(index);
+        }
+        int slot = (int) index & fMask;
+        @SuppressWarnings("unchecked")
+        T element = (T) fBuffer[slot];
+        fBuffer[slot] = null;
+        fReadIndex = index + 1;
+        fTaken.lazySet(index + 1);
+        /* The producer waits for a whole chunk of free space */
+        if ((index + 1) % fChunkSize == 0) {
+            Thread producer = fWaitingProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+        return checkNotNull(element);
+    }
+
+    /**
+     * Does the queue contain at least one element?
+     *
+     * @return if the queue is empty
+     */
+    public boolean isEmpty() {
+        return (fTaken.get() == fWritten.get());
+    }
+
+    /**
+     * Instantiate an iterator on the complete data structure, including the
+     * elements not flushed yet.
+     *
+     * If concurrent insertions happen while the iterator is being used, it is
+     * possible for an element that was actually in the queue when the call was
+     * made to have been removed by the {@link #take} method in the meantime.
+     * However, this iterator guarantees that each element is either inside the
+     * queue OR was removed by the {@link #take} method. No element should
+     * "fall in the cracks".
+     *
+     * @return An iterator over the whole queue
+     */
+    @Override
+    public Iterator<T> iterator() {
+        /*
+         * The elements are copied, so the iterator does not see the slots
+         * being reused. An element removed while copying leaves a null slot,
+         * which is skipped.
+         */
+        long start = fTaken.get();
+        long end = fWritten.get();
+        List<T> elements = new ArrayList<>((int) (end - start));
+        for (long index = start; index < end; index++) {
+            @SuppressWarnings("unchecked")
+            T element = (T) fBuffer[(int) index & fMask];
+            if (element != null) {
+                elements.add(element);
+            }
+        }
+        return Iterators.unmodifiableIterator(elements.iterator());
+    }
+
+    // ------------------------------------------------------------------------
+    // Helper methods
+    // ------------------------------------------------------------------------
+
+    private void publish() {
+        fPublishIndex = fWriteIndex;
+        fPublished.set(fWriteIndex);
+        Thread consumer = fWaitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Wait until the element at the given index is published, and return the
+     * number of elements published
+     */
+    private long waitForElements(long index) {
+        long published = fPublished.get();
+        while (published <= index) {
+            switch (fWaitStrategy) {
+            case SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            case PARK:
+            default:
+                fWaitingConsumer = Thread.currentThread();
+                /* Check again, the producer may have published in between */
+                if (fPublished.get() <= index) {
+                    LockSupport.park(this);
+                }
+                fWaitingConsumer = null;
+                if (Thread.interrupted()) {
+                    Activator.instance().logError("Buffered queue interrupted"); //$NON-NLS-1$
+                    throw new IllegalStateException();
+                }
+                break;
+            }
+            published = fPublished.get();
+        }
+        return published;
+    }
+
+    /**
+     * Wait until there is a chunk of free slots from the given index, and
+     * return the number of elements taken. Waking up the producer for each
+     * free slot would make the two threads take turns for every element.
+     */
+    private long waitForSpace(long index) {
+        /* The consumer may be waiting for the elements not published yet */
+        flushInputBuffer();
+        long maxUsed = fMask + 1 - fChunkSize;
+        long taken = fTaken.get();
+        while (index - taken > maxUsed) {
+            switch (fWaitStrategy) {
+            case SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            case PARK:
+            default:
+                fWaitingProducer = Thread.currentThread();
+                if (index - fTaken.get() > maxUsed) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                fWaitingProducer = null;
+                if (Thread.interrupted()) {
+                    /* Like the put() of BufferedBlockingQueue, keep waiting */
+                    Activator.instance().logError("Buffered queue interrupted"); //$NON-NLS-1$
+                }
+                break;
+            }
+            taken = fTaken.get();
+        }
+        return taken;
+    }
+}
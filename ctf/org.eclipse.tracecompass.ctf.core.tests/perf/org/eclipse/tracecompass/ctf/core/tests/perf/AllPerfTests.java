@@ -22,7 +22,8 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-        org.eclipse.tracecompass.ctf.core.tests.perf.trace.AllPerfTests.class
+        org.eclipse.tracecompass.ctf.core.tests.perf.trace.AllPerfTests.class,
+        org.eclipse.tracecompass.ctf.core.tests.perf.types.AllPerfTests.class
 })
 public class AllPerfTests {
 
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.perf.types;
+
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.eclipse.test.performance.Dimension;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.eclipse.tracecompass.ctf.core.event.scope.ILexicalScope;
+import org.eclipse.tracecompass.ctf.core.event.types.Encoding;
+import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
+import org.junit.Test;
+
+/**
+ * Benchmark of the decoding of event payloads made of integers, like most
+ * kernel events. It compares reading the structs, which reads the integers
+ * directly at their precomputed offsets, with reading each field through its
+ * declaration.
+ */
+public class StructReadBenchmark {
+
+    private static final String TEST_SUITE_NAME = "CTF Struct Read Benchmark";
+    private static final String TEST_ID = "org.eclipse.linuxtools#" + TEST_SUITE_NAME;
+    private static final int LOOP_COUNT = 100;
+    private static final int NB_STRUCTS = 100000;
+
+    private static final StructDeclaration PAYLOAD = createPayload();
+
+    private static StructDeclaration createPayload() {
+        StructDeclaration payload = new StructDeclaration(8);
+        payload.addField("_prev_tid", integer(32, true));
+        payload.addField("_prev_prio", integer(32, true));
+        payload.addField("_prev_state", integer(64, true));
+        payload.addField("_next_tid", integer(32, true));
+        payload.addField("_next_prio", integer(32, true));
+        payload.addField("_cpu_id", integer(16, false));
+        payload.addField("_flags", integer(8, false));
+        return payload;
+    }
+
+    private static IntegerDeclaration integer(int length, boolean signed) {
+        return IntegerDeclaration.createDeclaration(length, signed, 10, ByteOrder.LITTLE_ENDIAN, Encoding.NONE, "", 8);
+    }
+
+    /**
+     * Benchmark reading the payloads as structs
+     */
+    @Test
+    public void testStructRead() {
+        readPayloads("struct-read", true);
+    }
+
+    /**
+     * Benchmark reading the payloads field by field, which is what reading a
+     * struct used to do
+     */
+    @Test
+    public void testFieldByFieldRead() {
+        readPayloads("field-by-field-read", false);
+    }
+
+    private static void readPayloads(String testName, boolean asStruct) {
+        Performance perf = Performance.getDefault();
+        PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + '#' + testName);
+        perf.tagAsSummary(pm, TEST_SUITE_NAME + ':' + testName, Dimension.CPU_TIME);
+
+        byte[] data = new byte[NB_STRUCTS * PAYLOAD.getMaximumSize() / Byte.SIZE];
+        new Random(0).nextBytes(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        for (int loop = 0; loop < LOOP_COUNT; loop++) {
+            BitBuffer input = new BitBuffer(buffer);
+            pm.start();
+            try {
+                for (int i = 0; i < NB_STRUCTS; i++) {
+                    if (asStruct) {
+                        PAYLOAD.createDefinition(null, ILexicalScope.FIELDS, input);
+                    } else {
+                        for (String fieldName : PAYLOAD.getFieldsList()) {
+                            IDeclaration field = PAYLOAD.getField(fieldName);
+                            field.createDefinition(null, fieldName, input);
+                        }
+                    }
+                }
+            } catch (CTFException e) {
+                fail("Test failed at iteration " + loop + ':' + e.getMessage());
+            }
+            pm.stop();
+        }
+        pm.commit();
+    }
+}
@@ -287,6 +287,10 @@ public enum CtfTestTrace {
      * @return If the trace exists
      */
     public boolean exists() {
+        if (fPath == null) {
+            /* The synthetic trace can only be generated in the test plugin */
+            return false;
+        }
         try {
             getTrace();
         } catch (CTFException e) {
@@ -135,6 +135,32 @@ public class CTFTraceGrowingStreamTest {
         }
     }
 
+    /**
+     * Test a growing stream read live, polled several times while it has no
+     * new packet. The packet appended after that must not be skipped.
+     *
+     * @throws CTFException won't happen
+     * @throws IOException won't happen
+     * @throws FileNotFoundException won't happen
+     */
+    @Test
+    public void testGrowingLiveAfterWait() throws CTFException, FileNotFoundException, IOException {
+        try (CTFTraceReader reader = new CTFTraceReader(fFixture);) {
+            reader.setLive(true);
+            assertEquals("0x29", reader.getCurrentEventDef().getFields().getDefinition("f").toString());
+            for (int i = 0; i < 3; i++) {
+                reader.advance();
+                assertNull(reader.getCurrentEventDef());
+            }
+            try (FileOutputStream fos = new FileOutputStream(fGrowingStream, true)) {
+                fos.write(fPackets[1]);
+            }
+            reader.advance();
+            assertNotNull(reader.getCurrentEventDef());
+            assertEquals("0xbab4face", reader.getCurrentEventDef().getFields().getDefinition("f").toString());
+        }
+    }
+
     /**
      * Test a growing stream
      *
@@ -31,6 +31,7 @@ import org.eclipse.tracecompass.ctf.core.event.types.IDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
 import org.eclipse.tracecompass.ctf.core.tests.shared.CtfTestTrace;
 import org.eclipse.tracecompass.ctf.core.trace.CTFStream;
+import org.eclipse.tracecompass.ctf.core.trace.CTFStreamInput;
 import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.exceptions.ParseException;
 import org.junit.Before;
@@ -80,6 +81,23 @@ public class CTFTraceTest {
         }
     }
 
+    /**
+     * Test that all the packets of the stream inputs are indexed when opening
+     * a trace.
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testOpen_indexed() throws CTFException {
+        CTFTrace result = testTrace.getTraceFromFile();
+        for (CTFStream stream : result.getStreams()) {
+            for (CTFStreamInput streamInput : stream.getStreamInputs()) {
+                assertFalse(streamInput.addPacketHeaderIndex());
+            }
+        }
+    }
+
     /**
      * Run the CTFTrace(File) constructor test with an invalid path.
      *
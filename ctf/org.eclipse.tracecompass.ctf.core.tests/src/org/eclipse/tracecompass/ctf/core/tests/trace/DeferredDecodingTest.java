@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.EventDefinition;
+import org.eclipse.tracecompass.ctf.core.tests.shared.CtfTestTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTraceReader;
+import org.eclipse.tracecompass.internal.ctf.core.event.DeferredEventDefinition;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test that reading a trace with deferred decoding gives the same events as
+ * reading it normally, even when the deferred events are only looked at after
+ * the reader moved on.
+ */
+public class DeferredDecodingTest {
+
+    private static final CtfTestTrace TRACE = CtfTestTrace.SYNTHETIC_TRACE;
+    private static final int NB_EVENTS = 10000;
+
+    /**
+     * Skip the tests if the test trace is not available
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        assumeTrue(TRACE.exists());
+    }
+
+    /**
+     * Compare the events read with and without deferred decoding
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testSameEvents() throws CTFException {
+        List<EventDefinition> deferredEvents = new ArrayList<>();
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setDeferredDecoding(true);
+            for (int i = 0; i < NB_EVENTS && reader.hasMoreEvents(); i++) {
+                deferredEvents.add(reader.getCurrentEventDef());
+                reader.advance();
+            }
+        }
+
+        boolean hasDeferred = false;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            assertFalse(reader.getCurrentEventDef() instanceof DeferredEventDefinition);
+            for (EventDefinition deferred : deferredEvents) {
+                EventDefinition expected = reader.getCurrentEventDef();
+                assertNotNull(expected);
+                hasDeferred |= deferred instanceof DeferredEventDefinition;
+                assertEquals(expected.getTimestamp(), deferred.getTimestamp());
+                /* The declarations belong to different traces */
+                assertEquals(expected.getDeclaration().getName(), deferred.getDeclaration().getName());
+                assertEquals(expected.getDeclaration().getId(), deferred.getDeclaration().getId());
+                assertEquals(expected.toString(), deferred.toString());
+                assertEquals(String.valueOf(expected.getContext()), String.valueOf(deferred.getContext()));
+                reader.advance();
+            }
+        }
+        assertTrue(hasDeferred);
+    }
+}
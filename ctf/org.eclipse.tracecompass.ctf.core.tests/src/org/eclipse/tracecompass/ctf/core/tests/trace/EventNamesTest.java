@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.EventDefinition;
+import org.eclipse.tracecompass.ctf.core.tests.shared.CtfTestTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTraceReader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test that a trace reader only reading some event types gives the events of
+ * these types, in the same order, as reading the whole trace.
+ */
+public class EventNamesTest {
+
+    private static final CtfTestTrace TRACE = CtfTestTrace.SYNTHETIC_TRACE;
+    private static final String EVENT_NAME = "sched_switch";
+    private static final int NB_EVENTS = 10000;
+
+    /**
+     * Skip the tests if the test trace is not available
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        assumeTrue(TRACE.exists());
+    }
+
+    private static List<String> readEvents(CTFTraceReader reader, int nbEvents) throws CTFException {
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < nbEvents && reader.hasMoreEvents(); i++) {
+            EventDefinition event = reader.getCurrentEventDef();
+            assertNotNull(event);
+            if (event.getDeclaration().getName().equals(EVENT_NAME)) {
+                events.add(event.getTimestamp() + " " + event.getCPU() + " " + event.toString());
+            }
+            reader.advance();
+        }
+        return events;
+    }
+
+    /**
+     * Compare the events of one type read with and without the others
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testSameEvents() throws CTFException {
+        List<String> expected;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            expected = readEvents(reader, NB_EVENTS);
+        }
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setEventNames(Collections.singleton(EVENT_NAME));
+            reader.seek(0);
+            assertEquals(expected, readEvents(reader, expected.size()));
+        }
+    }
+
+    /**
+     * Test that no event is read when the event type does not exist
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testUnknownEvent() throws CTFException {
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setEventNames(Collections.singleton("not_an_event"));
+            reader.seek(0);
+            assertFalse(reader.hasMoreEvents());
+        }
+    }
+
+    /**
+     * Test that all the events are read again once the event types are reset
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testReset() throws CTFException {
+        List<String> expected;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            expected = readEvents(reader, NB_EVENTS);
+        }
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setEventNames(Collections.singleton("not_an_event"));
+            reader.seek(0);
+            reader.setEventNames(null);
+            reader.seek(0);
+            assertEquals(expected, readEvents(reader, NB_EVENTS));
+        }
+    }
+}
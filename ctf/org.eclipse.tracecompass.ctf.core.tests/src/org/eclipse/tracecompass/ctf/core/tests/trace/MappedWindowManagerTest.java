@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.tests.shared.CtfTestTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFStream;
+import org.eclipse.tracecompass.ctf.core.trace.CTFStreamInput;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTraceReader;
+import org.eclipse.tracecompass.internal.ctf.core.trace.MappedWindowManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the mapping of the stream files in shared windows with
+ * {@link MappedWindowManager}.
+ */
+public class MappedWindowManagerTest {
+
+    private static final int WINDOW_SIZE = 4096;
+    private static final int NB_WINDOWS = 8;
+
+    private File fFile;
+    private FileChannel fChannel;
+    private MappedWindowManager fManager;
+
+    /**
+     * Create a file of a few windows, whose bytes are their position
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Before
+    public void setUp() throws IOException {
+        fFile = File.createTempFile("windows", null);
+        write(0, NB_WINDOWS * WINDOW_SIZE);
+        fChannel = FileChannel.open(fFile.toPath(), StandardOpenOption.READ);
+        fManager = new MappedWindowManager(WINDOW_SIZE, 3 * WINDOW_SIZE);
+    }
+
+    /**
+     * Delete the file
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @After
+    public void tearDown() throws IOException {
+        fChannel.close();
+        fFile.delete();
+    }
+
+    private void write(int start, int size) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (start + i);
+        }
+        try (FileOutputStream out = new FileOutputStream(fFile, true)) {
+            out.write(data);
+        }
+    }
+
+    private void checkRegion(long position, int size) throws IOException {
+        ByteBuffer buffer = fManager.map(fFile, fChannel, position, size);
+        assertEquals(0, buffer.position());
+        assertEquals(size, buffer.remaining());
+        for (int i = 0; i < size; i++) {
+            assertEquals((byte) (position + i), buffer.get(i));
+        }
+    }
+
+    /**
+     * Test that the regions of a window share it
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testSameWindow() throws IOException {
+        checkRegion(0, 100);
+        checkRegion(100, 1000);
+        checkRegion(WINDOW_SIZE - 10, 10);
+        assertEquals(1, fManager.getWindowCount());
+        assertEquals(WINDOW_SIZE, fManager.getCurrentSize());
+    }
+
+    /**
+     * Test a region overlapping two windows
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testOverlappingRegion() throws IOException {
+        checkRegion(WINDOW_SIZE - 10, 20);
+        checkRegion(WINDOW_SIZE, 10);
+        assertEquals(2, fManager.getWindowCount());
+    }
+
+    /**
+     * Test that the least recently used windows are evicted to stay within
+     * the budget
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testEviction() throws IOException {
+        for (int i = 0; i < NB_WINDOWS; i++) {
+            checkRegion(i * WINDOW_SIZE + 1, 10);
+            assertTrue(fManager.getCurrentSize() <= 3 * WINDOW_SIZE);
+        }
+        assertEquals(3, fManager.getWindowCount());
+        checkRegion(0, 10);
+        assertEquals(3, fManager.getWindowCount());
+    }
+
+    /**
+     * Test reading a region added to the file after its window was mapped
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testFileGrowth() throws IOException {
+        checkRegion((NB_WINDOWS - 1) * WINDOW_SIZE, 10);
+        write(NB_WINDOWS * WINDOW_SIZE, WINDOW_SIZE / 2);
+        checkRegion(NB_WINDOWS * WINDOW_SIZE, WINDOW_SIZE / 2);
+        assertEquals(2, fManager.getWindowCount());
+    }
+
+    /**
+     * Test forgetting the windows of a file
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testInvalidate() throws IOException {
+        checkRegion(0, 10);
+        checkRegion(WINDOW_SIZE, 10);
+        fManager.invalidate(new File(fFile.getPath()));
+        assertEquals(2, fManager.getWindowCount());
+        fManager.invalidate(fFile);
+        assertEquals(0, fManager.getWindowCount());
+        assertEquals(0, fManager.getCurrentSize());
+    }
+
+    private static int countWindows(CTFTrace trace) {
+        MappedWindowManager manager = MappedWindowManager.getSharedManager();
+        int count = 0;
+        for (CTFStream stream : trace.getStreams()) {
+            for (CTFStreamInput streamInput : stream.getStreamInputs()) {
+                count += manager.getWindowCount(streamInput.getFile());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Test that disposing a trace releases the windows of its stream files
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testTraceDispose() throws CTFException {
+        CtfTestTrace testTrace = CtfTestTrace.SYNTHETIC_TRACE;
+        assumeTrue(testTrace.exists());
+        CTFTrace trace = new CTFTrace(testTrace.getPath());
+        try (CTFTraceReader reader = new CTFTraceReader(trace)) {
+            for (int i = 0; i < 1000 && reader.hasMoreEvents(); i++) {
+                reader.advance();
+            }
+        }
+        assertTrue(countWindows(trace) > 0);
+        trace.dispose();
+        assertEquals(0, countWindows(trace));
+    }
+}
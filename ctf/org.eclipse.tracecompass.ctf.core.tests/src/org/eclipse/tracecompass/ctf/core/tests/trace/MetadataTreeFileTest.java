@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
+import org.eclipse.tracecompass.ctf.core.trace.Metadata;
+import org.eclipse.tracecompass.internal.ctf.core.event.metadata.MetadataTreeFile;
+import org.eclipse.tracecompass.internal.ctf.core.event.metadata.MetadataTreeFile.CachedTree;
+import org.eclipse.tracecompass.internal.ctf.core.trace.TraceCacheDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the saving and loading of the syntax tree of the metadata with
+ * {@link MetadataTreeFile}.
+ */
+public class MetadataTreeFileTest {
+
+    private static final Charset ASCII = Charset.forName("ASCII");
+
+    private static final String METADATA = "/* CTF 1.8 */\n" +
+            "typealias integer { size = 32; align = 8; signed = false; } := uint32_t;\n" +
+            "trace {\n" +
+            "    major = 1;\n" +
+            "    minor = 8;\n" +
+            "    byte_order = le;\n" +
+            "    packet.header := struct { uint32_t magic; uint32_t stream_id; };\n" +
+            "};\n" +
+            "stream {\n" +
+            "    id = 0;\n" +
+            "    event.header := struct { uint32_t id; uint32_t timestamp; };\n" +
+            "};\n" +
+            "event { name = \"first\"; id = 0; stream_id = 0; fields := struct { uint32_t _a; }; };\n";
+
+    /* Uses a type declared in the text before it */
+    private static final String APPENDED = "event { name = \"second\"; id = 1; stream_id = 0; fields := struct { uint32_t _b; }; };\n";
+
+    private File fDirectory;
+    private File fCacheRoot;
+    private File fMetadataFile;
+
+    /**
+     * Create a trace directory with a text metadata file, and an empty cache
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Before
+    public void setUp() throws IOException {
+        fDirectory = Files.createTempDirectory("treefile").toFile();
+        fCacheRoot = Files.createTempDirectory("treecache").toFile();
+        System.setProperty(TraceCacheDirectory.CACHE_ROOT_PROPERTY, fCacheRoot.getPath());
+        fMetadataFile = new File(fDirectory, "metadata");
+        Files.write(fMetadataFile.toPath(), METADATA.getBytes(ASCII));
+    }
+
+    /**
+     * Delete the trace directory and the cache
+     */
+    @After
+    public void tearDown() {
+        System.clearProperty(TraceCacheDirectory.CACHE_ROOT_PROPERTY);
+        delete(fDirectory);
+        delete(fCacheRoot);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File getTreeFile() {
+        File treeFile = MetadataTreeFile.getTreeFile(fMetadataFile);
+        assertNotNull(treeFile);
+        return treeFile;
+    }
+
+    private Set<String> getEventNames() throws CTFException {
+        CTFTrace trace = new CTFTrace(fDirectory);
+        Set<String> names = new TreeSet<>();
+        for (IEventDeclaration declaration : trace.getEventDeclarations(0L)) {
+            names.add(declaration.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Test that opening a trace saves the syntax tree of its metadata, and
+     * that it is read back as the same tree
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testWriteRead() throws Exception {
+        File treeFile = getTreeFile();
+        assertFalse(treeFile.exists());
+        assertEquals(new TreeSet<>(Arrays.asList("first")), getEventNames());
+        assertTrue(treeFile.isFile());
+        /* Nothing is written to the trace directory */
+        assertEquals(1, fDirectory.listFiles().length);
+
+        CachedTree cachedTree = MetadataTreeFile.read(fMetadataFile, METADATA);
+        assertNotNull(cachedTree);
+        assertEquals(METADATA.length(), cachedTree.getTextLength());
+        assertTrue(cachedTree.getTypeNames().contains("uint32_t"));
+        /* The type alias, trace, stream and event declarations */
+        assertEquals(4, cachedTree.getTree().getChildCount());
+        assertEquals(cachedTree.getTree().getChild(1), cachedTree.getTree().getChild(1).getChild(0).getParent());
+
+        /* The trace is opened again from the saved tree */
+        assertEquals(new TreeSet<>(Arrays.asList("first")), getEventNames());
+    }
+
+    /**
+     * Test that the declarations appended to the metadata are read with the
+     * saved tree of the text before them
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testAppended() throws Exception {
+        getEventNames();
+        Files.write(fMetadataFile.toPath(), APPENDED.getBytes(ASCII), StandardOpenOption.APPEND);
+
+        CachedTree cachedTree = MetadataTreeFile.read(fMetadataFile, METADATA + APPENDED);
+        assertNotNull(cachedTree);
+        assertEquals(METADATA.length(), cachedTree.getTextLength());
+
+        assertEquals(new TreeSet<>(Arrays.asList("first", "second")), getEventNames());
+        cachedTree = MetadataTreeFile.read(fMetadataFile, METADATA + APPENDED);
+        assertNotNull(cachedTree);
+        assertEquals(METADATA.length() + APPENDED.length(), cachedTree.getTextLength());
+        String appendedTree = cachedTree.getTree().toStringTree();
+
+        /* Compare with the tree of the whole text */
+        getTreeFile().delete();
+        assertEquals(new TreeSet<>(Arrays.asList("first", "second")), getEventNames());
+        cachedTree = MetadataTreeFile.read(fMetadataFile, METADATA + APPENDED);
+        assertNotNull(cachedTree);
+        assertEquals(cachedTree.getTree().toStringTree(), appendedTree);
+    }
+
+    /**
+     * Test that the saved tree is not used once the metadata changed
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testChanged() throws Exception {
+        getEventNames();
+        String changed = METADATA.replace("\"first\"", "\"other\"");
+        Files.write(fMetadataFile.toPath(), changed.getBytes(ASCII));
+
+        assertNull(MetadataTreeFile.read(fMetadataFile, changed));
+        assertNull(MetadataTreeFile.read(fMetadataFile, METADATA.substring(1)));
+        assertEquals(new TreeSet<>(Arrays.asList("other")), getEventNames());
+    }
+
+    /**
+     * Test that a corrupted tree file is ignored
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testCorrupted() throws Exception {
+        getEventNames();
+        File treeFile = getTreeFile();
+        try (FileOutputStream out = new FileOutputStream(treeFile)) {
+            out.write(new byte[] { 1, 2, 3 });
+        }
+        assertNull(MetadataTreeFile.read(fMetadataFile, METADATA));
+        assertEquals(new TreeSet<>(Arrays.asList("first")), getEventNames());
+        assertNotNull(MetadataTreeFile.read(fMetadataFile, METADATA));
+    }
+
+    /**
+     * Test that a tree file saved by another version of the parser is ignored
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testOtherParser() throws Exception {
+        getEventNames();
+        File treeFile = getTreeFile();
+        assertNotNull(MetadataTreeFile.read(fMetadataFile, METADATA));
+
+        /* Change the parser key, after the magic, version and key length */
+        try (RandomAccessFile file = new RandomAccessFile(treeFile, "rw")) {
+            file.seek(12);
+            int b = file.read();
+            file.seek(12);
+            file.write(b ^ 0xFF);
+        }
+        assertNull(MetadataTreeFile.read(fMetadataFile, METADATA));
+        assertEquals(new TreeSet<>(Arrays.asList("first")), getEventNames());
+        assertNotNull(MetadataTreeFile.read(fMetadataFile, METADATA));
+    }
+
+    /**
+     * Test that the trace is still read when the cache location cannot be
+     * written to, without saving its tree
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testNoCache() throws Exception {
+        File notADirectory = new File(fCacheRoot, "file");
+        assertTrue(notADirectory.createNewFile());
+        System.setProperty(TraceCacheDirectory.CACHE_ROOT_PROPERTY, notADirectory.getPath());
+
+        assertNull(MetadataTreeFile.getTreeFile(fMetadataFile));
+        assertEquals(new TreeSet<>(Arrays.asList("first")), getEventNames());
+        assertNull(MetadataTreeFile.read(fMetadataFile, METADATA));
+        assertEquals(1, fDirectory.listFiles().length);
+    }
+
+    /**
+     * Test that a metadata fragment can use the types declared before it
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testFragment() throws CTFException {
+        Metadata metadata = new Metadata();
+        metadata.parseText(METADATA);
+        metadata.parseTextFragment(APPENDED);
+        assertEquals(2, metadata.getTrace().getEventDeclarations(0L).size());
+    }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.EventDefinition;
+import org.eclipse.tracecompass.ctf.core.tests.shared.CtfTestTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTraceReader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test that reading a trace with the events decoded on other threads gives the
+ * same events, in the same order, as reading it normally.
+ */
+public class PipelinedReadingTest {
+
+    private static final CtfTestTrace TRACE = CtfTestTrace.SYNTHETIC_TRACE;
+    private static final int NB_EVENTS = 10000;
+
+    /**
+     * Skip the tests if the test trace is not available
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        assumeTrue(TRACE.exists());
+    }
+
+    private static List<String> readEvents(CTFTraceReader reader, int nbEvents) throws CTFException {
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < nbEvents && reader.hasMoreEvents(); i++) {
+            EventDefinition event = reader.getCurrentEventDef();
+            assertNotNull(event);
+            events.add(event.getTimestamp() + " " + event.getCPU() + " " + event.toString());
+            reader.advance();
+        }
+        return events;
+    }
+
+    /**
+     * Compare the events read with and without pipelining
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testSameEvents() throws CTFException {
+        List<String> expected;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            expected = readEvents(reader, NB_EVENTS);
+        }
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setPipelined(true);
+            assertEquals(expected, readEvents(reader, NB_EVENTS));
+        }
+    }
+
+    /**
+     * Compare the events read after a seek with and without pipelining
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testSeek() throws CTFException {
+        long seekTime;
+        List<String> expected;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            readEvents(reader, NB_EVENTS);
+            assertTrue(reader.hasMoreEvents());
+            seekTime = reader.getCurrentEventDef().getTimestamp();
+            reader.seek(0);
+            expected = readEvents(reader, NB_EVENTS);
+            reader.seek(seekTime);
+            expected.addAll(readEvents(reader, NB_EVENTS));
+        }
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setPipelined(true);
+            readEvents(reader, NB_EVENTS);
+            reader.seek(0);
+            List<String> actual = readEvents(reader, NB_EVENTS);
+            reader.seek(seekTime);
+            actual.addAll(readEvents(reader, NB_EVENTS));
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Test that no event is lost or read twice when the pipelining is turned
+     * off and on while reading
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testToggle() throws CTFException {
+        List<String> expected;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            expected = readEvents(reader, 3 * NB_EVENTS);
+        }
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setPipelined(true);
+            List<String> actual = readEvents(reader, NB_EVENTS);
+            reader.setPipelined(false);
+            actual.addAll(readEvents(reader, NB_EVENTS));
+            reader.setPipelined(true);
+            reader.setPipelined(false);
+            reader.setPipelined(true);
+            actual.addAll(readEvents(reader, NB_EVENTS));
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Test reading a whole trace with pipelining
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testReadAll() throws CTFException {
+        long nbEvents = 0;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            while (reader.hasMoreEvents()) {
+                nbEvents++;
+                reader.advance();
+            }
+        }
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setPipelined(true);
+            long last = Long.MIN_VALUE;
+            for (long i = 0; i < nbEvents; i++) {
+                EventDefinition event = reader.getCurrentEventDef();
+                assertNotNull(event);
+                assertTrue(event.getTimestamp() >= last);
+                last = event.getTimestamp();
+                reader.advance();
+            }
+            assertFalse(reader.hasMoreEvents());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.EventDefinition;
+import org.eclipse.tracecompass.ctf.core.tests.shared.CtfTestTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
+import org.eclipse.tracecompass.ctf.core.trace.CTFTraceReader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test that a trace reader with a stop time gives all the events up to the
+ * stop time, without reading the trace until its end.
+ */
+public class StopTimeTest {
+
+    private static final CtfTestTrace TRACE = CtfTestTrace.SYNTHETIC_TRACE;
+    private static final int NB_EVENTS = 10000;
+
+    /**
+     * Skip the tests if the test trace is not available
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        assumeTrue(TRACE.exists());
+    }
+
+    private static List<String> readEvents(CTFTraceReader reader, long endTime) throws CTFException {
+        List<String> events = new ArrayList<>();
+        while (reader.hasMoreEvents()) {
+            EventDefinition event = reader.getCurrentEventDef();
+            assertNotNull(event);
+            if (event.getTimestamp() > endTime) {
+                break;
+            }
+            events.add(event.getTimestamp() + " " + event.getCPU() + " " + event.toString());
+            reader.advance();
+        }
+        return events;
+    }
+
+    private static long countEvents(CTFTraceReader reader) throws CTFException {
+        long nbEvents = 0;
+        while (reader.hasMoreEvents()) {
+            nbEvents++;
+            reader.advance();
+        }
+        return nbEvents;
+    }
+
+    private static long getStopTime(CTFTraceReader reader) throws CTFException {
+        for (int i = 0; i < NB_EVENTS; i++) {
+            reader.advance();
+        }
+        assertTrue(reader.hasMoreEvents());
+        return reader.getCurrentEventDef().getTimestamp();
+    }
+
+    /**
+     * Compare the events up to the stop time read with and without it, and
+     * check that the trace is not read until its end
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testStopTime() throws CTFException {
+        long stopTime;
+        long nbEvents;
+        List<String> expected;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            stopTime = getStopTime(reader);
+            reader.seek(0);
+            expected = readEvents(reader, stopTime);
+            reader.seek(0);
+            nbEvents = countEvents(reader);
+        }
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            reader.setStopTime(stopTime);
+            reader.seek(0);
+            assertEquals(expected, readEvents(reader, stopTime));
+            reader.seek(0);
+            long nbRead = countEvents(reader);
+            assertTrue(nbRead >= expected.size());
+            assertTrue(nbRead < nbEvents);
+        }
+    }
+
+    /**
+     * Test that the whole trace is read again once the stop time is raised
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testRaiseStopTime() throws CTFException {
+        long nbEvents;
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            nbEvents = countEvents(reader);
+        }
+        try (CTFTraceReader reader = new CTFTraceReader(new CTFTrace(TRACE.getPath()))) {
+            long stopTime = getStopTime(reader);
+            reader.setStopTime(stopTime);
+            countEvents(reader);
+            assertFalse(reader.hasMoreEvents());
+            reader.setStopTime(Long.MAX_VALUE);
+            reader.seek(0);
+            assertEquals(nbEvents, countEvents(reader));
+        }
+    }
+}
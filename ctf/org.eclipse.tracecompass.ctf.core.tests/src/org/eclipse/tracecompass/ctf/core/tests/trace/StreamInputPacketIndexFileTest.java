@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexEntry;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexFile;
+import org.eclipse.tracecompass.internal.ctf.core.trace.TraceCacheDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the saving and loading of the packet index of a stream file with
+ * {@link StreamInputPacketIndexFile}.
+ */
+public class StreamInputPacketIndexFileTest {
+
+    private static final int PACKET_SIZE = 1024;
+    private static final int NB_PACKETS = 3;
+
+    private File fDirectory;
+    private File fCacheRoot;
+    private File fStreamFile;
+
+    /**
+     * Create a stream file of a few packets, and an empty cache
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Before
+    public void setUp() throws IOException {
+        fDirectory = Files.createTempDirectory("indexfile").toFile();
+        fCacheRoot = Files.createTempDirectory("indexcache").toFile();
+        System.setProperty(TraceCacheDirectory.CACHE_ROOT_PROPERTY, fCacheRoot.getPath());
+        fStreamFile = new File(fDirectory, "channel0_0");
+        try (FileOutputStream out = new FileOutputStream(fStreamFile)) {
+            out.write(new byte[NB_PACKETS * PACKET_SIZE]);
+        }
+    }
+
+    /**
+     * Delete the stream and index files
+     */
+    @After
+    public void tearDown() {
+        System.clearProperty(TraceCacheDirectory.CACHE_ROOT_PROPERTY);
+        delete(fDirectory);
+        delete(fCacheRoot);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static List<ICTFPacketDescriptor> createEntries(int nbPackets) {
+        List<ICTFPacketDescriptor> entries = new ArrayList<>();
+        for (int i = 0; i < nbPackets; i++) {
+            long sizeBits = PACKET_SIZE * Byte.SIZE;
+            StreamInputPacketIndexEntry entry = new StreamInputPacketIndexEntry(i * sizeBits, sizeBits, sizeBits - 8,
+                    100 * i, 100 * i + 99, i, (i == 0 ? null : "CPU" + i), i);
+            entry.addAttribute("timestamp_begin", 100L * i);
+            entry.addAttribute("ratio", 0.5 * i);
+            entry.addAttribute("device", "dev" + i);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Test writing and reading back an index
+     */
+    @Test
+    public void testReadWrite() {
+        assertNull(StreamInputPacketIndexFile.read(fStreamFile));
+
+        List<ICTFPacketDescriptor> expected = createEntries(NB_PACKETS);
+        StreamInputPacketIndexFile.write(fStreamFile, expected);
+        File indexFile = StreamInputPacketIndexFile.getIndexFile(fStreamFile);
+        assertNotNull(indexFile);
+        assertTrue(indexFile.isFile());
+        /* Nothing is written to the trace directory */
+        assertEquals(1, fDirectory.listFiles().length);
+
+        List<ICTFPacketDescriptor> actual = StreamInputPacketIndexFile.read(fStreamFile);
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ICTFPacketDescriptor expectedEntry = expected.get(i);
+            ICTFPacketDescriptor actualEntry = actual.get(i);
+            assertEquals(expectedEntry.getOffsetBits(), actualEntry.getOffsetBits());
+            assertEquals(expectedEntry.getOffsetBytes(), actualEntry.getOffsetBytes());
+            assertEquals(expectedEntry.getPacketSizeBits(), actualEntry.getPacketSizeBits());
+            assertEquals(expectedEntry.getContentSizeBits(), actualEntry.getContentSizeBits());
+            assertEquals(expectedEntry.getTimestampBegin(), actualEntry.getTimestampBegin());
+            assertEquals(expectedEntry.getTimestampEnd(), actualEntry.getTimestampEnd());
+            assertEquals(expectedEntry.getLostEvents(), actualEntry.getLostEvents());
+            assertEquals(expectedEntry.getTarget(), actualEntry.getTarget());
+            assertEquals(expectedEntry.getTargetId(), actualEntry.getTargetId());
+            for (String attribute : new String[] { "timestamp_begin", "ratio", "device" }) {
+                assertEquals(expectedEntry.lookupAttribute(attribute), actualEntry.lookupAttribute(attribute));
+            }
+        }
+    }
+
+    /**
+     * Test that the index is not used once the stream file changed
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testStreamFileChanged() throws IOException {
+        StreamInputPacketIndexFile.write(fStreamFile, createEntries(NB_PACKETS));
+        assertNotNull(StreamInputPacketIndexFile.read(fStreamFile));
+        try (FileOutputStream out = new FileOutputStream(fStreamFile, true)) {
+            out.write(new byte[PACKET_SIZE]);
+        }
+        assertNull(StreamInputPacketIndexFile.read(fStreamFile));
+    }
+
+    /**
+     * Test that an index that does not cover the whole stream file is not
+     * written
+     */
+    @Test
+    public void testPartialIndex() {
+        StreamInputPacketIndexFile.write(fStreamFile, createEntries(NB_PACKETS - 1));
+        File indexFile = StreamInputPacketIndexFile.getIndexFile(fStreamFile);
+        assertNotNull(indexFile);
+        assertFalse(indexFile.exists());
+        assertNull(StreamInputPacketIndexFile.read(fStreamFile));
+    }
+
+    /**
+     * Test that the index is neither saved nor read when the cache location
+     * cannot be written to
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testNoCache() throws IOException {
+        File notADirectory = new File(fCacheRoot, "file");
+        assertTrue(notADirectory.createNewFile());
+        System.setProperty(TraceCacheDirectory.CACHE_ROOT_PROPERTY, notADirectory.getPath());
+
+        assertNull(StreamInputPacketIndexFile.getIndexFile(fStreamFile));
+        StreamInputPacketIndexFile.write(fStreamFile, createEntries(NB_PACKETS));
+        assertNull(StreamInputPacketIndexFile.read(fStreamFile));
+        assertEquals(1, fDirectory.listFiles().length);
+    }
+}
@@ -27,9 +27,12 @@ import org.junit.runners.Suite;
     CTFTraceReaderTest.class,
     CTFTraceTest.class,
     CTFTraceGrowingTest.class,
+    CTFTraceGrowingStreamTest.class,
     IOstructgenTest.class,
+    MappedWindowManagerTest.class,
     MetadataTest.class,
     MetadataPrevalidationTests.class,
+    MetadataTreeFileTest.class,
     CTFStreamInputPacketIndexEntryTest.class,
     CTFStreamInputPacketIndexTest.class,
     CTFStreamInputReaderTest.class,
@@ -37,6 +40,11 @@ import org.junit.runners.Suite;
     CTFStreamInputTest.class,
     CTFStreamTest.class,
     CTFTraceWriterTest.class,
+    DeferredDecodingTest.class,
+    EventNamesTest.class,
+    PipelinedReadingTest.class,
+    StopTimeTest.class,
+    StreamInputPacketIndexFileTest.class,
     TraceReadAllTracesTest.class,
     UtilsTest.class
 })
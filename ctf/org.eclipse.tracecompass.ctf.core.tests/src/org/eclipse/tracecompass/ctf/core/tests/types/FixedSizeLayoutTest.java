@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.types;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.eclipse.tracecompass.ctf.core.event.types.Encoding;
+import org.eclipse.tracecompass.ctf.core.event.types.EnumDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.FloatDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.StringDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
+import org.eclipse.tracecompass.internal.ctf.core.event.types.ArrayDeclaration;
+import org.eclipse.tracecompass.internal.ctf.core.event.types.FixedSizeLayout;
+import org.junit.Test;
+
+/**
+ * Test the {@link FixedSizeLayout}, comparing the computed end positions with
+ * the positions after actually reading the declarations.
+ */
+public class FixedSizeLayoutTest {
+
+    private static final int BUFFER_SIZE = 128;
+
+    private static IntegerDeclaration integer(int length, long alignment) {
+        return IntegerDeclaration.createDeclaration(length, false, 10, ByteOrder.BIG_ENDIAN, Encoding.NONE, "", alignment);
+    }
+
+    private static StructDeclaration createFixedStruct() {
+        StructDeclaration inner = new StructDeclaration(8);
+        inner.addField("short", integer(16, 16));
+        inner.addField("bits", integer(7, 1));
+
+        EnumDeclaration enumDecl = new EnumDeclaration(integer(8, 8));
+        enumDecl.add(0, 1, "zero");
+
+        StructDeclaration struct = new StructDeclaration(1);
+        struct.addField("small", integer(5, 1));
+        struct.addField("int", integer(32, 32));
+        struct.addField("enum", enumDecl);
+        struct.addField("float", new FloatDeclaration(8, 24, ByteOrder.BIG_ENDIAN, 32));
+        struct.addField("bytes", new ArrayDeclaration(3, integer(8, 8)));
+        struct.addField("bitArray", new ArrayDeclaration(3, integer(3, 1)));
+        struct.addField("inner", inner);
+        struct.addField("double", new FloatDeclaration(11, 53, ByteOrder.BIG_ENDIAN, 64));
+        return struct;
+    }
+
+    private static long readEnd(IDeclaration declaration, long start) throws CTFException {
+        BitBuffer input = new BitBuffer(ByteBuffer.allocate(BUFFER_SIZE));
+        input.position(start);
+        declaration.createDefinition(null, "test", input);
+        return input.position();
+    }
+
+    /**
+     * Test a struct of fixed size from every start position of a few words
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testFixedStruct() throws CTFException {
+        StructDeclaration struct = createFixedStruct();
+        for (long start = 0; start < 2 * Long.SIZE; start++) {
+            assertEquals(readEnd(struct, start), FixedSizeLayout.getEndPosition(struct, start));
+        }
+    }
+
+    /**
+     * Test the simple declarations
+     *
+     * @throws CTFException
+     *             Fails the test
+     */
+    @Test
+    public void testSimpleDeclarations() throws CTFException {
+        IDeclaration[] declarations = {
+                integer(1, 1),
+                integer(64, 8),
+                new EnumDeclaration(integer(12, 4)),
+                new FloatDeclaration(8, 24, ByteOrder.LITTLE_ENDIAN, 8),
+                new ArrayDeclaration(5, integer(8, 8))
+        };
+        for (IDeclaration declaration : declarations) {
+            for (long start = 0; start < Long.SIZE; start++) {
+                assertEquals(readEnd(declaration, start), FixedSizeLayout.getEndPosition(declaration, start));
+            }
+        }
+    }
+
+    /**
+     * Test that a null declaration takes no space
+     */
+    @Test
+    public void testNull() {
+        assertEquals(13, FixedSizeLayout.getEndPosition(null, 13));
+        assertEquals(FixedSizeLayout.NOT_FIXED, FixedSizeLayout.getEndPosition(null, FixedSizeLayout.NOT_FIXED));
+    }
+
+    /**
+     * Test the declarations whose size depends on the data
+     */
+    @Test
+    public void testNotFixed() {
+        StructDeclaration struct = createFixedStruct();
+        struct.addField("string", StringDeclaration.getStringDeclaration(Encoding.UTF8));
+        assertEquals(FixedSizeLayout.NOT_FIXED, FixedSizeLayout.getEndPosition(struct, 0));
+        assertEquals(FixedSizeLayout.NOT_FIXED, FixedSizeLayout.getEndPosition(new ArrayDeclaration(2, struct), 0));
+        assertEquals(FixedSizeLayout.NOT_FIXED, FixedSizeLayout.getEndPosition(new FloatDeclaration(5, 6, ByteOrder.BIG_ENDIAN, 1), 0));
+    }
+}
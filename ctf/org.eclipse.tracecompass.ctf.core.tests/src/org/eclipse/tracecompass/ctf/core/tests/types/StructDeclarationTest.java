@@ -18,10 +18,15 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
 
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.eclipse.tracecompass.ctf.core.event.scope.ILexicalScope;
 import org.eclipse.tracecompass.ctf.core.event.types.Encoding;
+import org.eclipse.tracecompass.ctf.core.event.types.EnumDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.StringDeclaration;
@@ -90,6 +95,50 @@ public class StructDeclarationTest {
         assertNotNull(result);
     }
 
+    /**
+     * Test that reading a struct gives the same values as reading its fields
+     * one by one, for integers of all sizes, alignments, byte orders and
+     * signedness, at every start position
+     *
+     * @throws CTFException
+     *             out of bounds
+     */
+    @Test
+    public void testCreateDefinitionIntegerFields() throws CTFException {
+        StructDeclaration struct = new StructDeclaration(1);
+        struct.addField("bits", IntegerDeclaration.createDeclaration(3, true, 10, ByteOrder.BIG_ENDIAN, Encoding.NONE, "", 1));
+        struct.addField("_byte", IntegerDeclaration.createDeclaration(8, true, 10, ByteOrder.BIG_ENDIAN, Encoding.NONE, "", 8));
+        struct.addField("short", IntegerDeclaration.createDeclaration(16, false, 10, ByteOrder.LITTLE_ENDIAN, Encoding.NONE, "", 8));
+        struct.addField("int", IntegerDeclaration.createDeclaration(32, false, 16, ByteOrder.BIG_ENDIAN, Encoding.NONE, "", 32));
+        struct.addField("odd", IntegerDeclaration.createDeclaration(27, false, 10, ByteOrder.LITTLE_ENDIAN, Encoding.NONE, "", 1));
+        EnumDeclaration enumDecl = new EnumDeclaration(IntegerDeclaration.createDeclaration(8, false, 10, ByteOrder.BIG_ENDIAN, Encoding.NONE, "", 8));
+        enumDecl.add(0, 127, "low");
+        struct.addField("enum", enumDecl);
+        struct.addField("long", IntegerDeclaration.createDeclaration(64, true, 10, ByteOrder.LITTLE_ENDIAN, Encoding.NONE, "", 64));
+        struct.addField("string", StringDeclaration.getStringDeclaration(Encoding.UTF8));
+        struct.addField("after", IntegerDeclaration.createDeclaration(32, true, 10, ByteOrder.BIG_ENDIAN, Encoding.NONE, "", 8));
+
+        byte[] data = new byte[64];
+        Random random = new Random(12);
+        random.nextBytes(data);
+        data[40] = 0;
+        for (int start = 0; start < 16; start++) {
+            BitBuffer structInput = new BitBuffer(ByteBuffer.wrap(data));
+            structInput.position(start);
+            StructDefinition result = struct.createDefinition(null, ILexicalScope.FIELDS, structInput);
+
+            BitBuffer fieldInput = new BitBuffer(ByteBuffer.wrap(data));
+            fieldInput.position((start + 63) & ~63);
+            for (String fieldName : struct.getFieldsList()) {
+                IDefinition expected = struct.getField(fieldName).createDefinition(null, fieldName, fieldInput);
+                assertEquals(expected.toString(), result.getDefinition(fieldName).toString());
+            }
+            assertEquals(fieldInput.position(), structInput.position());
+            assertEquals(result.getDefinition("_byte"), result.lookupDefinition("byte"));
+            assertNull(result.getDefinition("byte"));
+        }
+    }
+
     /**
      * Run the Declaration getField(String) method test.
      */
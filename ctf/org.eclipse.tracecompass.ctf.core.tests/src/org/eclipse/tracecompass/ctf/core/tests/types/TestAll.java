@@ -31,6 +31,7 @@ import org.junit.runners.Suite;
     EnumDefinitionTest.class,
     EventDeclarationTest.class,
     EventHeaderDeclarationTest.class,
+    FixedSizeLayoutTest.class,
     FloatDeclarationTest.class,
     FloatDefinitionTest.class,
     IntegerDeclarationTest.class,
@@ -29,8 +29,12 @@ import org.eclipse.tracecompass.internal.ctf.core.event.EventDeclaration;
 
 /**
  * Representation of a particular instance of an event.
+ *
+ * The contexts and fields are only accessed through their getters, so a
+ * subclass can provide them differently, for example by reading them when
+ * they are first requested.
  */
-public final class EventDefinition implements IDefinitionScope {
+public class EventDefinition implements IDefinitionScope {
 
     // ------------------------------------------------------------------------
     // Attributes
@@ -73,6 +77,12 @@ public final class EventDefinition implements IDefinitionScope {
      */
     private final CTFStreamInputReader fStreamInputReader;
 
+    /**
+     * The CPU of the packet the event was read from, the reader may have moved
+     * to another packet when it is looked at.
+     */
+    private final int fCpu;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -144,6 +154,7 @@ public final class EventDefinition implements IDefinitionScope {
         fEventContext = eventContext;
         fPacketContext = packetContext;
         fStreamContext = streamContext;
+        fCpu = (streamInputReader != null) ? streamInputReader.getCPU() : -1;
     }
 
     // ------------------------------------------------------------------------
@@ -205,6 +216,16 @@ public final class EventDefinition implements IDefinitionScope {
         return fEventContext;
     }
 
+    /**
+     * Gets the stream event context of this event
+     *
+     * @return the stream event context in struct form. Can be null.
+     * @since 1.1
+     */
+    protected ICompositeDefinition getStreamContext() {
+        return fStreamContext;
+    }
+
     /**
      * Gets the context of this event within a stream
      *
@@ -212,15 +233,17 @@ public final class EventDefinition implements IDefinitionScope {
      * @since 1.0
      */
     public ICompositeDefinition getContext() {
+        ICompositeDefinition streamContext = getStreamContext();
+        ICompositeDefinition eventContext = getEventContext();
 
         /* Most common case so far */
-        if (fStreamContext == null) {
-            return fEventContext;
+        if (streamContext == null) {
+            return eventContext;
         }
 
         /* streamContext is not null, but the context of the event is null */
-        if (fEventContext == null) {
-            return fStreamContext;
+        if (eventContext == null) {
+            return streamContext;
         }
 
         // TODO: cache if this is a performance issue
@@ -231,9 +254,9 @@ public final class EventDefinition implements IDefinitionScope {
         List<Definition> fieldValues = new ArrayList<>();
 
         /* Add fields from the stream */
-        List<String> fieldNames = fStreamContext.getFieldNames();
+        List<String> fieldNames = streamContext.getFieldNames();
         for (String fieldName : fieldNames) {
-            Definition definition = fStreamContext.getDefinition(fieldName);
+            Definition definition = streamContext.getDefinition(fieldName);
             mergedDeclaration.addField(fieldName, definition.getDeclaration());
             fieldValues.add(definition);
         }
@@ -242,8 +265,8 @@ public final class EventDefinition implements IDefinitionScope {
          * Add fields from the event context, overwrite the stream ones if
          * needed.
          */
-        for (String fieldName : fEventContext.getFieldNames()) {
-            Definition definition = fEventContext.getDefinition(fieldName);
+        for (String fieldName : eventContext.getFieldNames()) {
+            Definition definition = eventContext.getDefinition(fieldName);
             mergedDeclaration.addField(fieldName, definition.getDeclaration());
             if (fieldNames.contains(fieldName)) {
                 fieldValues.set((fieldNames.indexOf(fieldName)), definition);
@@ -280,7 +303,7 @@ public final class EventDefinition implements IDefinitionScope {
      * @return The CPU the event was generated by
      */
     public int getCPU() {
-        return fStreamInputReader.getCPU();
+        return fCpu;
     }
 
     /**
@@ -300,9 +323,9 @@ public final class EventDefinition implements IDefinitionScope {
     @Override
     public IDefinition lookupDefinition(String lookupPath) {
         if (lookupPath.equals("context")) { //$NON-NLS-1$
-            return fEventContext;
+            return getEventContext();
         } else if (lookupPath.equals("fields")) { //$NON-NLS-1$
-            return fFields;
+            return getFields();
         } else {
             return null;
         }
@@ -317,19 +340,21 @@ public final class EventDefinition implements IDefinitionScope {
         retString.append("Event type: ").append(fDeclaration.getName()).append(cr); //$NON-NLS-1$
         retString.append("Timestamp: ").append(Long.toString(fTimestamp)).append(cr); //$NON-NLS-1$
 
-        if (fEventContext != null) {
-            list = fEventContext.getFieldNames();
+        ICompositeDefinition eventContext = getEventContext();
+        if (eventContext != null) {
+            list = eventContext.getFieldNames();
 
             for (String field : list) {
-                retString.append(field).append(" : ").append(fEventContext.getDefinition(field).toString()).append(cr); //$NON-NLS-1$
+                retString.append(field).append(" : ").append(eventContext.getDefinition(field).toString()).append(cr); //$NON-NLS-1$
             }
         }
 
-        if (fFields != null) {
-            list = fFields.getFieldNames();
+        ICompositeDefinition fields = getFields();
+        if (fields != null) {
+            list = fields.getFieldNames();
 
             for (String field : list) {
-                retString.append(field).append(" : ").append(fFields.getDefinition(field).toString()).append(cr); //$NON-NLS-1$
+                retString.append(field).append(" : ").append(fields.getDefinition(field).toString()).append(cr); //$NON-NLS-1$
             }
         }
 
@@ -12,10 +12,7 @@
 
 package org.eclipse.tracecompass.ctf.core.event.types;
 
-import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
-
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +49,9 @@ public class StructDeclaration extends Declaration {
     /** maximum bit alignment */
     private long fMaxAlign;
 
+    /** Layout of the fields, computed when needed. Reset when a field is added. */
+    private @Nullable StructLayout fLayout;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -120,7 +120,7 @@ public class StructDeclaration extends Declaration {
      * @return the field list.
      */
     public Iterable<String> getFieldsList() {
-        return fFieldMap.keySet();
+        return getFieldNames();
     }
 
     @Override
@@ -180,7 +180,7 @@ public class StructDeclaration extends Declaration {
         final Definition[] myFields = new Definition[fFieldMap.size()];
 
         StructDefinition structDefinition = new StructDefinition(this, definitionScope,
-                fieldScope, fieldScope.getName(), checkNotNull(fFieldMap.keySet()), myFields);
+                fieldScope, fieldScope.getName(), getFieldNames(), myFields);
         fillStruct(input, myFields, structDefinition);
         return structDefinition;
     }
@@ -196,16 +196,30 @@ public class StructDeclaration extends Declaration {
     public void addField(String name, IDeclaration declaration) {
         fFieldMap.put(name, declaration);
         fMaxAlign = Math.max(fMaxAlign, declaration.getAlignment());
+        fLayout = null;
     }
 
-    private void fillStruct(@NonNull BitBuffer input, final Definition[] myFields, StructDefinition structDefinition) throws CTFException {
-        Iterator<Map.Entry<String, IDeclaration>> iter = fFieldMap.entrySet().iterator();
-        for (int i = 0; i < fFieldMap.size(); i++) {
-            Map.Entry<String, IDeclaration> entry = iter.next();
-            /* We should not have inserted null keys... */
-            String key = checkNotNull(entry.getKey());
-            myFields[i] = entry.getValue().createDefinition(structDefinition, key, input);
+    /**
+     * Get the layout of the fields, shared by all the definitions of this
+     * struct
+     *
+     * @return the layout
+     */
+    @NonNull StructLayout getLayout() {
+        StructLayout layout = fLayout;
+        if (layout == null) {
+            layout = new StructLayout(fFieldMap);
+            fLayout = layout;
         }
+        return layout;
+    }
+
+    private @NonNull List<String> getFieldNames() {
+        return getLayout().getFieldNames();
+    }
+
+    private void fillStruct(@NonNull BitBuffer input, final Definition[] myFields, StructDefinition structDefinition) throws CTFException {
+        getLayout().fill(input, myFields, structDefinition);
     }
 
     /**
@@ -232,7 +246,7 @@ public class StructDeclaration extends Declaration {
             merged = new InternalDef(definitionScope, eventHeaderDef);
         }
         StructDefinition structDefinition = new StructDefinition(this, merged,
-                fields, fields.getName(), checkNotNull(fFieldMap.keySet()), myFields);
+                fields, fields.getName(), getFieldNames(), myFields);
         if (merged instanceof InternalDef) {
             InternalDef internalDef = (InternalDef) merged;
             internalDef.setDefinition(structDefinition);
@@ -12,10 +12,8 @@
 
 package org.eclipse.tracecompass.ctf.core.event.types;
 
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.ctf.core.event.scope.IDefinitionScope;
@@ -23,8 +21,6 @@ import org.eclipse.tracecompass.ctf.core.event.scope.ILexicalScope;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMap.Builder;
 
 /**
  * A CTF structure definition (similar to a C structure).
@@ -47,7 +43,6 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
 
     private final ImmutableList<String> fFieldNames;
     private final Definition[] fDefinitions;
-    private Map<String, Definition> fDefinitionsMap = null;
 
     // ------------------------------------------------------------------------
     // Constructors
@@ -73,9 +68,6 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
         super(declaration, definitionScope, structFieldName);
         fFieldNames = ImmutableList.copyOf(declaration.getFieldsList());
         fDefinitions = definitions;
-        if (fFieldNames.isEmpty()) {
-            fDefinitionsMap = Collections.EMPTY_MAP;
-        }
     }
 
     /**
@@ -102,9 +94,6 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
         super(declaration, definitionScope, structFieldName, scope);
         fFieldNames = ImmutableList.copyOf(fieldNames);
         fDefinitions = definitions;
-        if (fFieldNames.isEmpty()) {
-            fDefinitionsMap = Collections.EMPTY_MAP;
-        }
     }
 
     // ------------------------------------------------------------------------
@@ -113,17 +102,9 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
 
     @Override
     public Definition getDefinition(String fieldName) {
-        if (fDefinitionsMap == null) {
-            /* Build the definitions map */
-            Builder<String, Definition> mapBuilder = new ImmutableMap.Builder<>();
-            for (int i = 0; i < fFieldNames.size(); i++) {
-                if (fDefinitions[i] != null) {
-                    mapBuilder.put(fFieldNames.get(i), fDefinitions[i]);
-                }
-            }
-            fDefinitionsMap = mapBuilder.build();
-        }
-        return fDefinitionsMap.get(fieldName);
+        StructLayout layout = getLayout();
+        int index = (layout != null ? layout.getIndex(fieldName) : fFieldNames.indexOf(fieldName));
+        return (index == -1 ? null : fDefinitions[index]);
     }
 
     @Override
@@ -147,6 +128,14 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
          * sequence refers to a field that is after it, the field's definition
          * will not be there yet in the hashmap.
          */
+        StructLayout layout = getLayout();
+        if (layout != null) {
+            int val = layout.getLookupIndex(lookupPath);
+            if (val != -1) {
+                return fDefinitions[val];
+            }
+            return (Definition) getDefinitionScope().lookupDefinition(lookupPath);
+        }
         int val = fFieldNames.indexOf(lookupPath);
         if (val != -1) {
             return fDefinitions[val];
@@ -159,6 +148,15 @@ public final class StructDefinition extends ScopedDefinition implements IComposi
         return (Definition) getDefinitionScope().lookupDefinition(lookupPath);
     }
 
+    /**
+     * Get the layout of the declaration, if the fields of this definition are
+     * the ones of the declaration
+     */
+    private StructLayout getLayout() {
+        StructLayout layout = getDeclaration().getLayout();
+        return (layout.getFieldNames() == fFieldNames ? layout : null);
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
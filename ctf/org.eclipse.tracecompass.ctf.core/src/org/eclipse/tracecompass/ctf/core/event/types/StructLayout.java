@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.event.types;
+
+import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The layout of a {@link StructDeclaration}, computed once from its fields and
+ * shared by all its definitions.
+ *
+ * It resolves the field names to their index, and reads the integer and enum
+ * fields at the beginning of the struct directly at their offset: since the
+ * struct is aligned on the largest alignment of its fields, the offset of each
+ * of these fields from the start of the struct is always the same. The fields
+ * that are byte-aligned and of a native size are read directly from the byte
+ * buffer. The other fields are read by their declaration as usual.
+ *
+ * A layout is immutable, the struct declaration creates a new one when a field
+ * is added.
+ */
+final class StructLayout {
+
+    private final @NonNull ImmutableList<String> fFieldNames;
+    private final IDeclaration[] fDeclarations;
+
+    /** Index of each field name */
+    private final Map<String, Integer> fIndexes;
+
+    /** Index of each field name, and of the names without their underscore */
+    private final Map<String, Integer> fLookupIndexes;
+
+    /** Number of integer or enum fields at the beginning of the struct */
+    private final int fPrefixLength;
+    private final IntegerDeclaration[] fIntegers;
+    private final long[] fOffsets;
+    private final boolean[] fNative;
+    private final long fPrefixSize;
+
+    /**
+     * Compute the layout of a struct
+     *
+     * @param fields
+     *            The fields of the struct, in order
+     */
+    public StructLayout(Map<String, IDeclaration> fields) {
+        int nbFields = fields.size();
+        fFieldNames = checkNotNull(ImmutableList.copyOf(fields.keySet()));
+        fDeclarations = fields.values().toArray(new IDeclaration[nbFields]);
+
+        ImmutableMap.Builder<String, Integer> indexes = new ImmutableMap.Builder<>();
+        Map<String, Integer> lookupIndexes = new HashMap<>();
+        for (int i = 0; i < nbFields; i++) {
+            indexes.put(fFieldNames.get(i), i);
+            lookupIndexes.put(fFieldNames.get(i), i);
+        }
+        fIndexes = indexes.build();
+        for (int i = 0; i < nbFields; i++) {
+            String name = fFieldNames.get(i);
+            if (name.startsWith("_") && !lookupIndexes.containsKey(name.substring(1))) { //$NON-NLS-1$
+                lookupIndexes.put(name.substring(1), i);
+            }
+        }
+        fLookupIndexes = ImmutableMap.copyOf(lookupIndexes);
+
+        fIntegers = new IntegerDeclaration[nbFields];
+        fOffsets = new long[nbFields];
+        fNative = new boolean[nbFields];
+        int prefixLength = 0;
+        long position = 0;
+        for (Entry<String, IDeclaration> field : fields.entrySet()) {
+            IDeclaration declaration = field.getValue();
+            IntegerDeclaration integer;
+            if (declaration instanceof IntegerDeclaration) {
+                integer = (IntegerDeclaration) declaration;
+            } else if (declaration instanceof EnumDeclaration) {
+                integer = ((EnumDeclaration) declaration).getContainerType();
+            } else {
+                break;
+            }
+            if (integer.getLength() > Long.SIZE) {
+                break;
+            }
+            position = align(position, integer.getAlignment());
+            fIntegers[prefixLength] = integer;
+            fOffsets[prefixLength] = position;
+            fNative[prefixLength] = (integer.getAlignment() % Byte.SIZE == 0) && isNativeSize(integer.getLength());
+            position += integer.getLength();
+            prefixLength++;
+        }
+        fPrefixLength = prefixLength;
+        fPrefixSize = position;
+    }
+
+    /**
+     * Get the names of the fields
+     *
+     * @return The field names, in order
+     */
+    public @NonNull List<String> getFieldNames() {
+        return fFieldNames;
+    }
+
+    /**
+     * Get the index of a field
+     *
+     * @param fieldName
+     *            The name of the field
+     * @return The index of the field, or -1 if there is no such field
+     */
+    public int getIndex(String fieldName) {
+        Integer index = fIndexes.get(fieldName);
+        return (index == null ? -1 : index.intValue());
+    }
+
+    /**
+     * Get the index of a field, or of the field with the same name preceded
+     * by an underscore
+     *
+     * @param fieldName
+     *            The name of the field
+     * @return The index of the field, or -1 if there is no such field
+     */
+    public int getLookupIndex(String fieldName) {
+        Integer index = fLookupIndexes.get(fieldName);
+        return (index == null ? -1 : index.intValue());
+    }
+
+    /**
+     * Read the fields of a struct
+     *
+     * @param input
+     *            The input buffer, positioned at the (aligned) start of the
+     *            struct
+     * @param definitions
+     *            The array of definitions to fill
+     * @param structDefinition
+     *            The definition of the struct, the scope of its fields
+     * @throws CTFException
+     *             If a field could not be read
+     */
+    public void fill(@NonNull BitBuffer input, Definition[] definitions, StructDefinition structDefinition) throws CTFException {
+        int i = 0;
+        long start = input.position();
+        ByteBuffer buffer = input.getByteBuffer();
+        if (fPrefixLength > 0 && start + fPrefixSize <= (long) buffer.limit() * Byte.SIZE) {
+            ByteOrder previousByteOrder = input.getByteOrder();
+            for (; i < fPrefixLength; i++) {
+                IntegerDeclaration integer = fIntegers[i];
+                long position = start + fOffsets[i];
+                long value;
+                if (input.getByteOrder() != integer.getByteOrder()) {
+                    input.setByteOrder(integer.getByteOrder());
+                }
+                if (fNative[i]) {
+                    value = readNative(buffer, (int) (position / Byte.SIZE), integer);
+                } else {
+                    input.position(position);
+                    value = input.get(integer.getLength(), integer.isSigned());
+                }
+                String name = checkNotNull(fFieldNames.get(i));
+                IntegerDefinition integerDefinition = new IntegerDefinition(integer, structDefinition, name, value);
+                IDeclaration declaration = fDeclarations[i];
+                if (declaration instanceof EnumDeclaration) {
+                    definitions[i] = new EnumDefinition((EnumDeclaration) declaration, structDefinition, name, integerDefinition);
+                } else {
+                    definitions[i] = integerDefinition;
+                }
+            }
+            if (input.getByteOrder() != previousByteOrder) {
+                input.setByteOrder(previousByteOrder);
+            }
+            input.position(start + fPrefixSize);
+        }
+        for (; i < fDeclarations.length; i++) {
+            definitions[i] = fDeclarations[i].createDefinition(structDefinition, checkNotNull(fFieldNames.get(i)), input);
+        }
+    }
+
+    private static long readNative(ByteBuffer buffer, int index, IntegerDeclaration integer) {
+        boolean signed = integer.isSigned();
+        switch (integer.getLength()) {
+        case Byte.SIZE:
+            byte byteValue = buffer.get(index);
+            return signed ? byteValue : byteValue & 0xFFL;
+        case Short.SIZE:
+            short shortValue = buffer.getShort(index);
+            return signed ? shortValue : shortValue & 0xFFFFL;
+        case Integer.SIZE:
+            int intValue = buffer.getInt(index);
+            return signed ? intValue : intValue & 0xFFFFFFFFL;
+        default:
+            return buffer.getLong(index);
+        }
+    }
+
+    private static boolean isNativeSize(int length) {
+        return length == Byte.SIZE || length == Short.SIZE || length == Integer.SIZE || length == Long.SIZE;
+    }
+
+    private static long align(long position, long alignment) {
+        long mask = alignment - 1;
+        return (position + mask) & ~mask;
+    }
+}
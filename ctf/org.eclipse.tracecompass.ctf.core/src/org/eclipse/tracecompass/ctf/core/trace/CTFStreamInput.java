@@ -12,12 +12,15 @@
 
 package org.eclipse.tracecompass.ctf.core.trace;
 
+import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
@@ -32,9 +35,10 @@ import org.eclipse.tracecompass.ctf.core.event.types.Definition;
 import org.eclipse.tracecompass.ctf.core.event.types.IntegerDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDefinition;
-import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
+import org.eclipse.tracecompass.internal.ctf.core.trace.MappedWindowManager;
 import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndex;
 import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexEntry;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexFile;
 import org.eclipse.tracecompass.internal.ctf.core.trace.Utils;
 
 /**
@@ -213,57 +217,128 @@ public class CTFStreamInput implements IDefinitionScope {
      * @throws CTFException
      *             If there was a problem reading the packed header
      */
-    public boolean addPacketHeaderIndex() throws CTFException {
-        long currentPosBits = 0L;
-        if (!fIndex.isEmpty()) {
-            ICTFPacketDescriptor pos = fIndex.lastElement();
-            if (pos == null) {
-                throw new IllegalStateException("Index contains null packet entries"); //$NON-NLS-1$
-            }
-            currentPosBits = pos.getOffsetBits() + pos.getPacketSizeBits();
-        }
+    public synchronized boolean addPacketHeaderIndex() throws CTFException {
+        long currentPosBits = getNextPacketOffsetBits();
         if (currentPosBits < getStreamSizeBits()) {
-            fIndex.append(createPacketIndexEntry(currentPosBits));
+            try (FileChannel fc = FileChannel.open(fFile.toPath(), StandardOpenOption.READ)) {
+                if (fc == null) {
+                    throw new IOException("Failed to create FileChannel"); //$NON-NLS-1$
+                }
+                fIndex.append(createPacketIndexEntry(fc, currentPosBits));
+            } catch (IOException e) {
+                throw new CTFException("Failed to create packet index entry", e); //$NON-NLS-1$
+            }
             return true;
         }
         return false;
     }
 
-    private long getStreamSizeBits() {
-        return fFile.length() * Byte.SIZE;
-    }
-
-    private ICTFPacketDescriptor createPacketIndexEntry(long dataOffsetbits)
-            throws CTFException {
-
+    /**
+     * Adds the index entries of all the packets that are not indexed yet to
+     * the index of a stream input. The file is opened only once for all the
+     * packets, which is much faster than calling
+     * {@link #addPacketHeaderIndex()} for each packet.
+     *
+     * If nothing is indexed yet, the index saved the last time the whole
+     * stream file was indexed is used, as long as the file did not change.
+     * Otherwise, the index is saved once the whole file is indexed.
+     *
+     * @throws CTFException
+     *             If there was a problem reading a packet header. The packets
+     *             before it are still indexed.
+     * @since 1.1
+     */
+    public synchronized void addAllPacketHeaderIndexes() throws CTFException {
+        boolean fromStart = fIndex.isEmpty();
+        if (fromStart) {
+            loadIndexFile();
+        }
+        long currentPosBits = getNextPacketOffsetBits();
+        long sizeBits = getStreamSizeBits();
+        if (currentPosBits >= sizeBits) {
+            return;
+        }
+        List<ICTFPacketDescriptor> newEntries = new ArrayList<>();
         try (FileChannel fc = FileChannel.open(fFile.toPath(), StandardOpenOption.READ)) {
             if (fc == null) {
                 throw new IOException("Failed to create FileChannel"); //$NON-NLS-1$
             }
-            BitBuffer bitBuffer = createBitBufferForPacketHeader(fc, dataOffsetbits);
-            /*
-             * Read the trace packet header if it exists.
-             */
-            parseTracePacketHeader(bitBuffer);
+            while (currentPosBits < sizeBits) {
+                ICTFPacketDescriptor packetIndex = createPacketIndexEntry(fc, currentPosBits);
+                fIndex.append(packetIndex);
+                newEntries.add(packetIndex);
+                if (packetIndex.getPacketSizeBits() <= 0) {
+                    throw new CTFException("Packet of size 0 at offset " + currentPosBits); //$NON-NLS-1$
+                }
+                currentPosBits = packetIndex.getOffsetBits() + packetIndex.getPacketSizeBits();
+            }
+        } catch (IOException e) {
+            throw new CTFException("Failed to create packet index entry", e); //$NON-NLS-1$
+        }
+        if (fromStart) {
+            StreamInputPacketIndexFile.write(fFile, newEntries);
+        }
+    }
 
+    private void loadIndexFile() {
+        List<ICTFPacketDescriptor> entries = StreamInputPacketIndexFile.read(fFile);
+        if (entries == null) {
+            return;
+        }
+        try {
+            for (ICTFPacketDescriptor packetIndex : entries) {
+                fIndex.append(checkNotNull(packetIndex));
+                fLostSoFar += packetIndex.getLostEvents();
+                setTimestampEnd(packetIndex.getTimestampEnd());
+            }
+        } catch (CTFException e) {
             /*
-             * Read the stream packet context if it exists.
+             * The entries were checked when they were first indexed. If one
+             * is rejected anyway, the packets from this one on are indexed
+             * again from the stream file.
              */
-            long size = fc.size();
-            ICTFPacketDescriptor packetIndex = parsePacketContext(dataOffsetbits, size, bitBuffer);
+        }
+    }
 
-            /* Basic validation */
-            if (packetIndex.getContentSizeBits() > packetIndex.getPacketSizeBits()) {
-                throw new CTFException("Content size > packet size"); //$NON-NLS-1$
-            }
+    private long getNextPacketOffsetBits() {
+        if (fIndex.isEmpty()) {
+            return 0L;
+        }
+        ICTFPacketDescriptor pos = fIndex.lastElement();
+        if (pos == null) {
+            throw new IllegalStateException("Index contains null packet entries"); //$NON-NLS-1$
+        }
+        return pos.getOffsetBits() + pos.getPacketSizeBits();
+    }
 
-            if (packetIndex.getPacketSizeBits() > ((size * Byte.SIZE - packetIndex.getOffsetBits()))) {
-                throw new CTFException("Not enough data remaining in the file for the size of this packet"); //$NON-NLS-1$
-            }
-            return packetIndex;
-        } catch (IOException e) {
-            throw new CTFException("Failed to create packet index entry", e); //$NON-NLS-1$
+    private long getStreamSizeBits() {
+        return fFile.length() * Byte.SIZE;
+    }
+
+    private ICTFPacketDescriptor createPacketIndexEntry(FileChannel fc, long dataOffsetbits)
+            throws CTFException, IOException {
+
+        BitBuffer bitBuffer = createBitBufferForPacketHeader(fc, dataOffsetbits);
+        /*
+         * Read the trace packet header if it exists.
+         */
+        parseTracePacketHeader(bitBuffer);
+
+        /*
+         * Read the stream packet context if it exists.
+         */
+        long size = fc.size();
+        ICTFPacketDescriptor packetIndex = parsePacketContext(dataOffsetbits, size, bitBuffer);
+
+        /* Basic validation */
+        if (packetIndex.getContentSizeBits() > packetIndex.getPacketSizeBits()) {
+            throw new CTFException("Content size > packet size"); //$NON-NLS-1$
+        }
+
+        if (packetIndex.getPacketSizeBits() > ((size * Byte.SIZE - packetIndex.getOffsetBits()))) {
+            throw new CTFException("Not enough data remaining in the file for the size of this packet"); //$NON-NLS-1$
         }
+        return packetIndex;
     }
 
     private BitBuffer createBitBufferForPacketHeader(FileChannel fc, long dataOffsetbits) throws CTFException, IOException {
@@ -276,15 +351,15 @@ public class CTFStreamInput implements IDefinitionScope {
         return bitBuffer;
     }
 
-    private static ByteBuffer getByteBufferAt(FileChannel fc, long position, long size) throws CTFException, IOException {
-        ByteBuffer map = SafeMappedByteBuffer.map(fc, MapMode.READ_ONLY, position, size);
+    private ByteBuffer getByteBufferAt(FileChannel fc, long position, long size) throws CTFException, IOException {
+        ByteBuffer map = MappedWindowManager.getSharedManager().map(fFile, fc, position, size);
         if (map == null) {
             throw new CTFException("Failed to allocate mapped byte buffer"); //$NON-NLS-1$
         }
         return map;
     }
 
-    private static ByteBuffer createPacketBitBuffer(FileChannel fc,
+    private ByteBuffer createPacketBitBuffer(FileChannel fc,
             long packetOffsetBytes, long maxSize) throws CTFException, IOException {
         /*
          * If there is less data remaining than what we want to map, reduce the
@@ -376,6 +451,17 @@ public class CTFStreamInput implements IDefinitionScope {
         return fFile;
     }
 
+    /**
+     * Release the memory mappings of the stream file, once its trace is
+     * closed. The buffers already read stay valid until they are garbage
+     * collected.
+     *
+     * @since 1.1
+     */
+    public void dispose() {
+        MappedWindowManager.getSharedManager().invalidate(fFile);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
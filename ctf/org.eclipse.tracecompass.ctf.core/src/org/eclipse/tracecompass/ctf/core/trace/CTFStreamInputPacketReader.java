@@ -15,7 +15,7 @@ package org.eclipse.tracecompass.ctf.core.trace;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel.MapMode;
+import java.util.Set;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -39,9 +39,9 @@ import org.eclipse.tracecompass.ctf.core.event.types.SimpleDatatypeDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.VariantDefinition;
-import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
 import org.eclipse.tracecompass.internal.ctf.core.event.EventDeclaration;
 import org.eclipse.tracecompass.internal.ctf.core.event.types.composite.EventHeaderDefinition;
+import org.eclipse.tracecompass.internal.ctf.core.trace.MappedWindowManager;
 
 /**
  * CTF trace packet reader. Reads the events of a packet of a trace file.
@@ -110,6 +110,12 @@ public class CTFStreamInputPacketReader implements IDefinitionScope, AutoCloseab
 
     private boolean fHasLost = false;
 
+    /** Read the contexts and fields of the events only when accessed */
+    private boolean fDeferredDecoding = false;
+
+    /** Names of the events to read, null to read all the events */
+    private Set<String> fEventNames = null;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -197,6 +203,55 @@ public class CTFStreamInputPacketReader implements IDefinitionScope, AutoCloseab
         return fCurrentPacket;
     }
 
+    /**
+     * Sets whether the contexts and fields of the events are read only when
+     * they are first accessed. This only applies to the events whose contexts
+     * and fields have a fixed size, the others are always read right away.
+     *
+     * @param deferred
+     *            true to read the contexts and fields when they are accessed
+     * @since 1.1
+     */
+    public void setDeferredDecoding(boolean deferred) {
+        fDeferredDecoding = deferred;
+    }
+
+    /**
+     * Gets whether the contexts and fields of the events are read only when
+     * they are first accessed
+     *
+     * @return true if the contexts and fields are read when accessed
+     * @since 1.1
+     */
+    public boolean isDeferredDecoding() {
+        return fDeferredDecoding;
+    }
+
+    /**
+     * Sets the names of the events to read. The other events are skipped over
+     * without creating their definition, and without reading them at all if
+     * their contexts and fields have a fixed size.
+     *
+     * @param eventNames
+     *            The names of the events to read, or null to read all the
+     *            events
+     * @since 1.1
+     */
+    public void setEventNames(@Nullable Set<String> eventNames) {
+        fEventNames = eventNames;
+    }
+
+    /**
+     * Gets the names of the events to read
+     *
+     * @return The names of the events to read, or null if all the events are
+     *         read
+     * @since 1.1
+     */
+    public @Nullable Set<String> getEventNames() {
+        return fEventNames;
+    }
+
     /**
      * Gets the CPU (core) number
      *
@@ -217,7 +272,8 @@ public class CTFStreamInputPacketReader implements IDefinitionScope, AutoCloseab
 
     @NonNull
     private ByteBuffer getByteBufferAt(long position, long size) throws CTFException, IOException {
-        ByteBuffer map = SafeMappedByteBuffer.map(fStreamInputReader.getFc(), MapMode.READ_ONLY, position, size);
+        ByteBuffer map = MappedWindowManager.getSharedManager().map(fStreamInputReader.getStreamInput().getFile(),
+                fStreamInputReader.getFc(), position, size);
         if (map == null) {
             throw new CTFIOException("Failed to allocate mapped byte buffer"); //$NON-NLS-1$
         }
@@ -300,14 +356,34 @@ public class CTFStreamInputPacketReader implements IDefinitionScope, AutoCloseab
     }
 
     /**
-     * Reads the next event of the packet into the right event definition.
+     * Reads the next event of the packet into the right event definition. The
+     * events whose name is not one of the event names to read are skipped.
      *
      * @return The event definition containing the event data that was just
-     *         read.
+     *         read, or null if there are no more events to read in the packet.
      * @throws CTFException
      *             If there was a problem reading the trace
+     * @see #setEventNames(Set)
      */
     public EventDefinition readNextEvent() throws CTFException {
+        EventDefinition eventDef = readEvent();
+        while (eventDef == null && hasMoreEvents()) {
+            eventDef = readEvent();
+        }
+        return eventDef;
+    }
+
+    private boolean isSkipped(IEventDeclaration eventDeclaration) {
+        Set<String> eventNames = fEventNames;
+        return eventNames != null && !eventNames.contains(eventDeclaration.getName());
+    }
+
+    /**
+     * Reads the next event of the packet
+     *
+     * @return The event definition, or null if the event was skipped
+     */
+    private EventDefinition readEvent() throws CTFException {
         /* Default values for those fields */
         // compromise since we cannot have 64 bit addressing of arrays yet.
         int eventID = (int) IEventDeclaration.UNSET_EVENT_ID;
@@ -324,6 +400,9 @@ public class CTFStreamInputPacketReader implements IDefinitionScope, AutoCloseab
         if (fHasLost && posStart >= currentPacket.getContentSizeBits()) {
             fHasLost = false;
             IEventDeclaration lostEventDeclaration = LostEventDeclaration.INSTANCE;
+            if (isSkipped(lostEventDeclaration)) {
+                return null;
+            }
             StructDeclaration lostFields = lostEventDeclaration.getFields();
             // this is a hard coded map, we know it's not null
             IntegerDeclaration lostFieldsDecl = (IntegerDeclaration) lostFields.getField(CTFStrings.LOST_EVENTS_FIELD);
@@ -416,7 +495,16 @@ public class CTFStreamInputPacketReader implements IDefinitionScope, AutoCloseab
         if (eventDeclaration == null) {
             throw new CTFIOException("Incorrect event id : " + eventID); //$NON-NLS-1$
         }
-        EventDefinition eventDef = eventDeclaration.createDefinition(fStreamInputReader, fCurrentStreamEventHeaderDef, currentBitBuffer, timestamp);
+        if (isSkipped(eventDeclaration)) {
+            eventDeclaration.skipDefinition(fStreamInputReader, fCurrentStreamEventHeaderDef, currentBitBuffer);
+            if (posStart == currentBitBuffer.position()) {
+                throw new CTFIOException("Empty event not allowed, event: " + eventDeclaration.getName()); //$NON-NLS-1$
+            }
+            return null;
+        }
+        EventDefinition eventDef = fDeferredDecoding ?
+                eventDeclaration.createDeferredDefinition(fStreamInputReader, fCurrentStreamEventHeaderDef, currentBitBuffer, timestamp) :
+                eventDeclaration.createDefinition(fStreamInputReader, fCurrentStreamEventHeaderDef, currentBitBuffer, timestamp);
 
         /*
          * Set the event timestamp using the timestamp calculated by
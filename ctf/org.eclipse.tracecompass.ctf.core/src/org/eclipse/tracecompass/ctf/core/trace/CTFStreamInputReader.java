@@ -17,8 +17,11 @@ import java.io.IOException;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.EventDefinition;
 import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
@@ -73,6 +76,22 @@ public class CTFStreamInputReader implements AutoCloseable {
      */
     private boolean fLive = false;
 
+    /**
+     * Executor decoding the upcoming events ahead of time, null if they are
+     * decoded when read
+     */
+    private Executor fPipelineExecutor = null;
+
+    /**
+     * Events decoded ahead of time, null if there are none
+     */
+    private StreamInputEventPrefetcher fPrefetcher = null;
+
+    /**
+     * Time after which the packets of the stream are not read
+     */
+    private volatile long fStopTime = Long.MAX_VALUE;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -98,9 +117,10 @@ public class CTFStreamInputReader implements AutoCloseable {
         try {
             fPacketReader = new CTFStreamInputPacketReader(this);
             /*
-             * Get the iterator on the packet index.
+             * Get the iterator on the packet index, before the first packet
+             * which may already be indexed.
              */
-            fPacketIndex = 0;
+            fPacketIndex = -1;
             /*
              * Make first packet the current one.
              */
@@ -124,6 +144,7 @@ public class CTFStreamInputReader implements AutoCloseable {
      */
     @Override
     public void close() throws IOException {
+        discardPrefetcher();
         if (fFileChannel != null) {
             fFileChannel.close();
         }
@@ -217,6 +238,71 @@ public class CTFStreamInputReader implements AutoCloseable {
      */
     public void setLive(boolean live) {
         fLive = live;
+        /* Live streams are not read ahead, they may not be complete yet */
+        if (live && fPrefetcher != null) {
+            fPrefetcher.stop();
+        }
+    }
+
+    /**
+     * Sets whether the contexts and fields of the events are read only when
+     * they are first accessed
+     *
+     * @param deferred
+     *            true to read the contexts and fields when they are accessed
+     * @since 1.1
+     * @see CTFStreamInputPacketReader#setDeferredDecoding(boolean)
+     */
+    public void setDeferredDecoding(boolean deferred) {
+        fPacketReader.setDeferredDecoding(deferred);
+    }
+
+    /**
+     * Sets the executor decoding the upcoming events of the stream on other
+     * threads, while the events decoded so far are read. The events are read
+     * in the same order either way.
+     *
+     * @param executor
+     *            The executor decoding the events, or null to decode them when
+     *            they are read
+     */
+    void setPipelineExecutor(Executor executor) {
+        fPipelineExecutor = executor;
+        if (fPrefetcher != null) {
+            /* Its events are still read, then a new one is started if needed */
+            fPrefetcher.stop();
+        } else {
+            startPrefetcher();
+        }
+    }
+
+    /**
+     * Sets the names of the events to read, the other events of the stream
+     * are skipped. This applies to the events read after this call.
+     *
+     * @param eventNames
+     *            The names of the events to read, or null to read all the
+     *            events
+     * @since 1.1
+     * @see CTFStreamInputPacketReader#setEventNames(Set)
+     */
+    public void setEventNames(@Nullable Set<String> eventNames) {
+        fPacketReader.setEventNames(eventNames);
+    }
+
+    /**
+     * Sets the time after which the stream does not need to be read. The
+     * packets starting after this time are then not read at all, the stream
+     * ends before them. This applies to the packets read after this call.
+     *
+     * @param stopTime
+     *            The time after which the stream is not read, or
+     *            {@link Long#MAX_VALUE} to read the whole stream
+     * @since 1.1
+     * @see CTFTraceReader#setStopTime(long)
+     */
+    public void setStopTime(long stopTime) {
+        fStopTime = stopTime;
     }
 
     /**
@@ -248,28 +334,84 @@ public class CTFStreamInputReader implements AutoCloseable {
      *             if an error occurs
      */
     public CTFResponse readNextEvent() throws CTFException {
+        EventDefinition event = nextEvent();
+        setCurrentEvent(event);
+        if (event != null) {
+            return CTFResponse.OK;
+        }
+        return fLive ? CTFResponse.WAIT : CTFResponse.FINISH;
+    }
+
+    private EventDefinition nextEvent() throws CTFException {
+        StreamInputEventPrefetcher prefetcher = fPrefetcher;
+        if (prefetcher != null) {
+            EventDefinition event = prefetcher.next();
+            if (event != null) {
+                return event;
+            }
+            /*
+             * Either the end of the stream, or all the events of a stopped
+             * prefetcher were read and the next ones are read from here.
+             */
+            fPrefetcher = null;
+            if (prefetcher.isStopped()) {
+                startPrefetcher();
+                return nextEvent();
+            }
+        }
+        return decodeNextEvent();
+    }
+
+    /**
+     * Decodes the next event of the stream, without making it the current
+     * event.
+     *
+     * @return The next event, or null if there are none
+     * @throws CTFException
+     *             if an error occurs
+     */
+    EventDefinition decodeNextEvent() throws CTFException {
+        EventDefinition event;
+        do {
+            /*
+             * Change packet if needed
+             */
+            if (!fPacketReader.hasMoreEvents()) {
+                final ICTFPacketDescriptor prevPacket = fPacketReader
+                        .getCurrentPacket();
+                if (prevPacket != null || fLive) {
+                    goToNextPacket();
+                }
 
-        /*
-         * Change packet if needed
-         */
-        if (!fPacketReader.hasMoreEvents()) {
-            final ICTFPacketDescriptor prevPacket = fPacketReader
-                    .getCurrentPacket();
-            if (prevPacket != null || fLive) {
-                goToNextPacket();
             }
 
+            /*
+             * If an event is available, read it.
+             */
+            if (!fPacketReader.hasMoreEvents()) {
+                return null;
+            }
+            /* Null if the rest of the packet was skipped */
+            event = fPacketReader.readNextEvent();
+        } while (event == null);
+        return event;
+    }
+
+    private void startPrefetcher() {
+        if (fPipelineExecutor != null && !fLive && fPrefetcher == null) {
+            fPrefetcher = new StreamInputEventPrefetcher(this, fPipelineExecutor);
         }
+    }
 
-        /*
-         * If an event is available, read it.
-         */
-        if (fPacketReader.hasMoreEvents()) {
-            setCurrentEvent(fPacketReader.readNextEvent());
-            return CTFResponse.OK;
+    /**
+     * Stops decoding events ahead of time and forgets the events decoded so
+     * far, the packet reader can then be moved.
+     */
+    private void discardPrefetcher() {
+        if (fPrefetcher != null) {
+            fPrefetcher.stop();
+            fPrefetcher = null;
         }
-        this.setCurrentEvent(null);
-        return fLive ? CTFResponse.WAIT : CTFResponse.FINISH;
     }
 
     /**
@@ -279,22 +421,39 @@ public class CTFStreamInputReader implements AutoCloseable {
      *             if an error occurs
      */
     private void goToNextPacket() throws CTFException {
-        fPacketIndex++;
-        // did we already index the packet?
-        if (getPacketSize() >= (fPacketIndex + 1)) {
+        int nextPacketIndex = fPacketIndex + 1;
+        // did we already index the packet? (or did another reader of the
+        // stream input just index it?)
+        if (getPacketSize() < (nextPacketIndex + 1)) {
+            // go to the next packet if there is one, index it at the same time
+            fStreamInput.addPacketHeaderIndex();
+        }
+        if (getPacketSize() < (nextPacketIndex + 1)) {
+            /*
+             * Out of packets. The index stays on the last packet, so the
+             * packet appended next to a live stream is the next one read.
+             */
+            fPacketReader.setCurrentPacket(null);
+            return;
+        }
+        fPacketIndex = nextPacketIndex;
+        if (!isAfterStopTime(getPacket())) {
             fPacketReader.setCurrentPacket(getPacket());
         } else {
-            // go to the next packet if there is one, index it at the same time
-            if (fStreamInput.addPacketHeaderIndex()) {
-                fPacketIndex = getPacketSize() - 1;
-                fPacketReader.setCurrentPacket(getPacket());
-            } else {
-                // out of packets
-                fPacketReader.setCurrentPacket(null);
-            }
+            // the next packets are not needed
+            fPacketReader.setCurrentPacket(null);
         }
     }
 
+    /**
+     * Check if a packet starts after the stop time, using its index entry so
+     * the packet itself is not read. Live streams are always read, as their
+     * packets could still be followed by others.
+     */
+    private boolean isAfterStopTime(ICTFPacketDescriptor packet) {
+        return !fLive && packet.getTimestampBegin() > fStopTime;
+    }
+
     /**
      * @return
      */
@@ -313,6 +472,15 @@ public class CTFStreamInputReader implements AutoCloseable {
      *             if an error occurs
      */
     public long seek(long timestamp) throws CTFException {
+        discardPrefetcher();
+        try {
+            return seekEvent(timestamp);
+        } finally {
+            startPrefetcher();
+        }
+    }
+
+    private long seekEvent(long timestamp) throws CTFException {
         long offset = 0;
 
         gotoPacket(timestamp);
@@ -375,11 +543,24 @@ public class CTFStreamInputReader implements AutoCloseable {
      *             if an error occurs
      */
     public void goToLastEvent() throws CTFException {
+        discardPrefetcher();
+        /* The last event of the stream is found even after the stop time */
+        long stopTime = fStopTime;
+        fStopTime = Long.MAX_VALUE;
+        try {
+            goToLastEventInternal();
+        } finally {
+            fStopTime = stopTime;
+            startPrefetcher();
+        }
+    }
+
+    private void goToLastEventInternal() throws CTFException {
 
         /*
          * Go to the beginning of the trace
          */
-        seek(0);
+        seekEvent(0);
 
         /*
          * Check that there is at least one event
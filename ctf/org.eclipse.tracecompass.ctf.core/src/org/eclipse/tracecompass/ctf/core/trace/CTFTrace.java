@@ -23,15 +23,22 @@ import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.CTFStrings;
@@ -212,12 +219,75 @@ public class CTFTrace implements IDefinitionScope {
         }
 
         /* Create their index */
+        List<CTFStreamInput> streamInputs = new ArrayList<>();
         for (CTFStream stream : getStreams()) {
             Set<CTFStreamInput> inputs = stream.getStreamInputs();
             for (CTFStreamInput s : inputs) {
                 addStream(s);
+                streamInputs.add(s);
             }
         }
+        indexPackets(streamInputs);
+    }
+
+    /**
+     * Index the packets of the stream inputs, each stream input on its own
+     * thread since the stream files are independent.
+     *
+     * This is only done to speed up the reading: if a packet could not be
+     * indexed here, the stream input stays indexed up to this packet and the
+     * error is reported when a reader gets to it, as if the packets had not
+     * been indexed in advance. Any other exception thrown while indexing is
+     * rethrown.
+     */
+    private static void indexPackets(List<CTFStreamInput> streamInputs) throws CTFException {
+        int nbThreads = Math.min(streamInputs.size(), Runtime.getRuntime().availableProcessors());
+        if (nbThreads <= 1) {
+            for (CTFStreamInput streamInput : streamInputs) {
+                try {
+                    streamInput.addAllPacketHeaderIndexes();
+                } catch (CTFException e) {
+                    /* Reported when reading this packet */
+                }
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (final CTFStreamInput streamInput : streamInputs) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws CTFException {
+                        streamInput.addAllPacketHeaderIndexes();
+                        return null;
+                    }
+                }));
+            }
+            /* Wait for all the stream inputs, in order */
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof CTFException) {
+                        /* Reported when reading this packet */
+                        continue;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new CTFException("Failed to index the packets", cause); //$NON-NLS-1$
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -407,6 +477,20 @@ public class CTFTrace implements IDefinitionScope {
         return fPath;
     }
 
+    /**
+     * Dispose the trace, once it is no longer read. The memory mappings of its
+     * stream files are released.
+     *
+     * @since 1.1
+     */
+    public void dispose() {
+        for (CTFStream stream : getStreams()) {
+            for (CTFStreamInput streamInput : stream.getStreamInputs()) {
+                streamInput.dispose();
+            }
+        }
+    }
+
     /**
      * Get all the streams as an iterable.
      *
@@ -15,12 +15,17 @@ package org.eclipse.tracecompass.ctf.core.trace;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.EventDefinition;
 import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
@@ -78,6 +83,27 @@ public class CTFTraceReader implements AutoCloseable {
      */
     private long fEndTime;
 
+    /**
+     * Read the contexts and fields of the events only when accessed
+     */
+    private boolean fDeferredDecoding = false;
+
+    /**
+     * Threads decoding the upcoming events of the streams, null if the events
+     * are decoded when read
+     */
+    private ExecutorService fPipelineExecutor = null;
+
+    /**
+     * Names of the events to read, null to read all the events
+     */
+    private Set<String> fEventNames = null;
+
+    /**
+     * Time after which the packets of the streams are not read
+     */
+    private long fStopTime = Long.MAX_VALUE;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -148,6 +174,10 @@ public class CTFTraceReader implements AutoCloseable {
             }
             fStreamInputReaders.clear();
         }
+        if (fPipelineExecutor != null) {
+            fPipelineExecutor.shutdown();
+            fPipelineExecutor = null;
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -238,7 +268,11 @@ public class CTFTraceReader implements AutoCloseable {
                  * Add it to the group.
                  */
                 if (!fStreamInputReaders.contains(streamInputReader)) {
+                    streamInputReader.setDeferredDecoding(fDeferredDecoding);
+                    streamInputReader.setEventNames(fEventNames);
+                    streamInputReader.setStopTime(fStopTime);
                     streamInputReader.readNextEvent();
+                    streamInputReader.setPipelineExecutor(fPipelineExecutor);
                     fStreamInputReaders.add(streamInputReader);
                     readers.add(streamInputReader);
                 }
@@ -509,6 +543,129 @@ public class CTFTraceReader implements AutoCloseable {
         }
     }
 
+    /**
+     * Sets whether the contexts and fields of the events are read only when
+     * they are first accessed. This is worth it when most of the events read
+     * are not looked at in detail.
+     *
+     * @param deferred
+     *            true to read the contexts and fields when they are accessed
+     * @since 1.1
+     * @see CTFStreamInputPacketReader#setDeferredDecoding(boolean)
+     */
+    public void setDeferredDecoding(boolean deferred) {
+        fDeferredDecoding = deferred;
+        for (CTFStreamInputReader reader : fStreamInputReaders) {
+            reader.setDeferredDecoding(deferred);
+        }
+    }
+
+    /**
+     * Sets the names of the events to read. The other events are skipped
+     * without being decoded, which is much faster when only a few event types
+     * are needed. This applies to the events read after this call, seek to
+     * apply it from the current position.
+     *
+     * @param eventNames
+     *            The names of the events to read, or null to read all the
+     *            events
+     * @since 1.1
+     */
+    public void setEventNames(@Nullable Collection<String> eventNames) {
+        fEventNames = (eventNames == null) ? null : ImmutableSet.copyOf(eventNames);
+        synchronized (fStreamInputReaders) {
+            for (CTFStreamInputReader reader : fStreamInputReaders) {
+                reader.setEventNames(fEventNames);
+            }
+        }
+    }
+
+    /**
+     * Gets the names of the events to read
+     *
+     * @return The names of the events to read, or null if all the events are
+     *         read
+     * @since 1.1
+     */
+    public @Nullable Set<String> getEventNames() {
+        return fEventNames;
+    }
+
+    /**
+     * Sets the time after which the trace does not need to be read. The
+     * packets starting after this time are not read at all, neither are the
+     * streams whose remaining packets all start after it, but the events after
+     * this time in the packets being read can still be returned.
+     *
+     * Lowering the stop time applies to the packets read after this call,
+     * while raising it only applies after a seek.
+     *
+     * @param stopTime
+     *            The time after which the trace is not read, in the same unit
+     *            as the timestamps of the events, or {@link Long#MAX_VALUE} to
+     *            read the whole trace
+     * @since 1.1
+     */
+    public void setStopTime(long stopTime) {
+        fStopTime = stopTime;
+        synchronized (fStreamInputReaders) {
+            for (CTFStreamInputReader reader : fStreamInputReaders) {
+                reader.setStopTime(stopTime);
+            }
+        }
+    }
+
+    /**
+     * Gets the time after which the trace is not read
+     *
+     * @return The stop time, {@link Long#MAX_VALUE} if the whole trace is read
+     * @since 1.1
+     */
+    public long getStopTime() {
+        return fStopTime;
+    }
+
+    /**
+     * Sets whether the events of each stream are decoded ahead of time on
+     * other threads, while this reader only merges the streams. The events
+     * are read in the same order either way, but the decoding of the streams
+     * uses more than one processor.
+     *
+     * Live streams are never decoded ahead of time.
+     *
+     * @param pipelined
+     *            true to decode the events on other threads
+     * @since 1.1
+     */
+    public void setPipelined(boolean pipelined) {
+        if (pipelined == (fPipelineExecutor != null)) {
+            return;
+        }
+        ExecutorService executor = null;
+        if (pipelined) {
+            int nbThreads = Math.max(1, Math.min(fStreamInputReaders.size(), Runtime.getRuntime().availableProcessors()));
+            executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CTF event decoder"); //$NON-NLS-1$
+                    /* Do not keep the application alive for a reader left open */
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        synchronized (fStreamInputReaders) {
+            for (CTFStreamInputReader reader : fStreamInputReaders) {
+                reader.setPipelineExecutor(executor);
+            }
+        }
+        if (fPipelineExecutor != null) {
+            /* The events already decoded are still read, nothing is lost */
+            fPipelineExecutor.shutdown();
+        }
+        fPipelineExecutor = executor;
+    }
+
     /**
      * Get if the trace is to read live or not
      *
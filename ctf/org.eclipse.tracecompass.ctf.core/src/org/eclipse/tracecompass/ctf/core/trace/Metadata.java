@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson, Ecole Polytechnique de Montreal and others
+ * Copyright (c) 2011, 2015 Ericsson, Ecole Polytechnique de Montreal and others
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -30,6 +30,8 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 
 import org.antlr.runtime.ANTLRReaderStream;
@@ -42,6 +44,8 @@ import org.eclipse.tracecompass.ctf.parser.CTFLexer;
 import org.eclipse.tracecompass.ctf.parser.CTFParser;
 import org.eclipse.tracecompass.ctf.parser.CTFParser.parse_return;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.IOStructGen;
+import org.eclipse.tracecompass.internal.ctf.core.event.metadata.MetadataTreeFile;
+import org.eclipse.tracecompass.internal.ctf.core.event.metadata.MetadataTreeFile.CachedTree;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.exceptions.CtfAntlrException;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.exceptions.ParseException;
 import org.eclipse.tracecompass.internal.ctf.core.trace.Utils;
@@ -90,6 +94,12 @@ public class Metadata {
 
     private IOStructGen fTreeParser;
 
+    /**
+     * The types declared at the top level of the metadata parsed so far, which
+     * the fragments parsed next can use.
+     */
+    private final Set<String> fTypeNames = new HashSet<>();
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -145,21 +155,15 @@ public class Metadata {
      */
     public void parseFile() throws CTFException {
 
-        /*
-         * Reader. It will contain a StringReader if we are using packet-based
-         * metadata and it will contain a FileReader if we have text-based
-         * metadata.
-         */
-
         try (FileInputStream fis = new FileInputStream(getMetadataPath());
-                FileChannel metadataFileChannel = fis.getChannel();
-                /* Check if metadata is packet-based, if not it is text based */
-                Reader metadataTextInput =
-                        (isPacketBased(metadataFileChannel) ?
-                                readBinaryMetaData(metadataFileChannel) :
-                                new FileReader(getMetadataPath()));) {
+                FileChannel metadataFileChannel = fis.getChannel();) {
 
-            readMetaDataText(metadataTextInput);
+            /* Check if metadata is packet-based, if not it is text based */
+            String metadataText = (isPacketBased(metadataFileChannel) ?
+                    readBinaryMetaData(metadataFileChannel) :
+                    readTextMetaData());
+
+            readMetaDataText(metadataText, new File(getMetadataPath()));
 
         } catch (FileNotFoundException e) {
             throw new CTFException("Cannot find metadata file!", e); //$NON-NLS-1$
@@ -170,7 +174,7 @@ public class Metadata {
         }
     }
 
-    private Reader readBinaryMetaData(FileChannel metadataFileChannel) throws CTFException {
+    private String readBinaryMetaData(FileChannel metadataFileChannel) throws CTFException {
         /* Create StringBuffer to receive metadata text */
         StringBuffer metadataText = new StringBuffer();
 
@@ -185,8 +189,20 @@ public class Metadata {
                     metadataText);
         }
 
-        /* Wrap the metadata string with a StringReader */
-        return new StringReader(metadataText.toString());
+        return metadataText.toString();
+    }
+
+    private String readTextMetaData() throws IOException {
+        StringBuilder metadataText = new StringBuilder();
+        try (Reader reader = new FileReader(getMetadataPath())) {
+            char[] buffer = new char[8192];
+            int nbChars = reader.read(buffer);
+            while (nbChars >= 0) {
+                metadataText.append(buffer, 0, nbChars);
+                nbChars = reader.read(buffer);
+            }
+        }
+        return metadataText.toString();
     }
 
     /**
@@ -242,9 +258,8 @@ public class Metadata {
      *             parsing a TSDL file
      */
     public void parseText(String data) throws CTFException {
-        Reader metadataTextInput = new StringReader(data);
         try {
-            readMetaDataText(metadataTextInput);
+            readMetaDataText(data, null);
         } catch (IOException | ParseException e) {
             throw new CTFException(e);
         } catch (RecognitionException | RewriteCardinalityException e) {
@@ -253,8 +268,11 @@ public class Metadata {
 
     }
 
-    private void readMetaDataText(Reader metadataTextInput) throws IOException, RecognitionException, ParseException {
-        CommonTree tree = createAST(metadataTextInput);
+    private void readMetaDataText(String metadataText, File metadataFile) throws IOException, RecognitionException, ParseException {
+        fTypeNames.clear();
+        CommonTree tree = (metadataFile == null ?
+                createAST(new StringReader(metadataText)) :
+                createCachedAST(metadataText, metadataFile));
 
         /* Generate IO structures (declarations) */
         fTreeParser = new IOStructGen(tree, trace);
@@ -292,7 +310,41 @@ public class Metadata {
         fTreeParser.generateFragment();
     }
 
-    private static CommonTree createAST(Reader metadataTextInput) throws IOException,
+    /**
+     * Get the syntax tree of the metadata text from the tree file saved next
+     * to the metadata file, or parse the text and save its tree. If the tree
+     * file is for the start of the text, only the rest of the text is parsed.
+     */
+    private CommonTree createCachedAST(String metadataText, File metadataFile) throws IOException,
+            RecognitionException {
+        CommonTree tree = null;
+        CachedTree cachedTree = MetadataTreeFile.read(metadataFile, metadataText);
+        if (cachedTree != null) {
+            tree = cachedTree.getTree();
+            fTypeNames.addAll(cachedTree.getTypeNames());
+            if (cachedTree.getTextLength() == metadataText.length()) {
+                return tree;
+            }
+            try {
+                Reader appendedText = new StringReader(metadataText.substring(cachedTree.getTextLength()));
+                CommonTree appendedTree = createAST(appendedText);
+                for (int i = 0; i < appendedTree.getChildCount(); i++) {
+                    tree.addChild(appendedTree.getChild(i));
+                }
+            } catch (RecognitionException | RewriteCardinalityException e) {
+                /* The text was not appended between two declarations */
+                fTypeNames.clear();
+                tree = null;
+            }
+        }
+        if (tree == null) {
+            tree = createAST(new StringReader(metadataText));
+        }
+        MetadataTreeFile.write(metadataFile, metadataText, fTypeNames, tree);
+        return tree;
+    }
+
+    private CommonTree createAST(Reader metadataTextInput) throws IOException,
             RecognitionException {
         /* Create an ANTLR reader */
         ANTLRReaderStream antlrStream;
@@ -301,9 +353,10 @@ public class Metadata {
         /* Parse the metadata text and get the AST */
         CTFLexer ctfLexer = new CTFLexer(antlrStream);
         CommonTokenStream tokens = new CommonTokenStream(ctfLexer);
-        CTFParser ctfParser = new CTFParser(tokens, false);
+        CTFParser ctfParser = new CTFParser(tokens, fTypeNames);
 
         parse_return pr = ctfParser.parse();
+        fTypeNames.addAll(ctfParser.getTypeNames());
         return pr.getTree();
     }
 
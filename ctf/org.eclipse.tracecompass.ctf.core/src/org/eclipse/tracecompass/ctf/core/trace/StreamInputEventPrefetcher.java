@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.EventDefinition;
+
+/**
+ * Decodes the upcoming events of a stream input reader on an executor, in
+ * bounded batches, while the reader hands out the events already decoded.
+ *
+ * Only one batch of a stream is decoded at a time, and a batch is only decoded
+ * when fewer than {@link #MAX_BATCHES} batches are waiting to be read, so the
+ * decoding never blocks a thread of the executor: it can be shared by the
+ * readers of all the streams of a trace, whatever its size.
+ *
+ * While the prefetcher is running, its reader's packet reader belongs to the
+ * decoding task. Once the prefetcher is stopped, or once it handed out the
+ * last event of the stream, the packet reader is positioned just after the
+ * last decoded event.
+ */
+final class StreamInputEventPrefetcher {
+
+    /** Number of events decoded at a time */
+    private static final int BATCH_SIZE = 256;
+
+    /** Number of decoded batches that can wait to be read */
+    private static final int MAX_BATCHES = 4;
+
+    private final CTFStreamInputReader fReader;
+    private final Executor fExecutor;
+    private final BlockingQueue<Batch> fBatches = new LinkedBlockingQueue<>();
+    private final AtomicBoolean fScheduled = new AtomicBoolean(false);
+    private final Lock fDecodeLock = new ReentrantLock();
+    private final Runnable fDecodeTask = new Runnable() {
+        @Override
+        public void run() {
+            decodeBatch();
+        }
+    };
+
+    private volatile boolean fCancelled = false;
+    private volatile boolean fFinished = false;
+
+    /* Only accessed by the thread reading the events */
+    private Batch fCurrentBatch = null;
+    private int fPosition = 0;
+
+    /**
+     * A batch of decoded events
+     */
+    private static final class Batch {
+        private final List<EventDefinition> fEvents = new ArrayList<>(BATCH_SIZE);
+        private Exception fError = null;
+        private boolean fLast = false;
+    }
+
+    /**
+     * Constructor, the decoding starts right away
+     *
+     * @param reader
+     *            The reader whose events to decode
+     * @param executor
+     *            The executor running the decoding
+     */
+    public StreamInputEventPrefetcher(CTFStreamInputReader reader, Executor executor) {
+        fReader = reader;
+        fExecutor = executor;
+        schedule();
+    }
+
+    /**
+     * Get the next decoded event, waiting for it to be decoded if needed
+     *
+     * @return The next event, or null if the stream has no more events or if
+     *         the prefetcher was stopped and all the events it decoded were
+     *         read
+     * @throws CTFException
+     *             If the decoding of the event failed
+     */
+    public EventDefinition next() throws CTFException {
+        while (fCurrentBatch == null || fPosition >= fCurrentBatch.fEvents.size()) {
+            if (fCurrentBatch != null) {
+                Exception error = fCurrentBatch.fError;
+                if (error != null) {
+                    fCurrentBatch.fError = null;
+                    fCurrentBatch.fLast = true;
+                    if (error instanceof CTFException) {
+                        throw (CTFException) error;
+                    }
+                    throw (RuntimeException) error;
+                }
+                if (fCurrentBatch.fLast) {
+                    return null;
+                }
+            }
+            Batch batch = fBatches.poll();
+            if (batch == null) {
+                if (fCancelled) {
+                    return null;
+                }
+                schedule();
+                try {
+                    batch = fBatches.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CTFException(e);
+                }
+            }
+            /* Make room for the next batch */
+            schedule();
+            fCurrentBatch = batch;
+            fPosition = 0;
+        }
+        /* Do not keep the events once they are handed out */
+        return fCurrentBatch.fEvents.set(fPosition++, null);
+    }
+
+    /**
+     * Stop decoding events, waiting for the batch being decoded if any. The
+     * events already decoded can still be read.
+     */
+    public void stop() {
+        fCancelled = true;
+        fDecodeLock.lock();
+        fDecodeLock.unlock();
+    }
+
+    /**
+     * Check if the prefetcher was stopped
+     *
+     * @return true if it was stopped
+     */
+    public boolean isStopped() {
+        return fCancelled;
+    }
+
+    private void schedule() {
+        if (fCancelled || fFinished || fBatches.size() >= MAX_BATCHES) {
+            return;
+        }
+        if (fScheduled.compareAndSet(false, true)) {
+            try {
+                fExecutor.execute(fDecodeTask);
+            } catch (RejectedExecutionException e) {
+                /* The executor is shut down, decode in this thread */
+                fDecodeTask.run();
+            }
+        }
+    }
+
+    private void decodeBatch() {
+        fDecodeLock.lock();
+        try {
+            if (fCancelled) {
+                return;
+            }
+            Batch batch = new Batch();
+            try {
+                while (batch.fEvents.size() < BATCH_SIZE) {
+                    EventDefinition event = fReader.decodeNextEvent();
+                    if (event == null) {
+                        batch.fLast = true;
+                        break;
+                    }
+                    batch.fEvents.add(event);
+                }
+            } catch (CTFException | RuntimeException e) {
+                batch.fError = e;
+                batch.fLast = true;
+            }
+            if (batch.fLast) {
+                fFinished = true;
+            }
+            fBatches.add(batch);
+        } finally {
+            fDecodeLock.unlock();
+            fScheduled.set(false);
+        }
+        /* Keep going while there is room for more batches */
+        schedule();
+    }
+}
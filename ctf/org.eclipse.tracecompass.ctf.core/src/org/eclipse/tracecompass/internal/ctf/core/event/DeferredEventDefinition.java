@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.event;
+
+import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.EventDefinition;
+import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
+import org.eclipse.tracecompass.ctf.core.event.scope.IDefinitionScope;
+import org.eclipse.tracecompass.ctf.core.event.scope.ILexicalScope;
+import org.eclipse.tracecompass.ctf.core.event.types.ICompositeDefinition;
+import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
+import org.eclipse.tracecompass.ctf.core.trace.CTFStreamInputReader;
+
+/**
+ * An event definition whose stream context, event context and fields are only
+ * read from the packet when one of them is first requested. Events that are
+ * never looked at, or only looked at for their type and timestamp, then cost a
+ * single object instead of a whole tree of definitions.
+ *
+ * This is only used for events whose contexts and fields have a fixed size,
+ * so the reader can skip over them without reading them. The packet buffer is
+ * never modified, so it can be read later from a duplicate of the buffer,
+ * even after the reader moved to another packet.
+ */
+public final class DeferredEventDefinition extends EventDefinition {
+
+    private final EventDeclaration fEventDeclaration;
+    private final ICompositeDefinition fHeader;
+    private final StructDeclaration fStreamContextDecl;
+    private final ByteBuffer fBuffer;
+    private final ByteOrder fByteOrder;
+    private final long fPosition;
+
+    private volatile boolean fDecoded = false;
+    private ICompositeDefinition fStreamContext;
+    private ICompositeDefinition fEventContext;
+    private ICompositeDefinition fFields;
+
+    /**
+     * Constructor
+     *
+     * @param declaration
+     *            The declaration of the event
+     * @param streamInputReader
+     *            The stream input reader that read the event
+     * @param timestamp
+     *            The timestamp of the event
+     * @param eventHeaderDefinition
+     *            The event header, can be null
+     * @param packetContext
+     *            The packet context
+     * @param streamContextDecl
+     *            The stream event context declaration, can be null
+     * @param buffer
+     *            The buffer of the packet containing the event
+     * @param byteOrder
+     *            The byte order of the packet bit buffer
+     * @param position
+     *            The position, in bits, of the stream event context in the
+     *            buffer
+     */
+    public DeferredEventDefinition(EventDeclaration declaration,
+            CTFStreamInputReader streamInputReader,
+            long timestamp,
+            ICompositeDefinition eventHeaderDefinition,
+            ICompositeDefinition packetContext,
+            StructDeclaration streamContextDecl,
+            ByteBuffer buffer,
+            ByteOrder byteOrder,
+            long position) {
+        super(declaration, streamInputReader, timestamp, eventHeaderDefinition,
+                null, null, packetContext, null);
+        fEventDeclaration = declaration;
+        fHeader = eventHeaderDefinition;
+        fStreamContextDecl = streamContextDecl;
+        fBuffer = buffer;
+        fByteOrder = byteOrder;
+        fPosition = position;
+    }
+
+    @Override
+    public ICompositeDefinition getFields() {
+        decode();
+        return fFields;
+    }
+
+    @Override
+    public ICompositeDefinition getEventContext() {
+        decode();
+        return fEventContext;
+    }
+
+    @Override
+    protected ICompositeDefinition getStreamContext() {
+        decode();
+        return fStreamContext;
+    }
+
+    /**
+     * Read the contexts and fields, the same way
+     * {@link EventDeclaration#createDefinition(CTFStreamInputReader, ICompositeDefinition, BitBuffer, long)}
+     * does.
+     */
+    private void decode() {
+        if (fDecoded) {
+            return;
+        }
+        synchronized (this) {
+            if (fDecoded) {
+                return;
+            }
+            /* Do not touch the position and byte order of the reader's buffer */
+            BitBuffer input = new BitBuffer(checkNotNull(fBuffer.duplicate()), fByteOrder);
+            IDefinitionScope traceScope = fEventDeclaration.getStream().getTrace();
+            StructDeclaration context = fEventDeclaration.getContext();
+            StructDeclaration fields = fEventDeclaration.getFields();
+            try {
+                input.position(fPosition);
+                fStreamContext = fStreamContextDecl != null ? fStreamContextDecl.createDefinition(traceScope, ILexicalScope.STREAM_EVENT_CONTEXT, input) : null;
+                fEventContext = context != null ? context.createFieldDefinition(fHeader, traceScope, ILexicalScope.CONTEXT, input) : null;
+                fFields = fields != null ? fields.createFieldDefinition(fHeader, traceScope, ILexicalScope.FIELDS, input) : null;
+            } catch (CTFException e) {
+                /* The size of the event was checked when it was read */
+                throw new IllegalStateException(e);
+            }
+            fDecoded = true;
+        }
+    }
+}
@@ -12,6 +12,7 @@
 
 package org.eclipse.tracecompass.internal.ctf.core.event;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -27,6 +28,7 @@ import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDefinition;
 import org.eclipse.tracecompass.ctf.core.trace.CTFStream;
 import org.eclipse.tracecompass.ctf.core.trace.CTFStreamInputReader;
+import org.eclipse.tracecompass.internal.ctf.core.event.types.FixedSizeLayout;
 
 /**
  * Representation of one type of event. A bit like "int" or "long" but for trace
@@ -116,6 +118,91 @@ public class EventDeclaration implements IEventDeclaration {
                 eventPayload);
     }
 
+    /**
+     * Creates an instance of EventDefinition corresponding to this
+     * declaration, whose contexts and fields are only read when they are
+     * first requested. The input is moved after the event, as if it had been
+     * read.
+     *
+     * If the contexts or the fields of the event are not of fixed size, they
+     * are read right away, like
+     * {@link #createDefinition(CTFStreamInputReader, ICompositeDefinition, BitBuffer, long)}
+     * does.
+     *
+     * @param streamInputReader
+     *            The StreamInputReader for which this definition is created.
+     * @param eventHeaderDef
+     *            The event header definition
+     * @param input
+     *            the bitbuffer input source
+     * @param timestamp
+     *            The timestamp when the event was taken
+     * @return A new EventDefinition.
+     * @throws CTFException
+     *             As a bitbuffer is used to read, it could have wrapped
+     *             IOExceptions.
+     */
+    public EventDefinition createDeferredDefinition(CTFStreamInputReader streamInputReader, ICompositeDefinition eventHeaderDef, @NonNull BitBuffer input, long timestamp) throws CTFException {
+        StructDeclaration streamEventContextDecl = streamInputReader.getStreamEventContextDecl();
+        long start = input.position();
+        long end = getFixedEndPosition(streamEventContextDecl, input);
+        if (end == FixedSizeLayout.NOT_FIXED) {
+            return createDefinition(streamInputReader, eventHeaderDef, input, timestamp);
+        }
+        ByteBuffer buffer = input.getByteBuffer();
+        ICompositeDefinition packetContext = streamInputReader.getPacketReader().getCurrentPacketEventHeader();
+        input.position(end);
+        return new DeferredEventDefinition(
+                this,
+                streamInputReader,
+                timestamp,
+                eventHeaderDef,
+                packetContext,
+                streamEventContextDecl,
+                buffer,
+                input.getByteOrder(),
+                start);
+    }
+
+    /**
+     * Moves the input after the contexts and fields of an event of this
+     * declaration, without creating its definition. If the contexts or the
+     * fields of the event are not of fixed size, they have to be read to find
+     * where the event ends.
+     *
+     * @param streamInputReader
+     *            The StreamInputReader reading the event
+     * @param eventHeaderDef
+     *            The event header definition
+     * @param input
+     *            the bitbuffer input source, positioned after the event header
+     * @throws CTFException
+     *             As a bitbuffer is used to read, it could have wrapped
+     *             IOExceptions.
+     */
+    public void skipDefinition(CTFStreamInputReader streamInputReader, ICompositeDefinition eventHeaderDef, @NonNull BitBuffer input) throws CTFException {
+        long end = getFixedEndPosition(streamInputReader.getStreamEventContextDecl(), input);
+        if (end == FixedSizeLayout.NOT_FIXED) {
+            createDefinition(streamInputReader, eventHeaderDef, input, 0);
+        } else {
+            input.position(end);
+        }
+    }
+
+    /**
+     * Get where the contexts and fields of an event end, if they are all of
+     * fixed size and fit in the buffer
+     */
+    private long getFixedEndPosition(StructDeclaration streamEventContextDecl, @NonNull BitBuffer input) {
+        long end = FixedSizeLayout.getEndPosition(streamEventContextDecl, input.position());
+        end = FixedSizeLayout.getEndPosition(fContext, end);
+        end = FixedSizeLayout.getEndPosition(fFields, end);
+        if (end > (long) input.getByteBuffer().capacity() * Byte.SIZE) {
+            return FixedSizeLayout.NOT_FIXED;
+        }
+        return end;
+    }
+
     @Override
     public EventDefinition createDefinition(CTFStreamInputReader streamInputReader, @NonNull BitBuffer input, long timestamp) throws CTFException {
         StructDeclaration streamEventContextDecl = streamInputReader.getStreamEventContextDecl();
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.event.metadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.tree.CommonTree;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.parser.CTFParser;
+import org.eclipse.tracecompass.internal.ctf.core.trace.TraceCacheDirectory;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * The syntax tree of the metadata of a trace, saved in the
+ * {@link TraceCacheDirectory} of the trace so the metadata text does not have
+ * to be parsed again the next time the trace is opened.
+ *
+ * The tree file starts with the length and the digest of the metadata text it
+ * was parsed from. It is used if the metadata text is the same, or if the
+ * metadata text starts with it, as it does when declarations were appended to
+ * the metadata of a live trace: only the appended text then needs to be
+ * parsed. The tree file also records the grammar it was parsed with, so a
+ * tree file written by another version of the parser is ignored. Reading or
+ * writing a tree file never fails: a missing, outdated or corrupted tree file
+ * is ignored, and the tree is not saved if the cache directory cannot be
+ * written to.
+ */
+public final class MetadataTreeFile {
+
+    private static final String SUFFIX = ".tree"; //$NON-NLS-1$
+    private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0xC1F17BEE;
+
+    /** Version of the file format, to change when the tree is saved differently */
+    private static final int VERSION = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+    private static final String DIGEST_ALGORITHM = "SHA-1"; //$NON-NLS-1$
+
+    /**
+     * Identifies the parser the tree was built with: the version of the parser
+     * bundle, which changes with each build of the grammar, and a digest of
+     * its token names, since the token types are saved in the tree file.
+     */
+    private static final byte[] GRAMMAR_KEY = computeGrammarKey();
+
+    /**
+     * A syntax tree read from a tree file
+     */
+    public static final class CachedTree {
+
+        private final CommonTree fTree;
+        private final Set<String> fTypeNames;
+        private final int fTextLength;
+
+        private CachedTree(CommonTree tree, Set<String> typeNames, int textLength) {
+            fTree = tree;
+            fTypeNames = typeNames;
+            fTextLength = textLength;
+        }
+
+        /**
+         * Get the syntax tree
+         *
+         * @return The root of the tree
+         */
+        public CommonTree getTree() {
+            return fTree;
+        }
+
+        /**
+         * Get the names of the types declared at the top level of the
+         * metadata, which the text appended to it can use
+         *
+         * @return The type names
+         */
+        public Set<String> getTypeNames() {
+            return fTypeNames;
+        }
+
+        /**
+         * Get the length of the metadata text the tree was parsed from. If it
+         * is shorter than the current metadata text, the rest of the text
+         * still has to be parsed.
+         *
+         * @return The length of the text, in characters
+         */
+        public int getTextLength() {
+            return fTextLength;
+        }
+    }
+
+    private MetadataTreeFile() {
+    }
+
+    /**
+     * Get the tree file of a metadata file
+     *
+     * @param metadataFile
+     *            The metadata file
+     * @return The tree file, which may not exist, or null if the trace has
+     *         no cache directory
+     */
+    public static @Nullable File getTreeFile(File metadataFile) {
+        File cacheDirectory = TraceCacheDirectory.get(metadataFile.getAbsoluteFile().getParentFile());
+        if (cacheDirectory == null) {
+            return null;
+        }
+        return new File(cacheDirectory, metadataFile.getName() + SUFFIX);
+    }
+
+    /**
+     * Read the syntax tree of a metadata file
+     *
+     * @param metadataFile
+     *            The metadata file
+     * @param text
+     *            The current text of the metadata
+     * @return The syntax tree of the text, or of the start of the text, or
+     *         null if there is no valid tree file for it
+     */
+    public static @Nullable CachedTree read(File metadataFile, String text) {
+        File treeFile = getTreeFile(metadataFile);
+        if (treeFile == null || !treeFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(treeFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (in.readInt() != GRAMMAR_KEY.length) {
+                return null;
+            }
+            byte[] grammarKey = new byte[GRAMMAR_KEY.length];
+            in.readFully(grammarKey);
+            if (!Arrays.equals(grammarKey, GRAMMAR_KEY)) {
+                return null;
+            }
+            int textLength = in.readInt();
+            if (textLength <= 0 || textLength > text.length()) {
+                return null;
+            }
+            byte[] digest = new byte[in.readInt()];
+            in.readFully(digest);
+            if (!Arrays.equals(digest, digest(text.substring(0, textLength)))) {
+                return null;
+            }
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(in);
+            }
+            Set<String> typeNames = new HashSet<>();
+            int nbTypeNames = in.readInt();
+            for (int i = 0; i < nbTypeNames; i++) {
+                typeNames.add(getString(strings, in.readInt()));
+            }
+            CommonTree tree = readNode(in, strings);
+            return new CachedTree(tree, typeNames, textLength);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the syntax tree of a metadata file
+     *
+     * @param metadataFile
+     *            The metadata file
+     * @param text
+     *            The metadata text the tree was parsed from
+     * @param typeNames
+     *            The names of the types declared at the top level of the
+     *            metadata
+     * @param tree
+     *            The syntax tree
+     */
+    public static void write(File metadataFile, String text, Collection<String> typeNames, CommonTree tree) {
+        if (text.isEmpty()) {
+            return;
+        }
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIds = new HashMap<>();
+        for (String typeName : typeNames) {
+            addString(typeName, strings, stringIds);
+        }
+        if (!addStrings(tree, strings, stringIds)) {
+            return;
+        }
+
+        File treeFile = getTreeFile(metadataFile);
+        if (treeFile == null) {
+            return;
+        }
+        File tempFile = new File(treeFile.getPath() + TEMP_SUFFIX);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(GRAMMAR_KEY.length);
+                out.write(GRAMMAR_KEY);
+                out.writeInt(text.length());
+                byte[] digest = digest(text);
+                out.writeInt(digest.length);
+                out.write(digest);
+                out.writeInt(strings.size());
+                for (String string : strings) {
+                    writeString(out, string);
+                }
+                out.writeInt(typeNames.size());
+                for (String typeName : typeNames) {
+                    out.writeInt(stringIds.get(typeName));
+                }
+                writeNode(out, tree, stringIds);
+            }
+            Files.move(tempFile.toPath(), treeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | IllegalArgumentException | SecurityException e) {
+            /* The cache directory may be full, the tree is not saved */
+            tempFile.delete();
+        }
+    }
+
+    private static byte[] computeGrammarKey() {
+        StringBuilder sb = new StringBuilder();
+        Bundle bundle = FrameworkUtil.getBundle(CTFParser.class);
+        if (bundle != null) {
+            sb.append(bundle.getSymbolicName()).append('_').append(bundle.getVersion());
+        }
+        for (String tokenName : CTFParser.tokenNames) {
+            sb.append('\n').append(tokenName);
+        }
+        try {
+            return digest(sb.toString());
+        } catch (IOException e) {
+            /* The text digests cannot be computed either, no tree file is used */
+            return new byte[0];
+        }
+    }
+
+    private static byte[] digest(String text) throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(text.getBytes(UTF8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * Returns false if the tree has a nil node, which would not be read back
+     * as the same tree.
+     */
+    private static boolean addStrings(CommonTree node, List<String> strings, Map<String, Integer> stringIds) {
+        if (node.isNil()) {
+            return false;
+        }
+        String text = node.getText();
+        if (text != null) {
+            addString(text, strings, stringIds);
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            if (!addStrings((CommonTree) node.getChild(i), strings, stringIds)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addString(String string, List<String> strings, Map<String, Integer> stringIds) {
+        if (!stringIds.containsKey(string)) {
+            stringIds.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static String getString(String[] strings, int id) throws IOException {
+        if (id < 0 || id >= strings.length) {
+            throw new IOException("Invalid string index " + id); //$NON-NLS-1$
+        }
+        return strings[id];
+    }
+
+    /*
+     * The strings are not written with writeUTF, which is limited to 64 KiB
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /*
+     * The nodes are written in preorder, each with its token type, the index
+     * of its text plus one, or 0 if it has no text, and its number of
+     * children. There can be millions of nodes, so these small numbers are
+     * written in as few bytes as possible.
+     */
+    private static CommonTree readNode(DataInputStream in, String[] strings) throws IOException {
+        int type = readVarInt(in);
+        int textId = readVarInt(in);
+        String text = (textId == 0) ? null : getString(strings, textId - 1);
+        CommonTree node = new CommonTree(new CommonToken(type, text));
+        int nbChildren = readVarInt(in);
+        for (int i = 0; i < nbChildren; i++) {
+            node.addChild(readNode(in, strings));
+        }
+        return node;
+    }
+
+    private static void writeNode(DataOutputStream out, CommonTree node, Map<String, Integer> stringIds) throws IOException {
+        writeVarInt(out, node.getType());
+        String text = node.getText();
+        writeVarInt(out, (text == null) ? 0 : stringIds.get(text) + 1);
+        writeVarInt(out, node.getChildCount());
+        for (int i = 0; i < node.getChildCount(); i++) {
+            writeNode(out, (CommonTree) node.getChild(i), stringIds);
+        }
+    }
+
+    /*
+     * Non-negative integers are written 7 bits at a time, the high bit of a
+     * byte telling if more bytes follow.
+     */
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable-length integer"); //$NON-NLS-1$
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte(remaining);
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.event.types;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.core.event.types.EnumDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.FloatDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDeclaration;
+import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
+
+/**
+ * Computes where a fixed-size declaration ends in a bit buffer, without
+ * reading it. A declaration is of fixed size if it contains no string,
+ * sequence or variant, so its size only depends on the position where it
+ * starts (because of the alignment).
+ *
+ * The computation follows exactly what the createDefinition() methods of the
+ * declarations do with the buffer position.
+ */
+public final class FixedSizeLayout {
+
+    /** Value returned when the size depends on the data */
+    public static final long NOT_FIXED = -1;
+
+    private FixedSizeLayout() {}
+
+    /**
+     * Get the position after a declaration, if it were read starting at a
+     * given position.
+     *
+     * @param declaration
+     *            The declaration, can be null if there is nothing to read
+     * @param position
+     *            The position, in bits, where the reading starts
+     * @return The position, in bits, after the declaration, or
+     *         {@link #NOT_FIXED} if the size of the declaration depends on the
+     *         data
+     */
+    public static long getEndPosition(@Nullable IDeclaration declaration, long position) {
+        if (declaration == null || position == NOT_FIXED) {
+            return position;
+        }
+        if (declaration instanceof IntegerDeclaration) {
+            IntegerDeclaration integer = (IntegerDeclaration) declaration;
+            if (integer.getLength() > Long.SIZE) {
+                return NOT_FIXED;
+            }
+            return align(position, integer.getAlignment()) + integer.getLength();
+        }
+        if (declaration instanceof EnumDeclaration) {
+            long pos = align(position, declaration.getAlignment());
+            return getEndPosition(((EnumDeclaration) declaration).getContainerType(), pos);
+        }
+        if (declaration instanceof FloatDeclaration) {
+            FloatDeclaration floatDecl = (FloatDeclaration) declaration;
+            int length = floatDecl.getExponent() + floatDecl.getMantissa();
+            if (length != Integer.SIZE && length != Long.SIZE) {
+                return NOT_FIXED;
+            }
+            return align(position, floatDecl.getAlignment()) + length;
+        }
+        if (declaration instanceof ArrayDeclaration) {
+            ArrayDeclaration array = (ArrayDeclaration) declaration;
+            long pos = align(position, array.getAlignment());
+            if (array.isAlignedBytes()) {
+                return pos + (long) array.getLength() * Byte.SIZE;
+            }
+            for (int i = 0; i < array.getLength() && pos != NOT_FIXED; i++) {
+                pos = getEndPosition(array.getElementType(), pos);
+            }
+            return pos;
+        }
+        if (declaration instanceof StructDeclaration) {
+            StructDeclaration struct = (StructDeclaration) declaration;
+            long pos = align(position, struct.getAlignment());
+            for (IDeclaration field : struct.getFields().values()) {
+                pos = getEndPosition(field, pos);
+                if (pos == NOT_FIXED) {
+                    return NOT_FIXED;
+                }
+            }
+            return pos;
+        }
+        /* Strings, sequences and variants */
+        return NOT_FIXED;
+    }
+
+    private static long align(long position, long alignment) {
+        long mask = alignment - 1;
+        return (position + mask) & ~mask;
+    }
+}
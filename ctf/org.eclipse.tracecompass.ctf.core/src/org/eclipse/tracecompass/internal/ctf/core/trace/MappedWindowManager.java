@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
+
+/**
+ * Maps the stream files of the traces in large aligned windows, which are
+ * shared by all the packets they contain and by all the readers of the
+ * stream files, instead of mapping every packet on its own.
+ *
+ * The windows are kept in a least-recently-used cache whose capacity is
+ * expressed in mapped bytes, so the number of traces and stream files opened
+ * does not change how much memory the mappings hold. The buffers already
+ * handed out from an evicted window stay valid, the window is unmapped once
+ * they are all garbage collected.
+ *
+ * The windows are keyed by the {@link File} object of the stream file,
+ * compared by identity, so a trace opened again after its files changed does
+ * not see the old mappings.
+ */
+public final class MappedWindowManager {
+
+    /** Default size of the windows, which are aligned on their size */
+    private static final long DEFAULT_WINDOW_SIZE = 16L * 1024 * 1024;
+
+    /** Default budget of the shared manager, in mapped bytes */
+    private static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private static MappedWindowManager fSharedManager = null;
+
+    private final Map<WindowKey, ByteBuffer> fWindows = new LinkedHashMap<>(16, 0.75f, true);
+    private final long fWindowSize;
+    private final long fMaxSize;
+    private long fCurrentSize = 0;
+
+    /**
+     * Constructor
+     *
+     * @param windowSize
+     *            The size of the windows, in bytes
+     * @param maxSize
+     *            The maximum number of bytes mapped by the windows of this
+     *            manager
+     */
+    public MappedWindowManager(long windowSize, long maxSize) {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE || maxSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        fWindowSize = windowSize;
+        fMaxSize = maxSize;
+    }
+
+    /**
+     * Get the manager shared by all the stream files
+     *
+     * @return The shared manager
+     */
+    public static synchronized MappedWindowManager getSharedManager() {
+        MappedWindowManager manager = fSharedManager;
+        if (manager == null) {
+            manager = new MappedWindowManager(DEFAULT_WINDOW_SIZE, DEFAULT_MAX_SIZE);
+            fSharedManager = manager;
+        }
+        return manager;
+    }
+
+    /**
+     * Get a buffer on a region of a stream file. The buffer is a view on the
+     * window containing the region, which is mapped if needed.
+     *
+     * @param file
+     *            The stream file, identifying the windows
+     * @param fc
+     *            A file channel of the stream file, to map the windows
+     * @param position
+     *            The position of the region in the file
+     * @param size
+     *            The size of the region
+     * @return A buffer on the region, starting at position 0, in big endian
+     * @throws IOException
+     *             If the window cannot be mapped
+     */
+    public ByteBuffer map(File file, FileChannel fc, long position, long size) throws IOException {
+        long windowStart = position - (position % fWindowSize);
+        long windowEnd = ((position + size + fWindowSize - 1) / fWindowSize) * fWindowSize;
+        if (windowEnd - windowStart > Integer.MAX_VALUE) {
+            /* The region cannot fit in one buffer with the window around it */
+            return SafeMappedByteBuffer.map(fc, MapMode.READ_ONLY, position, size);
+        }
+        WindowKey key = new WindowKey(file, windowStart);
+        ByteBuffer window;
+        synchronized (this) {
+            window = fWindows.get(key);
+        }
+        if (window == null || windowStart + window.capacity() < position + size) {
+            /* The file may have grown since the window was mapped */
+            long length = Math.max(Math.min(windowEnd, fc.size()), position + size) - windowStart;
+            window = SafeMappedByteBuffer.map(fc, MapMode.READ_ONLY, windowStart, length);
+            put(key, window);
+        }
+        ByteBuffer buffer = window.duplicate();
+        int offset = (int) (position - windowStart);
+        buffer.limit(offset + (int) size);
+        buffer.position(offset);
+        return buffer.slice();
+    }
+
+    /**
+     * Forget the windows of a stream file, for example when its trace is
+     * closed. They are unmapped once the buffers handed out are garbage
+     * collected.
+     *
+     * @param file
+     *            The stream file
+     */
+    public synchronized void invalidate(File file) {
+        Iterator<Map.Entry<WindowKey, ByteBuffer>> iter = fWindows.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<WindowKey, ByteBuffer> entry = iter.next();
+            if (entry.getKey().fFile == file) {
+                fCurrentSize -= entry.getValue().capacity();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes currently mapped by the windows of this manager
+     *
+     * @return The current size, in bytes
+     */
+    public synchronized long getCurrentSize() {
+        return fCurrentSize;
+    }
+
+    /**
+     * Get the number of windows currently mapped by this manager
+     *
+     * @return The number of windows
+     */
+    public synchronized int getWindowCount() {
+        return fWindows.size();
+    }
+
+    /**
+     * Get the number of windows of a stream file currently mapped by this
+     * manager
+     *
+     * @param file
+     *            The stream file
+     * @return The number of windows of the file
+     */
+    public synchronized int getWindowCount(File file) {
+        int count = 0;
+        for (WindowKey key : fWindows.keySet()) {
+            if (key.fFile == file) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized void put(WindowKey key, ByteBuffer window) {
+        ByteBuffer previous = fWindows.put(key, window);
+        if (previous != null) {
+            fCurrentSize -= previous.capacity();
+        }
+        fCurrentSize += window.capacity();
+        Iterator<ByteBuffer> iter = fWindows.values().iterator();
+        while (fCurrentSize > fMaxSize && iter.hasNext()) {
+            fCurrentSize -= iter.next().capacity();
+            iter.remove();
+        }
+    }
+
+    /**
+     * Key of the windows. Files are compared by identity.
+     */
+    private static final class WindowKey {
+
+        private final File fFile;
+        private final long fStart;
+
+        public WindowKey(File file, long start) {
+            fFile = file;
+            fStart = start;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(fFile) + (int) (fStart ^ (fStart >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WindowKey)) {
+                return false;
+            }
+            WindowKey other = (WindowKey) obj;
+            return (fFile == other.fFile && fStart == other.fStart);
+        }
+    }
+}
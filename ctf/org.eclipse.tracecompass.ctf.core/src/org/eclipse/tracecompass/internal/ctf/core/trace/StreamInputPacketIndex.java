@@ -33,7 +33,8 @@ import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
  * <b><u>StreamInputPacketIndex</u></b>
  * <p>
  * This is a data structure containing entries, you may append to this and read
- * it. It is not thread safe.
+ * it. It is thread safe, so the readers of a stream input can read its index
+ * while one of them appends to it.
  */
 public class StreamInputPacketIndex {
 
@@ -58,7 +59,7 @@ public class StreamInputPacketIndex {
      *
      * @return the number of elements in this data structure
      */
-    public int size() {
+    public synchronized int size() {
         return fEntries.size();
     }
 
@@ -67,7 +68,7 @@ public class StreamInputPacketIndex {
      *
      * @return {@code true} if this data structure contains no elements
      */
-    public boolean isEmpty() {
+    public synchronized boolean isEmpty() {
         return fEntries.isEmpty();
     }
 
@@ -80,7 +81,7 @@ public class StreamInputPacketIndex {
      * @throws CTFException
      *             If there was a problem reading the entry
      */
-    public void appendAll(Collection<ICTFPacketDescriptor> preParsedIndex)
+    public synchronized void appendAll(Collection<ICTFPacketDescriptor> preParsedIndex)
             throws CTFException {
         for (ICTFPacketDescriptor sipie : preParsedIndex) {
             append(checkNotNull(sipie));
@@ -96,7 +97,7 @@ public class StreamInputPacketIndex {
      * @throws CTFException
      *             If there was a problem reading the entry
      */
-    public boolean append(@NonNull ICTFPacketDescriptor entry)
+    public synchronized boolean append(@NonNull ICTFPacketDescriptor entry)
             throws CTFException {
 
         /* Validate consistent entry. */
@@ -126,7 +127,7 @@ public class StreamInputPacketIndex {
      * @return The StreamInputPacketEntry that corresponds to the packet that
      *         includes the given timestamp.
      */
-    public ListIterator<ICTFPacketDescriptor> search(final long timestamp) {
+    public synchronized ListIterator<ICTFPacketDescriptor> search(final long timestamp) {
         /*
          * Start with min and max covering all the elements.
          */
@@ -187,7 +188,7 @@ public class StreamInputPacketIndex {
      *
      * @return the last element in the index
      */
-    public ICTFPacketDescriptor lastElement() {
+    public synchronized ICTFPacketDescriptor lastElement() {
         return fEntries.get(fEntries.size() - 1);
     }
 
@@ -201,7 +202,7 @@ public class StreamInputPacketIndex {
      *             if the index is out of range (
      *             {@code index < 0 || index >= size()})
      */
-    public ICTFPacketDescriptor getElement(int index) {
+    public synchronized ICTFPacketDescriptor getElement(int index) {
         return fEntries.get(index);
     }
 
@@ -228,7 +229,7 @@ public class StreamInputPacketIndex {
      *             not permit null elements (<a
      *             href="Collection.html#optional-restrictions">optional</a>)
      */
-    public int indexOf(ICTFPacketDescriptor element) {
+    public synchronized int indexOf(ICTFPacketDescriptor element) {
         int indexOf = -1;
         if (element != null) {
             indexOf = Collections.binarySearch(fEntries, element, new MonotonicComparator());
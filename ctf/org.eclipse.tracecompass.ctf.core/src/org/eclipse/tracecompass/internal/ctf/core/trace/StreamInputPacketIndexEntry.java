@@ -12,6 +12,7 @@
 
 package org.eclipse.tracecompass.internal.ctf.core.trace;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -198,6 +199,40 @@ public class StreamInputPacketIndexEntry implements ICTFPacketDescriptor {
         fOffsetBytes = dataOffsetBits / Byte.SIZE;
     }
 
+    /**
+     * Constructs an index entry from its saved values. The attributes are
+     * added with {@link #addAttribute(String, Object)}.
+     *
+     * @param dataOffsetBits
+     *            offset in the file for the start of data in bits
+     * @param packetSizeBits
+     *            packet size in bits
+     * @param contentSizeBits
+     *            content size in bits
+     * @param timestampBegin
+     *            begin timestamp
+     * @param timestampEnd
+     *            end timestamp
+     * @param lostEvents
+     *            number of events lost in this packet
+     * @param target
+     *            the traced target, can be null
+     * @param targetId
+     *            the traced target id
+     */
+    public StreamInputPacketIndexEntry(long dataOffsetBits, long packetSizeBits, long contentSizeBits,
+            long timestampBegin, long timestampEnd, long lostEvents, String target, long targetId) {
+        fOffsetBits = dataOffsetBits;
+        fOffsetBytes = dataOffsetBits / Byte.SIZE;
+        fPacketSizeBits = packetSizeBits;
+        fContentSizeBits = contentSizeBits;
+        fTimestampBegin = timestampBegin;
+        fTimestampEnd = timestampEnd;
+        fLostEvents = lostEvents;
+        fTarget = target;
+        fTargetID = targetId;
+    }
+
     private static class Target {
         public String string;
         public long number;
@@ -294,6 +329,15 @@ public class StreamInputPacketIndexEntry implements ICTFPacketDescriptor {
         fAttributes.put(field, value);
     }
 
+    /**
+     * Get the attributes of this index entry
+     *
+     * @return An unmodifiable view of the attributes
+     */
+    public Map<String, Object> getAttributes() {
+        return Collections.unmodifiableMap(fAttributes);
+    }
+
     @Override
     public Object lookupAttribute(String field) {
         return fAttributes.get(field);
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
+
+/**
+ * The packet index of a stream file, saved in the {@link TraceCacheDirectory}
+ * of its trace so the packet headers do not have to be read again the next
+ * time the trace is opened.
+ *
+ * The index file starts with the size and the last modification time of the
+ * stream file when it was indexed, the index is only used if they did not
+ * change. Reading or writing an index file never fails: a missing, outdated
+ * or corrupted index file is ignored, and the index is not saved if the cache
+ * directory cannot be written to.
+ */
+public final class StreamInputPacketIndexFile {
+
+    private static final String SUFFIX = ".idx"; //$NON-NLS-1$
+    private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0xC1F1D3E7;
+    private static final int VERSION = 1;
+
+    private static final byte LONG_ATTRIBUTE = 'L';
+    private static final byte DOUBLE_ATTRIBUTE = 'D';
+    private static final byte STRING_ATTRIBUTE = 'S';
+
+    private StreamInputPacketIndexFile() {
+    }
+
+    /**
+     * Get the index file of a stream file
+     *
+     * @param streamFile
+     *            The stream file
+     * @return The index file, which may not exist, or null if the trace has
+     *         no cache directory
+     */
+    public static @Nullable File getIndexFile(File streamFile) {
+        File cacheDirectory = TraceCacheDirectory.get(streamFile.getAbsoluteFile().getParentFile());
+        if (cacheDirectory == null) {
+            return null;
+        }
+        return new File(cacheDirectory, streamFile.getName() + SUFFIX);
+    }
+
+    /**
+     * Read the index of a stream file
+     *
+     * @param streamFile
+     *            The stream file
+     * @return The index entries, in order, or null if there is no valid index
+     *         file for the current content of the stream file
+     */
+    public static @Nullable List<ICTFPacketDescriptor> read(File streamFile) {
+        File indexFile = getIndexFile(streamFile);
+        if (indexFile == null || !indexFile.isFile()) {
+            return null;
+        }
+        long fileSize = streamFile.length();
+        long lastModified = streamFile.lastModified();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+                    in.readLong() != fileSize || in.readLong() != lastModified) {
+                return null;
+            }
+            int nbEntries = in.readInt();
+            List<ICTFPacketDescriptor> entries = new ArrayList<>(nbEntries);
+            long nextOffsetBits = 0;
+            for (int i = 0; i < nbEntries; i++) {
+                StreamInputPacketIndexEntry entry = readEntry(in);
+                /* The packets must follow each other from the start of the file */
+                if (entry.getOffsetBits() != nextOffsetBits || entry.getPacketSizeBits() <= 0) {
+                    return null;
+                }
+                nextOffsetBits += entry.getPacketSizeBits();
+                entries.add(entry);
+            }
+            if (nextOffsetBits != fileSize * Byte.SIZE) {
+                return null;
+            }
+            return entries;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the index of a stream file. The index is not written if it does
+     * not cover the whole stream file.
+     *
+     * @param streamFile
+     *            The stream file
+     * @param entries
+     *            All the index entries of the stream file, in order
+     */
+    public static void write(File streamFile, List<ICTFPacketDescriptor> entries) {
+        long fileSize = streamFile.length();
+        long lastModified = streamFile.lastModified();
+        long sizeBits = 0;
+        for (ICTFPacketDescriptor entry : entries) {
+            if (!(entry instanceof StreamInputPacketIndexEntry)) {
+                return;
+            }
+            sizeBits += entry.getPacketSizeBits();
+        }
+        if (entries.isEmpty() || sizeBits != fileSize * Byte.SIZE) {
+            return;
+        }
+
+        File indexFile = getIndexFile(streamFile);
+        if (indexFile == null) {
+            return;
+        }
+        File tempFile = new File(indexFile.getPath() + TEMP_SUFFIX);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fileSize);
+                out.writeLong(lastModified);
+                out.writeInt(entries.size());
+                for (ICTFPacketDescriptor entry : entries) {
+                    writeEntry(out, (StreamInputPacketIndexEntry) entry);
+                }
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | IllegalArgumentException | SecurityException e) {
+            /* The cache directory may be full, the index is not saved */
+            tempFile.delete();
+        }
+    }
+
+    private static StreamInputPacketIndexEntry readEntry(DataInputStream in) throws IOException {
+        long offsetBits = in.readLong();
+        long packetSizeBits = in.readLong();
+        long contentSizeBits = in.readLong();
+        long timestampBegin = in.readLong();
+        long timestampEnd = in.readLong();
+        long lostEvents = in.readLong();
+        String target = in.readBoolean() ? in.readUTF() : null;
+        long targetId = in.readLong();
+        StreamInputPacketIndexEntry entry = new StreamInputPacketIndexEntry(offsetBits, packetSizeBits, contentSizeBits,
+                timestampBegin, timestampEnd, lostEvents, target, targetId);
+
+        int nbAttributes = in.readInt();
+        for (int i = 0; i < nbAttributes; i++) {
+            String field = in.readUTF();
+            byte type = in.readByte();
+            switch (type) {
+            case LONG_ATTRIBUTE:
+                entry.addAttribute(field, in.readLong());
+                break;
+            case DOUBLE_ATTRIBUTE:
+                entry.addAttribute(field, in.readDouble());
+                break;
+            case STRING_ATTRIBUTE:
+                entry.addAttribute(field, in.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown attribute type " + type); //$NON-NLS-1$
+            }
+        }
+        return entry;
+    }
+
+    private static void writeEntry(DataOutputStream out, StreamInputPacketIndexEntry entry) throws IOException {
+        out.writeLong(entry.getOffsetBits());
+        out.writeLong(entry.getPacketSizeBits());
+        out.writeLong(entry.getContentSizeBits());
+        out.writeLong(entry.getTimestampBegin());
+        out.writeLong(entry.getTimestampEnd());
+        out.writeLong(entry.getLostEvents());
+        String target = entry.getTarget();
+        out.writeBoolean(target != null);
+        if (target != null) {
+            out.writeUTF(target);
+        }
+        out.writeLong(entry.getTargetId());
+
+        Map<String, Object> attributes = entry.getAttributes();
+        out.writeInt(attributes.size());
+        for (Entry<String, Object> attribute : attributes.entrySet()) {
+            out.writeUTF(attribute.getKey());
+            Object value = attribute.getValue();
+            if (value instanceof Long) {
+                out.writeByte(LONG_ATTRIBUTE);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE_ATTRIBUTE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof String) {
+                out.writeByte(STRING_ATTRIBUTE);
+                out.writeUTF((String) value);
+            } else {
+                throw new IOException("Cannot save attribute " + attribute.getKey()); //$NON-NLS-1$
+            }
+        }
+    }
+}
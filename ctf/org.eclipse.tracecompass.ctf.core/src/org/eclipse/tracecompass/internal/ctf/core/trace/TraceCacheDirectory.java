@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.ctf.core.Activator;
+
+/**
+ * The directory where the files computed from a trace, like its packet
+ * indexes, are saved so they do not have to be computed again the next time
+ * the trace is opened. Nothing is ever written to the trace directory itself.
+ *
+ * Each trace directory has its own cache directory, named after a digest of
+ * its canonical path. The cache directories are in the state location of the
+ * plug-in, or in the temporary directory when not running in Eclipse, unless
+ * the {@value #CACHE_ROOT_PROPERTY} system property gives another location.
+ */
+public final class TraceCacheDirectory {
+
+    /** System property giving the directory where the traces are cached */
+    public static final String CACHE_ROOT_PROPERTY = "org.eclipse.tracecompass.ctf.core.cache"; //$NON-NLS-1$
+
+    private static final String CACHE_DIRECTORY_NAME = "trace-cache"; //$NON-NLS-1$
+    private static final String TEMP_DIRECTORY_NAME = "tracecompass-ctf-cache"; //$NON-NLS-1$
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+    private static final String DIGEST_ALGORITHM = "SHA-1"; //$NON-NLS-1$
+
+    private TraceCacheDirectory() {
+    }
+
+    /**
+     * Get the cache directory of a trace, creating it if needed
+     *
+     * @param traceDirectory
+     *            The trace directory
+     * @return The cache directory, or null if the traces cannot be cached
+     */
+    public static @Nullable File get(File traceDirectory) {
+        File root = getRoot();
+        if (root == null) {
+            return null;
+        }
+        try {
+            File directory = new File(root, digest(traceDirectory.getCanonicalPath()));
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return null;
+            }
+            return directory.canWrite() ? directory : null;
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static @Nullable File getRoot() {
+        try {
+            String root = System.getProperty(CACHE_ROOT_PROPERTY);
+            if (root != null) {
+                return new File(root);
+            }
+            Activator plugin = Activator.getDefault();
+            if (plugin != null && Platform.isRunning()) {
+                return new File(plugin.getStateLocation().toFile(), CACHE_DIRECTORY_NAME);
+            }
+            String tempDirectory = System.getProperty("java.io.tmpdir"); //$NON-NLS-1$
+            return (tempDirectory == null) ? null : new File(tempDirectory, TEMP_DIRECTORY_NAME);
+        } catch (IllegalStateException | SecurityException e) {
+            /* The state location of the plug-in is not available */
+            return null;
+        }
+    }
+
+    private static String digest(String path) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(path.getBytes(UTF8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b)); //$NON-NLS-1$
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -93,6 +93,7 @@ scope Symbols {
 
 package org.eclipse.tracecompass.ctf.parser;
 
+import java.util.Collection;
 import java.util.Set;
 import java.util.HashSet;
 }
@@ -103,6 +104,31 @@ import java.util.HashSet;
         this.verbose = verbose;
     }
 
+    /**
+     * Constructor for a parser of metadata appended to some already parsed
+     * metadata, whose top-level types can be used by the new declarations.
+     *
+     * @param input The tokens of the appended metadata.
+     * @param typeNames The names of the top-level types declared before.
+     */
+    public CTFParser(TokenStream input, Collection<String> typeNames) {
+        this(input);
+        rootTypes.addAll(typeNames);
+    }
+
+    /**
+     * Gets the names of the types declared at the top level of the metadata
+     * once it is parsed, including those given to the constructor.
+     *
+     * @return The names of the top-level types.
+     */
+    public Set<String> getTypeNames() {
+        return rootTypes;
+    }
+
+    /* The types of the top-level scope */
+    private final Set<String> rootTypes = new HashSet<String>();
+
     /**
       * This method is overriden to disable automatic error recovery.
       * On a mismatched token, it simply re-throw an exception.
@@ -190,7 +216,7 @@ import java.util.HashSet;
 parse
 scope Symbols;
 @init {
-    $Symbols::types = new HashSet<String>();
+    $Symbols::types = rootTypes;
 }
   : declaration+ EOF -> ^(ROOT declaration+)
   ;
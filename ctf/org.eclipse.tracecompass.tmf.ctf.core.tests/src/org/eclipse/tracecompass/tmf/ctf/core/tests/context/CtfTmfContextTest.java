@@ -14,12 +14,18 @@
 
 package org.eclipse.tracecompass.tmf.ctf.core.tests.context;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IResource;
+import org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator.CtfIterator;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.ctf.core.context.CtfTmfContext;
 import org.eclipse.tracecompass.tmf.ctf.core.event.CtfTmfEvent;
@@ -123,4 +129,36 @@ public class CtfTmfContextTest {
             assertTrue(val <= end);
         }
     }
+
+    /**
+     * Hold the iterators of more contexts than the size of the iterator
+     * cache at the same time. Each context must get its own iterator, and the
+     * contexts must still be readable once the iterators are released.
+     */
+    @Test
+    public void testIteratorsAllInUse() {
+        final int nbContexts = 150;
+        List<CtfTmfContext> contexts = new ArrayList<>();
+        Map<CtfIterator, Boolean> iterators = new IdentityHashMap<>();
+        try {
+            for (int i = 0; i < nbContexts; i++) {
+                CtfTmfContext context = new CtfTmfContext(trace);
+                context.seek(0);
+                contexts.add(context);
+                CtfIterator iterator = (CtfIterator) trace.createIteratorFromContext(context);
+                iterators.put(iterator, Boolean.TRUE);
+                assertNotNull(iterator.getCurrentEvent());
+            }
+            assertEquals(nbContexts, iterators.size());
+        } finally {
+            for (CtfIterator iterator : iterators.keySet()) {
+                iterator.release();
+            }
+        }
+
+        for (CtfTmfContext context : contexts) {
+            assertNotNull(trace.getNext(context));
+            context.dispose();
+        }
+    }
 }
@@ -21,9 +21,15 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -58,6 +64,8 @@ public class CtfTmfTraceTest {
 
     private static final CtfTmfTestTrace testTrace = CtfTmfTestTrace.KERNEL;
 
+    private static final int NB_READERS = 4;
+
     private CtfTmfTrace fixture;
 
     /**
@@ -322,6 +330,52 @@ public class CtfTmfTraceTest {
         context.dispose();
     }
 
+    /**
+     * Test reading the trace from many contexts at the same time, more than
+     * there are iterators, each context must read the same events as a
+     * single context.
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testConcurrentRead() throws Exception {
+        final int nbEvents = 10000;
+        final List<Long> expected = readTimestamps(nbEvents);
+
+        ExecutorService executor = Executors.newFixedThreadPool(NB_READERS);
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (int i = 0; i < NB_READERS; i++) {
+            results.add(executor.submit(new Callable<List<Long>>() {
+                @Override
+                public List<Long> call() {
+                    return readTimestamps(nbEvents);
+                }
+            }));
+        }
+        /* Contexts that are never disposed, their iterators get reused */
+        for (int i = 0; i < 200; i++) {
+            ITmfContext context = fixture.seekEvent(i / 200.0);
+            fixture.getNext(context);
+        }
+        for (Future<List<Long>> result : results) {
+            assertEquals(expected, result.get());
+        }
+        executor.shutdown();
+    }
+
+    private List<Long> readTimestamps(int nbEvents) {
+        List<Long> timestamps = new ArrayList<>();
+        ITmfContext context = fixture.seekEvent(0);
+        CtfTmfEvent event = fixture.getNext(context);
+        while (event != null && timestamps.size() < nbEvents) {
+            timestamps.add(event.getTimestamp().getValue());
+            event = fixture.getNext(context);
+        }
+        context.dispose();
+        return timestamps;
+    }
+
     /**
      * Run the ITmfContext seekEvent(double) method test.
      */
@@ -15,6 +15,11 @@ package org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator;
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.equalsNullable;
 
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.trace.CTFStreamInputReader;
 import org.eclipse.tracecompass.ctf.core.trace.CTFTrace;
@@ -28,6 +33,8 @@ import org.eclipse.tracecompass.tmf.ctf.core.event.CtfTmfEvent;
 import org.eclipse.tracecompass.tmf.ctf.core.event.CtfTmfEventFactory;
 import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * The CTF trace reader iterator.
  *
@@ -50,6 +57,12 @@ public class CtfIterator extends CTFTraceReader
     private CtfLocation fPreviousLocation;
     private CtfTmfEvent fPreviousEvent;
 
+    /** Number of context operations currently using this iterator */
+    private final AtomicInteger fUsers = new AtomicInteger();
+
+    /** Disposed once released, for an iterator the manager does not keep */
+    private volatile boolean fDisposeOnRelease = false;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -70,6 +83,8 @@ public class CtfIterator extends CTFTraceReader
      */
     public CtfIterator(CTFTrace ctfTrace, CtfTmfTrace ctfTmfTrace) throws CTFException {
         super(ctfTrace);
+        /* Most events are never looked at in detail, only read them on demand */
+        setDeferredDecoding(true);
         fTrace = ctfTmfTrace;
         if (hasMoreEvents()) {
             fCurLocation = new CtfLocation(ctfTmfTrace.getStartTime());
@@ -99,6 +114,7 @@ public class CtfIterator extends CTFTraceReader
     public CtfIterator(CTFTrace ctfTrace, CtfTmfTrace ctfTmfTrace, CtfLocationInfo ctfLocationData, long rank)
             throws CTFException {
         super(ctfTrace);
+        setDeferredDecoding(true);
 
         this.fTrace = ctfTmfTrace;
         if (this.hasMoreEvents()) {
@@ -229,6 +245,45 @@ public class CtfIterator extends CTFTraceReader
         return ret;
     }
 
+    // ------------------------------------------------------------------------
+    // Iterator manager
+    // ------------------------------------------------------------------------
+
+    /**
+     * Mark this iterator as used by an operation of its context. The
+     * {@link CtfIteratorManager} does not give an iterator in use to another
+     * context.
+     */
+    void acquire() {
+        fUsers.incrementAndGet();
+    }
+
+    /**
+     * Mark the end of an operation of the context, the iterator can then be
+     * given to another context. An iterator the {@link CtfIteratorManager}
+     * did not keep is disposed.
+     */
+    public void release() {
+        if (fUsers.decrementAndGet() == 0 && fDisposeOnRelease) {
+            dispose();
+        }
+    }
+
+    /**
+     * Dispose this iterator once the operation using it releases it, instead
+     * of keeping it for the next operations of its context.
+     */
+    void disposeOnRelease() {
+        fDisposeOnRelease = true;
+    }
+
+    /**
+     * @return true if an operation of the context is using this iterator
+     */
+    boolean isInUse() {
+        return fUsers.get() > 0;
+    }
+
     // ------------------------------------------------------------------------
     // CTFTraceReader
     // ------------------------------------------------------------------------
@@ -238,6 +293,44 @@ public class CtfIterator extends CTFTraceReader
         return seek(new CtfLocationInfo(timestamp, 0));
     }
 
+    /**
+     * Set the names of the events to read. The location of the iterator no
+     * longer means the same thing once the event types change, so it has to be
+     * sought again.
+     */
+    @Override
+    public synchronized void setEventNames(@Nullable Collection<String> eventNames) {
+        Set<String> names = (eventNames == null) ? null : ImmutableSet.copyOf(eventNames);
+        if (equalsNullable(names, getEventNames())) {
+            return;
+        }
+        super.setEventNames(names);
+        forgetLocation();
+    }
+
+    /**
+     * Set the time after which the trace is not read. Once it is raised, the
+     * streams stopped before have to be read again, so the location of the
+     * iterator has to be sought again.
+     */
+    @Override
+    public synchronized void setStopTime(long stopTime) {
+        long previousStopTime = getStopTime();
+        if (stopTime == previousStopTime) {
+            return;
+        }
+        super.setStopTime(stopTime);
+        if (stopTime > previousStopTime) {
+            forgetLocation();
+        }
+    }
+
+    private void forgetLocation() {
+        fCurLocation = NULL_LOCATION;
+        fPreviousLocation = null;
+        fPreviousEvent = null;
+    }
+
     @Override
     public synchronized boolean advance() {
         boolean ret = false;
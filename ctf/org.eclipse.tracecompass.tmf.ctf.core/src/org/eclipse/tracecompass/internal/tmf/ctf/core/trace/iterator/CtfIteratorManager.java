@@ -13,13 +13,15 @@
 package org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Map.Entry;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
 import org.eclipse.tracecompass.tmf.ctf.core.context.CtfLocationInfo;
 import org.eclipse.tracecompass.tmf.ctf.core.context.CtfTmfContext;
 import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
@@ -40,21 +42,15 @@ public class CtfIteratorManager {
      */
     private static final int MAX_SIZE = 100;
 
-    /** The map of the cache */
+    /** The map of the cache, from the least to the most recently used */
     private final Map<CtfTmfContext, CtfIterator> fMap;
 
-    /** An array pointing to the same cache. this allows fast "random" accesses */
-    private final List<CtfTmfContext> fRandomAccess;
-
-    /** Lock for when we access the two previous data structures */
+    /** Lock for when we access the map */
     private final Lock fAccessLock = new ReentrantLock();
 
     /** The parent trace */
     private final CtfTmfTrace fTrace;
 
-    /** Random number generator */
-    private final Random fRnd;
-
     /**
      * Constructor
      *
@@ -62,9 +58,7 @@ public class CtfIteratorManager {
      *            The trace whose iterators this manager will manage
      */
     public CtfIteratorManager(CtfTmfTrace trace) {
-        fMap = new HashMap<>();
-        fRandomAccess = new ArrayList<>();
-        fRnd = new Random(System.nanoTime());
+        fMap = new LinkedHashMap<>(MAX_SIZE, 0.75f, true);
         fTrace = trace;
     }
 
@@ -74,120 +68,165 @@ public class CtfIteratorManager {
      * trace. This failed since there is a limit to how many file handles we can
      * have opened simultaneously. Then a round-robin scheme was implemented,
      * this lead up to a two competing contexts syncing up and using the same
-     * file handler, causing horrible slowdowns. Now a random replacement
-     * algorithm is selected. This is the same as used by arm processors, and it
-     * works quite well when many cores so this looks promising for very
-     * multi-threaded systems.
+     * file handler, causing horrible slowdowns. Then a random replacement
+     * algorithm was used, which could still take the iterator of a context
+     * being read. Now the least recently used iterator that is not in use is
+     * replaced, so the contexts being read keep their iterator, while the
+     * contexts that were forgotten without being disposed give theirs back.
+     *
+     * The returned iterator is in use by the context until
+     * {@link CtfIterator#release()} is called, it is not given to another
+     * context before then. Many contexts can thus read the trace concurrently,
+     * each with its own iterator. There are never more than {@link #MAX_SIZE}
+     * iterators kept: if they are all in use, the context gets an iterator of
+     * its own, which is disposed when released.
      *
      * @param context
      *            the context to look up
      * @return the iterator referring to the context
      */
     public CtfIterator getIterator(final CtfTmfContext context) {
-        /*
-         * if the element is in the map, we don't need to do anything else.
-         */
-        CtfIterator iter = fMap.get(context);
-        if (iter == null) {
-
-            fAccessLock.lock();
-            try {
-                /*
-                 * Assign an iterator to a context.
-                 */
-                if (fRandomAccess.size() < MAX_SIZE) {
-                    /*
-                     * if we're not full yet, just add an element.
-                     */
-                    iter = (CtfIterator) fTrace.createIterator();
-                    addElement(context, iter);
+        CtfIterator iter;
+        fAccessLock.lock();
+        try {
+            /*
+             * if the element is in the map, we don't need to do anything else.
+             */
+            iter = fMap.get(context);
+            if (iter != null) {
+                iter.acquire();
+                return iter;
+            }
 
+            /*
+             * Assign an iterator to a context: if we're full, take the least
+             * recently used one, otherwise just add an element. If they are
+             * all in use, the new iterator is not kept, so there are never
+             * more than MAX_SIZE open iterators kept.
+             */
+            boolean full = (fMap.size() >= MAX_SIZE);
+            if (full) {
+                iter = removeLeastRecentlyUsed();
+            }
+            if (iter != null) {
+                fMap.put(context, iter);
+            } else {
+                iter = (CtfIterator) fTrace.createIterator();
+                if (full) {
+                    iter.disposeOnRelease();
                 } else {
-                    /*
-                     * if we're full, randomly replace an element
-                     */
-                    iter = replaceRandomElement(context);
-                }
-                if (context.getLocation() != null) {
-                    final CtfLocationInfo location = (CtfLocationInfo) context.getLocation().getLocationInfo();
-                    iter.seek(location);
+                    fMap.put(context, iter);
                 }
-            } finally {
-                fAccessLock.unlock();
             }
+            iter.acquire();
+        } finally {
+            fAccessLock.unlock();
+        }
+
+        /* The iterator is now only used by this context */
+        configure(iter, context);
+        ITmfLocation location = context.getLocation();
+        if (location != null) {
+            iter.seek((CtfLocationInfo) location.getLocationInfo());
         }
         return iter;
     }
 
     /**
-     * Remove an iterator from this manager
+     * Give the iterator of a context to another context at the same location,
+     * which can then be read without seeking again.
      *
-     * @param context
-     *            The context of the iterator to remove
+     * @param from
+     *            the context whose iterator to give
+     * @param to
+     *            the context receiving the iterator
      */
-    public void removeIterator(CtfTmfContext context) {
+    public void moveIterator(CtfTmfContext from, CtfTmfContext to) {
+        CtfIterator iter;
         fAccessLock.lock();
         try {
-            /* The try below is only to auto-call CtfIterator.close() */
-            try (CtfIterator removed = fMap.remove(context)) {
-                // try with resource
+            iter = fMap.remove(from);
+            if (iter == null) {
+                return;
             }
-            fRandomAccess.remove(context);
-
+            fMap.put(to, iter);
+            iter.acquire();
         } finally {
             fAccessLock.unlock();
         }
+        try {
+            configure(iter, to);
+        } finally {
+            iter.release();
+        }
     }
 
     /**
-     * Add a pair of context and element to the hashmap and the arraylist.
+     * Set up an iterator to read what its context needs
+     */
+    private void configure(CtfIterator iter, CtfTmfContext context) {
+        if (context instanceof CtfTmfRequestContext) {
+            CtfTmfRequestContext requestContext = (CtfTmfRequestContext) context;
+            iter.setEventNames(requestContext.getEventNames());
+            iter.setStopTime(toStopTime(requestContext.getEndTime()));
+        } else {
+            iter.setEventNames(null);
+            iter.setStopTime(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Convert an end time in nanoseconds to the stop time of the CTF reader.
+     * The conversion to cycles can be lossy, so the stop time is moved up to
+     * the last cycle before the end time, the packets of the range are never
+     * skipped.
+     */
+    private long toStopTime(long endTime) {
+        if (endTime == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        long stopTime = fTrace.timestampNanoToCycles(endTime);
+        while (fTrace.timestampCyclesToNanos(stopTime + 1) <= endTime) {
+            stopTime++;
+        }
+        return stopTime;
+    }
+
+    /**
+     * Remove an iterator from this manager
      *
      * @param context
-     *            the context
-     * @param elem
-     *            the iterator
+     *            The context of the iterator to remove
      */
-    private void addElement(final CtfTmfContext context,
-            final CtfIterator elem) {
+    public void removeIterator(CtfTmfContext context) {
+        CtfIterator removed;
         fAccessLock.lock();
         try {
-            fMap.put(context, elem);
-            fRandomAccess.add(context);
-
+            removed = fMap.remove(context);
         } finally {
             fAccessLock.unlock();
         }
+        if (removed != null) {
+            removed.dispose();
+        }
     }
 
     /**
-     * Replace a random element
+     * Remove the least recently used iterator that is not in use. Must be
+     * called with the lock held.
      *
-     * @param context
-     *            the context to swap in
-     * @return the iterator of the removed elements.
+     * @return the removed iterator, or null if they are all in use
      */
-    private CtfIterator replaceRandomElement(final CtfTmfContext context) {
-        /*
-         * This needs some explanation too: We need to select a random victim
-         * and remove it. The order of the elements is not important, so instead
-         * of just calling arraylist.remove(element) which has an O(n)
-         * complexity, we pick an random number. The element is swapped out of
-         * the array and removed and replaced in the hashmap.
-         */
-        fAccessLock.lock(); // just in case, should only be called when already locked
-        try {
-            final int size = fRandomAccess.size();
-            final int pos = fRnd.nextInt(size);
-            final CtfTmfContext victim = fRandomAccess.get(pos);
-            fRandomAccess.set(pos, context);
-            final CtfIterator elem = fMap.remove(victim);
-            fMap.put(context, elem);
-            victim.dispose();
-            return elem;
-
-        } finally {
-            fAccessLock.unlock();
+    private CtfIterator removeLeastRecentlyUsed() {
+        Iterator<Entry<CtfTmfContext, CtfIterator>> entries = fMap.entrySet().iterator();
+        while (entries.hasNext()) {
+            CtfIterator elem = entries.next().getValue();
+            if (!elem.isInUse()) {
+                entries.remove();
+                return elem;
+            }
         }
+        return null;
     }
 
     /**
@@ -195,16 +234,16 @@ public class CtfIteratorManager {
      * iterators.
      */
     public void dispose() {
+        List<CtfIterator> iterators;
         fAccessLock.lock();
         try {
-            for (CtfIterator iterator : fMap.values()) {
-                iterator.dispose();
-            }
+            iterators = new ArrayList<>(fMap.values());
             fMap.clear();
-            fRandomAccess.clear();
-
         } finally {
             fAccessLock.unlock();
         }
+        for (CtfIterator iterator : iterators) {
+            iterator.dispose();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator;
+
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.ctf.core.context.CtfTmfContext;
+import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A context that only reads the events a request needs: the CTF reader does
+ * not read the packets starting after the end of the request, and can skip
+ * the events of the types the request does not need without decoding them.
+ *
+ * The skipped events are not counted, so when the event types are restricted
+ * the rank of such a context is unknown, and its locations are only
+ * meaningful to contexts reading the same event types.
+ */
+public class CtfTmfRequestContext extends CtfTmfContext {
+
+    private final @Nullable Set<String> fEventNames;
+    private final long fEndTime;
+
+    /**
+     * Constructor
+     *
+     * @param ctfTmfTrace
+     *            the parent trace
+     * @param eventNames
+     *            the names of the events to read, or null to read all the
+     *            events
+     * @param endTime
+     *            the time of the last event to read, in nanoseconds
+     */
+    public CtfTmfRequestContext(CtfTmfTrace ctfTmfTrace, @Nullable Set<String> eventNames, long endTime) {
+        super(ctfTmfTrace);
+        fEventNames = (eventNames == null) ? null : ImmutableSet.copyOf(eventNames);
+        fEndTime = endTime;
+    }
+
+    /**
+     * Get the names of the events read by this context
+     *
+     * @return the event names, or null if all the events are read
+     */
+    public @Nullable Set<String> getEventNames() {
+        return fEventNames;
+    }
+
+    /**
+     * Get the time of the last event read by this context
+     *
+     * @return the end time, in nanoseconds
+     */
+    public long getEndTime() {
+        return fEndTime;
+    }
+}
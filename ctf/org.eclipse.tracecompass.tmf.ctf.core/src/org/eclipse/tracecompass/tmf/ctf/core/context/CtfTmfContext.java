@@ -74,8 +74,12 @@ public class CtfTmfContext implements ITmfContext {
     public synchronized void setLocation(ITmfLocation location) {
         if (location instanceof CtfLocation) {
             CtfIterator iterator = getIterator();
-            iterator.seek(((CtfLocation) location).getLocationInfo());
-            fCurLocation = iterator.getLocation();
+            try {
+                iterator.seek(((CtfLocation) location).getLocationInfo());
+                fCurLocation = iterator.getLocation();
+            } finally {
+                iterator.release();
+            }
         } else {
             fCurLocation = null;
         }
@@ -113,7 +117,12 @@ public class CtfTmfContext implements ITmfContext {
      * @return The event or null
      */
     public synchronized CtfTmfEvent getCurrentEvent() {
-        return getIterator().getCurrentEvent();
+        CtfIterator iterator = getIterator();
+        try {
+            return iterator.getCurrentEvent();
+        } finally {
+            iterator.release();
+        }
     }
 
     /**
@@ -124,21 +133,25 @@ public class CtfTmfContext implements ITmfContext {
     public synchronized boolean advance() {
         final CtfLocationInfo curLocationData = fCurLocation.getLocationInfo();
         CtfIterator iterator = getIterator();
-        boolean retVal = iterator.advance();
-        CtfTmfEvent currentEvent = iterator.getCurrentEvent();
-
-        if (currentEvent != null) {
-            final long timestampValue = iterator.getCurrentTimestamp();
-            if (curLocationData.getTimestamp() == timestampValue) {
-                fCurLocation = new CtfLocation(timestampValue, curLocationData.getIndex() + 1);
+        try {
+            boolean retVal = iterator.advance();
+            CtfTmfEvent currentEvent = iterator.getCurrentEvent();
+
+            if (currentEvent != null) {
+                final long timestampValue = iterator.getCurrentTimestamp();
+                if (curLocationData.getTimestamp() == timestampValue) {
+                    fCurLocation = new CtfLocation(timestampValue, curLocationData.getIndex() + 1);
+                } else {
+                    fCurLocation = new CtfLocation(timestampValue, 0L);
+                }
             } else {
-                fCurLocation = new CtfLocation(timestampValue, 0L);
+                fCurLocation = new CtfLocation(CtfLocation.INVALID_LOCATION);
             }
-        } else {
-            fCurLocation = new CtfLocation(CtfLocation.INVALID_LOCATION);
-        }
 
-        return retVal;
+            return retVal;
+        } finally {
+            iterator.release();
+        }
     }
 
     @Override
@@ -155,9 +168,13 @@ public class CtfTmfContext implements ITmfContext {
      */
     public synchronized boolean seek(final long timestamp) {
         CtfIterator iterator = getIterator();
-        boolean ret = iterator.seek(timestamp);
-        fCurLocation = iterator.getLocation();
-        return ret;
+        try {
+            boolean ret = iterator.seek(timestamp);
+            fCurLocation = iterator.getLocation();
+            return ret;
+        } finally {
+            iterator.release();
+        }
     }
 
     /**
@@ -169,7 +186,12 @@ public class CtfTmfContext implements ITmfContext {
      */
     public synchronized boolean seek(final CtfLocationInfo location) {
         fCurLocation = new CtfLocation(location);
-        return getIterator().seek(location);
+        CtfIterator iterator = getIterator();
+        try {
+            return iterator.seek(location);
+        } finally {
+            iterator.release();
+        }
     }
 
     // -------------------------------------------
@@ -178,7 +200,8 @@ public class CtfTmfContext implements ITmfContext {
 
     /**
      * Get iterator, called every time to get an iterator, no local copy is
-     * stored so that there is no need to "update"
+     * stored so that there is no need to "update". The iterator must be
+     * released at the end of the operation.
      *
      * @return an iterator
      */
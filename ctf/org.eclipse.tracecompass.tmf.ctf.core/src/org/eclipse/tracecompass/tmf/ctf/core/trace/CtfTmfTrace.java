@@ -43,11 +43,14 @@ import org.eclipse.tracecompass.ctf.core.trace.Metadata;
 import org.eclipse.tracecompass.internal.tmf.ctf.core.Activator;
 import org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator.CtfIterator;
 import org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator.CtfIteratorManager;
+import org.eclipse.tracecompass.internal.tmf.ctf.core.trace.iterator.CtfTmfRequestContext;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEventField;
 import org.eclipse.tracecompass.tmf.core.event.TmfEventField;
 import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfNanoTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
@@ -171,7 +174,8 @@ public class CtfTmfTrace extends TmfTrace
              * Register every event type. When you call getType, it will
              * register a trace to that type in the TmfEventTypeManager
              */
-            try (CtfIterator iter = fIteratorManager.getIterator(ctx)) {
+            CtfIterator iter = fIteratorManager.getIterator(ctx);
+            try {
                 for (IEventDeclaration ied : iter.getEventDeclarations()) {
                     CtfTmfEventType ctfTmfEventType = fContainedEventTypes.get(ied.getName());
                     if (ctfTmfEventType == null) {
@@ -190,6 +194,9 @@ public class CtfTmfTrace extends TmfTrace
                         fContainedEventTypes.put(ctfTmfEventType.getName(), ctfTmfEventType);
                     }
                 }
+            } finally {
+                iter.release();
+                ctx.dispose();
             }
         } catch (final CTFException e) {
             /*
@@ -210,6 +217,7 @@ public class CtfTmfTrace extends TmfTrace
     public synchronized void dispose() {
         fIteratorManager.dispose();
         if (fTrace != null) {
+            fTrace.dispose();
             fTrace = null;
         }
         super.dispose();
@@ -299,7 +307,7 @@ public class CtfTmfTrace extends TmfTrace
      * @return ITmfContext
      */
     @Override
-    public synchronized ITmfContext seekEvent(final ITmfLocation location) {
+    public ITmfContext seekEvent(final ITmfLocation location) {
         CtfLocation currentLocation = (CtfLocation) location;
         CtfTmfContext context = new CtfTmfContext(this);
         if (fTrace == null) {
@@ -326,8 +334,44 @@ public class CtfTmfTrace extends TmfTrace
         return context;
     }
 
+    /**
+     * The requests for a time range read the trace with a context that does
+     * not read the packets after the end of the range, and the requests that
+     * only need some event types skip the other events in the CTF reader.
+     */
+    @Override
+    public synchronized ITmfContext armRequest(final ITmfEventRequest request) {
+        if (request.getIndex() != 0 || fTrace == null || executorIsShutdown()) {
+            return super.armRequest(request);
+        }
+        Set<String> eventNames = (request instanceof TmfEventRequest) ? ((TmfEventRequest) request).getEventNames() : null;
+        long endTime = request.getRange().getEndTime().normalize(0, ITmfTimestamp.NANOSECOND_SCALE).getValue();
+        if (eventNames == null) {
+            if (endTime >= getEndTime().getValue()) {
+                return super.armRequest(request);
+            }
+            /* All the events are read, the ranks are still known */
+            ITmfContext start = super.armRequest(request);
+            if (!(start instanceof CtfTmfContext)) {
+                return start;
+            }
+            CtfTmfContext context = new CtfTmfRequestContext(this, null, endTime);
+            fIteratorManager.moveIterator((CtfTmfContext) start, context);
+            context.setLocation(start.getLocation());
+            context.setRank(start.getRank());
+            return context;
+        }
+        /* The skipped events are not counted, the ranks are unknown */
+        CtfTmfContext context = new CtfTmfRequestContext(this, eventNames, endTime);
+        context.setRank(ITmfContext.UNKNOWN_RANK);
+        long startTime = request.getRange().getStartTime().normalize(0, ITmfTimestamp.NANOSECOND_SCALE).getValue();
+        /* Do not let the big bang overflow when converted to cycles */
+        context.seek(Math.max(startTime, getStartTime().getValue()));
+        return context;
+    }
+
     @Override
-    public synchronized ITmfContext seekEvent(double ratio) {
+    public ITmfContext seekEvent(double ratio) {
         CtfTmfContext context = new CtfTmfContext(this);
         if (fTrace == null) {
             context.setLocation(null);
@@ -352,7 +396,7 @@ public class CtfTmfTrace extends TmfTrace
      * @see org.eclipse.tracecompass.tmf.core.trace.ITmfTrace#getNext(ITmfContext)
      */
     @Override
-    public synchronized CtfTmfEvent getNext(final ITmfContext context) {
+    public CtfTmfEvent getNext(final ITmfContext context) {
         if (fTrace == null) {
             return null;
         }
@@ -568,11 +612,18 @@ public class CtfTmfTrace extends TmfTrace
     }
 
     /**
-     * Create the 'CtfIterator' object from a CtfTmfContext.
+     * Get the 'CtfIterator' object of a CtfTmfContext, positioned at the
+     * location of the context.
+     *
+     * The iterator is acquired for one operation of the context: it is not
+     * given to another context until the caller calls its
+     * {@link CtfIterator#release()} method, which must be done in a finally
+     * block once the operation is done. The iterator must not be used after
+     * it is released.
      *
      * @param context
      *            The iterator will initially be pointing to this context
-     * @return A new CtfIterator object
+     * @return The CtfIterator of the context, to be released after use
      * @since 1.0
      */
     public ITmfContext createIteratorFromContext(CtfTmfContext context) {
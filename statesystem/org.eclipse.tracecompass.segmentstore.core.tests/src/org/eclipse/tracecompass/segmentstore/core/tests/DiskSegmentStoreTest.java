@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.segmentstore.core.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
+import org.eclipse.tracecompass.segmentstore.core.disk.DiskSegmentStore;
+import org.eclipse.tracecompass.segmentstore.core.disk.ISegmentSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link DiskSegmentStore}, comparing its queries with the expected
+ * results computed from the list of segments.
+ */
+public class DiskSegmentStoreTest {
+
+    private static final int RUN_SIZE = 5000;
+    private static final int NB_SEGMENTS = 10500;
+
+    /**
+     * Simple segment with an id, which is also its insertion index
+     */
+    private static final class TestSegment implements ISegment {
+        private static final long serialVersionUID = 1L;
+
+        private final long fStart;
+        private final long fEnd;
+        private final int fId;
+
+        public TestSegment(long start, long end, int id) {
+            fStart = start;
+            fEnd = end;
+            fId = id;
+        }
+
+        @Override
+        public long getStart() {
+            return fStart;
+        }
+
+        @Override
+        public long getEnd() {
+            return fEnd;
+        }
+
+        @Override
+        public long getLength() {
+            return fEnd - fStart;
+        }
+
+        public int getId() {
+            return fId;
+        }
+    }
+
+    private static final ISegmentSerializer<TestSegment> SERIALIZER = new ISegmentSerializer<TestSegment>() {
+        @Override
+        public int getSerializedSize(TestSegment segment) {
+            return 4;
+        }
+
+        @Override
+        public void write(TestSegment segment, ByteBuffer buffer) {
+            buffer.putInt(segment.getId());
+        }
+
+        @Override
+        public TestSegment read(long start, long end, ByteBuffer buffer) {
+            return new TestSegment(start, end, buffer.getInt());
+        }
+    };
+
+    private final List<TestSegment> fSegments = new ArrayList<>();
+    private File fFile;
+    private DiskSegmentStore<TestSegment> fStore;
+
+    /**
+     * Create a store with several runs, some segments being still in memory
+     *
+     * @throws IOException
+     *             If the file cannot be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        fFile = File.createTempFile("segments", ".dat"); //$NON-NLS-1$ //$NON-NLS-2$
+        fStore = DiskSegmentStore.createNew(fFile, SERIALIZER, RUN_SIZE);
+
+        Random random = new Random(42);
+        for (int i = 0; i < NB_SEGMENTS; i++) {
+            long start = random.nextInt(100000);
+            /* Mostly short segments, with a few long ones */
+            long length = (i % 50 == 0 ? random.nextInt(50000) : random.nextInt(500));
+            TestSegment segment = new TestSegment(start, start + length, i);
+            fSegments.add(segment);
+            fStore.addElement(segment);
+        }
+    }
+
+    /**
+     * Delete the file
+     */
+    @After
+    public void tearDown() {
+        fStore.dispose();
+        fFile.delete();
+    }
+
+    /**
+     * Test queries while some segments are not written yet
+     */
+    @Test
+    public void testQueriesWhileBuilding() {
+        assertFalse(fStore.isFinished());
+        checkStore(fStore);
+    }
+
+    /**
+     * Test queries on a completed store
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testQueriesFinished() throws IOException {
+        fStore.finishedBuilding();
+        assertTrue(fStore.isFinished());
+        checkStore(fStore);
+    }
+
+    /**
+     * Test reopening a completed store
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testReopen() throws IOException {
+        fStore.finishedBuilding();
+        DiskSegmentStore<TestSegment> reopened = DiskSegmentStore.openExisting(fFile, SERIALIZER);
+        try {
+            assertTrue(reopened.isFinished());
+            checkStore(reopened);
+        } finally {
+            reopened.dispose();
+        }
+    }
+
+    /**
+     * Test that an incomplete file cannot be reopened
+     *
+     * @throws IOException
+     *             Expected exception
+     */
+    @Test(expected = IOException.class)
+    public void testReopenIncomplete() throws IOException {
+        DiskSegmentStore.openExisting(fFile, SERIALIZER);
+    }
+
+    /**
+     * Test that no segment can be added to a completed store
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterFinished() throws IOException {
+        fStore.finishedBuilding();
+        fStore.addElement(new TestSegment(0, 1, NB_SEGMENTS));
+    }
+
+    /**
+     * Test that the queries are not blocked while a run is written to the
+     * file, and still see the segments of that run
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testQueriesWhileWriting() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ISegmentSerializer<TestSegment> blockingSerializer = new ISegmentSerializer<TestSegment>() {
+            @Override
+            public int getSerializedSize(TestSegment segment) {
+                return SERIALIZER.getSerializedSize(segment);
+            }
+
+            @Override
+            public void write(TestSegment segment, ByteBuffer buffer) {
+                if (segment.getId() == 0) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                SERIALIZER.write(segment, buffer);
+            }
+
+            @Override
+            public TestSegment read(long start, long end, ByteBuffer buffer) {
+                return SERIALIZER.read(start, end, buffer);
+            }
+        };
+
+        File file = File.createTempFile("segments", ".dat"); //$NON-NLS-1$ //$NON-NLS-2$
+        final DiskSegmentStore<TestSegment> store = DiskSegmentStore.createNew(file, blockingSerializer, RUN_SIZE);
+        Thread builder = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < RUN_SIZE; i++) {
+                    store.addElement(fSegments.get(i));
+                }
+            }
+        };
+        try {
+            builder.start();
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+            /* The run is being written, its segments are still visible */
+            assertEquals(RUN_SIZE, store.getNbElements());
+            assertEquals(RUN_SIZE - 1, store.getElementAtIndex(RUN_SIZE - 1).getId());
+            Set<Integer> expected = new TreeSet<>();
+            for (int i = 0; i < RUN_SIZE; i++) {
+                if (fSegments.get(i).getStart() <= 1000 && fSegments.get(i).getEnd() >= 1000) {
+                    expected.add(i);
+                }
+            }
+            assertEquals(expected, getIds(store.getIntersectingElements(1000)));
+
+            release.countDown();
+            builder.join();
+            assertEquals(expected, getIds(store.getIntersectingElements(1000)));
+        } finally {
+            release.countDown();
+            builder.join();
+            store.dispose();
+            file.delete();
+        }
+    }
+
+    private void checkStore(DiskSegmentStore<TestSegment> store) {
+        assertEquals(NB_SEGMENTS, store.getNbElements());
+
+        /* Indexes and iteration are in insertion order */
+        for (int i = 0; i < NB_SEGMENTS; i += 7) {
+            assertEquals(i, store.getElementAtIndex(i).getId());
+        }
+        Iterator<TestSegment> iter = store.iterator();
+        for (int i = 0; i < NB_SEGMENTS; i++) {
+            assertTrue(iter.hasNext());
+            assertEquals(i, iter.next().getId());
+        }
+        assertFalse(iter.hasNext());
+
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            long start = random.nextInt(110000) - 5000;
+            long end = start + random.nextInt(2000);
+            assertEquals(getExpected(start, end), getIds(store.getIntersectingElements(start, end)));
+            assertEquals(getExpected(start, start), getIds(store.getIntersectingElements(start)));
+        }
+    }
+
+    private Set<Integer> getExpected(long start, long end) {
+        Set<Integer> ret = new TreeSet<>();
+        for (TestSegment segment : fSegments) {
+            if (segment.getStart() <= end && segment.getEnd() >= start) {
+                ret.add(segment.getId());
+            }
+        }
+        return ret;
+    }
+
+    private static Set<Integer> getIds(Iterable<TestSegment> segments) {
+        Set<Integer> ret = new TreeSet<>();
+        for (TestSegment segment : segments) {
+            assertTrue(ret.add(segment.getId()));
+        }
+        return ret;
+    }
+}
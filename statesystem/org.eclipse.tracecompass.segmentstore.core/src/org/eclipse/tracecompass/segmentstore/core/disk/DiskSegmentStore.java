@@ -0,0 +1,732 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.segmentstore.core.disk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
+import org.eclipse.tracecompass.segmentstore.core.ISegmentStore;
+
+/**
+ * Implementation of a {@link ISegmentStore} that keeps its segments in a file,
+ * so that it can hold many more segments than what fits in memory, and can be
+ * reopened later without rebuilding it.
+ *
+ * The segments are added to an in-memory buffer. When this buffer is full, its
+ * segments are sorted by start time and written to the file as a "run": the
+ * leaves of a run contain the segments themselves, and the nodes above them
+ * contain the lowest start and highest end of their children, like a packed
+ * R-tree. Intersection queries only go down the branches that can contain
+ * matching segments, so a query is logarithmic in the size of each run (plus
+ * the number of results). The runs are memory-mapped for reading, and the
+ * most recently used leaves are kept in a cache.
+ *
+ * The store is completed by calling {@link #finishedBuilding()}, which writes
+ * the last run and the table of runs. A completed file can then be reopened
+ * with {@link #openExisting}. The indexes used by
+ * {@link #getElementAtIndex(long)} and the iteration order are the order in
+ * which the segments were added.
+ *
+ * Segments can only be added by one thread at a time, but queries can be run
+ * by any number of threads at the same time. The runs are written to the file
+ * without holding the lock of the queries, which still see their segments in
+ * memory until the run is complete.
+ *
+ * @param <T>
+ *            The type of segment held in this store
+ * @since 1.1
+ */
+public class DiskSegmentStore<T extends ISegment> implements ISegmentStore<T> {
+
+    /** Default number of segments in each run */
+    public static final int DEFAULT_RUN_SIZE = 1 << 18;
+
+    private static final int MAGIC_NUMBER = 0x05E65707;
+    private static final int FILE_VERSION = 1;
+
+    private static final int LEAF_CAPACITY = 64;
+    private static final int CORE_CAPACITY = 64;
+    private static final int CACHE_SIZE = 256;
+
+    private static final byte LEAF_NODE = 0;
+    private static final byte CORE_NODE = 1;
+
+    /* type, number of entries */
+    private static final int NODE_HEADER_SIZE = 5;
+    /* start, end, payload size */
+    private static final int RECORD_HEADER_SIZE = 20;
+    /* lowest start, highest end, child position */
+    private static final int CORE_ENTRY_SIZE = 24;
+    /* position, size, root, offsets, lowest start, highest end, count */
+    private static final int RUN_DESCRIPTOR_SIZE = 52;
+    /* magic, version, run size, number of runs, runs table, elements */
+    private static final int TRAILER_SIZE = 32;
+
+    private final File fFile;
+    private final RandomAccessFile fRaf;
+    private final FileChannel fChannel;
+    private final ISegmentSerializer<T> fSerializer;
+    private final int fRunSize;
+
+    /* The runs written so far, replaced by a new list when a run is added */
+    private volatile List<Run> fRuns = Collections.emptyList();
+
+    /* Segments not written to the file yet, guarded by 'this' */
+    private List<T> fPending = new ArrayList<>();
+    /* Segments of the run being written, guarded by 'this' */
+    private List<T> fWriting = Collections.emptyList();
+    private boolean fFinishing;
+    private boolean fFinished;
+
+    /* Lock of the writes to the file, taken before 'this' */
+    private final Object fWriteLock = new Object();
+    private long fFileEnd = 0;
+
+    private volatile long fNbElements = 0;
+
+    /* Decoded leaves, by position in the file */
+    private final Map<Long, List<T>> fLeafCache = new LinkedHashMap<Long, List<T>>(CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(@Nullable Map.Entry<Long, List<T>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * A sorted, indexed block of segments in the file. The positions inside
+     * the run are relative to the start of the run.
+     */
+    private static final class Run {
+        final long fPosition;
+        final long fRootPosition;
+        final long fOffsetsPosition;
+        final long fMinStart;
+        final long fMaxEnd;
+        final int fCount;
+        final long fFirstIndex;
+        final MappedByteBuffer fBuffer;
+
+        Run(FileChannel fc, long position, long size, long rootPosition, long offsetsPosition,
+                long minStart, long maxEnd, int count, long firstIndex) throws IOException {
+            fPosition = position;
+            fRootPosition = rootPosition;
+            fOffsetsPosition = offsetsPosition;
+            fMinStart = minStart;
+            fMaxEnd = maxEnd;
+            fCount = count;
+            fFirstIndex = firstIndex;
+            fBuffer = fc.map(MapMode.READ_ONLY, position, size);
+        }
+
+        long getSize() {
+            return fBuffer.capacity();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors
+    // ------------------------------------------------------------------------
+
+    private DiskSegmentStore(File file, RandomAccessFile raf, ISegmentSerializer<T> serializer, int runSize) {
+        fFile = file;
+        fRaf = raf;
+        fChannel = raf.getChannel();
+        fSerializer = serializer;
+        fRunSize = runSize;
+    }
+
+    /**
+     * Create a new, empty segment store, using the default run size. Any
+     * existing file at that location will be overwritten.
+     *
+     * @param <T>
+     *            The type of segment
+     * @param file
+     *            The file in which to store the segments
+     * @param serializer
+     *            The serializer of the segments
+     * @return The new segment store
+     * @throws IOException
+     *             If the file cannot be created
+     */
+    public static <T extends ISegment> DiskSegmentStore<T> createNew(File file,
+            ISegmentSerializer<T> serializer) throws IOException {
+        return createNew(file, serializer, DEFAULT_RUN_SIZE);
+    }
+
+    /**
+     * Create a new, empty segment store. Any existing file at that location
+     * will be overwritten.
+     *
+     * @param <T>
+     *            The type of segment
+     * @param file
+     *            The file in which to store the segments
+     * @param serializer
+     *            The serializer of the segments
+     * @param runSize
+     *            The number of segments kept in memory before they are sorted
+     *            and written to the file. Bigger runs mean fewer runs to look
+     *            into for every query, but more memory used while building.
+     * @return The new segment store
+     * @throws IOException
+     *             If the file cannot be created
+     */
+    public static <T extends ISegment> DiskSegmentStore<T> createNew(File file,
+            ISegmentSerializer<T> serializer, int runSize) throws IOException {
+        if (runSize <= 0) {
+            throw new IllegalArgumentException("Invalid run size: " + runSize); //$NON-NLS-1$
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+        raf.setLength(0);
+        return new DiskSegmentStore<>(file, raf, serializer, runSize);
+    }
+
+    /**
+     * Reopen a segment store that was completed with
+     * {@link #finishedBuilding()}. No segments can be added to it.
+     *
+     * @param <T>
+     *            The type of segment
+     * @param file
+     *            The file of the segment store
+     * @param serializer
+     *            The serializer of the segments, which must be compatible with
+     *            the one used to build the file
+     * @return The segment store
+     * @throws IOException
+     *             If the file cannot be read, or is not a complete segment
+     *             store file
+     */
+    public static <T extends ISegment> DiskSegmentStore<T> openExisting(File file,
+            ISegmentSerializer<T> serializer) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+        try {
+            FileChannel fc = raf.getChannel();
+            long fileSize = fc.size();
+            if (fileSize < TRAILER_SIZE) {
+                throw new IOException("Not a segment store file: " + file); //$NON-NLS-1$
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            readFully(fc, trailer, fileSize - TRAILER_SIZE);
+            if (trailer.getInt() != MAGIC_NUMBER) {
+                throw new IOException("Not a segment store file: " + file); //$NON-NLS-1$
+            }
+            if (trailer.getInt() != FILE_VERSION) {
+                throw new IOException("Unsupported segment store file version: " + file); //$NON-NLS-1$
+            }
+            int runSize = trailer.getInt();
+            int nbRuns = trailer.getInt();
+            long runsTablePosition = trailer.getLong();
+            long nbElements = trailer.getLong();
+            if (runSize <= 0 || nbRuns < 0 ||
+                    runsTablePosition + (long) nbRuns * RUN_DESCRIPTOR_SIZE != fileSize - TRAILER_SIZE) {
+                throw new IOException("Invalid segment store file: " + file); //$NON-NLS-1$
+            }
+
+            DiskSegmentStore<T> store = new DiskSegmentStore<>(file, raf, serializer, runSize);
+            ByteBuffer table = ByteBuffer.allocate(nbRuns * RUN_DESCRIPTOR_SIZE);
+            readFully(fc, table, runsTablePosition);
+            List<Run> runs = new ArrayList<>(nbRuns);
+            long firstIndex = 0;
+            for (int i = 0; i < nbRuns; i++) {
+                long position = table.getLong();
+                long size = table.getLong();
+                long root = table.getLong();
+                long offsets = table.getLong();
+                long minStart = table.getLong();
+                long maxEnd = table.getLong();
+                int count = table.getInt();
+                if (position < 0 || size < 0 || position + size > runsTablePosition) {
+                    throw new IOException("Invalid segment store file: " + file); //$NON-NLS-1$
+                }
+                runs.add(new Run(fc, position, size, root, offsets, minStart, maxEnd, count, firstIndex));
+                firstIndex += count;
+            }
+            if (firstIndex != nbElements) {
+                throw new IOException("Invalid segment store file: " + file); //$NON-NLS-1$
+            }
+            store.fRuns = Collections.unmodifiableList(runs);
+            store.fNbElements = nbElements;
+            store.fFileEnd = runsTablePosition;
+            store.fFinished = true;
+            return store;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Accessors
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the file in which the segments are stored.
+     *
+     * @return The file
+     */
+    public File getFile() {
+        return fFile;
+    }
+
+    /**
+     * Get whether this store was completed, in which case no more segments can
+     * be added to it.
+     *
+     * @return If the store is completed
+     */
+    public synchronized boolean isFinished() {
+        return fFinished;
+    }
+
+    // ------------------------------------------------------------------------
+    // ISegmentStore
+    // ------------------------------------------------------------------------
+
+    @Override
+    public void addElement(T elem) {
+        List<T> segments = null;
+        synchronized (this) {
+            if (fFinished || fFinishing) {
+                throw new IllegalStateException("Cannot add segments to a completed store"); //$NON-NLS-1$
+            }
+            fPending.add(elem);
+            fNbElements++;
+            if (fPending.size() >= fRunSize) {
+                segments = startRun();
+            }
+        }
+        if (segments != null) {
+            try {
+                synchronized (fWriteLock) {
+                    writeRun(segments);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Override
+    public long getNbElements() {
+        return fNbElements;
+    }
+
+    @Override
+    public T getElementAtIndex(long index) {
+        List<Run> runs;
+        synchronized (this) {
+            if (index < 0 || index >= fNbElements) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + fNbElements); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            runs = fRuns;
+            long nbWritten = getNbWritten(runs);
+            if (index >= nbWritten) {
+                int inMemory = (int) (index - nbWritten);
+                T ret = (inMemory < fWriting.size() ? fWriting.get(inMemory) : fPending.get(inMemory - fWriting.size()));
+                if (ret == null) {
+                    throw new IllegalStateException();
+                }
+                return ret;
+            }
+        }
+
+        /* All runs except the last one are full */
+        Run run = runs.get((int) Math.min(index / fRunSize, runs.size() - 1));
+        int position = (int) run.fBuffer.getLong((int) (run.fOffsetsPosition + (index - run.fFirstIndex) * 8));
+        ByteBuffer buffer = run.fBuffer.duplicate();
+        buffer.position(position);
+        return readRecord(buffer);
+    }
+
+    @Override
+    public Iterable<T> getIntersectingElements(long position) {
+        return getIntersectingElements(position, position);
+    }
+
+    @Override
+    public Iterable<T> getIntersectingElements(long start, long end) {
+        List<T> ret = new ArrayList<>();
+        List<Run> runs;
+        synchronized (this) {
+            runs = fRuns;
+            for (T segment : fWriting) {
+                if (segment.getStart() <= end && segment.getEnd() >= start) {
+                    ret.add(segment);
+                }
+            }
+            for (T segment : fPending) {
+                if (segment.getStart() <= end && segment.getEnd() >= start) {
+                    ret.add(segment);
+                }
+            }
+        }
+
+        for (Run run : runs) {
+            if (run.fMinStart <= end && run.fMaxEnd >= start) {
+                searchNode(run, (int) run.fRootPosition, start, end, ret);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final long nbElements = fNbElements;
+        return new Iterator<T>() {
+            private long fIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return fIndex < nbElements;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getElementAtIndex(fIndex++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void dispose() {
+        fPending.clear();
+        fWriting = Collections.emptyList();
+        synchronized (fLeafCache) {
+            fLeafCache.clear();
+        }
+        try {
+            fRaf.close();
+        } catch (IOException e) {
+            /* Nothing more we can do */
+        }
+        if (!fFinished) {
+            /* An incomplete file cannot be reopened anyway */
+            fFile.delete();
+        }
+        fFinished = true;
+    }
+
+    /**
+     * Write the segments that are still in memory, and the information needed
+     * to reopen the file. After this, no more segments can be added, but the
+     * store can still be queried.
+     *
+     * @throws IOException
+     *             If there was an error writing to the file
+     */
+    public void finishedBuilding() throws IOException {
+        synchronized (fWriteLock) {
+            List<T> segments;
+            synchronized (this) {
+                if (fFinished) {
+                    return;
+                }
+                fFinishing = true;
+                segments = startRun();
+            }
+            try {
+                writeRun(segments);
+                writeTrailer();
+            } finally {
+                synchronized (this) {
+                    fFinishing = false;
+                }
+            }
+        }
+    }
+
+    /* Write the table of runs and the trailer, with the write lock held */
+    private void writeTrailer() throws IOException {
+        List<Run> runs = fRuns;
+        ByteBuffer buffer = ByteBuffer.allocate(runs.size() * RUN_DESCRIPTOR_SIZE + TRAILER_SIZE);
+        for (Run run : runs) {
+            buffer.putLong(run.fPosition);
+            buffer.putLong(run.getSize());
+            buffer.putLong(run.fRootPosition);
+            buffer.putLong(run.fOffsetsPosition);
+            buffer.putLong(run.fMinStart);
+            buffer.putLong(run.fMaxEnd);
+            buffer.putInt(run.fCount);
+        }
+        buffer.putInt(MAGIC_NUMBER);
+        buffer.putInt(FILE_VERSION);
+        buffer.putInt(fRunSize);
+        buffer.putInt(runs.size());
+        buffer.putLong(fFileEnd);
+        buffer.putLong(getNbWritten(runs));
+        buffer.flip();
+        writeFully(fChannel, buffer, fFileEnd);
+        fChannel.force(false);
+        synchronized (this) {
+            fFinished = true;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Writing
+    // ------------------------------------------------------------------------
+
+    /*
+     * Hand the pending segments over to the next run, which the queries still
+     * read from memory until it is written. Should be called with the lock
+     * held.
+     */
+    private List<T> startRun() {
+        List<T> segments = fPending;
+        fWriting = segments;
+        fPending = new ArrayList<>();
+        return segments;
+    }
+
+    /*
+     * Sort the segments and write them as a new run. Should be called with
+     * the write lock held, but not the lock of the queries, which is only
+     * taken to publish the run.
+     */
+    private void writeRun(final List<T> segments) throws IOException {
+        final int count = segments.size();
+        if (count == 0) {
+            return;
+        }
+
+        /* Sort by start time, keeping track of the insertion order */
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(@Nullable Integer o1, @Nullable Integer o2) {
+                if (o1 == null || o2 == null) {
+                    throw new IllegalArgumentException();
+                }
+                ISegment s1 = segments.get(o1);
+                ISegment s2 = segments.get(o2);
+                int ret = Long.compare(s1.getStart(), s2.getStart());
+                return (ret != 0 ? ret : Long.compare(s1.getEnd(), s2.getEnd()));
+            }
+        });
+
+        /* Compute the size of the run */
+        int nbLeaves = (count + LEAF_CAPACITY - 1) / LEAF_CAPACITY;
+        long size = (long) nbLeaves * NODE_HEADER_SIZE + (long) count * (RECORD_HEADER_SIZE + 8);
+        for (T segment : segments) {
+            size += fSerializer.getSerializedSize(segment);
+        }
+        for (int nbNodes = nbLeaves; nbNodes > 1;) {
+            int nbParents = (nbNodes + CORE_CAPACITY - 1) / CORE_CAPACITY;
+            size += (long) nbParents * NODE_HEADER_SIZE + (long) nbNodes * CORE_ENTRY_SIZE;
+            nbNodes = nbParents;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Run too large, use a smaller run size"); //$NON-NLS-1$
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+
+        /* Write the leaves */
+        long[] recordPositions = new long[count];
+        long[] minStarts = new long[nbLeaves];
+        long[] maxEnds = new long[nbLeaves];
+        long[] positions = new long[nbLeaves];
+        for (int leaf = 0; leaf < nbLeaves; leaf++) {
+            int first = leaf * LEAF_CAPACITY;
+            int last = Math.min(first + LEAF_CAPACITY, count);
+            positions[leaf] = buffer.position();
+            minStarts[leaf] = segments.get(order[first]).getStart();
+            maxEnds[leaf] = Long.MIN_VALUE;
+            buffer.put(LEAF_NODE);
+            buffer.putInt(last - first);
+            for (int i = first; i < last; i++) {
+                T segment = segments.get(order[i]);
+                recordPositions[order[i]] = buffer.position();
+                maxEnds[leaf] = Math.max(maxEnds[leaf], segment.getEnd());
+                writeRecord(segment, buffer);
+            }
+        }
+
+        /* Write the levels of core nodes, up to the root */
+        int nbNodes = nbLeaves;
+        while (nbNodes > 1) {
+            int nbParents = (nbNodes + CORE_CAPACITY - 1) / CORE_CAPACITY;
+            for (int parent = 0; parent < nbParents; parent++) {
+                int first = parent * CORE_CAPACITY;
+                int last = Math.min(first + CORE_CAPACITY, nbNodes);
+                long position = buffer.position();
+                long minStart = minStarts[first];
+                long maxEnd = Long.MIN_VALUE;
+                buffer.put(CORE_NODE);
+                buffer.putInt(last - first);
+                for (int i = first; i < last; i++) {
+                    buffer.putLong(minStarts[i]);
+                    buffer.putLong(maxEnds[i]);
+                    buffer.putLong(positions[i]);
+                    maxEnd = Math.max(maxEnd, maxEnds[i]);
+                }
+                /*
+                 * The entry of this parent replaces the one of its first
+                 * child, the other children of this level are after it.
+                 */
+                minStarts[parent] = minStart;
+                maxEnds[parent] = maxEnd;
+                positions[parent] = position;
+            }
+            nbNodes = nbParents;
+        }
+        long rootPosition = positions[0];
+        long minStart = minStarts[0];
+        long maxEnd = maxEnds[0];
+
+        /* Write the positions of the segments, in insertion order */
+        long offsetsPosition = buffer.position();
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(recordPositions[i]);
+        }
+
+        buffer.flip();
+        long runPosition = fFileEnd;
+        writeFully(fChannel, buffer, runPosition);
+        fFileEnd += size;
+
+        List<Run> runs = new ArrayList<>(fRuns);
+        runs.add(new Run(fChannel, runPosition, size, rootPosition, offsetsPosition,
+                minStart, maxEnd, count, getNbWritten(fRuns)));
+        synchronized (this) {
+            fRuns = Collections.unmodifiableList(runs);
+            fWriting = Collections.emptyList();
+        }
+    }
+
+    private void writeRecord(T segment, ByteBuffer buffer) {
+        int size = fSerializer.getSerializedSize(segment);
+        buffer.putLong(segment.getStart());
+        buffer.putLong(segment.getEnd());
+        buffer.putInt(size);
+        int expectedEnd = buffer.position() + size;
+        fSerializer.write(segment, buffer);
+        if (buffer.position() != expectedEnd) {
+            throw new IllegalStateException("Serializer wrote " + (buffer.position() - expectedEnd + size) + " bytes, expected " + size); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Reading
+    // ------------------------------------------------------------------------
+
+    private void searchNode(Run run, int position, long start, long end, List<T> results) {
+        MappedByteBuffer buffer = run.fBuffer;
+        int count = buffer.getInt(position + 1);
+        if (buffer.get(position) == LEAF_NODE) {
+            for (T segment : readLeaf(run, position)) {
+                if (segment.getStart() > end) {
+                    /* The segments are sorted by start */
+                    break;
+                }
+                if (segment.getEnd() >= start) {
+                    results.add(segment);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int entry = position + NODE_HEADER_SIZE + i * CORE_ENTRY_SIZE;
+            if (buffer.getLong(entry) > end) {
+                /* The children are sorted by start */
+                break;
+            }
+            if (buffer.getLong(entry + 8) >= start) {
+                searchNode(run, (int) buffer.getLong(entry + 16), start, end, results);
+            }
+        }
+    }
+
+    private List<T> readLeaf(Run run, int position) {
+        Long key = run.fPosition + position;
+        synchronized (fLeafCache) {
+            List<T> leaf = fLeafCache.get(key);
+            if (leaf != null) {
+                return leaf;
+            }
+        }
+
+        ByteBuffer buffer = run.fBuffer.duplicate();
+        buffer.position(position + 1);
+        int count = buffer.getInt();
+        List<T> leaf = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            leaf.add(readRecord(buffer));
+        }
+        synchronized (fLeafCache) {
+            fLeafCache.put(key, leaf);
+        }
+        return leaf;
+    }
+
+    /* Read the record at the position of the buffer, and move after it */
+    private T readRecord(ByteBuffer buffer) {
+        long start = buffer.getLong();
+        long end = buffer.getLong();
+        int size = buffer.getInt();
+        int recordEnd = buffer.position() + size;
+        T ret = fSerializer.read(start, end, buffer);
+        buffer.position(recordEnd);
+        return ret;
+    }
+
+    private static long getNbWritten(List<Run> runs) {
+        if (runs.isEmpty()) {
+            return 0;
+        }
+        Run last = runs.get(runs.size() - 1);
+        return last.fFirstIndex + last.fCount;
+    }
+
+    private static void readFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file"); //$NON-NLS-1$
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.segmentstore.core.disk;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.tracecompass.segmentstore.core.ISegment;
+
+/**
+ * Converts segments to and from the bytes stored in a
+ * {@link DiskSegmentStore}. The start and end of the segments are already
+ * stored by the segment store, the serializer only has to handle the rest of
+ * their contents.
+ *
+ * @param <T>
+ *            The type of segment
+ * @since 1.1
+ */
+public interface ISegmentSerializer<T extends ISegment> {
+
+    /**
+     * Get the number of bytes that {@link #write} will use for a segment.
+     *
+     * @param segment
+     *            The segment
+     * @return The size of the serialized segment, in bytes
+     */
+    int getSerializedSize(T segment);
+
+    /**
+     * Write the contents of a segment at the current position of a buffer.
+     * Exactly {@link #getSerializedSize} bytes must be written.
+     *
+     * @param segment
+     *            The segment to write
+     * @param buffer
+     *            The buffer to write to
+     */
+    void write(T segment, ByteBuffer buffer);
+
+    /**
+     * Read a segment that was written with {@link #write}, from the current
+     * position of a buffer.
+     *
+     * @param start
+     *            The start of the segment
+     * @param end
+     *            The end of the segment
+     * @param buffer
+     *            The buffer to read from
+     * @return The segment
+     */
+    T read(long start, long end, ByteBuffer buffer);
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests;
+
+import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link ITmfStateSystem#query2D} method, on a history tree backend
+ * (which implements it natively) and on an in-memory backend (which uses
+ * singular queries).
+ */
+public class StateSystemQuery2DTest {
+
+    private static final @NonNull String SSID = "query2d-test"; //$NON-NLS-1$
+    private static final int NB_ATTRIBUTES = 20;
+    private static final long END_TIME = 10000;
+
+    private File fHtFile;
+    private ITmfStateSystemBuilder fHtStateSystem;
+    private ITmfStateSystemBuilder fMemStateSystem;
+
+    /**
+     * Build the same state system with both backends
+     *
+     * @throws IOException
+     *             If the history file can not be created
+     * @throws AttributeNotFoundException
+     *             Fails the test
+     */
+    @Before
+    public void setUp() throws IOException, AttributeNotFoundException {
+        fHtFile = File.createTempFile("query2d", ".ht"); //$NON-NLS-1$ //$NON-NLS-2$
+        fHtStateSystem = buildStateSystem(StateHistoryBackendFactory.createHistoryTreeBackendNewFile(
+                SSID, checkNotNull(fHtFile), 0, 0, 0));
+        fMemStateSystem = buildStateSystem(StateHistoryBackendFactory.createInMemoryBackend(SSID, 0));
+    }
+
+    private static ITmfStateSystemBuilder buildStateSystem(@NonNull IStateHistoryBackend backend)
+            throws AttributeNotFoundException {
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(backend);
+        int[] quarks = new int[NB_ATTRIBUTES];
+        for (int i = 0; i < NB_ATTRIBUTES; i++) {
+            quarks[i] = ss.getQuarkAbsoluteAndAdd("attribute" + i); //$NON-NLS-1$
+        }
+        for (long t = 1; t < END_TIME; t++) {
+            for (int i = 0; i < NB_ATTRIBUTES; i++) {
+                if (t % ((i + 3) * 7) == 0) {
+                    ss.modifyAttribute(t, TmfStateValue.newValueInt((int) (t % 13)), quarks[i]);
+                }
+            }
+        }
+        ss.closeHistory(END_TIME);
+        return ss;
+    }
+
+    /**
+     * Clean-up
+     */
+    @After
+    public void tearDown() {
+        fHtStateSystem.dispose();
+        fMemStateSystem.dispose();
+        fHtFile.delete();
+    }
+
+    /**
+     * Compute the expected result of a 2D query with singular queries
+     */
+    private static Set<String> getExpected(ITmfStateSystem ss, List<Integer> quarks,
+            long t1, long t2, long resolution) throws AttributeNotFoundException, StateSystemDisposedException {
+        Set<String> expected = new HashSet<>();
+        for (int quark : quarks) {
+            for (long t = t1; t <= t2; t += resolution) {
+                expected.add(toString(ss.querySingleState(t, quark)));
+            }
+            expected.add(toString(ss.querySingleState(t2, quark)));
+        }
+        return expected;
+    }
+
+    private static Set<String> getActual(ITmfStateSystem ss, List<Integer> quarks,
+            long t1, long t2, long resolution) throws AttributeNotFoundException, StateSystemDisposedException {
+        List<ITmfStateInterval> intervals = ss.query2D(quarks, t1, t2, resolution);
+        Set<String> actual = new HashSet<>();
+        for (ITmfStateInterval interval : intervals) {
+            assertTrue(actual.add(toString(interval)));
+        }
+        return actual;
+    }
+
+    private static String toString(ITmfStateInterval interval) {
+        return interval.getAttribute() + ":" + interval.getStartTime() + "-" //$NON-NLS-1$ //$NON-NLS-2$
+                + interval.getEndTime() + "=" + interval.getStateValue(); //$NON-NLS-1$
+    }
+
+    private void testQuery(List<Integer> quarks, long t1, long t2, long resolution)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        Set<String> expected = getExpected(fMemStateSystem, quarks, t1, t2, resolution);
+        assertEquals(expected, getActual(fHtStateSystem, quarks, t1, t2, resolution));
+        assertEquals(expected, getActual(fMemStateSystem, quarks, t1, t2, resolution));
+    }
+
+    private static List<Integer> getAllQuarks() {
+        List<Integer> quarks = new ArrayList<>();
+        for (int i = 0; i < NB_ATTRIBUTES; i++) {
+            quarks.add(i);
+        }
+        return quarks;
+    }
+
+    /**
+     * Test a query returning all the intervals of all the attributes
+     *
+     * @throws AttributeNotFoundException
+     *             Fails the test
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testFullRange() throws AttributeNotFoundException, StateSystemDisposedException {
+        List<Integer> quarks = getAllQuarks();
+        testQuery(quarks, 0, END_TIME, 1);
+
+        /* Compare with the utility method */
+        int nbIntervals = 0;
+        for (int quark : quarks) {
+            nbIntervals += StateSystemUtils.queryHistoryRange(fHtStateSystem, quark, 0, END_TIME).size();
+        }
+        assertEquals(nbIntervals, fHtStateSystem.query2D(quarks, 0, END_TIME, 1).size());
+    }
+
+    /**
+     * Test queries on a sub-range, with a resolution
+     *
+     * @throws AttributeNotFoundException
+     *             Fails the test
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testResolution() throws AttributeNotFoundException, StateSystemDisposedException {
+        List<Integer> quarks = getAllQuarks();
+        testQuery(quarks, 1234, 5678, 10);
+        testQuery(quarks, 0, END_TIME, 97);
+        testQuery(quarks, 5000, 5000, 50);
+        testQuery(quarks, 9000, END_TIME, 1000);
+    }
+
+    /**
+     * Test a query on a subset of the attributes
+     *
+     * @throws AttributeNotFoundException
+     *             Fails the test
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testSomeAttributes() throws AttributeNotFoundException, StateSystemDisposedException {
+        List<Integer> quarks = new ArrayList<>();
+        Collections.addAll(quarks, 2, 3, 17);
+        testQuery(quarks, 100, 8000, 7);
+        assertTrue(fHtStateSystem.query2D(Collections.<Integer> emptyList(), 0, END_TIME, 1).isEmpty());
+    }
+
+    /**
+     * Test a query with an invalid quark
+     *
+     * @throws AttributeNotFoundException
+     *             Expected
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test(expected = AttributeNotFoundException.class)
+    public void testInvalidQuark() throws AttributeNotFoundException, StateSystemDisposedException {
+        fHtStateSystem.query2D(Collections.singletonList(NB_ATTRIBUTES), 0, END_TIME, 1);
+    }
+
+    /**
+     * Test a query with an invalid time range
+     *
+     * @throws AttributeNotFoundException
+     *             Fails the test
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test(expected = TimeRangeException.class)
+    public void testInvalidRange() throws AttributeNotFoundException, StateSystemDisposedException {
+        fHtStateSystem.query2D(getAllQuarks(), END_TIME, 0, 1);
+    }
+}
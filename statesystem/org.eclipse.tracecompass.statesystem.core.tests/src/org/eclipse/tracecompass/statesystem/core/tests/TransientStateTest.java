@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.tracecompass.internal.statesystem.core.TransientState;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateValueTypeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link TransientState}, including queries done while another
+ * thread is modifying it.
+ */
+public class TransientStateTest {
+
+    private static final long START_TIME = 1000;
+    private static final int NB_ATTRIBUTES = 100;
+
+    private IStateHistoryBackend fBackend;
+    private TransientState fTransState;
+
+    /**
+     * Create a transient state with more attributes than its initial capacity
+     */
+    @Before
+    public void setUp() {
+        fBackend = StateHistoryBackendFactory.createInMemoryBackend("test-ss", START_TIME); //$NON-NLS-1$
+        fTransState = new TransientState(fBackend);
+        for (int i = 0; i < NB_ATTRIBUTES; i++) {
+            fTransState.addEmptyEntry();
+        }
+    }
+
+    /**
+     * Test the ongoing values and intervals after some state changes
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testStateChanges() throws Exception {
+        for (int i = 0; i < NB_ATTRIBUTES; i++) {
+            assertTrue(fTransState.getOngoingStateValue(i).isNull());
+            assertEquals(START_TIME, fTransState.getOngoingStartTime(i));
+        }
+
+        int quark = NB_ATTRIBUTES - 1;
+        fTransState.processStateChange(1100, TmfStateValue.newValueInt(1), quark);
+        fTransState.processStateChange(1200, TmfStateValue.newValueInt(1), quark);
+        fTransState.processStateChange(1300, TmfStateValue.newValueInt(2), quark);
+
+        assertEquals(1300, fTransState.getLatestTime());
+        assertEquals(2, fTransState.getOngoingStateValue(quark).unboxInt());
+        assertEquals(1300, fTransState.getOngoingStartTime(quark));
+
+        ITmfStateInterval interval = fTransState.getOngoingInterval(quark);
+        assertEquals(1300, interval.getStartTime());
+        assertEquals(1300, interval.getEndTime());
+        assertNull(fTransState.getIntervalAt(1250, quark));
+        assertNotNull(fTransState.getIntervalAt(1350, quark));
+
+        /* The previous states were inserted in the backend */
+        ITmfStateInterval past = fBackend.doSingularQuery(1150, quark);
+        assertNotNull(past);
+        assertEquals(1100, past.getStartTime());
+        assertEquals(1299, past.getEndTime());
+        assertEquals(1, past.getStateValue().unboxInt());
+    }
+
+    /**
+     * Test that inserting a value of another type is refused
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test(expected = StateValueTypeException.class)
+    public void testTypeMismatch() throws Exception {
+        fTransState.processStateChange(1100, TmfStateValue.newValueInt(1), 0);
+        fTransState.processStateChange(1200, TmfStateValue.newValueLong(1), 0);
+    }
+
+    /**
+     * Test querying an attribute that does not exist
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test(expected = AttributeNotFoundException.class)
+    public void testInvalidAttribute() throws Exception {
+        fTransState.getOngoingStateValue(NB_ATTRIBUTES);
+    }
+
+    /**
+     * Test that the transient state is emptied when it is closed
+     */
+    @Test
+    public void testClose() {
+        fTransState.closeTransientState(2000);
+        assertNull(fTransState.getIntervalAt(1500, 0));
+        try {
+            fTransState.getOngoingInterval(0);
+            fail();
+        } catch (AttributeNotFoundException e) {
+            /* Expected */
+        }
+    }
+
+    /**
+     * Test that readers always see consistent intervals while a writer is
+     * changing the states and adding attributes. The value of each state is
+     * its start time, so a reader seeing a value with the start time of
+     * another state would fail.
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> error = new AtomicReference<>();
+
+        Runnable reader = new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    for (int quark = 0; quark < NB_ATTRIBUTES; quark++) {
+                        ITmfStateInterval interval = fTransState.getIntervalAt(Long.MAX_VALUE, quark);
+                        if (interval == null) {
+                            error.set("Missing interval for quark " + quark); //$NON-NLS-1$
+                            return;
+                        }
+                        ITmfStateValue value = interval.getStateValue();
+                        if (!value.isNull() && value.unboxLong() != interval.getStartTime()) {
+                            error.set("Inconsistent interval " + interval); //$NON-NLS-1$
+                            return;
+                        }
+                    }
+                }
+            }
+        };
+
+        Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(reader);
+            readers[i].start();
+        }
+
+        try {
+            for (long t = START_TIME + 1; t < START_TIME + 200000; t++) {
+                int quark = (int) (t % NB_ATTRIBUTES);
+                fTransState.processStateChange(t, TmfStateValue.newValueLong(t), quark);
+                if (t % 1000 == 0) {
+                    /* New attributes also grow the arrays */
+                    fTransState.addEmptyEntry();
+                }
+            }
+        } finally {
+            done.set(true);
+            for (Thread thread : readers) {
+                thread.join();
+            }
+        }
+        assertNull(error.get());
+    }
+}
@@ -20,7 +20,13 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-    InMemoryBackendTest.class
+    CompactHistoryTreeBackendTest.class,
+    HistoryTreeBackendTest.class,
+    HTNodeCacheTest.class,
+    HTStringDictionaryTest.class,
+    InMemoryBackendTest.class,
+    MappedHistoryTreeBackendTest.class,
+    PartitionedHistoryTreeBackendTest.class
 })
 public class AllTests {
 
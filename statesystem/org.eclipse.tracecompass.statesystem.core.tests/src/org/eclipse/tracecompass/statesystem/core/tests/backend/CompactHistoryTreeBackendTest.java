@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig.NodeFormat;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HistoryTreeBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.MappedHistoryTreeBackend;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the compact node format of the history tree, by comparing a compact
+ * history with a classic one containing the same intervals.
+ */
+public class CompactHistoryTreeBackendTest {
+
+    private static final String SSID = "test-compact"; //$NON-NLS-1$
+    private static final int NUMBER_OF_ATTRIBUTES = 200;
+    private static final int BLOCK_SIZE = 4096;
+    private static final long START_TIME = 1000000000000L;
+    private static final long END_TIME = START_TIME + 20000;
+
+    private static File fClassicFile;
+    private static File fCompactFile;
+    private static HistoryTreeBackend fReference;
+    private static HistoryTreeBackend fixture;
+
+    /**
+     * Build the same history in both formats, then re-open them
+     *
+     * @throws IOException
+     *             If the history files can not be created
+     */
+    @BeforeClass
+    public static void init() throws IOException {
+        fClassicFile = File.createTempFile("test-classic", ".ht"); //$NON-NLS-1$ //$NON-NLS-2$
+        fCompactFile = File.createTempFile("test-compact", ".ht"); //$NON-NLS-1$ //$NON-NLS-2$
+        HistoryTreeBackend classic = new HistoryTreeBackend(SSID,
+                new HTConfig(fClassicFile, BLOCK_SIZE, 5, 0, START_TIME, NodeFormat.CLASSIC));
+        HistoryTreeBackend compact = new HistoryTreeBackend(SSID,
+                new HTConfig(fCompactFile, BLOCK_SIZE, 5, 0, START_TIME, NodeFormat.COMPACT));
+        for (long time = START_TIME; time < END_TIME; time += 100) {
+            for (int attribute = 0; attribute < NUMBER_OF_ATTRIBUTES; attribute++) {
+                long end = time + 99 - (attribute % 7);
+                TmfStateValue value = getValue(time, attribute);
+                classic.insertPastState(time, end, attribute, value);
+                compact.insertPastState(time, end, attribute, value);
+                if (end != time + 99) {
+                    classic.insertPastState(end + 1, time + 99, attribute, TmfStateValue.nullValue());
+                    compact.insertPastState(end + 1, time + 99, attribute, TmfStateValue.nullValue());
+                }
+            }
+        }
+        classic.finishedBuilding(END_TIME);
+        classic.dispose();
+        compact.finishedBuilding(END_TIME);
+        compact.dispose();
+
+        fReference = new HistoryTreeBackend(SSID, fClassicFile, 0);
+        fixture = new HistoryTreeBackend(SSID, fCompactFile, 0);
+    }
+
+    private static TmfStateValue getValue(long time, int attribute) {
+        switch (attribute % 6) {
+        case 0:
+            return TmfStateValue.nullValue();
+        case 1:
+            return TmfStateValue.newValueInt((int) (time % 1000) - 500);
+        case 2:
+            return TmfStateValue.newValueLong(-time * 1000000L);
+        case 3:
+            return TmfStateValue.newValueDouble(time / 3.0);
+        case 4:
+            return TmfStateValue.newValueInt(attribute == 4 ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+        default:
+            /* Few distinct strings, repeated a lot */
+            return TmfStateValue.newValueString("state" + ((time / 100 + attribute) % 5)); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Close and delete the history files
+     */
+    @AfterClass
+    public static void cleanup() {
+        fixture.dispose();
+        fReference.dispose();
+        fClassicFile.delete();
+        fCompactFile.delete();
+    }
+
+    private static void assertSameInterval(ITmfStateInterval expected, ITmfStateInterval actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getEndTime(), actual.getEndTime());
+        assertEquals(expected.getAttribute(), actual.getAttribute());
+        assertEquals(expected.getStateValue(), actual.getStateValue());
+    }
+
+    /**
+     * Test that the compact history is smaller than the classic one
+     */
+    @Test
+    public void testFileSize() {
+        assertTrue(fCompactFile.length() < fClassicFile.length() / 2);
+        assertEquals(fReference.getStartTime(), fixture.getStartTime());
+        assertEquals(fReference.getEndTime(), fixture.getEndTime());
+    }
+
+    /**
+     * Compare singular queries with the classic history
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testSingularQueries() throws StateSystemDisposedException {
+        for (long t = START_TIME; t < END_TIME; t += 37) {
+            for (int attribute = 0; attribute < NUMBER_OF_ATTRIBUTES; attribute++) {
+                ITmfStateInterval expected = fReference.doSingularQuery(t, attribute);
+                ITmfStateInterval actual = fixture.doSingularQuery(t, attribute);
+                assertSameInterval(expected, actual);
+            }
+        }
+    }
+
+    /**
+     * Compare full queries with the classic history
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testFullQueries() throws StateSystemDisposedException {
+        for (long t = START_TIME; t <= END_TIME; t += 113) {
+            List<ITmfStateInterval> expected = new ArrayList<>();
+            List<ITmfStateInterval> actual = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_ATTRIBUTES; i++) {
+                expected.add(null);
+                actual.add(null);
+            }
+            fReference.doQuery(expected, t);
+            fixture.doQuery(actual, t);
+            for (int i = 0; i < NUMBER_OF_ATTRIBUTES; i++) {
+                assertSameInterval(expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    /**
+     * Test that compact histories cannot be memory-mapped
+     *
+     * @throws IOException
+     *             Expected
+     */
+    @Test(expected = IOException.class)
+    public void testNoMappedBackend() throws IOException {
+        new MappedHistoryTreeBackend(SSID, fCompactFile, 0);
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTNode;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTNodeCache;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.LeafNode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the LRU eviction and size accounting of {@link HTNodeCache}.
+ */
+public class HTNodeCacheTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private final HTConfig fConfig = new HTConfig(new File("dummy.ht"), BLOCK_SIZE, 10, 0, 0); //$NON-NLS-1$
+    private final Object fOwner = new Object();
+    private HTNodeCache fCache;
+
+    /**
+     * Create a cache that can hold three nodes
+     */
+    @Before
+    public void setUp() {
+        fCache = new HTNodeCache(3 * BLOCK_SIZE);
+    }
+
+    private HTNode newNode(int seqNumber) {
+        return new LeafNode(fConfig, seqNumber, -1, 0);
+    }
+
+    /**
+     * Test that inserted nodes can be read back, for the right owner only
+     */
+    @Test
+    public void testGet() {
+        HTNode node = newNode(1);
+        fCache.put(fOwner, node);
+        assertSame(node, fCache.get(fOwner, 1));
+        assertNull(fCache.get(fOwner, 2));
+        assertNull(fCache.get(new Object(), 1));
+        assertEquals(BLOCK_SIZE, fCache.getCurrentSize());
+    }
+
+    /**
+     * Test that the least recently used node is the one evicted
+     */
+    @Test
+    public void testLruEviction() {
+        fCache.put(fOwner, newNode(0));
+        fCache.put(fOwner, newNode(1));
+        fCache.put(fOwner, newNode(2));
+
+        /* Access node 0, so node 1 becomes the least recently used */
+        fCache.get(fOwner, 0);
+        fCache.put(fOwner, newNode(3));
+
+        assertEquals(3, fCache.getNodeCount());
+        assertEquals(3 * BLOCK_SIZE, fCache.getCurrentSize());
+        assertNull(fCache.get(fOwner, 1));
+        assertEquals(0, fCache.get(fOwner, 0).getSequenceNumber());
+    }
+
+    /**
+     * Test that colliding sequence numbers (which used to map to the same slot)
+     * can be cached at the same time
+     */
+    @Test
+    public void testNoCollision() {
+        fCache.put(fOwner, newNode(0));
+        fCache.put(fOwner, newNode(256));
+        assertEquals(0, fCache.get(fOwner, 0).getSequenceNumber());
+        assertEquals(256, fCache.get(fOwner, 256).getSequenceNumber());
+    }
+
+    /**
+     * Test replacing a node and shrinking the cache
+     */
+    @Test
+    public void testResize() {
+        fCache.put(fOwner, newNode(0));
+        fCache.put(fOwner, newNode(0));
+        assertEquals(BLOCK_SIZE, fCache.getCurrentSize());
+
+        fCache.put(fOwner, newNode(1));
+        fCache.setMaxSize(BLOCK_SIZE);
+        assertEquals(1, fCache.getNodeCount());
+        assertNull(fCache.get(fOwner, 0));
+    }
+
+    /**
+     * Test removing the nodes of one owner
+     */
+    @Test
+    public void testInvalidate() {
+        Object otherOwner = new Object();
+        fCache.put(fOwner, newNode(0));
+        fCache.put(otherOwner, newNode(0));
+        fCache.invalidate(fOwner);
+
+        assertNull(fCache.get(fOwner, 0));
+        assertEquals(0, fCache.get(otherOwner, 0).getSequenceNumber());
+        assertEquals(BLOCK_SIZE, fCache.getCurrentSize());
+    }
+
+    /**
+     * Test a cache split in several segments
+     */
+    @Test
+    public void testSegments() {
+        HTNodeCache cache = new HTNodeCache(64 * BLOCK_SIZE, 4);
+        assertEquals(64 * BLOCK_SIZE, cache.getMaxSize());
+        for (int i = 0; i < 1000; i++) {
+            cache.put(fOwner, newNode(i));
+        }
+        assertTrue(cache.getCurrentSize() <= 64 * BLOCK_SIZE);
+        assertSame(cache.get(fOwner, 999), cache.get(fOwner, 999));
+        assertEquals(999, cache.get(fOwner, 999).getSequenceNumber());
+
+        cache.clear();
+        assertEquals(0, cache.getNodeCount());
+        assertEquals(0, cache.getCurrentSize());
+    }
+
+    /**
+     * Test a budget too small to give every requested segment one node of the
+     * default block size. The cache must use fewer segments and still cache
+     * nodes.
+     */
+    @Test
+    public void testSmallBudgetSegments() {
+        HTNodeCache cache = new HTNodeCache(2 * HTConfig.DEFAULT_BLOCKSIZE, 16);
+        assertEquals(2, cache.getSegmentCount());
+        assertEquals(2 * HTConfig.DEFAULT_BLOCKSIZE, cache.getMaxSize());
+
+        HTConfig config = new HTConfig(new File("dummy.ht"), HTConfig.DEFAULT_BLOCKSIZE, 10, 0, 0); //$NON-NLS-1$
+        HTNode node = new LeafNode(config, 0, -1, 0);
+        cache.put(fOwner, node);
+        assertSame(node, cache.get(fOwner, 0));
+
+        /* Growing the budget splits the cache again, keeping its nodes */
+        cache.setMaxSize(16 * HTConfig.DEFAULT_BLOCKSIZE);
+        assertEquals(16, cache.getSegmentCount());
+        assertSame(node, cache.get(fOwner, 0));
+
+        /* Below one block, there is a single segment */
+        cache.setMaxSize(BLOCK_SIZE);
+        assertEquals(1, cache.getSegmentCount());
+        assertEquals(0, cache.getNodeCount());
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig.NodeFormat;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTStringDictionary;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HistoryTree;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the history trees storing their string values in a dictionary, by
+ * building a complete state system and re-opening it.
+ */
+public class HTStringDictionaryTest {
+
+    private static final @NonNull String SSID = "test-dictionary"; //$NON-NLS-1$
+    private static final int NB_THREADS = 50;
+    private static final long END_TIME = 100000;
+    private static final String[] STATES = { "running", "blocked", "idle", "wait for CPU" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+    private File fReferenceFile;
+    private File fDictionaryFile;
+
+    /**
+     * Create the history files
+     *
+     * @throws IOException
+     *             If the files cannot be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        fReferenceFile = File.createTempFile("test-reference", ".ht"); //$NON-NLS-1$ //$NON-NLS-2$
+        fDictionaryFile = File.createTempFile("test-dictionary", ".ht"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Delete the history files
+     */
+    @After
+    public void cleanup() {
+        fReferenceFile.delete();
+        fDictionaryFile.delete();
+    }
+
+    private static void buildStateSystem(@NonNull IStateHistoryBackend backend) throws AttributeNotFoundException {
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(backend);
+        int[] quarks = new int[NB_THREADS];
+        for (int i = 0; i < NB_THREADS; i++) {
+            quarks[i] = ss.getQuarkAbsoluteAndAdd("Threads", Integer.toString(i), "Status"); //$NON-NLS-1$ //$NON-NLS-2$
+            int execQuark = ss.getQuarkAbsoluteAndAdd("Threads", Integer.toString(i), "Exec_name"); //$NON-NLS-1$ //$NON-NLS-2$
+            ss.modifyAttribute(0, TmfStateValue.newValueString("thread" + (i % 7)), execQuark); //$NON-NLS-1$
+        }
+        for (long t = 0; t < END_TIME; t += 10) {
+            for (int i = 0; i < NB_THREADS; i++) {
+                if ((t / 10) % (i % 5 + 1) == 0) {
+                    ss.modifyAttribute(t, getValue(i, t), quarks[i]);
+                }
+            }
+        }
+        ss.closeHistory(END_TIME);
+        ss.dispose();
+    }
+
+    private static @NonNull TmfStateValue getValue(int thread, long t) {
+        return TmfStateValue.newValueString(STATES[(int) ((t + thread) % STATES.length)]);
+    }
+
+    private static void testReopen(@NonNull IStateHistoryBackend reopened, boolean sharedValues)
+            throws IOException, AttributeNotFoundException, StateSystemDisposedException {
+        ITmfStateSystem ss = StateSystemFactory.newStateSystem(reopened, false);
+        try {
+            assertEquals(END_TIME, ss.getCurrentEndTime());
+            ITmfStateValue previous = null;
+            for (int i = 0; i < NB_THREADS; i++) {
+                int quark = ss.getQuarkAbsolute("Threads", Integer.toString(i), "Status"); //$NON-NLS-1$ //$NON-NLS-2$
+                for (long t = i; t < END_TIME; t += 997) {
+                    ITmfStateInterval interval = ss.querySingleState(t, quark);
+                    ITmfStateValue value = interval.getStateValue();
+                    assertEquals(getValue(i, interval.getStartTime()), value);
+
+                    /* The same string is always the same object */
+                    if (sharedValues && previous != null && previous.equals(value)) {
+                        assertSame(previous, value);
+                    }
+                    previous = value;
+                }
+                int execQuark = ss.getQuarkAbsolute("Threads", Integer.toString(i), "Exec_name"); //$NON-NLS-1$ //$NON-NLS-2$
+                assertEquals(TmfStateValue.newValueString("thread" + (i % 7)), ss.querySingleState(END_TIME, execQuark).getStateValue()); //$NON-NLS-1$
+            }
+        } finally {
+            ss.dispose();
+        }
+    }
+
+    /**
+     * Test a classic history tree with a string dictionary, re-opened with the
+     * regular and the memory-mapped backends
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testClassicFormat() throws Exception {
+        buildStateSystem(StateHistoryBackendFactory.createHistoryTreeBackendNewFile(SSID, fReferenceFile, 0, 0, 0));
+        buildStateSystem(StateHistoryBackendFactory.createHistoryTreeBackendNewFile(SSID, fDictionaryFile, 0, 0, 0, false, true));
+        assertTrue(fDictionaryFile.length() < fReferenceFile.length());
+
+        testReopen(StateHistoryBackendFactory.createHistoryTreeBackendExistingFile(SSID, fReferenceFile, 0), false);
+        testReopen(StateHistoryBackendFactory.createHistoryTreeBackendExistingFile(SSID, fDictionaryFile, 0), true);
+        testReopen(StateHistoryBackendFactory.createMappedHistoryTreeBackendExistingFile(SSID, fDictionaryFile, 0), true);
+    }
+
+    /**
+     * Test a compact history tree with a string dictionary, built in a
+     * separate thread
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testCompactFormat() throws Exception {
+        buildStateSystem(StateHistoryBackendFactory.createHistoryTreeBackendNewFile(SSID, fDictionaryFile, 0, 0, 1000, true, true));
+
+        testReopen(StateHistoryBackendFactory.createHistoryTreeBackendExistingFile(SSID, fDictionaryFile, 0), true);
+    }
+
+    /**
+     * Test that two trees created from the same configuration each have their
+     * own dictionary
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testDictionaryPerTree() throws IOException {
+        HTConfig config = new HTConfig(fDictionaryFile, HTConfig.DEFAULT_BLOCKSIZE,
+                HTConfig.DEFAULT_MAXCHILDREN, 0, 0, NodeFormat.CLASSIC, true);
+
+        HistoryTree tree = new HistoryTree(config);
+        HTStringDictionary dictionary = tree.getStringDictionary();
+        dictionary.getId("running"); //$NON-NLS-1$
+        tree.deleteFile();
+
+        HistoryTree otherTree = new HistoryTree(config);
+        HTStringDictionary otherDictionary = otherTree.getStringDictionary();
+        assertNotSame(dictionary, otherDictionary);
+        assertEquals(0, otherDictionary.size());
+        otherTree.deleteFile();
+    }
+}
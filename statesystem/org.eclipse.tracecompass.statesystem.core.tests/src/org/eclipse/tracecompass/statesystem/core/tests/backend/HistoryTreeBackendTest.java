@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HistoryTreeBackend;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateValueTypeException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test cases for the history tree backend, on a history file that was closed
+ * and re-opened.
+ */
+public class HistoryTreeBackendTest {
+
+    private static final String SSID = "test-ht"; //$NON-NLS-1$
+    private static final int NUMBER_OF_ATTRIBUTES = 10;
+    private static final int BLOCK_SIZE = 4096;
+    private static final int NB_THREADS = 8;
+
+    private static File fHtFile;
+    private static HistoryTreeBackend fixture;
+
+    /**
+     * Build a history file with small blocks, so that it contains many nodes,
+     * then re-open it.
+     *
+     * @throws IOException
+     *             If the history file can not be created
+     */
+    @BeforeClass
+    public static void init() throws IOException {
+        fHtFile = File.createTempFile("test", ".ht"); //$NON-NLS-1$ //$NON-NLS-2$
+        HistoryTreeBackend backend = new HistoryTreeBackend(SSID, fHtFile, 0, 0, BLOCK_SIZE, 10);
+        for (int timeStart = 0; timeStart < 1000; timeStart++) {
+            for (int attribute = 0; attribute < NUMBER_OF_ATTRIBUTES; attribute++) {
+                final int stateEndTime = (timeStart * 100) + 90 + attribute;
+                final int stateStartTime = timeStart * 100 + attribute;
+                backend.insertPastState(stateStartTime, stateEndTime, attribute, TmfStateValue.newValueInt(timeStart % 100));
+                if (timeStart != 999) {
+                    backend.insertPastState(stateEndTime + 1, stateEndTime + 9, attribute, TmfStateValue.nullValue());
+                }
+            }
+        }
+        backend.finishedBuilding(99999);
+        backend.dispose();
+
+        fixture = new HistoryTreeBackend(SSID, fHtFile, 0);
+    }
+
+    /**
+     * Close and delete the history file
+     */
+    @AfterClass
+    public static void cleanup() {
+        fixture.dispose();
+        fHtFile.delete();
+    }
+
+    private static void testInterval(ITmfStateInterval interval, int startTime,
+            int endTime, int value) {
+        assertNotNull(interval);
+        assertEquals(startTime, interval.getStartTime());
+        assertEquals(endTime, interval.getEndTime());
+        try {
+            assertEquals(value, interval.getStateValue().unboxInt());
+        } catch (StateValueTypeException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private static void checkAllAttributesAt(int timeStart) throws StateSystemDisposedException {
+        long t = timeStart * 100L + 50;
+        for (int attribute = 0; attribute < NUMBER_OF_ATTRIBUTES; attribute++) {
+            ITmfStateInterval interval = fixture.doSingularQuery(t, attribute);
+            testInterval(interval, timeStart * 100 + attribute, timeStart * 100 + 90 + attribute, timeStart % 100);
+        }
+    }
+
+    /**
+     * Test the time range of the re-opened history
+     */
+    @Test
+    public void testTimeRange() {
+        assertEquals(0, fixture.getStartTime());
+        assertEquals(99999, fixture.getEndTime());
+    }
+
+    /**
+     * Test a full query
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testDoQuery() throws StateSystemDisposedException {
+        List<ITmfStateInterval> intervals = new ArrayList<>(NUMBER_OF_ATTRIBUTES);
+        for (int i = 0; i < NUMBER_OF_ATTRIBUTES; i++) {
+            intervals.add(null);
+        }
+        fixture.doQuery(intervals, 950);
+        for (int i = 0; i < NUMBER_OF_ATTRIBUTES; i++) {
+            testInterval(intervals.get(i), 900 + i, 990 + i, 9);
+        }
+    }
+
+    /**
+     * Test singular queries at every time step
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testSingularQueries() throws StateSystemDisposedException {
+        for (int timeStart = 0; timeStart < 1000; timeStart++) {
+            checkAllAttributesAt(timeStart);
+        }
+        ITmfStateInterval interval = fixture.doSingularQuery(99998, 9);
+        testInterval(interval, 99909, 99999, 99);
+    }
+
+    /**
+     * Test that repeated queries are served by the node cache
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testNodeCache() throws StateSystemDisposedException {
+        checkAllAttributesAt(500);
+        long hits = fixture.getNodeCacheHits();
+        long misses = fixture.getNodeCacheMisses();
+
+        checkAllAttributesAt(500);
+        assertTrue(fixture.getNodeCacheHits() > hits);
+        assertEquals(misses, fixture.getNodeCacheMisses());
+    }
+
+    /**
+     * Test queries done by several threads at the same time
+     *
+     * @throws InterruptedException
+     *             Fails the test
+     * @throws ExecutionException
+     *             Fails the test
+     */
+    @Test
+    public void testConcurrentQueries() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int i = 0; i < NB_THREADS; i++) {
+            final int offset = i;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws StateSystemDisposedException {
+                    for (int timeStart = offset; timeStart < 1000; timeStart += NB_THREADS) {
+                        checkAllAttributesAt(timeStart);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Test out of range query
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test(expected = TimeRangeException.class)
+    public void testOutOfRange() throws StateSystemDisposedException {
+        fixture.doSingularQuery(100000, 0);
+    }
+}
@@ -16,6 +16,8 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
 import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
@@ -233,4 +235,87 @@ public class InMemoryBackendTest {
             fail(e.getMessage());
         }
     }
+
+    /**
+     * Test querying an attribute that has no interval
+     *
+     * @throws Exception
+     *             Expected exception
+     */
+    @Test(expected = AttributeNotFoundException.class)
+    public void testQueryUnknownAttribute() throws Exception {
+        fixture.doSingularQuery(500, NUMBER_OF_ATTRIBUTES);
+    }
+
+    /**
+     * Test that intervals inserted out of order for one attribute can still be
+     * queried
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testOutOfOrderInsertion() throws Exception {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("test-ss", 0);
+        backend.insertPastState(20, 29, 0, TmfStateValue.newValueInt(2));
+        backend.insertPastState(0, 9, 0, TmfStateValue.newValueInt(0));
+        backend.insertPastState(30, 39, 0, TmfStateValue.newValueInt(3));
+        backend.insertPastState(10, 19, 0, TmfStateValue.newValueInt(1));
+        backend.finishedBuilding(39);
+
+        for (int i = 0; i < 4; i++) {
+            testInterval(backend.doSingularQuery(i * 10 + 5, 0), i * 10, i * 10 + 9, i);
+        }
+    }
+
+    /**
+     * Test queries running while intervals are inserted, including
+     * out-of-order ones, so the arrays of the attribute are grown and replaced
+     * while they are being read
+     *
+     * @throws Exception
+     *             Fails the test
+     */
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        final IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("test-ss", 0);
+        final int nbIntervals = 20000;
+        /* Number of intervals that can be queried */
+        final AtomicInteger nbInserted = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    int i = 0;
+                    while (nbInserted.get() < nbIntervals) {
+                        int inserted = nbInserted.get();
+                        if (inserted == 0) {
+                            continue;
+                        }
+                        int index = (i++ * 7919) % inserted;
+                        testInterval(backend.doSingularQuery(index * 10L + 5, 0), index * 10, index * 10 + 9, index % 100);
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        };
+        reader.start();
+
+        for (int i = 0; i < nbIntervals; i += 2) {
+            if (i % 32 == 0) {
+                /* Insert the pair in reverse order */
+                backend.insertPastState(i * 10 + 10, i * 10 + 19, 0, TmfStateValue.newValueInt((i + 1) % 100));
+                backend.insertPastState(i * 10, i * 10 + 9, 0, TmfStateValue.newValueInt(i % 100));
+            } else {
+                backend.insertPastState(i * 10, i * 10 + 9, 0, TmfStateValue.newValueInt(i % 100));
+                backend.insertPastState(i * 10 + 10, i * 10 + 19, 0, TmfStateValue.newValueInt((i + 1) % 100));
+            }
+            nbInserted.set(i + 2);
+        }
+        reader.join();
+        assertNull(error.get());
+    }
 }
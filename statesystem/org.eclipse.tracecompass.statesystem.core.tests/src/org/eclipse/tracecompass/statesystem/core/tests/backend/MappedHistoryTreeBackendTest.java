@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.eclipse.tracecompass.internal.statesystem.core.backend.QueryRange;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HistoryTreeBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.MappedHistoryTreeBackend;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the memory-mapped history tree backend against the regular one, on the
+ * same history file.
+ */
+public class MappedHistoryTreeBackendTest {
+
+    private static final String SSID = "test-mapped"; //$NON-NLS-1$
+    private static final int NUMBER_OF_ATTRIBUTES = 8;
+    private static final int BLOCK_SIZE = 4096;
+    private static final long END_TIME = 50000;
+
+    private static final Comparator<ITmfStateInterval> INTERVAL_ORDER = new Comparator<ITmfStateInterval>() {
+        @Override
+        public int compare(ITmfStateInterval o1, ITmfStateInterval o2) {
+            int ret = Integer.compare(o1.getAttribute(), o2.getAttribute());
+            return (ret != 0 ? ret : Long.compare(o1.getStartTime(), o2.getStartTime()));
+        }
+    };
+
+    private static File fHtFile;
+    private static HistoryTreeBackend fReference;
+    private static MappedHistoryTreeBackend fixture;
+
+    /**
+     * Build a history file containing all types of values, and open it with
+     * both backends. The mapped chunks are kept small, so that the nodes are
+     * spread over several of them.
+     *
+     * @throws IOException
+     *             If the history file can not be created
+     */
+    @BeforeClass
+    public static void init() throws IOException {
+        fHtFile = File.createTempFile("test-mapped", ".ht"); //$NON-NLS-1$ //$NON-NLS-2$
+        HistoryTreeBackend backend = new HistoryTreeBackend(SSID, fHtFile, 0, 0, BLOCK_SIZE, 5);
+        for (long time = 0; time < END_TIME; time += 10) {
+            for (int attribute = 0; attribute < NUMBER_OF_ATTRIBUTES; attribute++) {
+                backend.insertPastState(time, time + 9, attribute, getValue(time, attribute));
+            }
+        }
+        backend.finishedBuilding(END_TIME);
+        backend.dispose();
+
+        fReference = new HistoryTreeBackend(SSID, fHtFile, 0);
+        fixture = new MappedHistoryTreeBackend(SSID, fHtFile, 0, 3 * BLOCK_SIZE);
+    }
+
+    private static TmfStateValue getValue(long time, int attribute) {
+        switch (attribute % 5) {
+        case 0:
+            return TmfStateValue.nullValue();
+        case 1:
+            return TmfStateValue.newValueInt((int) time);
+        case 2:
+            return TmfStateValue.newValueLong(time * 1000000L);
+        case 3:
+            return TmfStateValue.newValueDouble(time / 3.0);
+        default:
+            return TmfStateValue.newValueString("value" + (time % 70)); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Close and delete the history file
+     */
+    @AfterClass
+    public static void cleanup() {
+        fixture.dispose();
+        fReference.dispose();
+        fHtFile.delete();
+    }
+
+    private static void assertSameInterval(ITmfStateInterval expected, ITmfStateInterval actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getEndTime(), actual.getEndTime());
+        assertEquals(expected.getAttribute(), actual.getAttribute());
+        assertEquals(expected.getStateValue(), actual.getStateValue());
+    }
+
+    /**
+     * Test the time range of the history
+     */
+    @Test
+    public void testTimeRange() {
+        assertEquals(fReference.getStartTime(), fixture.getStartTime());
+        assertEquals(fReference.getEndTime(), fixture.getEndTime());
+    }
+
+    /**
+     * Compare singular queries with the regular backend
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testSingularQueries() throws StateSystemDisposedException {
+        for (long t = 0; t < END_TIME; t += 37) {
+            for (int attribute = 0; attribute < NUMBER_OF_ATTRIBUTES; attribute++) {
+                ITmfStateInterval expected = fReference.doSingularQuery(t, attribute);
+                ITmfStateInterval actual = fixture.doSingularQuery(t, attribute);
+                assertSameInterval(expected, actual);
+                assertEquals(getValue(actual.getStartTime(), attribute), actual.getStateValue());
+            }
+        }
+    }
+
+    /**
+     * Compare full queries with the regular backend
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testFullQueries() throws StateSystemDisposedException {
+        for (long t = 0; t < END_TIME; t += 113) {
+            List<ITmfStateInterval> expected = new ArrayList<>();
+            List<ITmfStateInterval> actual = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_ATTRIBUTES; i++) {
+                expected.add(null);
+                actual.add(null);
+            }
+            fReference.doQuery(expected, t);
+            fixture.doQuery(actual, t);
+            for (int i = 0; i < NUMBER_OF_ATTRIBUTES; i++) {
+                assertSameInterval(expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    /**
+     * Compare range queries with the regular backend
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testRangeQueries() throws StateSystemDisposedException {
+        BitSet quarks = new BitSet();
+        quarks.set(1);
+        quarks.set(4);
+        quarks.set(NUMBER_OF_ATTRIBUTES - 1);
+        QueryRange[] ranges = {
+                new QueryRange(0, END_TIME, 1000),
+                new QueryRange(1234, 5678, 1),
+                new QueryRange(END_TIME - 100, END_TIME + 1000, 7)
+        };
+        for (QueryRange range : ranges) {
+            TreeSet<ITmfStateInterval> expected = new TreeSet<>(INTERVAL_ORDER);
+            TreeSet<ITmfStateInterval> actual = new TreeSet<>(INTERVAL_ORDER);
+            fReference.doRangeQuery(expected, quarks, range);
+            fixture.doRangeQuery(actual, quarks, range);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected.size(), actual.size());
+            for (ITmfStateInterval interval : actual) {
+                assertSameInterval(expected.ceiling(interval), interval);
+            }
+        }
+    }
+
+    /**
+     * Test that the attribute tree is found at the same position as with the
+     * regular backend
+     */
+    @Test
+    public void testAttributeTreePosition() {
+        assertEquals(fReference.supplyAttributeTreeWriterFilePosition(),
+                fixture.supplyAttributeTreeWriterFilePosition());
+    }
+
+    /**
+     * Test that the mapped backend does not accept new intervals
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        fixture.insertPastState(0, 1, 0, TmfStateValue.nullValue());
+    }
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.PartitionedHistoryTreeBackend;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateValueTypeException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the partitioned history tree backend
+ */
+public class PartitionedHistoryTreeBackendTest {
+
+    private static final String SSID = "test-partitioned-ht"; //$NON-NLS-1$
+    private static final int NUMBER_OF_ATTRIBUTES = 10;
+    private static final int NB_PARTITIONS = 3;
+    private static final int BLOCK_SIZE = 4096;
+
+    private File fHtFile;
+    private PartitionedHistoryTreeBackend fBackend;
+
+    /**
+     * Build a partitioned history with small blocks
+     *
+     * @throws IOException
+     *             If the history files can not be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        fHtFile = File.createTempFile("test", ".ht"); //$NON-NLS-1$ //$NON-NLS-2$
+        fBackend = new PartitionedHistoryTreeBackend(SSID, fHtFile, 0, 0, 1000, NB_PARTITIONS, BLOCK_SIZE, 10);
+        for (int timeStart = 0; timeStart < 1000; timeStart++) {
+            for (int attribute = 0; attribute < NUMBER_OF_ATTRIBUTES; attribute++) {
+                final int stateEndTime = (timeStart * 100) + 90 + attribute;
+                final int stateStartTime = timeStart * 100 + attribute;
+                fBackend.insertPastState(stateStartTime, stateEndTime, attribute, TmfStateValue.newValueInt(timeStart % 100));
+                if (timeStart != 999) {
+                    fBackend.insertPastState(stateEndTime + 1, stateEndTime + 9, attribute, TmfStateValue.nullValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Close and delete the history files
+     */
+    @After
+    public void cleanup() {
+        if (fBackend != null) {
+            fBackend.dispose();
+        }
+        for (int i = 0; i < NB_PARTITIONS; i++) {
+            PartitionedHistoryTreeBackend.getPartitionFile(fHtFile, i).delete();
+        }
+    }
+
+    private static void testInterval(ITmfStateInterval interval, int startTime,
+            int endTime, int value) {
+        assertNotNull(interval);
+        assertEquals(startTime, interval.getStartTime());
+        assertEquals(endTime, interval.getEndTime());
+        try {
+            assertEquals(value, interval.getStateValue().unboxInt());
+        } catch (StateValueTypeException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private static void testQueries(PartitionedHistoryTreeBackend backend) throws StateSystemDisposedException {
+        assertEquals(0, backend.getStartTime());
+        assertEquals(99999, backend.getEndTime());
+
+        for (int timeStart = 0; timeStart < 1000; timeStart++) {
+            long t = timeStart * 100L + 50;
+            for (int attribute = 0; attribute < NUMBER_OF_ATTRIBUTES; attribute++) {
+                ITmfStateInterval interval = backend.doSingularQuery(t, attribute);
+                testInterval(interval, timeStart * 100 + attribute, timeStart * 100 + 90 + attribute, timeStart % 100);
+            }
+        }
+
+        List<ITmfStateInterval> intervals = new ArrayList<>(NUMBER_OF_ATTRIBUTES);
+        for (int i = 0; i < NUMBER_OF_ATTRIBUTES; i++) {
+            intervals.add(null);
+        }
+        backend.doQuery(intervals, 950);
+        for (int i = 0; i < NUMBER_OF_ATTRIBUTES; i++) {
+            testInterval(intervals.get(i), 900 + i, 990 + i, 9);
+        }
+    }
+
+    /**
+     * Test the queries once the history is built
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testQueries() throws StateSystemDisposedException {
+        fBackend.finishedBuilding(99999);
+        testQueries(fBackend);
+    }
+
+    /**
+     * Test that every partition was written to its own file, and that the
+     * history can be re-opened from them
+     *
+     * @throws IOException
+     *             Fails the test
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test
+    public void testReopen() throws IOException, StateSystemDisposedException {
+        fBackend.finishedBuilding(99999);
+        for (int i = 0; i < NB_PARTITIONS; i++) {
+            assertTrue(PartitionedHistoryTreeBackend.getPartitionFile(fHtFile, i).length() > 0);
+        }
+        fBackend.dispose();
+
+        fBackend = new PartitionedHistoryTreeBackend(SSID, fHtFile, 0);
+        assertEquals(NB_PARTITIONS, fBackend.getNbPartitions());
+        testQueries(fBackend);
+    }
+
+    /**
+     * Test that the history can not be reopened if one of its partitions is
+     * missing, or from a file that is not a partition
+     *
+     * @throws IOException
+     *             Fails the test
+     */
+    @Test
+    public void testReopenInvalidPartitions() throws IOException {
+        fBackend.finishedBuilding(99999);
+        fBackend.dispose();
+        fBackend = null;
+
+        /* The first partition does not have the partition number 0 */
+        try {
+            new PartitionedHistoryTreeBackend(SSID, PartitionedHistoryTreeBackend.getPartitionFile(fHtFile, 1), 0);
+            fail();
+        } catch (IOException e) {
+            /* Expected */
+        }
+
+        assertTrue(PartitionedHistoryTreeBackend.getPartitionFile(fHtFile, NB_PARTITIONS - 1).delete());
+        try {
+            new PartitionedHistoryTreeBackend(SSID, fHtFile, 0);
+            fail();
+        } catch (IOException e) {
+            /* Expected */
+        }
+    }
+
+    /**
+     * Test that disposing an history that is not finished deletes its files
+     */
+    @Test
+    public void testInterruptedBuild() {
+        fBackend.dispose();
+        fBackend = null;
+        for (int i = 0; i < NB_PARTITIONS; i++) {
+            assertFalse(PartitionedHistoryTreeBackend.getPartitionFile(fHtFile, i).exists());
+        }
+    }
+
+    /**
+     * Test out of range query
+     *
+     * @throws StateSystemDisposedException
+     *             Fails the test
+     */
+    @Test(expected = TimeRangeException.class)
+    public void testOutOfRange() throws StateSystemDisposedException {
+        fBackend.finishedBuilding(99999);
+        fBackend.doSingularQuery(100000, 0);
+    }
+}
@@ -19,12 +19,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.IRangeQueryBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.QueryRange;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
 import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
@@ -616,6 +620,70 @@ public class StateSystem implements ITmfStateSystemBuilder {
         return ret;
     }
 
+    @Override
+    public List<ITmfStateInterval> query2D(Collection<Integer> quarks,
+            long t1, long t2, long resolution)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        if (isDisposed) {
+            throw new StateSystemDisposedException();
+        }
+        if (t2 < t1 || resolution <= 0) {
+            throw new TimeRangeException(getSSID() + " Start:" + t1 + ", End:" + t2 + ", Resolution:" + resolution); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+
+        final int nbAttr = getNbAttributes();
+        BitSet quarkSet = new BitSet(nbAttr);
+        for (Integer quark : quarks) {
+            if (quark < 0 || quark >= nbAttr) {
+                throw new AttributeNotFoundException(getSSID() + " Quark:" + quark); //$NON-NLS-1$
+            }
+            quarkSet.set(quark);
+        }
+
+        QueryRange range = new QueryRange(t1, t2, resolution);
+        List<ITmfStateInterval> results = new ArrayList<>();
+
+        /*
+         * If we are currently building the history, the "ongoing" states are
+         * not yet in the backend.
+         */
+        if (transState.isActive()) {
+            for (int quark = quarkSet.nextSetBit(0); quark >= 0; quark = quarkSet.nextSetBit(quark + 1)) {
+                ITmfStateInterval interval = transState.getOngoingInterval(quark);
+                if (range.intersects(interval.getStartTime(), Long.MAX_VALUE)) {
+                    results.add(interval);
+                }
+            }
+        }
+
+        /* Query the storage backend */
+        if (t2 < backend.getStartTime() || t1 > backend.getEndTime()) {
+            return results;
+        }
+        if (backend instanceof IRangeQueryBackend) {
+            ((IRangeQueryBackend) backend).doRangeQuery(results, quarkSet, range);
+        } else {
+            /* Fall back to singular queries at each resolution point */
+            long start = (t1 >= backend.getStartTime() ? t1 : range.getNextPoint(backend.getStartTime() - 1));
+            long end = Math.min(t2, backend.getEndTime());
+            for (int quark = quarkSet.nextSetBit(0); quark >= 0; quark = quarkSet.nextSetBit(quark + 1)) {
+                long ts = start;
+                while (ts <= end) {
+                    ITmfStateInterval interval = backend.doSingularQuery(ts, quark);
+                    if (interval == null) {
+                        break;
+                    }
+                    results.add(interval);
+                    if (interval.getEndTime() >= end) {
+                        break;
+                    }
+                    ts = range.getNextPoint(interval.getEndTime());
+                }
+            }
+        }
+        return results;
+    }
+
     //--------------------------------------------------------------------------
     //        Debug methods
     //--------------------------------------------------------------------------
@@ -16,9 +16,9 @@
 package org.eclipse.tracecompass.internal.statesystem.core;
 
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -42,23 +42,69 @@ import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
  * of the interval will be the recorded time we have here, and the "end time"
  * will be the timestamp of the new state-changing event we just read.
  *
+ * Only one thread (the one building the state system) modifies the transient
+ * state, but any number of threads can query it. Readers never take a lock:
+ * every modification visible to them is surrounded by increments of a version
+ * counter, and a reader retries if the version changed while it was reading
+ * (a "sequence lock").
+ *
  * @author Alexandre Montplaisir
  */
 @NonNullByDefault
 public class TransientState {
 
+    private static final int INITIAL_CAPACITY = 64;
+
     /* Indicates where to insert state changes that we generate */
     private final IStateHistoryBackend fBackend;
 
-    private final ReentrantReadWriteLock fRWLock = new ReentrantReadWriteLock(false);
+    /* Serializes the modifications, readers never take it */
+    private final Object fWriteLock = new Object();
+
+    /*
+     * Odd while a modification is in progress. Only incremented by the writer
+     * (with fWriteLock held).
+     */
+    private volatile long fVersion = 0;
 
     private volatile boolean fIsActive;
     private volatile long fLatestTime;
 
-    /* A method accessing these arrays will have to go through the lock */
-    private List<ITmfStateValue> fOngoingStateInfo;
-    private List<Long> fOngoingStateStartTimes;
-    private List<Type> fStateValueTypes;
+    /* The ongoing states, and the number of attributes in them */
+    private volatile OngoingStates fStates;
+    private volatile int fSize;
+
+    /**
+     * The ongoing start times, values and types of the attributes. The arrays
+     * are replaced by bigger ones when new attributes are added.
+     */
+    private static final class OngoingStates {
+
+        final AtomicLongArray fStartTimes;
+        final AtomicReferenceArray<ITmfStateValue> fValues;
+        /* Only accessed by the writer */
+        final Type[] fTypes;
+
+        OngoingStates(int capacity) {
+            fStartTimes = new AtomicLongArray(capacity);
+            fValues = new AtomicReferenceArray<>(capacity);
+            fTypes = new Type[capacity];
+        }
+
+        int capacity() {
+            return fTypes.length;
+        }
+
+        OngoingStates copy(int newCapacity, int size) {
+            OngoingStates ret = new OngoingStates(newCapacity);
+            for (int i = 0; i < size; i++) {
+                ret.fStartTimes.set(i, fStartTimes.get(i));
+                ret.fValues.set(i, fValues.get(i));
+                ret.fTypes[i] = fTypes[i];
+            }
+            return ret;
+        }
+    }
 
     /**
      * Constructor
@@ -69,9 +115,8 @@ public class TransientState {
     public TransientState(IStateHistoryBackend backend) {
         fBackend = backend;
         fIsActive = true;
-        fOngoingStateInfo = new ArrayList<>();
-        fOngoingStateStartTimes = new ArrayList<>();
-        fStateValueTypes = new ArrayList<>();
+        fStates = new OngoingStates(INITIAL_CAPACITY);
+        fSize = 0;
 
         fLatestTime = backend.getStartTime();
     }
@@ -95,16 +140,22 @@ public class TransientState {
      *             If the quark is invalid
      */
     public ITmfStateValue getOngoingStateValue(int quark) throws AttributeNotFoundException {
-        fRWLock.readLock().lock();
-        try {
-            checkValidAttribute(quark);
-            ITmfStateValue ret = fOngoingStateInfo.get(quark);
-            if (ret == null) {
-                throw new IllegalStateException("Null interval stored in transient state"); //$NON-NLS-1$
+        while (true) {
+            long version = beginRead();
+            OngoingStates states = fStates;
+            if (!isValidAttribute(states, fSize, quark)) {
+                if (validateRead(version)) {
+                    throw attributeNotFound(quark);
+                }
+                continue;
+            }
+            ITmfStateValue ret = states.fValues.get(quark);
+            if (validateRead(version)) {
+                if (ret == null) {
+                    throw new IllegalStateException("Null interval stored in transient state"); //$NON-NLS-1$
+                }
+                return ret;
             }
-            return ret;
-        } finally {
-            fRWLock.readLock().unlock();
         }
     }
 
@@ -118,12 +169,19 @@ public class TransientState {
      *             If the quark is invalid
      */
     public long getOngoingStartTime(int quark) throws AttributeNotFoundException {
-        fRWLock.readLock().lock();
-        try {
-            checkValidAttribute(quark);
-            return fOngoingStateStartTimes.get(quark);
-        } finally {
-            fRWLock.readLock().unlock();
+        while (true) {
+            long version = beginRead();
+            OngoingStates states = fStates;
+            if (!isValidAttribute(states, fSize, quark)) {
+                if (validateRead(version)) {
+                    throw attributeNotFound(quark);
+                }
+                continue;
+            }
+            long ret = states.fStartTimes.get(quark);
+            if (validateRead(version)) {
+                return ret;
+            }
         }
     }
 
@@ -140,12 +198,14 @@ public class TransientState {
      */
     public void changeOngoingStateValue(int quark, ITmfStateValue newValue)
             throws AttributeNotFoundException {
-        fRWLock.writeLock().lock();
-        try {
+        synchronized (fWriteLock) {
             checkValidAttribute(quark);
-            fOngoingStateInfo.set(quark, newValue);
-        } finally {
-            fRWLock.writeLock().unlock();
+            beginWrite();
+            try {
+                fStates.fValues.set(quark, newValue);
+            } finally {
+                endWrite();
+            }
         }
     }
 
@@ -161,13 +221,21 @@ public class TransientState {
      *             If the quark is invalid
      */
     public ITmfStateInterval getOngoingInterval(int quark) throws AttributeNotFoundException {
-        fRWLock.readLock().lock();
-        try {
-            checkValidAttribute(quark);
-            return new TmfStateInterval(fOngoingStateStartTimes.get(quark), fLatestTime,
-                    quark, fOngoingStateInfo.get(quark));
-        } finally {
-            fRWLock.readLock().unlock();
+        while (true) {
+            long version = beginRead();
+            OngoingStates states = fStates;
+            if (!isValidAttribute(states, fSize, quark)) {
+                if (validateRead(version)) {
+                    throw attributeNotFound(quark);
+                }
+                continue;
+            }
+            long start = states.fStartTimes.get(quark);
+            ITmfStateValue value = states.fValues.get(quark);
+            long latestTime = fLatestTime;
+            if (validateRead(version)) {
+                return new TmfStateInterval(start, latestTime, quark, value);
+            }
         }
     }
 
@@ -184,27 +252,75 @@ public class TransientState {
      *         this transient state, or null if we couldn't.
      */
     public @Nullable ITmfStateInterval getIntervalAt(long time, int quark) {
-        fRWLock.readLock().lock();
-        try {
-            checkValidAttribute(quark);
-            if (!isActive() || time < fOngoingStateStartTimes.get(quark)) {
-                return null;
+        while (true) {
+            long version = beginRead();
+            OngoingStates states = fStates;
+            if (!isActive() || !isValidAttribute(states, fSize, quark)) {
+                if (validateRead(version)) {
+                    return null;
+                }
+                continue;
+            }
+            long start = states.fStartTimes.get(quark);
+            ITmfStateValue value = states.fValues.get(quark);
+            long latestTime = fLatestTime;
+            if (validateRead(version)) {
+                if (time < start) {
+                    return null;
+                }
+                return new TmfStateInterval(start, latestTime, quark, value);
             }
-            return new TmfStateInterval(fOngoingStateStartTimes.get(quark),
-                    fLatestTime, quark, fOngoingStateInfo.get(quark));
-        } catch (AttributeNotFoundException e) {
-            return null;
-        } finally {
-            fRWLock.readLock().unlock();
         }
     }
 
     private void checkValidAttribute(int quark) throws AttributeNotFoundException {
-        if (quark > fOngoingStateInfo.size() - 1 || quark < 0) {
-            throw new AttributeNotFoundException(fBackend.getSSID() + " Quark:" + quark); //$NON-NLS-1$
+        if (quark > fSize - 1 || quark < 0) {
+            throw attributeNotFound(quark);
         }
     }
 
+    private static boolean isValidAttribute(OngoingStates states, int size, int quark) {
+        /*
+         * The size and the arrays may not match if a modification is in
+         * progress, the read will be retried anyway in that case.
+         */
+        return (quark >= 0 && quark < size && quark < states.capacity());
+    }
+
+    private AttributeNotFoundException attributeNotFound(int quark) {
+        return new AttributeNotFoundException(fBackend.getSSID() + " Quark:" + quark); //$NON-NLS-1$
+    }
+
+    /**
+     * Wait until no modification is in progress, and return the current
+     * version.
+     */
+    private long beginRead() {
+        long version = fVersion;
+        while ((version & 1) != 0) {
+            Thread.yield();
+            version = fVersion;
+        }
+        return version;
+    }
+
+    /**
+     * Check that nothing was modified since {@link #beginRead()} returned the
+     * given version, in which case the values that were read are consistent.
+     */
+    private boolean validateRead(long version) {
+        return (fVersion == version);
+    }
+
+    /* Should be called with fWriteLock held, and always followed by endWrite() */
+    private void beginWrite() {
+        fVersion++;
+    }
+
+    private void endWrite() {
+        fVersion++;
+    }
+
     /**
      * More advanced version of {@link #changeOngoingStateValue}. Replaces the
      * complete ongoingStateInfo in one go, and updates the
@@ -219,19 +335,23 @@ public class TransientState {
     public void replaceOngoingState(List<ITmfStateInterval> newStateIntervals) {
         final int size = newStateIntervals.size();
 
-        fRWLock.writeLock().lock();
-        try {
-            fOngoingStateInfo = new ArrayList<>(size);
-            fOngoingStateStartTimes = new ArrayList<>(size);
-            fStateValueTypes = new ArrayList<>(size);
+        OngoingStates states = new OngoingStates(Math.max(size, INITIAL_CAPACITY));
+        int i = 0;
+        for (ITmfStateInterval interval : newStateIntervals) {
+            states.fValues.set(i, interval.getStateValue());
+            states.fStartTimes.set(i, interval.getStartTime());
+            states.fTypes[i] = interval.getStateValue().getType();
+            i++;
+        }
 
-            for (ITmfStateInterval interval : newStateIntervals) {
-                fOngoingStateInfo.add(interval.getStateValue());
-                fOngoingStateStartTimes.add(interval.getStartTime());
-                fStateValueTypes.add(interval.getStateValue().getType());
+        synchronized (fWriteLock) {
+            beginWrite();
+            try {
+                fStates = states;
+                fSize = size;
+            } finally {
+                endWrite();
             }
-        } finally {
-            fRWLock.writeLock().unlock();
         }
     }
 
@@ -241,20 +361,29 @@ public class TransientState {
      * attribute tree, namely when we add sub-path attributes.
      */
     public void addEmptyEntry() {
-        fRWLock.writeLock().lock();
-        try {
-            /*
-             * Since this is a new attribute, we suppose it was in the
-             * "null state" since the beginning (so we can have intervals
-             * covering for all timestamps). A null interval will then get added
-             * at the first state change.
-             */
-            fOngoingStateInfo.add(TmfStateValue.nullValue());
-            fStateValueTypes.add(Type.NULL);
-
-            fOngoingStateStartTimes.add(fBackend.getStartTime());
-        } finally {
-            fRWLock.writeLock().unlock();
+        synchronized (fWriteLock) {
+            int size = fSize;
+            OngoingStates states = fStates;
+            if (size == states.capacity()) {
+                states = states.copy(size * 2, size);
+            }
+            beginWrite();
+            try {
+                /*
+                 * Since this is a new attribute, we suppose it was in the
+                 * "null state" since the beginning (so we can have intervals
+                 * covering for all timestamps). A null interval will then get
+                 * added at the first state change.
+                 */
+                states.fValues.set(size, TmfStateValue.nullValue());
+                states.fTypes[size] = Type.NULL;
+                states.fStartTimes.set(size, fBackend.getStartTime());
+
+                fStates = states;
+                fSize = size + 1;
+            } finally {
+                endWrite();
+            }
         }
     }
 
@@ -281,21 +410,21 @@ public class TransientState {
             return;
         }
 
-        fRWLock.writeLock().lock();
-        try {
-            Type expectedSvType = fStateValueTypes.get(quark);
+        synchronized (fWriteLock) {
             checkValidAttribute(quark);
+            OngoingStates states = fStates;
 
             /*
              * Make sure the state value type we're inserting is the same as the
              * one registered for this attribute.
              */
+            Type expectedSvType = states.fTypes[quark];
             if (expectedSvType == Type.NULL) {
                 /*
                  * The value hasn't been used yet, set it to the value we're
                  * currently inserting (which might be null/-1 again).
                  */
-                fStateValueTypes.set(quark, value.getType());
+                states.fTypes[quark] = value.getType();
             } else if ((value.getType() != Type.NULL) && (value.getType() != expectedSvType)) {
                 /*
                  * We authorize inserting null values in any type of attribute,
@@ -305,7 +434,11 @@ public class TransientState {
                 throw new StateValueTypeException(fBackend.getSSID() + " Quark:" + quark + ", Type:" + value.getType() + ", Expected:" + expectedSvType); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
             }
 
-            if (fOngoingStateInfo.get(quark).equals(value)) {
+            /* We are the only writer, no need to validate these reads */
+            ITmfStateValue ongoingValue = states.fValues.get(quark);
+            long ongoingStartTime = states.fStartTimes.get(quark);
+
+            if (ongoingValue.equals(value)) {
                 /*
                  * This is the case where the new value and the one already
                  * present in the Builder are the same. We do not need to create
@@ -314,33 +447,44 @@ public class TransientState {
                 return;
             }
 
-            if (fOngoingStateStartTimes.get(quark) < eventTime) {
+            if (ongoingStartTime < eventTime) {
                 /*
                  * These two conditions are necessary to create an interval and
-                 * update ongoingStateInfo.
+                 * update ongoingStateInfo. The insertion is done outside of the
+                 * modification, since it may block if the backend is busy:
+                 * readers will simply keep seeing the previous (still valid)
+                 * ongoing state in the meantime.
                  */
-                fBackend.insertPastState(fOngoingStateStartTimes.get(quark),
+                fBackend.insertPastState(ongoingStartTime,
                         eventTime - 1, /* End Time */
                         quark, /* attribute quark */
-                        fOngoingStateInfo.get(quark)); /* StateValue */
+                        ongoingValue); /* StateValue */
 
-                fOngoingStateStartTimes.set(quark, eventTime);
+                ongoingStartTime = eventTime;
             }
-            fOngoingStateInfo.set(quark, value);
 
-            /* Update the Transient State's lastestTime, if needed */
-            if (fLatestTime < eventTime) {
-                fLatestTime = eventTime;
-            }
+            beginWrite();
+            try {
+                states.fStartTimes.set(quark, ongoingStartTime);
+                states.fValues.set(quark, value);
 
-        } finally {
-            fRWLock.writeLock().unlock();
+                /* Update the Transient State's lastestTime, if needed */
+                if (fLatestTime < eventTime) {
+                    fLatestTime = eventTime;
+                }
+            } finally {
+                endWrite();
+            }
         }
     }
 
     /**
      * Run a "get state at time" query on the Transient State only.
      *
+     * Each returned interval is consistent by itself, but the intervals of
+     * different attributes are not read atomically with regards to the state
+     * changes being processed.
+     *
      * @param stateInfo
      *            The stateInfo object in which we will put our relevant
      *            information
@@ -348,28 +492,23 @@ public class TransientState {
      *            The requested timestamp
      */
     public void doQuery(List<ITmfStateInterval> stateInfo, long t) {
-        fRWLock.readLock().lock();
-        try {
-            if (!this.fIsActive) {
-                return;
-            }
-            if (stateInfo.size() > fOngoingStateInfo.size()) {
-                throw new IllegalArgumentException();
-            }
+        if (!this.fIsActive) {
+            return;
+        }
+        if (stateInfo.size() > fSize) {
+            throw new IllegalArgumentException();
+        }
 
-            for (int i = 0; i < stateInfo.size(); i++) {
-                /*
-                 * We build a dummy interval whose end time =
-                 * "current transient state end time" to put in the answer to
-                 * the query.
-                 */
-                final ITmfStateInterval interval = getIntervalAt(t, i);
-                if (interval != null) {
-                    stateInfo.set(i, interval);
-                }
+        for (int i = 0; i < stateInfo.size(); i++) {
+            /*
+             * We build a dummy interval whose end time =
+             * "current transient state end time" to put in the answer to the
+             * query.
+             */
+            final ITmfStateInterval interval = getIntervalAt(t, i);
+            if (interval != null) {
+                stateInfo.set(i, interval);
             }
-        } finally {
-            fRWLock.readLock().unlock();
         }
     }
 
@@ -388,10 +527,12 @@ public class TransientState {
             return;
         }
 
-        fRWLock.writeLock().lock();
-        try {
-            for (int i = 0; i < fOngoingStateInfo.size(); i++) {
-                if (fOngoingStateStartTimes.get(i) > endTime) {
+        synchronized (fWriteLock) {
+            OngoingStates states = fStates;
+            int size = fSize;
+            for (int i = 0; i < size; i++) {
+                long startTime = states.fStartTimes.get(i);
+                if (startTime > endTime) {
                     /*
                      * Handle the cases where trace end > timestamp of last
                      * state change. This can happen when inserting "future"
@@ -400,10 +541,10 @@ public class TransientState {
                     continue;
                 }
                 try {
-                    fBackend.insertPastState(fOngoingStateStartTimes.get(i),
+                    fBackend.insertPastState(startTime,
                             endTime, /* End Time */
                             i, /* attribute quark */
-                            fOngoingStateInfo.get(i)); /* StateValue */
+                            states.fValues.get(i)); /* StateValue */
 
                 } catch (TimeRangeException e) {
                     /*
@@ -414,12 +555,14 @@ public class TransientState {
                 }
             }
 
-            fOngoingStateInfo.clear();
-            fOngoingStateStartTimes.clear();
-            this.fIsActive = false;
-
-        } finally {
-            fRWLock.writeLock().unlock();
+            beginWrite();
+            try {
+                fStates = new OngoingStates(0);
+                fSize = 0;
+                this.fIsActive = false;
+            } finally {
+                endWrite();
+            }
         }
     }
 
@@ -454,11 +597,13 @@ public class TransientState {
             writer.println('\n');
             return;
         }
+        OngoingStates states = fStates;
+        int size = Math.min(fSize, states.capacity());
         writer.println("\nAttribute\tStateValue\tValid since time"); //$NON-NLS-1$
-        for (int i = 0; i < fOngoingStateInfo.size(); i++) {
+        for (int i = 0; i < size; i++) {
             writer.format("%d\t\t", i); //$NON-NLS-1$
-            writer.print(fOngoingStateInfo.get(i).toString() + "\t\t"); //$NON-NLS-1$
-            writer.println(fOngoingStateStartTimes.get(i).toString());
+            writer.print(String.valueOf(states.fValues.get(i)) + "\t\t"); //$NON-NLS-1$
+            writer.println(states.fStartTimes.get(i));
         }
         writer.println('\n');
         return;
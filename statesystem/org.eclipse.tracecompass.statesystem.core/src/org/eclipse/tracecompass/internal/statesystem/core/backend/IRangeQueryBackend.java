@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+
+/**
+ * Optional interface for {@link IStateHistoryBackend}s that can answer 2D
+ * (time range x attributes) queries natively, for example by visiting their
+ * storage only once for all the requested attributes.
+ *
+ * Backends that do not implement it are queried attribute by attribute by the
+ * state system instead.
+ */
+public interface IRangeQueryBackend {
+
+    /**
+     * Get all the intervals of the given attributes which contain at least one
+     * of the resolution points of the given range.
+     *
+     * @param results
+     *            The collection to which the matching intervals will be
+     *            added, in no particular order
+     * @param quarks
+     *            The quarks of the requested attributes
+     * @param range
+     *            The time range and resolution of the query. It may extend
+     *            outside of the time range of the backend, in which case only
+     *            the intervals stored in the backend are returned.
+     * @throws TimeRangeException
+     *             If the range is invalid
+     * @throws StateSystemDisposedException
+     *             If the backend is disposed while the query is ongoing
+     */
+    void doRangeQuery(Collection<ITmfStateInterval> results, BitSet quarks,
+            QueryRange range) throws TimeRangeException, StateSystemDisposedException;
+}
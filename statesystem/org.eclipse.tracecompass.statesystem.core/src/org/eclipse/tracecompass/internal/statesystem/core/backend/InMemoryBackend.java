@@ -17,11 +17,8 @@ package org.eclipse.tracecompass.internal.statesystem.core.backend;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.PrintWriter;
-import java.util.Comparator;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
@@ -37,48 +34,151 @@ import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
  * trace. But it's relatively quick to build, so this shouldn't be a problem in
  * most cases.
  *
- * This should only be used with very small state histories (and/or, very small
- * traces). Since it's stored in standard Collections, it's limited to 2^31
- * intervals.
+ * The intervals are stored per attribute, in arrays sorted by time, so that a
+ * query is a binary search in the arrays of the requested attribute(s). The
+ * intervals are inserted by a single thread (the one building the state
+ * system), but queries can run concurrently without taking any lock.
+ *
+ * This should only be used with small state histories (and/or, small traces).
+ * Since it's stored in arrays, each attribute is limited to 2^31 intervals.
  *
  * @author Alexandre Montplaisir
  */
 public class InMemoryBackend implements IStateHistoryBackend {
 
-    /**
-     * We need to compare the end time and the attribute, because we can have 2
-     * intervals with the same end time (for different attributes). And TreeSet
-     * needs a unique "key" per element.
-     */
-    private static final Comparator<ITmfStateInterval> END_COMPARATOR =
-            new Comparator<ITmfStateInterval>() {
-                @Override
-                public int compare(ITmfStateInterval o1, ITmfStateInterval o2) {
-                    final long e1 = o1.getEndTime();
-                    final long e2 = o2.getEndTime();
-                    final int a1 = o1.getAttribute();
-                    final int a2 = o2.getAttribute();
-                    if (e1 < e2) {
-                        return -1;
-                    } else if (e1 > e2) {
-                        return 1;
-                    } else if (a1 < a2) {
-                        return -1;
-                    } else if (a1 > a2) {
-                        return 1;
-                    } else {
-                        return 0;
-                    }
-                }
-
-            };
+    private static final int INITIAL_CAPACITY = 16;
 
     private final @NonNull String ssid;
-    private final TreeSet<ITmfStateInterval> intervals;
     private final long startTime;
 
     private volatile long latestTime;
 
+    /*
+     * The intervals of each attribute, indexed by quark. Elements may be null
+     * for attributes that have no interval yet.
+     */
+    private volatile AttributeIntervals[] fAttributes = new AttributeIntervals[INITIAL_CAPACITY];
+
+    /**
+     * The intervals of one attribute, sorted by time. Since the intervals of
+     * one attribute do not overlap, they are sorted by both start and end
+     * times.
+     *
+     * The arrays and their size are published together, in an immutable
+     * {@link Entries} object, so a reader always sees arrays and a size that
+     * match. New entries are written in the arrays after the published size,
+     * where no reader looks, before a new {@link Entries} is published. The
+     * arrays are replaced by new copies (never modified in place) when an
+     * existing entry has to move.
+     */
+    private static final class AttributeIntervals {
+
+        /**
+         * The arrays of the intervals and of their end times, valid up to the
+         * size
+         */
+        private static final class Entries {
+            private final long[] fEndTimes;
+            private final ITmfStateInterval[] fIntervals;
+            private final int fSize;
+
+            public Entries(long[] endTimes, ITmfStateInterval[] intervals, int size) {
+                fEndTimes = endTimes;
+                fIntervals = intervals;
+                fSize = size;
+            }
+        }
+
+        private volatile Entries fEntries = new Entries(new long[INITIAL_CAPACITY], new ITmfStateInterval[INITIAL_CAPACITY], 0);
+
+        /* Should only be called by the writer thread */
+        void add(ITmfStateInterval interval) {
+            Entries entries = fEntries;
+            int size = entries.fSize;
+            long endTime = interval.getEndTime();
+            if (size > 0 && entries.fEndTimes[size - 1] >= endTime) {
+                /* Out-of-order insertion, should be rare */
+                insertSorted(entries, interval);
+                return;
+            }
+            long[] endTimes = entries.fEndTimes;
+            ITmfStateInterval[] intervals = entries.fIntervals;
+            if (size == endTimes.length) {
+                endTimes = Arrays.copyOf(endTimes, size * 2);
+                intervals = Arrays.copyOf(intervals, size * 2);
+            }
+            endTimes[size] = endTime;
+            intervals[size] = interval;
+            /* Publish the new entry */
+            fEntries = new Entries(endTimes, intervals, size + 1);
+        }
+
+        private void insertSorted(Entries entries, ITmfStateInterval interval) {
+            int size = entries.fSize;
+            int index = Arrays.binarySearch(entries.fEndTimes, 0, size, interval.getEndTime());
+            if (index >= 0) {
+                /* Same end time, insert it after the existing one */
+                index++;
+            } else {
+                index = -(index + 1);
+            }
+            long[] endTimes = new long[Math.max(size + 1, entries.fEndTimes.length)];
+            ITmfStateInterval[] intervals = new ITmfStateInterval[endTimes.length];
+            System.arraycopy(entries.fEndTimes, 0, endTimes, 0, index);
+            System.arraycopy(entries.fIntervals, 0, intervals, 0, index);
+            endTimes[index] = interval.getEndTime();
+            intervals[index] = interval;
+            System.arraycopy(entries.fEndTimes, index, endTimes, index + 1, size - index);
+            System.arraycopy(entries.fIntervals, index, intervals, index + 1, size - index);
+            fEntries = new Entries(endTimes, intervals, size + 1);
+        }
+
+        /* Can be called by any thread */
+        ITmfStateInterval query(long t) {
+            final Entries entries = fEntries;
+            final int size = entries.fSize;
+            final long[] endTimes = entries.fEndTimes;
+
+            /* Find the first interval whose end time is >= t */
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (endTimes[mid] < t) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (low >= size) {
+                return null;
+            }
+            ITmfStateInterval interval = entries.fIntervals[low];
+            if (interval.getStartTime() > t) {
+                return null;
+            }
+            return interval;
+        }
+
+        /* Should only be called by the writer thread */
+        void trim() {
+            Entries entries = fEntries;
+            int size = entries.fSize;
+            if (size < entries.fEndTimes.length) {
+                fEntries = new Entries(Arrays.copyOf(entries.fEndTimes, size),
+                        Arrays.copyOf(entries.fIntervals, size), size);
+            }
+        }
+
+        /**
+         * Get the current entries, whose intervals can be read up to their
+         * size
+         */
+        Entries getEntries() {
+            return fEntries;
+        }
+    }
+
     /**
      * Constructor
      *
@@ -91,7 +191,6 @@ public class InMemoryBackend implements IStateHistoryBackend {
         this.ssid = ssid;
         this.startTime = startTime;
         this.latestTime = startTime;
-        this.intervals = new TreeSet<>(END_COMPARATOR);
     }
 
     @Override
@@ -119,10 +218,8 @@ public class InMemoryBackend implements IStateHistoryBackend {
 
         ITmfStateInterval interval = new TmfStateInterval(stateStartTime, stateEndTime, quark, value);
 
-        /* Add the interval into the tree */
-        synchronized (intervals) {
-            intervals.add(interval);
-        }
+        /* Add the interval into the arrays of its attribute */
+        getOrCreateAttribute(quark).add(interval);
 
         /* Update the "latest seen time" */
         if (stateEndTime > latestTime) {
@@ -130,6 +227,35 @@ public class InMemoryBackend implements IStateHistoryBackend {
         }
     }
 
+    private AttributeIntervals getOrCreateAttribute(int quark) {
+        AttributeIntervals[] attributes = fAttributes;
+        if (quark < attributes.length && attributes[quark] != null) {
+            return attributes[quark];
+        }
+        /*
+         * The readers may hold the current array, so the new element is stored
+         * in a copy, which is then published.
+         */
+        int length = (quark < attributes.length ? attributes.length : Math.max(quark + 1, attributes.length * 2));
+        attributes = Arrays.copyOf(attributes, length);
+        AttributeIntervals ret = new AttributeIntervals();
+        attributes[quark] = ret;
+        fAttributes = attributes;
+        return ret;
+    }
+
+    private ITmfStateInterval query(long t, int quark) {
+        AttributeIntervals[] attributes = fAttributes;
+        if (quark < 0 || quark >= attributes.length) {
+            return null;
+        }
+        AttributeIntervals attribute = attributes[quark];
+        if (attribute == null) {
+            return null;
+        }
+        return attribute.query(t);
+    }
+
     @Override
     public void doQuery(List<ITmfStateInterval> currentStateInfo, long t)
             throws TimeRangeException {
@@ -137,20 +263,11 @@ public class InMemoryBackend implements IStateHistoryBackend {
             throw new TimeRangeException(ssid + " Time:" + t + ", Start:" + startTime + ", End:" + latestTime); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
 
-        /*
-         * The intervals are sorted by end time, so we can binary search to get
-         * the first possible interval, then only compare their start times.
-         */
-        synchronized (intervals) {
-            Iterator<ITmfStateInterval> iter = serachforEndTime(intervals, t);
-            for (int modCount = 0; iter.hasNext() && modCount < currentStateInfo.size();) {
-                ITmfStateInterval entry = iter.next();
-                final long entryStartTime = entry.getStartTime();
-                if (entryStartTime <= t) {
-                    /* Add this interval to the returned values */
-                    currentStateInfo.set(entry.getAttribute(), entry);
-                    modCount++;
-                }
+        for (int quark = 0; quark < currentStateInfo.size(); quark++) {
+            ITmfStateInterval interval = query(t, quark);
+            if (interval != null) {
+                /* Add this interval to the returned values */
+                currentStateInfo.set(quark, interval);
             }
         }
     }
@@ -162,25 +279,11 @@ public class InMemoryBackend implements IStateHistoryBackend {
             throw new TimeRangeException(ssid + " Time:" + t + ", Start:" + startTime + ", End:" + latestTime); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
 
-        /*
-         * The intervals are sorted by end time, so we can binary search to get
-         * the first possible interval, then only compare their start times.
-         */
-        synchronized (intervals) {
-            Iterator<ITmfStateInterval> iter = serachforEndTime(intervals, t);
-            while (iter.hasNext()) {
-                ITmfStateInterval entry = iter.next();
-                final boolean attributeMatches = (entry.getAttribute() == attributeQuark);
-                final long entryStartTime = entry.getStartTime();
-                if (attributeMatches) {
-                    if (entryStartTime <= t) {
-                        /* This is the droid we are looking for */
-                        return entry;
-                    }
-                }
-            }
+        ITmfStateInterval interval = query(t, attributeQuark);
+        if (interval == null) {
+            throw new AttributeNotFoundException(ssid + " Quark:" + attributeQuark); //$NON-NLS-1$
         }
-        throw new AttributeNotFoundException(ssid + " Quark:" + attributeQuark); //$NON-NLS-1$
+        return interval;
     }
 
     private boolean checkValidTime(long t) {
@@ -192,7 +295,12 @@ public class InMemoryBackend implements IStateHistoryBackend {
 
     @Override
     public void finishedBuilding(long endTime) throws TimeRangeException {
-        /* Nothing to do */
+        /* No more intervals will be added, release the unused capacity */
+        for (AttributeIntervals attribute : fAttributes) {
+            if (attribute != null) {
+                attribute.trim();
+            }
+        }
     }
 
     @Override
@@ -225,21 +333,19 @@ public class InMemoryBackend implements IStateHistoryBackend {
 
     @Override
     public void debugPrint(PrintWriter writer) {
-        synchronized (intervals) {
-            writer.println(intervals.toString());
-        }
-    }
-
-    private static Iterator<ITmfStateInterval> serachforEndTime(TreeSet<ITmfStateInterval> tree, long time) {
-        ITmfStateInterval dummyInterval = new TmfStateInterval(-1, time, -1, null);
-        ITmfStateInterval myInterval = tree.lower(dummyInterval);
-        if (myInterval == null) {
-            return tree.iterator();
+        AttributeIntervals[] attributes = fAttributes;
+        for (int quark = 0; quark < attributes.length; quark++) {
+            AttributeIntervals attribute = attributes[quark];
+            if (attribute == null) {
+                continue;
+            }
+            writer.print(quark + ": "); //$NON-NLS-1$
+            AttributeIntervals.Entries entries = attribute.getEntries();
+            for (int i = 0; i < entries.fSize; i++) {
+                writer.print(entries.fIntervals[i].toString());
+            }
+            writer.println();
         }
-        final SortedSet<ITmfStateInterval> tailSet = tree.tailSet(myInterval);
-        Iterator<ITmfStateInterval> retVal = tailSet.iterator();
-        retVal.next();
-        return retVal;
     }
 
 }
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend;
+
+/**
+ * Time range of a 2D (time range x attributes) query, sampled at a given
+ * resolution.
+ *
+ * The "resolution points" of the range are t1, t1 + resolution, t1 + 2 *
+ * resolution, etc., as well as t2. An interval is part of the query result if
+ * it contains at least one of those points. A resolution of 1 means all the
+ * intervals intersecting [t1, t2] are part of the result.
+ */
+public final class QueryRange {
+
+    private final long fStart;
+    private final long fEnd;
+    private final long fResolution;
+
+    /**
+     * Constructor
+     *
+     * @param start
+     *            Start time of the range (t1)
+     * @param end
+     *            End time of the range (t2), inclusive
+     * @param resolution
+     *            The step between two resolution points. Must be greater than
+     *            zero.
+     */
+    public QueryRange(long start, long end, long resolution) {
+        if (start > end || resolution <= 0) {
+            throw new IllegalArgumentException();
+        }
+        fStart = start;
+        fEnd = end;
+        fResolution = resolution;
+    }
+
+    /**
+     * Get the start time of the range.
+     *
+     * @return The start time
+     */
+    public long getStart() {
+        return fStart;
+    }
+
+    /**
+     * Get the end time of the range.
+     *
+     * @return The end time
+     */
+    public long getEnd() {
+        return fEnd;
+    }
+
+    /**
+     * Get the resolution of the range.
+     *
+     * @return The resolution
+     */
+    public long getResolution() {
+        return fResolution;
+    }
+
+    /**
+     * Check if the time span [start, end] contains at least one of the
+     * resolution points of this range. This can be used for intervals, but
+     * also to decide if a whole node of a history needs to be visited.
+     *
+     * @param start
+     *            The start of the time span
+     * @param end
+     *            The end of the time span, inclusive
+     * @return If the time span contains a resolution point
+     */
+    public boolean intersects(long start, long end) {
+        long low = Math.max(start, fStart);
+        long high = Math.min(end, fEnd);
+        if (low > high) {
+            return false;
+        }
+        if (high == fEnd) {
+            return true;
+        }
+        /* Find the first resolution point at or after 'low' */
+        long steps = (low - fStart + fResolution - 1) / fResolution;
+        return (fStart + steps * fResolution <= high);
+    }
+
+    /**
+     * Get the first resolution point of this range that comes after a given
+     * timestamp.
+     *
+     * @param t
+     *            The timestamp
+     * @return The next resolution point, or t2 if there are no more
+     *         resolution points before the end of the range
+     */
+    public long getNextPoint(long t) {
+        if (t < fStart) {
+            return fStart;
+        }
+        long next = fStart + ((t - fStart) / fResolution + 1) * fResolution;
+        if (next > fEnd || next < 0) {
+            return fEnd;
+        }
+        return next;
+    }
+}
@@ -63,7 +63,28 @@ public final class CoreNode extends HTNode {
      */
     public CoreNode(HTConfig config, int seqNumber, int parentSeqNumber,
             long start) {
-        super(config, seqNumber, parentSeqNumber, start);
+        this(config, null, seqNumber, parentSeqNumber, start);
+    }
+
+    /**
+     * Constructor for the nodes of a tree storing its string values in a
+     * dictionary. Use this to initialize a new EMPTY node.
+     *
+     * @param config
+     *            Configuration of the History Tree
+     * @param dictionary
+     *            The string dictionary of the History Tree, or null if the
+     *            configuration does not use one
+     * @param seqNumber
+     *            The (unique) sequence number assigned to this particular node
+     * @param parentSeqNumber
+     *            The sequence number of this node's parent node
+     * @param start
+     *            The earliest timestamp stored in this node
+     */
+    public CoreNode(HTConfig config, HTStringDictionary dictionary,
+            int seqNumber, int parentSeqNumber, long start) {
+        super(config, dictionary, seqNumber, parentSeqNumber, start);
         this.nbChildren = 0;
         int size = config.getMaxChildren();
 
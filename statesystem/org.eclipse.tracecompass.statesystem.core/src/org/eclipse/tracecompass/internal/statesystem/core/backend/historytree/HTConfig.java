@@ -21,14 +21,36 @@ import java.io.File;
  */
 public final class HTConfig {
 
-    private static final int DEFAULT_BLOCKSIZE = 64 * 1024;
-    private static final int DEFAULT_MAXCHILDREN = 50;
+    /**
+     * Format in which the intervals are written in the nodes on disk
+     */
+    public static enum NodeFormat {
+        /**
+         * Fixed-size Data section entries with absolute timestamps, and
+         * variable-size values in a separate Strings section.
+         */
+        CLASSIC,
+        /**
+         * Variable-size Data section entries, with times encoded relative to
+         * the start of the node, varint-encoded quarks and integer values,
+         * and a per-node table of the distinct strings.
+         */
+        COMPACT
+    }
+
+    /** Default size of the blocks on disk */
+    public static final int DEFAULT_BLOCKSIZE = 64 * 1024;
+
+    /** Default maximum number of children of the core nodes */
+    public static final int DEFAULT_MAXCHILDREN = 50;
 
     private final File stateFile;
     private final int blockSize;
     private final int maxChildren;
     private final int providerVersion;
     private final long treeStart;
+    private final NodeFormat nodeFormat;
+    private final boolean useStringDictionary;
 
     /**
      * Full constructor.
@@ -50,11 +72,69 @@ public final class HTConfig {
      */
     public HTConfig(File newStateFile, int blockSize, int maxChildren,
             int providerVersion, long startTime) {
+        this(newStateFile, blockSize, maxChildren, providerVersion, startTime, NodeFormat.CLASSIC);
+    }
+
+    /**
+     * Full constructor, specifying the format of the nodes.
+     *
+     * @param newStateFile
+     *            The name of the history file
+     * @param blockSize
+     *            The size of each "block" on disk. One node will always fit in
+     *            one block.
+     * @param maxChildren
+     *            The maximum number of children allowed per core (non-leaf)
+     *            node.
+     * @param providerVersion
+     *            The version of the state provider. If a file already exists,
+     *            and their versions match, the history file will not be rebuilt
+     *            uselessly.
+     * @param startTime
+     *            The start time of the history
+     * @param nodeFormat
+     *            The format in which the intervals are written in the nodes
+     */
+    public HTConfig(File newStateFile, int blockSize, int maxChildren,
+            int providerVersion, long startTime, NodeFormat nodeFormat) {
+        this(newStateFile, blockSize, maxChildren, providerVersion, startTime, nodeFormat, false);
+    }
+
+    /**
+     * Full constructor, specifying the format of the nodes and if the string
+     * values should be stored in a dictionary.
+     *
+     * @param newStateFile
+     *            The name of the history file
+     * @param blockSize
+     *            The size of each "block" on disk. One node will always fit in
+     *            one block.
+     * @param maxChildren
+     *            The maximum number of children allowed per core (non-leaf)
+     *            node.
+     * @param providerVersion
+     *            The version of the state provider. If a file already exists,
+     *            and their versions match, the history file will not be rebuilt
+     *            uselessly.
+     * @param startTime
+     *            The start time of the history
+     * @param nodeFormat
+     *            The format in which the intervals are written in the nodes
+     * @param useStringDictionary
+     *            If the string values should be written in a dictionary
+     *            common to the whole tree, the nodes then only containing
+     *            their ids
+     */
+    public HTConfig(File newStateFile, int blockSize, int maxChildren,
+            int providerVersion, long startTime, NodeFormat nodeFormat,
+            boolean useStringDictionary) {
         this.stateFile = newStateFile;
         this.blockSize = blockSize;
         this.maxChildren = maxChildren;
         this.providerVersion = providerVersion;
         this.treeStart = startTime;
+        this.nodeFormat = nodeFormat;
+        this.useStringDictionary = useStringDictionary;
     }
 
     /**
@@ -122,4 +202,24 @@ public final class HTConfig {
     public long getTreeStart() {
         return treeStart;
     }
+
+    /**
+     * Get the format of the nodes of the history
+     *
+     * @return The node format
+     */
+    public NodeFormat getNodeFormat() {
+        return nodeFormat;
+    }
+
+    /**
+     * Get if the string values of the history are stored in a dictionary. The
+     * dictionary itself belongs to the {@link HistoryTree}.
+     *
+     * @return If the string values are stored in a dictionary, false if they
+     *         are stored directly in the nodes
+     */
+    public boolean isUsingStringDictionary() {
+        return useStringDictionary;
+    }
 }
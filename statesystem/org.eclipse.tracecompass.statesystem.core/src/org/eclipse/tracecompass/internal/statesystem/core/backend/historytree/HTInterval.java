@@ -17,6 +17,7 @@ package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateValueTypeException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
@@ -44,7 +45,7 @@ public final class HTInterval implements ITmfStateInterval, Comparable<HTInterva
      * +  4  int (valueOffset)
      * </pre>
      */
-    private static final int DATA_ENTRY_SIZE = 25;
+    static final int DATA_ENTRY_SIZE = 25;
 
     /* 'Byte' equivalent for state values types */
     private static final byte TYPE_NULL = -1;
@@ -127,6 +128,24 @@ public final class HTInterval implements ITmfStateInterval, Comparable<HTInterva
      *             If there was an error reading from the buffer
      */
     public static final HTInterval readFrom(ByteBuffer buffer) throws IOException {
+        return readFrom(buffer, null);
+    }
+
+    /**
+     * Reader factory method, for trees that may store their string values in
+     * a dictionary.
+     *
+     * @param buffer
+     *            The ByteBuffer from which to read the information
+     * @param dictionary
+     *            The string dictionary of the tree, or null if the strings are
+     *            stored in the nodes
+     * @return The interval object
+     * @throws IOException
+     *             If there was an error reading from the buffer
+     */
+    public static final HTInterval readFrom(ByteBuffer buffer,
+            HTStringDictionary dictionary) throws IOException {
         HTInterval interval;
         long intervalStart, intervalEnd;
         int attribute;
@@ -157,6 +176,13 @@ public final class HTInterval implements ITmfStateInterval, Comparable<HTInterva
             break;
 
         case TYPE_STRING:
+            if (dictionary != null) {
+                /* "ValueOrOffset" is the id of the string */
+                value = dictionary.getValue(valueOrOffset);
+                valueSize = NO_ENTRY_SIZE;
+                break;
+            }
+
             /* Go read the matching entry in the Strings section of the block */
             buffer.mark();
             buffer.position(valueOrOffset);
@@ -228,6 +254,221 @@ public final class HTInterval implements ITmfStateInterval, Comparable<HTInterva
         return interval;
     }
 
+    /**
+     * Read the state value of an interval directly from the buffer containing
+     * its node, without building the interval object. The buffer is accessed
+     * with absolute reads only, so its position is not modified.
+     *
+     * @param buffer
+     *            The little-endian buffer containing the node
+     * @param nodeOffset
+     *            The position in the buffer where the node starts
+     * @param valueType
+     *            The type byte of the Data section entry
+     * @param valueOrOffset
+     *            The value/offset int of the Data section entry
+     * @param dictionary
+     *            The string dictionary of the tree, or null if the strings are
+     *            stored in the nodes
+     * @return The state value
+     * @throws IOException
+     *             If the value type is unknown
+     */
+    static TmfStateValue readValueAt(ByteBuffer buffer, int nodeOffset,
+            byte valueType, int valueOrOffset, HTStringDictionary dictionary)
+            throws IOException {
+        switch (valueType) {
+        case TYPE_NULL:
+            return TmfStateValue.nullValue();
+
+        case TYPE_INTEGER:
+            return TmfStateValue.newValueInt(valueOrOffset);
+
+        case TYPE_STRING:
+            if (dictionary != null) {
+                return dictionary.getValue(valueOrOffset);
+            }
+            /* The first byte of the entry is its total size */
+            int pos = nodeOffset + valueOrOffset;
+            int valueSize = buffer.get(pos);
+            byte array[] = new byte[valueSize - 2];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = buffer.get(pos + 1 + i);
+            }
+            if (buffer.get(pos + valueSize - 1) != 0) {
+                throw new IOException(errMsg);
+            }
+            return TmfStateValue.newValueString(new String(array));
+
+        case TYPE_LONG:
+            return TmfStateValue.newValueLong(buffer.getLong(nodeOffset + valueOrOffset));
+
+        case TYPE_DOUBLE:
+            return TmfStateValue.newValueDouble(buffer.getDouble(nodeOffset + valueOrOffset));
+
+        default:
+            throw new IOException(errMsg);
+        }
+    }
+
+    /**
+     * Reader factory method for the compact node format. Reads one Data
+     * section entry at the current position of the buffer.
+     *
+     * @param buffer
+     *            The ByteBuffer from which to read the information
+     * @param nodeStart
+     *            The start time of the node containing the interval
+     * @param strings
+     *            The string values of the node, in the order of its strings
+     *            table
+     * @param dictionary
+     *            The string dictionary of the tree, or null if the strings are
+     *            stored in the nodes' tables
+     * @return The interval object
+     * @throws IOException
+     *             If there was an error reading from the buffer
+     */
+    static HTInterval readCompactFrom(ByteBuffer buffer, long nodeStart,
+            List<TmfStateValue> strings, HTStringDictionary dictionary) throws IOException {
+        long intervalStart = nodeStart + HTVarInt.get(buffer);
+        long intervalEnd = intervalStart + HTVarInt.get(buffer);
+        int attribute = (int) HTVarInt.get(buffer);
+        byte valueType = buffer.get();
+
+        TmfStateValue value;
+        int valueSize;
+        switch (valueType) {
+        case TYPE_NULL:
+            value = TmfStateValue.nullValue();
+            valueSize = NO_ENTRY_SIZE;
+            break;
+
+        case TYPE_INTEGER:
+            value = TmfStateValue.newValueInt((int) HTVarInt.getSigned(buffer));
+            valueSize = NO_ENTRY_SIZE;
+            break;
+
+        case TYPE_STRING:
+            int index = (int) HTVarInt.get(buffer);
+            if (dictionary != null) {
+                value = dictionary.getValue(index);
+            } else if (index < 0 || index >= strings.size()) {
+                throw new IOException(errMsg);
+            } else {
+                value = strings.get(index);
+            }
+            /*
+             * The value is in the strings table of the node, and the
+             * strings entry size is only used by the classic format.
+             */
+            valueSize = NO_ENTRY_SIZE;
+            break;
+
+        case TYPE_LONG:
+            value = TmfStateValue.newValueLong(HTVarInt.getSigned(buffer));
+            valueSize = LONG_ENTRY_SIZE;
+            break;
+
+        case TYPE_DOUBLE:
+            value = TmfStateValue.newValueDouble(buffer.getDouble());
+            valueSize = DOUBLE_ENTRY_SIZE;
+            break;
+
+        default:
+            throw new IOException(errMsg);
+        }
+
+        try {
+            return new HTInterval(intervalStart, intervalEnd, attribute, value, valueSize);
+        } catch (TimeRangeException e) {
+            throw new IOException(errMsg);
+        }
+    }
+
+    /**
+     * Write the Data section entry of this interval in the compact node
+     * format, at the current position of the buffer.
+     *
+     * @param buffer
+     *            The buffer corresponding to the node
+     * @param nodeStart
+     *            The start time of the node, which must not be greater than
+     *            the start of this interval
+     * @param stringIndex
+     *            The index of this interval's value in the strings table of
+     *            the node, or its id in the dictionary of the tree. Ignored if
+     *            the value is not a string.
+     */
+    void writeCompactInterval(ByteBuffer buffer, long nodeStart, int stringIndex) {
+        HTVarInt.put(buffer, start - nodeStart);
+        HTVarInt.put(buffer, end - start);
+        HTVarInt.put(buffer, attribute);
+
+        byte type = getByteFromType(sv.getType());
+        buffer.put(type);
+        try {
+            switch (type) {
+            case TYPE_INTEGER:
+                HTVarInt.putSigned(buffer, sv.unboxInt());
+                break;
+            case TYPE_STRING:
+                HTVarInt.put(buffer, stringIndex);
+                break;
+            case TYPE_LONG:
+                HTVarInt.putSigned(buffer, sv.unboxLong());
+                break;
+            case TYPE_DOUBLE:
+                buffer.putDouble(sv.unboxDouble());
+                break;
+            case TYPE_NULL:
+            default:
+                break;
+            }
+        } catch (StateValueTypeException e) {
+            /* We are in a switch/case on the value's own type */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the size of the Data section entry of this interval in the compact
+     * node format. This does not include the size of the string value itself,
+     * which is stored in the strings table of the node.
+     *
+     * @param nodeStart
+     *            The start time of the node
+     * @param stringIndex
+     *            The index of this interval's value in the strings table of
+     *            the node, or its id in the dictionary of the tree. Ignored if
+     *            the value is not a string.
+     * @return The size of the entry, in bytes
+     */
+    int getCompactIntervalSize(long nodeStart, int stringIndex) {
+        int size = HTVarInt.sizeOf(start - nodeStart)
+                + HTVarInt.sizeOf(end - start)
+                + HTVarInt.sizeOf(attribute)
+                + 1;
+        try {
+            switch (sv.getType()) {
+            case INTEGER:
+                return size + HTVarInt.sizeOfSigned(sv.unboxInt());
+            case STRING:
+                return size + HTVarInt.sizeOf(stringIndex);
+            case LONG:
+                return size + HTVarInt.sizeOfSigned(sv.unboxLong());
+            case DOUBLE:
+                return size + DOUBLE_ENTRY_SIZE;
+            case NULL:
+            default:
+                return size;
+            }
+        } catch (StateValueTypeException e) {
+            /* We are in a switch/case on the value's own type */
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Antagonist of the previous constructor, write the Data entry
      * corresponding to this interval in a ByteBuffer (mapped to a block in the
@@ -243,6 +484,24 @@ public final class HTInterval implements ITmfStateInterval, Comparable<HTInterva
      * @return The size of the Strings Entry that was written, if any.
      */
     public int writeInterval(ByteBuffer buffer, int endPosOfStringEntry) {
+        return writeInterval(buffer, endPosOfStringEntry, null);
+    }
+
+    /**
+     * Write the Data entry corresponding to this interval, for trees that may
+     * store their string values in a dictionary.
+     *
+     * @param buffer
+     *            The already-allocated ByteBuffer corresponding to a SHT Node
+     * @param endPosOfStringEntry
+     *            The initial position of the Strings Entry for this node
+     * @param dictionary
+     *            The string dictionary of the tree, or null if the strings are
+     *            stored in the nodes
+     * @return The size of the Strings Entry that was written, if any.
+     */
+    public int writeInterval(ByteBuffer buffer, int endPosOfStringEntry,
+            HTStringDictionary dictionary) {
         buffer.putLong(start);
         buffer.putLong(end);
         buffer.putInt(attribute);
@@ -265,6 +524,12 @@ public final class HTInterval implements ITmfStateInterval, Comparable<HTInterva
             break;
 
         case TYPE_STRING:
+            if (dictionary != null) {
+                /* We use the valueOffset as the id of the string */
+                buffer.putInt(dictionary.getId(sv.unboxStr()));
+                return NO_ENTRY_SIZE;
+            }
+
             byte[] byteArrayToWrite;
             try {
                 byteArrayToWrite = sv.unboxStr().getBytes();
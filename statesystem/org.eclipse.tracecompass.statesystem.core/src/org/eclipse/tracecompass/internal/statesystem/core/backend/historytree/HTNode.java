@@ -19,13 +19,23 @@ import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.eclipse.tracecompass.internal.statesystem.core.backend.QueryRange;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig.NodeFormat;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateValueTypeException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
 import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
 
 /**
@@ -99,6 +109,9 @@ public abstract class HTNode {
     /* Configuration of the History Tree to which belongs this node */
     private final HTConfig config;
 
+    /* String dictionary of the History Tree, null if it does not use one */
+    private final HTStringDictionary stringDictionary;
+
     /* Time range of this node */
     private final long nodeStart;
     private long nodeEnd;
@@ -119,6 +132,14 @@ public abstract class HTNode {
     /* Vector containing all the intervals contained in this node */
     private final List<HTInterval> intervals;
 
+    /*
+     * Strings table of the node, in the compact format only: index of each
+     * distinct string value, and its encoded bytes in the order of the table.
+     * It remains empty if the tree uses a string dictionary.
+     */
+    private final Map<String, Integer> stringIndexes;
+    private final List<byte[]> stringBytes;
+
     /* Lock used to protect the accesses to intervals, nodeEnd and such */
     private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock(false);
 
@@ -135,15 +156,50 @@ public abstract class HTNode {
      *            The earliest timestamp stored in this node
      */
     protected HTNode(HTConfig config, int seqNumber, int parentSeqNumber, long start) {
+        this(config, null, seqNumber, parentSeqNumber, start);
+    }
+
+    /**
+     * Constructor for the nodes of a tree storing its string values in a
+     * dictionary
+     *
+     * @param config
+     *            Configuration of the History Tree
+     * @param dictionary
+     *            The string dictionary of the History Tree, or null if the
+     *            configuration does not use one
+     * @param seqNumber
+     *            The (unique) sequence number assigned to this particular node
+     * @param parentSeqNumber
+     *            The sequence number of this node's parent node
+     * @param start
+     *            The earliest timestamp stored in this node
+     */
+    protected HTNode(HTConfig config, HTStringDictionary dictionary,
+            int seqNumber, int parentSeqNumber, long start) {
+        if (config.isUsingStringDictionary() != (dictionary != null)) {
+            throw new IllegalArgumentException("The string dictionary does not match the configuration"); //$NON-NLS-1$
+        }
         this.config = config;
+        this.stringDictionary = dictionary;
         this.nodeStart = start;
         this.sequenceNumber = seqNumber;
         this.parentSequenceNumber = parentSeqNumber;
 
         this.stringSectionOffset = config.getBlockSize();
-        this.sizeOfIntervalSection = 0;
         this.isOnDisk = false;
         this.intervals = new ArrayList<>();
+
+        if (config.getNodeFormat() == NodeFormat.COMPACT) {
+            this.stringIndexes = new HashMap<>();
+            this.stringBytes = new ArrayList<>();
+            /* The strings table starts with its number of entries */
+            this.sizeOfIntervalSection = STRINGS_TABLE_HEADER_SIZE;
+        } else {
+            this.stringIndexes = null;
+            this.stringBytes = null;
+            this.sizeOfIntervalSection = 0;
+        }
     }
 
     /**
@@ -152,6 +208,8 @@ public abstract class HTNode {
      *
      * @param config
      *            Configuration of the History Tree
+     * @param dictionary
+     *            The string dictionary of the History Tree, or null
      * @param fc
      *            FileChannel to the history file, ALREADY SEEKED at the start
      *            of the node.
@@ -159,18 +217,73 @@ public abstract class HTNode {
      * @throws IOException
      *             If there was an error reading from the file channel
      */
-    public static final HTNode readNode(HTConfig config, FileChannel fc)
-            throws IOException {
-        HTNode newNode = null;
-        int res, i;
-
+    public static final HTNode readNode(HTConfig config, HTStringDictionary dictionary,
+            FileChannel fc) throws IOException {
         ByteBuffer buffer = ByteBuffer.allocate(config.getBlockSize());
         buffer.order(ByteOrder.LITTLE_ENDIAN);
         buffer.clear();
-        res = fc.read(buffer);
+        int res = fc.read(buffer);
         assert (res == config.getBlockSize());
         buffer.flip();
 
+        return readNode(config, dictionary, buffer);
+    }
+
+    /**
+     * Reader factory method. Build a Node object (of the right type) by reading
+     * the block at the given position in the file. This does not modify the
+     * position of the file channel, so it can be called by several threads at
+     * the same time.
+     *
+     * @param config
+     *            Configuration of the History Tree
+     * @param dictionary
+     *            The string dictionary of the History Tree, or null
+     * @param fc
+     *            FileChannel to the history file
+     * @param position
+     *            The position in the file at which the node starts
+     * @return The node object
+     * @throws IOException
+     *             If there was an error reading from the file channel
+     */
+    public static final HTNode readNode(HTConfig config, HTStringDictionary dictionary,
+            FileChannel fc, long position) throws IOException {
+        final int blockSize = config.getBlockSize();
+        ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int res = fc.read(buffer, position + buffer.position());
+            if (res < 0) {
+                throw new IOException("Unexpected end of history file"); //$NON-NLS-1$
+            }
+        }
+        buffer.flip();
+
+        return readNode(config, dictionary, buffer);
+    }
+
+    /**
+     * Reader factory method. Build a Node object (of the right type) from the
+     * contents of a block.
+     *
+     * @param config
+     *            Configuration of the History Tree
+     * @param dictionary
+     *            The string dictionary of the History Tree, or null
+     * @param buffer
+     *            Little-endian buffer containing the node, positioned at its
+     *            start
+     * @return The node object
+     * @throws IOException
+     *             If the contents of the buffer are not a valid node
+     */
+    public static final HTNode readNode(HTConfig config, HTStringDictionary dictionary,
+            ByteBuffer buffer) throws IOException {
+        HTNode newNode = null;
+        int i;
+
         /* Read the common header part */
         byte typeByte = buffer.get();
         NodeType type = NodeType.fromByte(typeByte);
@@ -186,13 +299,13 @@ public abstract class HTNode {
         switch (type) {
         case CORE:
             /* Core nodes */
-            newNode = new CoreNode(config, seqNb, parentSeqNb, start);
+            newNode = new CoreNode(config, dictionary, seqNb, parentSeqNb, start);
             newNode.readSpecificHeader(buffer);
             break;
 
         case LEAF:
             /* Leaf nodes */
-            newNode = new LeafNode(config, seqNb, parentSeqNb, start);
+            newNode = new LeafNode(config, dictionary, seqNb, parentSeqNb, start);
             newNode.readSpecificHeader(buffer);
             break;
 
@@ -205,8 +318,12 @@ public abstract class HTNode {
          * At this point, we should be done reading the header and 'buffer'
          * should only have the intervals left
          */
-        for (i = 0; i < intervalCount; i++) {
-            newNode.intervals.add(HTInterval.readFrom(buffer));
+        if (config.getNodeFormat() == NodeFormat.COMPACT) {
+            newNode.readCompactIntervals(buffer, intervalCount);
+        } else {
+            for (i = 0; i < intervalCount; i++) {
+                newNode.intervals.add(HTInterval.readFrom(buffer, dictionary));
+            }
         }
 
         /* Assign the node's other information we have read previously */
@@ -217,6 +334,35 @@ public abstract class HTNode {
         return newNode;
     }
 
+    /**
+     * Read the strings table and the intervals of a node in the compact
+     * format. Each distinct string value is only instantiated once.
+     */
+    private void readCompactIntervals(ByteBuffer buffer, int intervalCount)
+            throws IOException {
+        int nbStrings = buffer.getInt();
+        if (nbStrings < 0) {
+            throw new IOException("Invalid strings table size"); //$NON-NLS-1$
+        }
+        List<TmfStateValue> values = new ArrayList<>(nbStrings);
+        for (int i = 0; i < nbStrings; i++) {
+            long length = HTVarInt.get(buffer);
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Invalid string length"); //$NON-NLS-1$
+            }
+            byte[] bytes = new byte[(int) length];
+            buffer.get(bytes);
+            String str = new String(bytes, UTF8);
+            stringIndexes.put(str, i);
+            stringBytes.add(bytes);
+            values.add(TmfStateValue.newValueString(str));
+        }
+
+        for (int i = 0; i < intervalCount; i++) {
+            intervals.add(HTInterval.readCompactFrom(buffer, nodeStart, values, stringDictionary));
+        }
+    }
+
     /**
      * Write this node to the given file channel.
      *
@@ -254,9 +400,21 @@ public abstract class HTNode {
             this.writeSpecificHeader(buffer);
 
             /* Back to us, we write the intervals */
-            for (HTInterval interval : intervals) {
-                int size = interval.writeInterval(buffer, curStringsEntryEndPos);
-                curStringsEntryEndPos -= size;
+            if (stringIndexes != null) {
+                /* Compact format: the strings table, then the entries */
+                buffer.putInt(stringBytes.size());
+                for (byte[] bytes : stringBytes) {
+                    HTVarInt.put(buffer, bytes.length);
+                    buffer.put(bytes);
+                }
+                for (HTInterval interval : intervals) {
+                    interval.writeCompactInterval(buffer, nodeStart, getStringIndex(interval));
+                }
+            } else {
+                for (HTInterval interval : intervals) {
+                    int size = interval.writeInterval(buffer, curStringsEntryEndPos, stringDictionary);
+                    curStringsEntryEndPos -= size;
+                }
             }
 
             /*
@@ -371,7 +529,7 @@ public abstract class HTNode {
         rwl.writeLock().lock();
         try {
             /* Just in case, should be checked before even calling this function */
-            assert (newInterval.getIntervalSize() <= this.getNodeFreeSpace());
+            assert (getIntervalSize(newInterval) <= this.getNodeFreeSpace());
 
             /* Find the insert position to keep the list sorted */
             int index = intervals.size();
@@ -380,15 +538,113 @@ public abstract class HTNode {
             }
 
             intervals.add(index, newInterval);
-            sizeOfIntervalSection += newInterval.getIntervalSize();
 
-            /* Update the in-node offset "pointer" */
-            stringSectionOffset -= (newInterval.getStringsEntrySize());
+            HTStringDictionary dictionary = stringDictionary;
+            if (stringIndexes != null) {
+                /* Compact format, add the value to the strings table if needed */
+                int stringIndex = 0;
+                String str = getStringValue(newInterval);
+                if (str != null && dictionary != null) {
+                    stringIndex = dictionary.getId(str);
+                } else if (str != null) {
+                    Integer existing = stringIndexes.get(str);
+                    if (existing == null) {
+                        byte[] bytes = str.getBytes(UTF8);
+                        stringIndex = stringBytes.size();
+                        stringIndexes.put(str, stringIndex);
+                        stringBytes.add(bytes);
+                        sizeOfIntervalSection += HTVarInt.sizeOf(bytes.length) + bytes.length;
+                    } else {
+                        stringIndex = existing;
+                    }
+                }
+                sizeOfIntervalSection += newInterval.getCompactIntervalSize(nodeStart, stringIndex);
+            } else if (dictionary != null && getStringValue(newInterval) != null) {
+                /* The string is only referred to by its id */
+                dictionary.getId(getStringValue(newInterval));
+                sizeOfIntervalSection += HTInterval.DATA_ENTRY_SIZE;
+            } else {
+                sizeOfIntervalSection += newInterval.getIntervalSize();
+
+                /* Update the in-node offset "pointer" */
+                stringSectionOffset -= (newInterval.getStringsEntrySize());
+            }
         } finally {
             rwl.writeLock().unlock();
         }
     }
 
+    /**
+     * Get the number of bytes an interval would use if it was added to this
+     * node. With the compact format, this depends on the node's start time
+     * and on the string values already present in the node. With a string
+     * dictionary, the strings are added to it by this method.
+     *
+     * @param interval
+     *            The interval
+     * @return The size of the interval in this node, in bytes
+     */
+    public int getIntervalSize(HTInterval interval) {
+        HTStringDictionary dictionary = stringDictionary;
+        if (stringIndexes == null) {
+            if (dictionary != null && getStringValue(interval) != null) {
+                return HTInterval.DATA_ENTRY_SIZE;
+            }
+            return interval.getIntervalSize();
+        }
+        rwl.readLock().lock();
+        try {
+            String str = getStringValue(interval);
+            if (str == null) {
+                return interval.getCompactIntervalSize(nodeStart, 0);
+            }
+            if (dictionary != null) {
+                return interval.getCompactIntervalSize(nodeStart, dictionary.getId(str));
+            }
+            Integer index = stringIndexes.get(str);
+            if (index != null) {
+                return interval.getCompactIntervalSize(nodeStart, index);
+            }
+            /* The string would be added to the table */
+            int length = str.getBytes(UTF8).length;
+            return interval.getCompactIntervalSize(nodeStart, stringBytes.size())
+                    + HTVarInt.sizeOf(length) + length;
+        } finally {
+            rwl.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the index of the value of an interval in the strings table, or its
+     * id in the string dictionary. Should only be called with a lock taken.
+     *
+     * @return The index, or 0 if the value is not a string
+     */
+    private int getStringIndex(HTInterval interval) {
+        String str = getStringValue(interval);
+        if (str == null) {
+            return 0;
+        }
+        HTStringDictionary dictionary = stringDictionary;
+        if (dictionary != null) {
+            return dictionary.getId(str);
+        }
+        return stringIndexes.get(str);
+    }
+
+    private static String getStringValue(HTInterval interval) {
+        ITmfStateValue value = interval.getStateValue();
+        if (value.getType() != ITmfStateValue.Type.STRING) {
+            return null;
+        }
+        try {
+            return value.unboxStr();
+        } catch (StateValueTypeException e) {
+            /* We just checked the type */
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * We've received word from the containerTree that newest nodes now exist to
      * our right. (Puts isDone = true and sets the endtime)
@@ -454,6 +710,39 @@ public abstract class HTNode {
         }
     }
 
+    /**
+     * Add to a collection all the intervals of this node that belong to one
+     * of the given attributes and contain a resolution point of the range.
+     *
+     * @param results
+     *            The collection to which the matching intervals are added
+     * @param quarks
+     *            The quarks of the requested attributes
+     * @param range
+     *            The time range and resolution of the query
+     * @throws TimeRangeException
+     *             If the range is invalid
+     */
+    public void writeIntervalsInRange(Collection<ITmfStateInterval> results,
+            BitSet quarks, QueryRange range) throws TimeRangeException {
+        rwl.readLock().lock();
+        try {
+            /*
+             * The intervals are sorted by end time, so we can skip those
+             * ending before the range, but not those ending after it.
+             */
+            for (int i = getStartIndexFor(range.getStart()); i < intervals.size(); i++) {
+                HTInterval interval = intervals.get(i);
+                if (quarks.get(interval.getAttribute())
+                        && range.intersects(interval.getStartTime(), interval.getEndTime())) {
+                    results.add(interval);
+                }
+            }
+        } finally {
+            rwl.readLock().unlock();
+        }
+    }
+
     /**
      * Get a single Interval from the information in this node If the
      * key/timestamp pair cannot be found, we return null.
@@ -516,7 +805,8 @@ public abstract class HTNode {
             index = 0;
         }
         if (index >= intervals.size()) {
-            index = intervals.size() - 1;
+            /* All the intervals of this node end before 't' */
+            return intervals.size();
         }
 
         /*
@@ -542,7 +832,13 @@ public abstract class HTNode {
      *  1 - byte (done or not)
      * </pre>
      */
-    private static final int COMMON_HEADER_SIZE = 34;
+    static final int COMMON_HEADER_SIZE = 34;
+
+    /** Size of the number of entries at the start of a strings table */
+    private static final int STRINGS_TABLE_HEADER_SIZE = 4;
+
+    /** Encoding of the strings in the compact format */
+    private static final Charset UTF8 = StandardCharsets.UTF_8;
 
     /**
      * Return the total header size of this node (will depend on the node type).
@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of History Tree nodes, whose capacity is expressed
+ * in bytes instead of in number of nodes.
+ *
+ * Each node is accounted for the size of its block on disk, so trees with
+ * different block sizes can share the same cache. A single cache can be shared
+ * by several {@link HT_IO} objects (see {@link #getSharedCache()}), which means
+ * all the history trees opened at the same time use one global memory budget.
+ * The entries are keyed by the owner of the node and its sequence number.
+ *
+ * The cache can be split in several segments, each one with its own lock and
+ * an equal share of the size budget, so that concurrent queries on different
+ * nodes do not contend on a single monitor. The LRU order is maintained per
+ * segment. Each segment must be able to hold at least one node of the default
+ * block size, so a small budget is split in fewer segments than requested.
+ */
+public final class HTNodeCache {
+
+    /** Default size of the shared cache: 256 nodes of the default block size */
+    private static final long DEFAULT_SHARED_CACHE_SIZE = 256L * 64 * 1024;
+
+    /** Number of segments of the shared cache */
+    private static final int SHARED_CACHE_SEGMENTS = 16;
+
+    private static HTNodeCache fSharedCache = null;
+
+    private final int fMaxSegments;
+    private volatile CacheSegment[] fSegments;
+
+    /**
+     * Constructor for a cache made of one single segment, which means the LRU
+     * order is global to the whole cache.
+     *
+     * @param maxSize
+     *            The maximum size of this cache, in bytes
+     */
+    public HTNodeCache(long maxSize) {
+        this(maxSize, 1);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxSize
+     *            The maximum size of this cache, in bytes
+     * @param nbSegments
+     *            The maximum number of independently-locked segments in which
+     *            to split the cache
+     */
+    public HTNodeCache(long maxSize, int nbSegments) {
+        if (maxSize < 0 || nbSegments <= 0) {
+            throw new IllegalArgumentException();
+        }
+        fMaxSegments = nbSegments;
+        fSegments = new CacheSegment[0];
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Get the cache that is shared by all the history trees that do not
+     * specify their own.
+     *
+     * @return The shared node cache
+     */
+    public static synchronized HTNodeCache getSharedCache() {
+        HTNodeCache cache = fSharedCache;
+        if (cache == null) {
+            cache = new HTNodeCache(DEFAULT_SHARED_CACHE_SIZE, SHARED_CACHE_SEGMENTS);
+            fSharedCache = cache;
+        }
+        return cache;
+    }
+
+    // ------------------------------------------------------------------------
+    // Accessors
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the maximum size of this cache.
+     *
+     * @return The maximum size, in bytes
+     */
+    public long getMaxSize() {
+        long total = 0;
+        for (CacheSegment segment : fSegments) {
+            synchronized (segment) {
+                total += segment.fMaxSize;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of segments in which the cache is currently split.
+     *
+     * @return The number of segments
+     */
+    public int getSegmentCount() {
+        return fSegments.length;
+    }
+
+    /**
+     * Change the maximum size of this cache. If the new size is smaller than
+     * the current one, the least recently used nodes are evicted right away.
+     *
+     * @param maxSize
+     *            The new maximum size, in bytes
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        /* Each segment must fit at least one node of the default block size */
+        int nbSegments = (int) Math.max(1, Math.min(fMaxSegments, maxSize / HTConfig.DEFAULT_BLOCKSIZE));
+        long segmentSize = maxSize / nbSegments;
+
+        CacheSegment[] segments = fSegments;
+        if (segments.length == nbSegments) {
+            for (CacheSegment segment : segments) {
+                synchronized (segment) {
+                    segment.fMaxSize = segmentSize;
+                    segment.evict();
+                }
+            }
+            return;
+        }
+
+        /*
+         * The nodes map to other segments, move them to new segments. A node
+         * inserted concurrently in the old segments is simply lost.
+         */
+        CacheSegment[] newSegments = new CacheSegment[nbSegments];
+        for (int i = 0; i < nbSegments; i++) {
+            newSegments[i] = new CacheSegment();
+            newSegments[i].fMaxSize = segmentSize;
+        }
+        for (CacheSegment segment : segments) {
+            synchronized (segment) {
+                for (Map.Entry<NodeKey, HTNode> entry : segment.fNodes.entrySet()) {
+                    CacheSegment newSegment = getSegment(newSegments, entry.getKey());
+                    newSegment.fNodes.put(entry.getKey(), entry.getValue());
+                    newSegment.fCurrentSize += getNodeSize(entry.getValue());
+                }
+            }
+        }
+        for (CacheSegment segment : newSegments) {
+            segment.evict();
+        }
+        fSegments = newSegments;
+    }
+
+    /**
+     * Get the amount of bytes currently used by the nodes in this cache.
+     *
+     * @return The current size, in bytes
+     */
+    public long getCurrentSize() {
+        long total = 0;
+        for (CacheSegment segment : fSegments) {
+            synchronized (segment) {
+                total += segment.fCurrentSize;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of nodes currently in this cache.
+     *
+     * @return The number of nodes
+     */
+    public int getNodeCount() {
+        int total = 0;
+        for (CacheSegment segment : fSegments) {
+            synchronized (segment) {
+                total += segment.fNodes.size();
+            }
+        }
+        return total;
+    }
+
+    // ------------------------------------------------------------------------
+    // Operations
+    // ------------------------------------------------------------------------
+
+    /**
+     * Retrieve a node from the cache. The node becomes the most recently used
+     * one.
+     *
+     * @param owner
+     *            The object owning the node, usually the {@link HT_IO} of the
+     *            tree
+     * @param seqNumber
+     *            The sequence number of the node
+     * @return The node, or null if it is not in the cache
+     */
+    public HTNode get(Object owner, int seqNumber) {
+        NodeKey key = new NodeKey(owner, seqNumber);
+        CacheSegment segment = getSegment(key);
+        synchronized (segment) {
+            return segment.fNodes.get(key);
+        }
+    }
+
+    /**
+     * Insert a node in the cache, replacing any previous node of the same
+     * owner with the same sequence number. Least recently used nodes are
+     * evicted if the cache goes over its maximum size.
+     *
+     * @param owner
+     *            The object owning the node, usually the {@link HT_IO} of the
+     *            tree
+     * @param node
+     *            The node to insert
+     */
+    public void put(Object owner, HTNode node) {
+        NodeKey key = new NodeKey(owner, node.getSequenceNumber());
+        CacheSegment segment = getSegment(key);
+        synchronized (segment) {
+            HTNode previous = segment.fNodes.put(key, node);
+            if (previous != null) {
+                segment.fCurrentSize -= getNodeSize(previous);
+            }
+            segment.fCurrentSize += getNodeSize(node);
+            segment.evict();
+        }
+    }
+
+    /**
+     * Remove all the nodes belonging to a given owner, for example when its
+     * history file is closed.
+     *
+     * @param owner
+     *            The owner whose nodes should be removed
+     */
+    public void invalidate(Object owner) {
+        for (CacheSegment segment : fSegments) {
+            synchronized (segment) {
+                Iterator<Map.Entry<NodeKey, HTNode>> iter = segment.fNodes.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<NodeKey, HTNode> entry = iter.next();
+                    if (entry.getKey().fOwner == owner) {
+                        segment.fCurrentSize -= getNodeSize(entry.getValue());
+                        iter.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all the nodes from this cache.
+     */
+    public void clear() {
+        for (CacheSegment segment : fSegments) {
+            synchronized (segment) {
+                segment.fNodes.clear();
+                segment.fCurrentSize = 0;
+            }
+        }
+    }
+
+    private CacheSegment getSegment(NodeKey key) {
+        return getSegment(fSegments, key);
+    }
+
+    private static CacheSegment getSegment(CacheSegment[] segments, NodeKey key) {
+        int hash = key.hashCode();
+        /* Spread the bits, consecutive sequence numbers are common */
+        hash ^= (hash >>> 16);
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    private static long getNodeSize(HTNode node) {
+        return node.getConfig().getBlockSize();
+    }
+
+    /**
+     * One segment of the cache. All accesses must be done with the monitor of
+     * the segment held.
+     */
+    private static final class CacheSegment {
+
+        private final Map<NodeKey, HTNode> fNodes = new LinkedHashMap<>(16, 0.75f, true);
+        private long fMaxSize;
+        private long fCurrentSize = 0;
+
+        public void evict() {
+            Iterator<HTNode> iter = fNodes.values().iterator();
+            while (fCurrentSize > fMaxSize && iter.hasNext()) {
+                fCurrentSize -= getNodeSize(iter.next());
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Key of the cache entries. Owners are compared by identity.
+     */
+    private static final class NodeKey {
+
+        private final Object fOwner;
+        private final int fSeqNumber;
+
+        public NodeKey(Object owner, int seqNumber) {
+            fOwner = owner;
+            fSeqNumber = seqNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(fOwner) + fSeqNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof NodeKey)) {
+                return false;
+            }
+            NodeKey other = (NodeKey) obj;
+            return (fOwner == other.fOwner && fSeqNumber == other.fSeqNumber);
+        }
+    }
+}
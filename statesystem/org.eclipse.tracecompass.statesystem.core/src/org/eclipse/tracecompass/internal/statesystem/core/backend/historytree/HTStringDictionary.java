@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+
+/**
+ * Dictionary of the string state values of a History Tree.
+ *
+ * Each distinct string is assigned an integer id, which is what gets written
+ * in the nodes instead of the string itself. The dictionary is written once,
+ * after the nodes, when the tree is closed. Every node read from the file then
+ * shares the same state value object for a given string.
+ *
+ * Ids are only added by the thread building the tree, but can be resolved by
+ * any number of query threads at the same time, without locking.
+ */
+public final class HTStringDictionary {
+
+    private static final Charset UTF8 = StandardCharsets.UTF_8;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /* Ids of the strings, only used when building the tree */
+    private final Map<String, Integer> fIds = new HashMap<>();
+
+    /* The string values, by id, and the number of them that are valid */
+    private volatile TmfStateValue[] fValues = new TmfStateValue[INITIAL_CAPACITY];
+    private volatile int fSize = 0;
+
+    /* Size of the serialized dictionary, in bytes */
+    private long fSerializedSize = 0;
+
+    /**
+     * Get the id of a string, adding it to the dictionary if needed.
+     *
+     * @param str
+     *            The string
+     * @return The id of the string
+     */
+    public synchronized int getId(String str) {
+        Integer id = fIds.get(str);
+        if (id != null) {
+            return id;
+        }
+        int newId = add(str);
+        fSerializedSize += getEntrySize(str.getBytes(UTF8).length);
+        return newId;
+    }
+
+    /**
+     * Get the state value corresponding to an id. The same object is returned
+     * every time for a given id.
+     *
+     * @param id
+     *            The id of the string
+     * @return The string state value
+     * @throws IOException
+     *             If the id is not in the dictionary, which means the file is
+     *             corrupted
+     */
+    public TmfStateValue getValue(int id) throws IOException {
+        /* Read the size first, the array is always at least as recent */
+        int size = fSize;
+        TmfStateValue[] values = fValues;
+        if (id < 0 || id >= size) {
+            throw new IOException("Invalid string id: " + id); //$NON-NLS-1$
+        }
+        return values[id];
+    }
+
+    /**
+     * Get the number of strings in the dictionary.
+     *
+     * @return The number of strings
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Get the number of bytes used by this dictionary in the history file.
+     *
+     * @return The serialized size, in bytes
+     */
+    public synchronized long getSerializedSize() {
+        return fSerializedSize;
+    }
+
+    /**
+     * Write the dictionary at the given position in a file. Each entry is the
+     * varint-encoded length of the string, followed by its UTF-8 bytes.
+     *
+     * @param fc
+     *            The file channel to write to
+     * @param position
+     *            The position in the file
+     * @throws IOException
+     *             If there was an error writing
+     */
+    public synchronized void writeTo(FileChannel fc, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) fSerializedSize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < fSize; i++) {
+            byte[] bytes = fValues[i].unboxStr().getBytes(UTF8);
+            HTVarInt.put(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Read the contents of a dictionary that was written with
+     * {@link #writeTo}, replacing the current contents of this one.
+     *
+     * @param fc
+     *            The file channel to read from
+     * @param position
+     *            The position of the dictionary in the file
+     * @param serializedSize
+     *            The number of bytes of the dictionary
+     * @throws IOException
+     *             If there was an error reading, or if the dictionary is not
+     *             valid
+     */
+    public synchronized void readFrom(FileChannel fc, long position, int serializedSize)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(serializedSize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of history file"); //$NON-NLS-1$
+            }
+        }
+        buffer.flip();
+
+        fIds.clear();
+        fValues = new TmfStateValue[INITIAL_CAPACITY];
+        fSize = 0;
+        while (buffer.hasRemaining()) {
+            long length = HTVarInt.get(buffer);
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Invalid string dictionary"); //$NON-NLS-1$
+            }
+            byte[] bytes = new byte[(int) length];
+            buffer.get(bytes);
+            add(new String(bytes, UTF8));
+        }
+        fSerializedSize = serializedSize;
+    }
+
+    /* Should be called with the lock held */
+    private int add(String str) {
+        int id = fSize;
+        TmfStateValue[] values = fValues;
+        if (id == values.length) {
+            values = Arrays.copyOf(values, id * 2);
+            fValues = values;
+        }
+        values[id] = TmfStateValue.newValueString(str);
+        fIds.put(str, id);
+        /* Publish the new value */
+        fSize = id + 1;
+        return id;
+    }
+
+    private static int getEntrySize(int length) {
+        return HTVarInt.sizeOf(length) + length;
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length encoding of integers used by the compact node format.
+ *
+ * Values are written 7 bits at a time, least significant group first, the
+ * high bit of each byte indicating if more bytes follow. Signed values are
+ * first "zig-zag" encoded, so that small negative numbers also use few bytes.
+ */
+final class HTVarInt {
+
+    private static final int MAX_VARLONG_SIZE = 10;
+
+    private HTVarInt() {}
+
+    /**
+     * Get the number of bytes used to write an unsigned value.
+     *
+     * @param value
+     *            The value, interpreted as unsigned
+     * @return The encoded size, between 1 and 10 bytes
+     */
+    public static int sizeOf(long value) {
+        int size = 1;
+        long remaining = value >>> 7;
+        while (remaining != 0) {
+            size++;
+            remaining >>>= 7;
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of bytes used to write a signed value.
+     *
+     * @param value
+     *            The signed value
+     * @return The encoded size, between 1 and 10 bytes
+     */
+    public static int sizeOfSigned(long value) {
+        return sizeOf(zigZag(value));
+    }
+
+    /**
+     * Write an unsigned value at the current position of a buffer.
+     *
+     * @param buffer
+     *            The buffer to write to
+     * @param value
+     *            The value, interpreted as unsigned
+     */
+    public static void put(ByteBuffer buffer, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    /**
+     * Write a signed value at the current position of a buffer.
+     *
+     * @param buffer
+     *            The buffer to write to
+     * @param value
+     *            The signed value
+     */
+    public static void putSigned(ByteBuffer buffer, long value) {
+        put(buffer, zigZag(value));
+    }
+
+    /**
+     * Read an unsigned value from the current position of a buffer.
+     *
+     * @param buffer
+     *            The buffer to read from
+     * @return The value
+     * @throws IOException
+     *             If the encoded value is longer than 10 bytes
+     */
+    public static long get(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int i = 0; i < MAX_VARLONG_SIZE; i++) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable-length value"); //$NON-NLS-1$
+    }
+
+    /**
+     * Read a signed value from the current position of a buffer.
+     *
+     * @param buffer
+     *            The buffer to read from
+     * @return The value
+     * @throws IOException
+     *             If the encoded value is longer than 10 bytes
+     */
+    public static long getSigned(ByteBuffer buffer) throws IOException {
+        long value = get(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
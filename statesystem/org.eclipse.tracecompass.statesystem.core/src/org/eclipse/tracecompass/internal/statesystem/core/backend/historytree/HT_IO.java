@@ -18,6 +18,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.tracecompass.internal.statesystem.core.Activator;
 
@@ -36,6 +37,7 @@ import org.eclipse.tracecompass.internal.statesystem.core.Activator;
 class HT_IO {
     /* Configuration of the History Tree */
     private final HTConfig fConfig;
+    private final HTStringDictionary fDictionary;
 
     /* Fields related to the file I/O */
     private final FileInputStream fis;
@@ -43,23 +45,50 @@ class HT_IO {
     private final FileChannel fcIn;
     private final FileChannel fcOut;
 
-    // TODO test/benchmark optimal cache size
-    private static final int CACHE_SIZE = 256;
-    private final HTNode fNodeCache[] = new HTNode[CACHE_SIZE];
+    /* Cache of the nodes read from disk, possibly shared with other trees */
+    private final HTNodeCache fNodeCache;
+    private final AtomicLong fCacheHits = new AtomicLong();
+    private final AtomicLong fCacheMisses = new AtomicLong();
 
     /**
-     * Standard constructor
+     * Standard constructor, using the shared node cache.
      *
      * @param config
      *            The configuration object for the StateHistoryTree
+     * @param dictionary
+     *            The string dictionary of the StateHistoryTree, or null if
+     *            the configuration does not use one
      * @param newFile
      *            Flag indicating that the file must be created from scratch
      *
      * @throws IOException
      *             An exception can be thrown when file cannot be accessed
      */
-    public HT_IO(HTConfig config, boolean newFile) throws IOException {
+    public HT_IO(HTConfig config, HTStringDictionary dictionary, boolean newFile) throws IOException {
+        this(config, dictionary, newFile, HTNodeCache.getSharedCache());
+    }
+
+    /**
+     * Constructor specifying the node cache to use
+     *
+     * @param config
+     *            The configuration object for the StateHistoryTree
+     * @param dictionary
+     *            The string dictionary of the StateHistoryTree, or null if
+     *            the configuration does not use one
+     * @param newFile
+     *            Flag indicating that the file must be created from scratch
+     * @param nodeCache
+     *            The cache in which to keep the nodes read from disk
+     *
+     * @throws IOException
+     *             An exception can be thrown when file cannot be accessed
+     */
+    public HT_IO(HTConfig config, HTStringDictionary dictionary, boolean newFile,
+            HTNodeCache nodeCache) throws IOException {
         fConfig = config;
+        fDictionary = dictionary;
+        fNodeCache = nodeCache;
 
         File historyTreeFile = config.getStateFile();
         if (newFile) {
@@ -91,6 +120,10 @@ class HT_IO {
     /**
      * Read a node from the file on disk.
      *
+     * This method does not lock the tree, nodes are read with positional reads
+     * that do not modify the state of the file channel, so several threads can
+     * read nodes at the same time.
+     *
      * @param seqNumber
      *            The sequence number of the node to read.
      * @return The object representing the node
@@ -99,21 +132,25 @@ class HT_IO {
      *             reading. Instead of using a big reader-writer lock, we'll
      *             just catch this exception.
      */
-    public synchronized HTNode readNode(int seqNumber) throws ClosedChannelException {
+    public HTNode readNode(int seqNumber) throws ClosedChannelException {
         /* Do a cache lookup */
-        int offset = seqNumber & (CACHE_SIZE - 1);
-        HTNode readNode = fNodeCache[offset];
-        if (readNode != null && readNode.getSequenceNumber() == seqNumber) {
+        HTNode readNode = fNodeCache.get(this, seqNumber);
+        if (readNode != null) {
+            fCacheHits.incrementAndGet();
             return readNode;
         }
+        fCacheMisses.incrementAndGet();
 
         /* Lookup on disk */
         try {
-            seekFCToNodePos(fcIn, seqNumber);
-            readNode = HTNode.readNode(fConfig, fcIn);
+            readNode = HTNode.readNode(fConfig, fDictionary, fcIn, getNodePosition(seqNumber));
 
-            /* Put the node in the cache. */
-            fNodeCache[offset] = readNode;
+            /*
+             * Put the node in the cache. If another thread read the same node
+             * in the meantime, one of the two copies will simply replace the
+             * other.
+             */
+            fNodeCache.put(this, readNode);
             return readNode;
         } catch (ClosedChannelException e) {
             throw e;
@@ -128,8 +165,7 @@ class HT_IO {
         try {
             /* Insert the node into the cache. */
             int seqNumber = node.getSequenceNumber();
-            int offset = seqNumber & (CACHE_SIZE - 1);
-            fNodeCache[offset] = node;
+            fNodeCache.put(this, node);
 
             /* Position ourselves at the start of the node and write it */
             seekFCToNodePos(fcOut, seqNumber);
@@ -140,17 +176,35 @@ class HT_IO {
         }
     }
 
+    /**
+     * Get the number of node reads that were served by the cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getCacheHits() {
+        return fCacheHits.get();
+    }
+
+    /**
+     * Get the number of node reads that had to go to disk.
+     *
+     * @return The number of cache misses
+     */
+    public long getCacheMisses() {
+        return fCacheMisses.get();
+    }
+
     public FileChannel getFcOut() {
         return this.fcOut;
     }
 
-    public FileInputStream supplyATReader(int nodeOffset) {
+    public FileInputStream supplyATReader(long position) {
         try {
             /*
              * Position ourselves at the start of the Mapping section in the
-             * file (which is right after the Blocks)
+             * file (which is after the Blocks)
              */
-            seekFCToNodePos(fcIn, nodeOffset);
+            fcIn.position(position);
         } catch (IOException e) {
             Activator.getDefault().logError(e.getMessage(), e);
         }
@@ -158,6 +212,7 @@ class HT_IO {
     }
 
     public synchronized void closeFile() {
+        fNodeCache.invalidate(this);
         try {
             fis.close();
             fos.close();
@@ -189,12 +244,24 @@ class HT_IO {
      */
     private void seekFCToNodePos(FileChannel fc, int seqNumber)
             throws IOException {
+        fc.position(getNodePosition(seqNumber));
+    }
+
+    /**
+     * Get the position in the file where the node with the given sequence
+     * number starts.
+     *
+     * @param seqNumber
+     *            the node sequence number
+     * @return The position in the file
+     */
+    private long getNodePosition(int seqNumber) {
         /*
          * Cast to (long) is needed to make sure the result is a long too and
          * doesn't get truncated
          */
-        fc.position(HistoryTree.TREE_HEADER_SIZE
-                + ((long) seqNumber) * fConfig.getBlockSize());
+        return HistoryTree.TREE_HEADER_SIZE
+                + ((long) seqNumber) * fConfig.getBlockSize();
     }
 
 }
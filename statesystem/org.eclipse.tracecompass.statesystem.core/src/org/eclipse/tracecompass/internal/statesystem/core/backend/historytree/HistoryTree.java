@@ -27,6 +27,8 @@ import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.tracecompass.internal.statesystem.core.Activator;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.QueryRange;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig.NodeFormat;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
 import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
 
@@ -50,6 +52,13 @@ public class HistoryTree {
     /** File format version. Increment when breaking compatibility. */
     private static final int FILE_VERSION = 5;
 
+    /** File format version of the trees using the compact node format */
+    private static final int COMPACT_FILE_VERSION = 6;
+
+    /** File format versions of the trees using a string dictionary */
+    private static final int DICTIONARY_FILE_VERSION = 7;
+    private static final int COMPACT_DICTIONARY_FILE_VERSION = 8;
+
     // ------------------------------------------------------------------------
     // Tree-specific configuration
     // ------------------------------------------------------------------------
@@ -57,6 +66,9 @@ public class HistoryTree {
     /** Container for all the configuration constants */
     private final HTConfig config;
 
+    /** Dictionary of the string values, null if they are stored in the nodes */
+    private final HTStringDictionary stringDictionary;
+
     /** Reader/writer object */
     private final HT_IO treeIO;
 
@@ -97,12 +109,13 @@ public class HistoryTree {
         }
 
         config = conf;
+        stringDictionary = (conf.isUsingStringDictionary() ? new HTStringDictionary() : null);
         treeEnd = conf.getTreeStart();
         nodeCount = 0;
         latestBranch = Collections.synchronizedList(new ArrayList<HTNode>());
 
         /* Prepare the IO object */
-        treeIO = new HT_IO(config, true);
+        treeIO = new HT_IO(config, stringDictionary, true);
 
         /* Add the first node to the tree */
         LeafNode firstNode = initNewLeafNode(-1, conf.getTreeStart());
@@ -121,11 +134,68 @@ public class HistoryTree {
      *             If an error happens reading the file
      */
     public HistoryTree(File existingStateFile, int expProviderVersion) throws IOException {
+        Header header = readHeader(existingStateFile, expProviderVersion);
+        this.config = header.config;
+        this.nodeCount = header.nodeCount;
+        this.stringDictionary = header.stringDictionary;
+
+        /*
+         * FIXME The header was read with its own stream and the TreeIO will
+         * then reopen the same file, not extremely elegant. But how to pass the information here to
+         * the SHT otherwise?
+         */
+        this.treeIO = new HT_IO(config, stringDictionary, false);
+
+        this.latestBranch = buildLatestBranch(header.rootNodeSeqNb);
+        this.treeEnd = getRootNode().getNodeEnd();
+
+        /*
+         * Make sure the history start time we read previously is consistent
+         * with was is actually in the root node.
+         */
+        if (config.getTreeStart() != getRootNode().getNodeStart()) {
+            throw new IOException("Inconsistent start times in the" + //$NON-NLS-1$
+                    "history file, it might be corrupted."); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * The information stored in the header of an existing history file
+     */
+    static final class Header {
+        final HTConfig config;
+        final int nodeCount;
+        final int rootNodeSeqNb;
+        final HTStringDictionary stringDictionary;
+
+        private Header(HTConfig config, int nodeCount, int rootNodeSeqNb,
+                HTStringDictionary stringDictionary) {
+            this.config = config;
+            this.nodeCount = nodeCount;
+            this.rootNodeSeqNb = rootNodeSeqNb;
+            this.stringDictionary = stringDictionary;
+        }
+    }
+
+    /**
+     * Read the header of an existing tree file, and its string dictionary if
+     * it has one, without opening the node section.
+     *
+     * @param existingStateFile
+     *            Path/filename of the history-file to read
+     * @param expProviderVersion
+     *            The expected version of the state provider
+     * @return The header information
+     * @throws IOException
+     *             If an error happens reading the file, or if it is not a
+     *             history file of the expected version
+     */
+    static Header readHeader(File existingStateFile, int expProviderVersion) throws IOException {
         /*
-         * Open the file ourselves, get the tree header information we need,
-         * then pass on the descriptor to the TreeIO object.
+         * Open the file ourselves and get the tree header information we
+         * need.
          */
-        int rootNodeSeqNb, res;
+        int res;
         int bs, maxc;
         long startTime;
 
@@ -157,7 +227,26 @@ public class HistoryTree {
             }
 
             res = buffer.getInt(); /* File format version number */
-            if (res != FILE_VERSION) {
+            NodeFormat nodeFormat;
+            boolean useDictionary;
+            switch (res) {
+            case FILE_VERSION:
+                nodeFormat = NodeFormat.CLASSIC;
+                useDictionary = false;
+                break;
+            case COMPACT_FILE_VERSION:
+                nodeFormat = NodeFormat.COMPACT;
+                useDictionary = false;
+                break;
+            case DICTIONARY_FILE_VERSION:
+                nodeFormat = NodeFormat.CLASSIC;
+                useDictionary = true;
+                break;
+            case COMPACT_DICTIONARY_FILE_VERSION:
+                nodeFormat = NodeFormat.COMPACT;
+                useDictionary = true;
+                break;
+            default:
                 throw new IOException("Mismatching History Tree file format versions"); //$NON-NLS-1$
             }
 
@@ -177,30 +266,22 @@ public class HistoryTree {
             bs = buffer.getInt(); /* Block Size */
             maxc = buffer.getInt(); /* Max nb of children per node */
 
-            this.nodeCount = buffer.getInt();
-            rootNodeSeqNb = buffer.getInt();
+            int nodeCount = buffer.getInt();
+            int rootNodeSeqNb = buffer.getInt();
             startTime = buffer.getLong();
 
-            this.config = new HTConfig(existingStateFile, bs, maxc, expProviderVersion, startTime);
-        }
-
-        /*
-         * FIXME We close fis here and the TreeIO will then reopen the same
-         * file, not extremely elegant. But how to pass the information here to
-         * the SHT otherwise?
-         */
-        this.treeIO = new HT_IO(config, false);
-
-        this.latestBranch = buildLatestBranch(rootNodeSeqNb);
-        this.treeEnd = getRootNode().getNodeEnd();
+            HTConfig config = new HTConfig(existingStateFile, bs, maxc, expProviderVersion,
+                    startTime, nodeFormat, useDictionary);
 
-        /*
-         * Make sure the history start time we read previously is consistent
-         * with was is actually in the root node.
-         */
-        if (startTime != getRootNode().getNodeStart()) {
-            throw new IOException("Inconsistent start times in the" + //$NON-NLS-1$
-                    "history file, it might be corrupted."); //$NON-NLS-1$
+            if (useDictionary) {
+                /* The dictionary must be loaded before reading any node */
+                long dictionaryPos = buffer.getLong();
+                int dictionarySize = buffer.getInt();
+                HTStringDictionary stringDictionary = new HTStringDictionary();
+                stringDictionary.readFrom(fc, dictionaryPos, dictionarySize);
+                return new Header(config, nodeCount, rootNodeSeqNb, stringDictionary);
+            }
+            return new Header(config, nodeCount, rootNodeSeqNb, null);
         }
     }
 
@@ -257,6 +338,13 @@ public class HistoryTree {
             }
 
             try (FileChannel fc = treeIO.getFcOut();) {
+                /* Write the string dictionary right after the nodes */
+                HTStringDictionary dictionary = stringDictionary;
+                long dictionaryPos = getNodesSectionEnd();
+                if (dictionary != null) {
+                    dictionary.writeTo(fc, dictionaryPos);
+                }
+
                 ByteBuffer buffer = ByteBuffer.allocate(TREE_HEADER_SIZE);
                 buffer.order(ByteOrder.LITTLE_ENDIAN);
                 buffer.clear();
@@ -266,7 +354,7 @@ public class HistoryTree {
 
                 buffer.putInt(HISTORY_FILE_MAGIC_NUMBER);
 
-                buffer.putInt(FILE_VERSION);
+                buffer.putInt(getFileVersion(config));
                 buffer.putInt(config.getProviderVersion());
 
                 buffer.putInt(config.getBlockSize());
@@ -280,6 +368,12 @@ public class HistoryTree {
                 /* start time of this history */
                 buffer.putLong(latestBranch.get(0).getNodeStart());
 
+                /* position and size of the string dictionary */
+                if (dictionary != null) {
+                    buffer.putLong(dictionaryPos);
+                    buffer.putInt((int) dictionary.getSerializedSize());
+                }
+
                 buffer.flip();
                 int res = fc.write(buffer);
                 assert (res <= TREE_HEADER_SIZE);
@@ -299,6 +393,26 @@ public class HistoryTree {
     // Accessors
     // ------------------------------------------------------------------------
 
+    /**
+     * Get the configuration of this tree.
+     *
+     * @return The configuration object
+     */
+    public HTConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Get the dictionary of the string values of this tree. Its contents
+     * change while the tree is being built.
+     *
+     * @return The string dictionary, or null if the string values are stored
+     *         directly in the nodes
+     */
+    public HTStringDictionary getStringDictionary() {
+        return stringDictionary;
+    }
+
     /**
      * Get the start time of this tree.
      *
@@ -347,7 +461,7 @@ public class HistoryTree {
      *         the attribute tree can be read.
      */
     public FileInputStream supplyATReader() {
-        return treeIO.supplyATReader(getNodeCount());
+        return treeIO.supplyATReader(supplyATWriterFilePos());
     }
 
     /**
@@ -366,10 +480,27 @@ public class HistoryTree {
      * @return The position in the file where to start writing
      */
     public long supplyATWriterFilePos() {
+        HTStringDictionary dictionary = stringDictionary;
+        if (dictionary == null) {
+            return getNodesSectionEnd();
+        }
+        /* The attribute tree comes after the string dictionary */
+        return getNodesSectionEnd() + dictionary.getSerializedSize();
+    }
+
+    private long getNodesSectionEnd() {
         return HistoryTree.TREE_HEADER_SIZE
                 + ((long) getNodeCount() * config.getBlockSize());
     }
 
+    private static int getFileVersion(HTConfig conf) {
+        boolean compact = (conf.getNodeFormat() == NodeFormat.COMPACT);
+        if (conf.isUsingStringDictionary()) {
+            return (compact ? COMPACT_DICTIONARY_FILE_VERSION : DICTIONARY_FILE_VERSION);
+        }
+        return (compact ? COMPACT_FILE_VERSION : FILE_VERSION);
+    }
+
     /**
      * Read a node from the tree.
      *
@@ -449,7 +580,7 @@ public class HistoryTree {
         HTNode targetNode = latestBranch.get(indexOfNode);
 
         /* Verify if there is enough room in this node to store this interval */
-        if (interval.getIntervalSize() > targetNode.getNodeFreeSpace()) {
+        if (targetNode.getIntervalSize(interval) > targetNode.getNodeFreeSpace()) {
             /* Nope, not enough room. Insert in a new sibling instead. */
             addSiblingNode(indexOfNode);
             tryInsertAtNode(interval, latestBranch.size() - 1);
@@ -590,8 +721,8 @@ public class HistoryTree {
      * @return The newly created node
      */
     private CoreNode initNewCoreNode(int parentSeqNumber, long startTime) {
-        CoreNode newNode = new CoreNode(config, this.nodeCount, parentSeqNumber,
-                startTime);
+        CoreNode newNode = new CoreNode(config, stringDictionary, this.nodeCount,
+                parentSeqNumber, startTime);
         this.nodeCount++;
 
         /* Update the treeEnd if needed */
@@ -611,8 +742,8 @@ public class HistoryTree {
      * @return The newly created node
      */
     private LeafNode initNewLeafNode(int parentSeqNumber, long startTime) {
-        LeafNode newNode = new LeafNode(config, this.nodeCount, parentSeqNumber,
-                startTime);
+        LeafNode newNode = new LeafNode(config, stringDictionary, this.nodeCount,
+                parentSeqNumber, startTime);
         this.nodeCount++;
 
         /* Update the treeEnd if needed */
@@ -664,6 +795,67 @@ public class HistoryTree {
         return readNode(potentialNextSeqNb);
     }
 
+    /**
+     * Inner method to select all the children of the current node which
+     * contain at least one resolution point of the given range. Useful to
+     * visit all the nodes needed by a 2D query only once.
+     *
+     * @param currentNode
+     *            The node on which the request is made
+     * @param range
+     *            The time range and resolution of the query
+     * @return The child nodes intersecting the range, in chronological order
+     * @throws ClosedChannelException
+     *             If the file channel was closed while we were reading the tree
+     */
+    public List<HTNode> selectNextChildren(CoreNode currentNode, QueryRange range)
+            throws ClosedChannelException {
+        List<HTNode> nextChildren = new ArrayList<>();
+        int nbChildren = currentNode.getNbChildren();
+        boolean onDisk = currentNode.isOnDisk();
+
+        for (int i = 0; i < nbChildren; i++) {
+            long childStart = currentNode.getChildStart(i);
+            if (childStart > range.getEnd()) {
+                break;
+            }
+
+            /* A child ends where the next one starts, or with its parent */
+            long childEnd;
+            if (i + 1 < nbChildren) {
+                childEnd = currentNode.getChildStart(i + 1) - 1;
+            } else if (onDisk) {
+                childEnd = currentNode.getNodeEnd();
+            } else {
+                childEnd = Long.MAX_VALUE;
+            }
+
+            if (range.intersects(childStart, childEnd)) {
+                int seqNb = currentNode.getChild(i);
+                nextChildren.add(onDisk ? treeIO.readNode(seqNb) : readNode(seqNb));
+            }
+        }
+        return nextChildren;
+    }
+
+    /**
+     * Get the number of node reads that were served by the node cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getNodeCacheHits() {
+        return treeIO.getCacheHits();
+    }
+
+    /**
+     * Get the number of node reads that had to be done from disk.
+     *
+     * @return The number of cache misses
+     */
+    public long getNodeCacheMisses() {
+        return treeIO.getCacheMisses();
+    }
+
     /**
      * Get the current size of the history file.
      *
@@ -20,9 +20,15 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.IRangeQueryBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.QueryRange;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.CoreNode;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTInterval;
@@ -41,7 +47,7 @@ import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
  *
  * @author Alexandre Montplaisir
  */
-public class HistoryTreeBackend implements IStateHistoryBackend {
+public class HistoryTreeBackend implements IStateHistoryBackend, IRangeQueryBackend {
 
     private final @NonNull String ssid;
 
@@ -107,6 +113,22 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
         sht = new HistoryTree(conf);
     }
 
+    /**
+     * Constructor for new history files, using a complete configuration
+     * object. Use this to choose the format of the nodes, for example.
+     *
+     * @param ssid
+     *            The state system's ID
+     * @param config
+     *            The configuration of the new history tree
+     * @throws IOException
+     *             Thrown if we can't create the file for some reason
+     */
+    public HistoryTreeBackend(@NonNull String ssid, HTConfig config) throws IOException {
+        this.ssid = ssid;
+        sht = new HistoryTree(config);
+    }
+
     /**
      * Constructor for new history files. Use this when creating a new history
      * from scratch. This version supplies sane defaults for the configuration
@@ -259,7 +281,37 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
         return getRelevantInterval(t, attributeQuark);
     }
 
-    private void checkValidTime(long t) {
+    @Override
+    public void doRangeQuery(Collection<ITmfStateInterval> results, BitSet quarks,
+            QueryRange range) throws TimeRangeException, StateSystemDisposedException {
+        /*
+         * Visit, only once each, all the nodes that contain a resolution point
+         * of the range, starting from the root.
+         */
+        Deque<HTNode> queue = new ArrayDeque<>();
+        queue.add(sht.getRootNode());
+        try {
+            while (!queue.isEmpty()) {
+                HTNode currentNode = queue.pop();
+                currentNode.writeIntervalsInRange(results, quarks, range);
+                if (currentNode.getNodeType() == HTNode.NodeType.CORE) {
+                    queue.addAll(sht.selectNextChildren((CoreNode) currentNode, range));
+                }
+            }
+        } catch (ClosedChannelException e) {
+            throw new StateSystemDisposedException(e);
+        }
+    }
+
+    /**
+     * Check that a timestamp is within the time range of this history.
+     *
+     * @param t
+     *            The timestamp to check
+     * @throws TimeRangeException
+     *             If the timestamp is outside of the history
+     */
+    protected void checkValidTime(long t) {
         long treeStart = sht.getTreeStart();
         long treeEnd = sht.getTreeEnd();
         if (t < treeStart || t > treeEnd) {
@@ -302,6 +354,26 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
         return sht.getFileSize();
     }
 
+    /**
+     * Return the number of node reads of this history that were served by the
+     * node cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getNodeCacheHits() {
+        return sht.getNodeCacheHits();
+    }
+
+    /**
+     * Return the number of node reads of this history that had to be done
+     * from disk.
+     *
+     * @return The number of cache misses
+     */
+    public long getNodeCacheMisses() {
+        return sht.getNodeCacheMisses();
+    }
+
     /**
      * Return the average node usage as a percentage (between 0 and 100)
      *
@@ -41,6 +41,27 @@ public final class LeafNode extends HTNode {
         super(config, seqNumber, parentSeqNumber, start);
     }
 
+    /**
+     * Constructor for the nodes of a tree storing its string values in a
+     * dictionary
+     *
+     * @param config
+     *            Configuration of the History Tree
+     * @param dictionary
+     *            The string dictionary of the History Tree, or null if the
+     *            configuration does not use one
+     * @param seqNumber
+     *            The (unique) sequence number assigned to this particular node
+     * @param parentSeqNumber
+     *            The sequence number of this node's parent node
+     * @param start
+     *            The earliest timestamp stored in this node
+     */
+    public LeafNode(HTConfig config, HTStringDictionary dictionary,
+            int seqNumber, int parentSeqNumber, long start) {
+        super(config, dictionary, seqNumber, parentSeqNumber, start);
+    }
+
     @Override
     protected void readSpecificHeader(ByteBuffer buffer) {
         /* No specific header part */
@@ -0,0 +1,496 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.internal.statesystem.core.Activator;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.IRangeQueryBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.QueryRange;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.interval.TmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+
+/**
+ * Read-only History Tree backend for completed history files.
+ *
+ * Instead of reading and deserializing whole nodes, the node section of the
+ * file is memory-mapped, and queries binary-search the intervals directly in
+ * the mapped bytes. Interval objects are only created for the query results.
+ *
+ * The file is mapped in several chunks, each containing a whole number of
+ * nodes, so that files bigger than 2 GB can be used. Only the header of the
+ * file is read when it is opened, all the queries then read the mapped
+ * chunks.
+ *
+ * This backend must only be used to open existing, completed history files
+ * using the {@link HTConfig.NodeFormat#CLASSIC classic} node format. No
+ * interval can be inserted in it.
+ */
+public class MappedHistoryTreeBackend implements IStateHistoryBackend, IRangeQueryBackend {
+
+    /** Number of bytes in a int */
+    private static final int SIZE_INT = 4;
+
+    /** Number of bytes in a long */
+    private static final int SIZE_LONG = 8;
+
+    /** Maximum size of one mapped chunk of the file */
+    private static final int DEFAULT_MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+    /*
+     * Offsets of the fields in the node header, see HTNode.writeSelf() and
+     * CoreNode.writeSpecificHeader()
+     */
+    private static final int TYPE_OFFSET = 0;
+    private static final int NODE_START_OFFSET = 1;
+    private static final int NODE_END_OFFSET = NODE_START_OFFSET + SIZE_LONG;
+    private static final int INTERVAL_COUNT_OFFSET = 1 + 2 * SIZE_LONG + 2 * SIZE_INT;
+    private static final int NB_CHILDREN_OFFSET = HTNode.COMMON_HEADER_SIZE + SIZE_INT;
+    private static final int CHILDREN_OFFSET = HTNode.COMMON_HEADER_SIZE + 2 * SIZE_INT;
+
+    /* Offsets of the fields in one Data section entry, see HTInterval */
+    private static final int END_OFFSET = SIZE_LONG;
+    private static final int ATTRIBUTE_OFFSET = 2 * SIZE_LONG;
+    private static final int VALUE_TYPE_OFFSET = ATTRIBUTE_OFFSET + SIZE_INT;
+    private static final int VALUE_OFFSET = VALUE_TYPE_OFFSET + 1;
+
+    private static final byte CORE_NODE = HTNode.NodeType.CORE.toByte();
+
+    private final @NonNull String fSsid;
+    private final File fStateFile;
+    private final long fStartTime;
+    private final long fEndTime;
+    private final long fAttributeTreePos;
+    private final int fBlockSize;
+    private final int fMaxChildren;
+    private final int fCoreHeaderSize;
+    private final int fRootSeqNb;
+    private final int fNodesPerChunk;
+    private final HTStringDictionary fDictionary;
+
+    /* Set to null once the backend is disposed */
+    private volatile ByteBuffer[] fChunks;
+
+    /* The stream given to read the attribute tree, closed with the backend */
+    private FileInputStream fAttributeTreeReader = null;
+
+    /**
+     * Constructor
+     *
+     * @param ssid
+     *            The state system's id
+     * @param existingStateFile
+     *            Filename/location of the history we want to load
+     * @param providerVersion
+     *            Expected version of of the state provider plugin.
+     * @throws IOException
+     *             If we can't read or map the file, if it doesn't exist, is
+     *             not recognized, or if the version of the file does not match
+     *             the expected providerVersion.
+     */
+    public MappedHistoryTreeBackend(@NonNull String ssid, File existingStateFile,
+            int providerVersion) throws IOException {
+        this(ssid, existingStateFile, providerVersion, DEFAULT_MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor specifying the maximum size of the mapped chunks
+     *
+     * @param ssid
+     *            The state system's id
+     * @param existingStateFile
+     *            Filename/location of the history we want to load
+     * @param providerVersion
+     *            Expected version of of the state provider plugin.
+     * @param maxChunkSize
+     *            The maximum size of one mapping, in bytes. It will be rounded
+     *            down to a multiple of the block size, but will always contain
+     *            at least one node.
+     * @throws IOException
+     *             If we can't read or map the file, if it doesn't exist, is
+     *             not recognized, or if the version of the file does not match
+     *             the expected providerVersion.
+     */
+    public MappedHistoryTreeBackend(@NonNull String ssid, File existingStateFile,
+            int providerVersion, int maxChunkSize) throws IOException {
+        HistoryTree.Header header = HistoryTree.readHeader(existingStateFile, providerVersion);
+        HTConfig config = header.config;
+        if (config.getNodeFormat() != HTConfig.NodeFormat.CLASSIC) {
+            /* Variable-size entries cannot be binary-searched in place */
+            throw new IOException("Only the classic node format can be memory-mapped"); //$NON-NLS-1$
+        }
+
+        fSsid = ssid;
+        fStateFile = existingStateFile;
+        fBlockSize = config.getBlockSize();
+        fMaxChildren = config.getMaxChildren();
+        fCoreHeaderSize = CHILDREN_OFFSET + fMaxChildren * (SIZE_INT + SIZE_LONG);
+        fRootSeqNb = header.rootNodeSeqNb;
+        fNodesPerChunk = Math.max(1, maxChunkSize / fBlockSize);
+        fDictionary = header.stringDictionary;
+
+        int nodeCount = header.nodeCount;
+        if (fRootSeqNb < 0 || fRootSeqNb >= nodeCount) {
+            throw new IOException("Invalid root node in the history file"); //$NON-NLS-1$
+        }
+        long nodesSectionEnd = HistoryTree.TREE_HEADER_SIZE + (long) nodeCount * fBlockSize;
+        fAttributeTreePos = (fDictionary == null ? nodesSectionEnd : nodesSectionEnd + fDictionary.getSerializedSize());
+
+        int nbChunks = (nodeCount + fNodesPerChunk - 1) / fNodesPerChunk;
+        ByteBuffer[] chunks = new ByteBuffer[nbChunks];
+
+        /* The mappings remain valid once the channel is closed */
+        try (RandomAccessFile raf = new RandomAccessFile(existingStateFile, "r"); //$NON-NLS-1$
+                FileChannel fc = raf.getChannel();) {
+            if (fc.size() < nodesSectionEnd) {
+                throw new IOException("The history file is truncated"); //$NON-NLS-1$
+            }
+            for (int i = 0; i < nbChunks; i++) {
+                long position = HistoryTree.TREE_HEADER_SIZE + (long) i * fNodesPerChunk * fBlockSize;
+                int nbNodes = Math.min(fNodesPerChunk, nodeCount - i * fNodesPerChunk);
+                ByteBuffer chunk = fc.map(MapMode.READ_ONLY, position, (long) nbNodes * fBlockSize);
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+                chunks[i] = chunk;
+            }
+        }
+        fChunks = chunks;
+
+        /* The time range of the history is the one of its root node */
+        ByteBuffer rootChunk = chunks[fRootSeqNb / fNodesPerChunk];
+        int rootOffset = (fRootSeqNb % fNodesPerChunk) * fBlockSize;
+        fStartTime = rootChunk.getLong(rootOffset + NODE_START_OFFSET);
+        fEndTime = rootChunk.getLong(rootOffset + NODE_END_OFFSET);
+        if (fStartTime != config.getTreeStart()) {
+            throw new IOException("Inconsistent start times in the" + //$NON-NLS-1$
+                    "history file, it might be corrupted."); //$NON-NLS-1$
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // IStateHistoryBackend
+    // ------------------------------------------------------------------------
+
+    @Override
+    public String getSSID() {
+        return fSsid;
+    }
+
+    @Override
+    public long getStartTime() {
+        return fStartTime;
+    }
+
+    @Override
+    public long getEndTime() {
+        return fEndTime;
+    }
+
+    @Override
+    public void insertPastState(long stateStartTime, long stateEndTime,
+            int quark, ITmfStateValue value) throws TimeRangeException {
+        throw new UnsupportedOperationException("Mapped history trees are read-only"); //$NON-NLS-1$
+    }
+
+    @Override
+    public void finishedBuilding(long endTime) {
+        throw new UnsupportedOperationException("Mapped history trees are read-only"); //$NON-NLS-1$
+    }
+
+    @Override
+    public synchronized FileInputStream supplyAttributeTreeReader() {
+        try {
+            closeAttributeTreeReader();
+            FileInputStream fis = new FileInputStream(fStateFile);
+            fis.getChannel().position(fAttributeTreePos);
+            fAttributeTreeReader = fis;
+            return fis;
+        } catch (IOException e) {
+            Activator.getDefault().logError(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public File supplyAttributeTreeWriterFile() {
+        return fStateFile;
+    }
+
+    @Override
+    public long supplyAttributeTreeWriterFilePosition() {
+        return fAttributeTreePos;
+    }
+
+    @Override
+    public void removeFiles() {
+        dispose();
+        fStateFile.delete();
+    }
+
+    @Override
+    public synchronized void dispose() {
+        /*
+         * There is no way to explicitly unmap the buffers, they will be
+         * released once they are garbage-collected.
+         */
+        fChunks = null;
+        closeAttributeTreeReader();
+    }
+
+    @Override
+    public void debugPrint(PrintWriter writer) {
+        /* Only used for debugging, shouldn't be externalized */
+        writer.println("------------------------------"); //$NON-NLS-1$
+        writer.println("Mapped State History Tree:\n"); //$NON-NLS-1$
+        writer.println("Start time: " + fStartTime); //$NON-NLS-1$
+        writer.println("End time: " + fEndTime); //$NON-NLS-1$
+        writer.println("Root node: " + fRootSeqNb); //$NON-NLS-1$
+        ByteBuffer[] chunks = fChunks;
+        writer.println("Mapped chunks: " + (chunks == null ? 0 : chunks.length)); //$NON-NLS-1$
+    }
+
+    @Override
+    public void doQuery(List<ITmfStateInterval> stateInfo, long t)
+            throws TimeRangeException, StateSystemDisposedException {
+        checkValidTime(t);
+        ByteBuffer[] chunks = getChunks();
+
+        int seqNb = fRootSeqNb;
+        while (true) {
+            ByteBuffer chunk = chunks[seqNb / fNodesPerChunk];
+            int nodeOffset = (seqNb % fNodesPerChunk) * fBlockSize;
+            boolean isCore = (chunk.get(nodeOffset + TYPE_OFFSET) == CORE_NODE);
+
+            int intervalCount = chunk.getInt(nodeOffset + INTERVAL_COUNT_OFFSET);
+            int dataOffset = nodeOffset + (isCore ? fCoreHeaderSize : HTNode.COMMON_HEADER_SIZE);
+            int index = getStartIndexFor(chunk, dataOffset, intervalCount, t);
+            for (int i = index; i < intervalCount; i++) {
+                /* The end times necessarily fit, check the start time */
+                int entry = dataOffset + i * HTInterval.DATA_ENTRY_SIZE;
+                int attribute = chunk.getInt(entry + ATTRIBUTE_OFFSET);
+                if (chunk.getLong(entry) <= t && attribute < stateInfo.size()) {
+                    stateInfo.set(attribute, readInterval(chunk, nodeOffset, entry));
+                }
+            }
+
+            if (!isCore) {
+                return;
+            }
+            seqNb = selectNextChild(chunk, nodeOffset, t);
+        }
+    }
+
+    @Override
+    public ITmfStateInterval doSingularQuery(long t, int attributeQuark)
+            throws TimeRangeException, StateSystemDisposedException {
+        checkValidTime(t);
+        ByteBuffer[] chunks = getChunks();
+
+        int seqNb = fRootSeqNb;
+        while (true) {
+            ByteBuffer chunk = chunks[seqNb / fNodesPerChunk];
+            int nodeOffset = (seqNb % fNodesPerChunk) * fBlockSize;
+            boolean isCore = (chunk.get(nodeOffset + TYPE_OFFSET) == CORE_NODE);
+
+            int intervalCount = chunk.getInt(nodeOffset + INTERVAL_COUNT_OFFSET);
+            int dataOffset = nodeOffset + (isCore ? fCoreHeaderSize : HTNode.COMMON_HEADER_SIZE);
+            int index = getStartIndexFor(chunk, dataOffset, intervalCount, t);
+            for (int i = index; i < intervalCount; i++) {
+                int entry = dataOffset + i * HTInterval.DATA_ENTRY_SIZE;
+                if (chunk.getInt(entry + ATTRIBUTE_OFFSET) == attributeQuark
+                        && chunk.getLong(entry) <= t) {
+                    return readInterval(chunk, nodeOffset, entry);
+                }
+            }
+
+            if (!isCore) {
+                /* We didn't find the relevant information in the tree */
+                return null;
+            }
+            seqNb = selectNextChild(chunk, nodeOffset, t);
+        }
+    }
+
+    @Override
+    public void doRangeQuery(Collection<ITmfStateInterval> results, BitSet quarks,
+            QueryRange range) throws TimeRangeException, StateSystemDisposedException {
+        ByteBuffer[] chunks = getChunks();
+
+        /*
+         * Visit, only once each, all the nodes that contain a resolution point
+         * of the range, starting from the root.
+         */
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(fRootSeqNb);
+        while (!queue.isEmpty()) {
+            int seqNb = queue.pop();
+            ByteBuffer chunk = chunks[seqNb / fNodesPerChunk];
+            int nodeOffset = (seqNb % fNodesPerChunk) * fBlockSize;
+            boolean isCore = (chunk.get(nodeOffset + TYPE_OFFSET) == CORE_NODE);
+
+            int intervalCount = chunk.getInt(nodeOffset + INTERVAL_COUNT_OFFSET);
+            int dataOffset = nodeOffset + (isCore ? fCoreHeaderSize : HTNode.COMMON_HEADER_SIZE);
+            /*
+             * The intervals are sorted by end time, so we can skip those ending
+             * before the range, but not those ending after it.
+             */
+            int index = getStartIndexFor(chunk, dataOffset, intervalCount, range.getStart());
+            for (int i = index; i < intervalCount; i++) {
+                int entry = dataOffset + i * HTInterval.DATA_ENTRY_SIZE;
+                if (quarks.get(chunk.getInt(entry + ATTRIBUTE_OFFSET))
+                        && range.intersects(chunk.getLong(entry), chunk.getLong(entry + END_OFFSET))) {
+                    results.add(readInterval(chunk, nodeOffset, entry));
+                }
+            }
+
+            if (isCore) {
+                queue.addAll(selectNextChildren(chunk, nodeOffset, range));
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Helper methods
+    // ------------------------------------------------------------------------
+
+    private void checkValidTime(long t) {
+        if (t < fStartTime || t > fEndTime) {
+            throw new TimeRangeException(fSsid + " Time:" + t + ", Start:" + fStartTime + ", End:" + fEndTime); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+    }
+
+    private ByteBuffer[] getChunks() throws StateSystemDisposedException {
+        ByteBuffer[] chunks = fChunks;
+        if (chunks == null) {
+            throw new StateSystemDisposedException();
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the index of the first interval of a node whose end time is greater
+     * or equal to t. The intervals in a node are sorted by end time.
+     */
+    private static int getStartIndexFor(ByteBuffer chunk, int dataOffset,
+            int intervalCount, long t) {
+        int low = 0;
+        int high = intervalCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long end = chunk.getLong(dataOffset + mid * HTInterval.DATA_ENTRY_SIZE + END_OFFSET);
+            if (end < t) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the sequence number of the child of a core node intersecting t.
+     */
+    private int selectNextChild(ByteBuffer chunk, int nodeOffset, long t) {
+        int nbChildren = chunk.getInt(nodeOffset + NB_CHILDREN_OFFSET);
+        int childrenOffset = nodeOffset + CHILDREN_OFFSET;
+        int childStartOffset = childrenOffset + SIZE_INT * fMaxChildren;
+
+        int next = chunk.getInt(childrenOffset);
+        for (int i = 1; i < nbChildren; i++) {
+            if (t >= chunk.getLong(childStartOffset + SIZE_LONG * i)) {
+                next = chunk.getInt(childrenOffset + SIZE_INT * i);
+            } else {
+                break;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Find the sequence numbers of all the children of a core node which
+     * contain at least one resolution point of the range, in chronological
+     * order. See HistoryTree.selectNextChildren().
+     */
+    private List<Integer> selectNextChildren(ByteBuffer chunk, int nodeOffset, QueryRange range) {
+        List<Integer> nextChildren = new ArrayList<>();
+        int nbChildren = chunk.getInt(nodeOffset + NB_CHILDREN_OFFSET);
+        int childrenOffset = nodeOffset + CHILDREN_OFFSET;
+        int childStartOffset = childrenOffset + SIZE_INT * fMaxChildren;
+
+        for (int i = 0; i < nbChildren; i++) {
+            long childStart = chunk.getLong(childStartOffset + SIZE_LONG * i);
+            if (childStart > range.getEnd()) {
+                break;
+            }
+
+            /* A child ends where the next one starts, or with its parent */
+            long childEnd;
+            if (i + 1 < nbChildren) {
+                childEnd = chunk.getLong(childStartOffset + SIZE_LONG * (i + 1)) - 1;
+            } else {
+                childEnd = chunk.getLong(nodeOffset + NODE_END_OFFSET);
+            }
+
+            if (range.intersects(childStart, childEnd)) {
+                nextChildren.add(chunk.getInt(childrenOffset + SIZE_INT * i));
+            }
+        }
+        return nextChildren;
+    }
+
+    private void closeAttributeTreeReader() {
+        FileInputStream fis = fAttributeTreeReader;
+        if (fis != null) {
+            try {
+                fis.close();
+            } catch (IOException e) {
+                Activator.getDefault().logError(e.getMessage(), e);
+            }
+            fAttributeTreeReader = null;
+        }
+    }
+
+    private ITmfStateInterval readInterval(ByteBuffer chunk, int nodeOffset,
+            int entry) throws StateSystemDisposedException {
+        long start = chunk.getLong(entry);
+        long end = chunk.getLong(entry + END_OFFSET);
+        int attribute = chunk.getInt(entry + ATTRIBUTE_OFFSET);
+        byte valueType = chunk.get(entry + VALUE_TYPE_OFFSET);
+        int valueOrOffset = chunk.getInt(entry + VALUE_OFFSET);
+
+        TmfStateValue value;
+        try {
+            value = HTInterval.readValueAt(chunk, nodeOffset, valueType, valueOrOffset, fDictionary);
+        } catch (IOException e) {
+            /* The file is corrupted, it cannot be queried anymore */
+            throw new StateSystemDisposedException(e);
+        }
+        return new TmfStateInterval(start, end, attribute, value);
+    }
+}
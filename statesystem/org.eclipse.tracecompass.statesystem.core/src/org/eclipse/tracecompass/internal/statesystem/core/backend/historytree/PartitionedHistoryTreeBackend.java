@@ -0,0 +1,519 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.common.core.collect.BufferedBlockingQueue;
+import org.eclipse.tracecompass.internal.statesystem.core.Activator;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.IRangeQueryBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.QueryRange;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+
+/**
+ * History Tree backend which splits the attributes of the state system across
+ * several independent history trees, each one built by its own thread.
+ *
+ * Attribute quarks are assigned to the partitions in a round-robin fashion, so
+ * that the attributes created together (for example, the ones of a same
+ * thread or CPU) are spread across the partitions. Since a given attribute is
+ * always stored in the same tree, a singular query only has to look in one
+ * partition, and a full query merges the results of all of them.
+ *
+ * The first partition is stored in the requested file, the others in files
+ * next to it, with the partition number as suffix. The attribute tree is
+ * written at the end of the first partition's file. Each file records its
+ * partition number and the number of partitions at the end of its tree
+ * header, which the history tree leaves unused, so the history is reopened
+ * with the number of partitions it was built with.
+ */
+public class PartitionedHistoryTreeBackend implements IStateHistoryBackend, IRangeQueryBackend {
+
+    private static final int CHUNK_SIZE = 127;
+
+    /* Partition information at the end of the tree header of each file */
+    private static final int PARTITION_MAGIC_NUMBER = 0x05FFA9A0;
+    private static final int PARTITION_INFO_SIZE = 12;
+    private static final int PARTITION_INFO_POSITION = HistoryTree.TREE_HEADER_SIZE - PARTITION_INFO_SIZE;
+
+    private final @NonNull String fSsid;
+    private final HistoryTreeBackend[] fPartitions;
+
+    /* Insertion queues and threads, null if we opened an existing history */
+    private final List<BufferedBlockingQueue<HTInterval>> fQueues;
+    private final Thread[] fThreads;
+
+    /** Indicates if the history tree construction is done */
+    private volatile boolean fFinishedBuilding = false;
+
+    /**
+     * New state history constructor
+     *
+     * @param ssid
+     *            The state system's id
+     * @param newStateFile
+     *            The name of the history file that will be created. Should end
+     *            in ".ht". The other partitions are stored in files named after
+     *            this one.
+     * @param providerVersion
+     *            Version of of the state provider. We will only try to reopen
+     *            existing files if this version matches the one in the
+     *            framework.
+     * @param startTime
+     *            The earliest timestamp stored in the history
+     * @param queueSize
+     *            The size of the interval insertion queue of each partition.
+     *            2000 - 10000 usually works well
+     * @param nbPartitions
+     *            The number of history trees (and writer threads) to use
+     * @param blockSize
+     *            The size of the blocks in the files
+     * @param maxChildren
+     *            The maximum number of children allowed for each core node
+     * @throws IOException
+     *             If there was a problem opening the history files for writing
+     */
+    public PartitionedHistoryTreeBackend(@NonNull String ssid,
+            File newStateFile,
+            int providerVersion,
+            long startTime,
+            int queueSize,
+            int nbPartitions,
+            int blockSize,
+            int maxChildren) throws IOException {
+        if (nbPartitions <= 0) {
+            throw new IllegalArgumentException("Invalid number of partitions: " + nbPartitions); //$NON-NLS-1$
+        }
+        fSsid = ssid;
+        fPartitions = new HistoryTreeBackend[nbPartitions];
+        fQueues = new ArrayList<>(nbPartitions);
+        fThreads = new Thread[nbPartitions];
+        try {
+            for (int i = 0; i < nbPartitions; i++) {
+                fPartitions[i] = new HistoryTreeBackend(ssid, getPartitionFile(newStateFile, i),
+                        providerVersion, startTime, blockSize, maxChildren);
+            }
+        } catch (IOException e) {
+            for (HistoryTreeBackend partition : fPartitions) {
+                if (partition != null) {
+                    partition.dispose();
+                }
+            }
+            throw e;
+        }
+
+        for (int i = 0; i < nbPartitions; i++) {
+            BufferedBlockingQueue<HTInterval> queue = new BufferedBlockingQueue<>(Math.max(1, queueSize / CHUNK_SIZE), CHUNK_SIZE);
+            fQueues.add(queue);
+            fThreads[i] = new Thread(new PartitionWriter(fPartitions[i].getSHT(), queue),
+                    "History Tree Thread " + i); //$NON-NLS-1$
+            fThreads[i].start();
+        }
+    }
+
+    /**
+     * New State History constructor. This version provides default values for
+     * blockSize and maxChildren.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param newStateFile
+     *            The name of the history file that will be created. Should end
+     *            in ".ht". The other partitions are stored in files named after
+     *            this one.
+     * @param providerVersion
+     *            Version of of the state provider. We will only try to reopen
+     *            existing files if this version matches the one in the
+     *            framework.
+     * @param startTime
+     *            The earliest timestamp stored in the history
+     * @param queueSize
+     *            The size of the interval insertion queue of each partition.
+     *            2000 - 10000 usually works well
+     * @param nbPartitions
+     *            The number of history trees (and writer threads) to use
+     * @throws IOException
+     *             If there was a problem opening the history files for writing
+     */
+    public PartitionedHistoryTreeBackend(@NonNull String ssid,
+            File newStateFile,
+            int providerVersion,
+            long startTime,
+            int queueSize,
+            int nbPartitions) throws IOException {
+        this(ssid, newStateFile, providerVersion, startTime, queueSize, nbPartitions, 64 * 1024, 50);
+    }
+
+    /**
+     * Existing history constructor. Use this to open an existing partitioned
+     * state history.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param existingStateFile
+     *            Filename/location of the first partition of the history
+     * @param providerVersion
+     *            Expected version of of the state provider plugin.
+     * @throws IOException
+     *             If we can't read one of the files, if it doesn't exist, is
+     *             not recognized, if the version of the file does not match
+     *             the expected providerVersion, or if the partition
+     *             information of the files is not consistent.
+     */
+    public PartitionedHistoryTreeBackend(@NonNull String ssid, File existingStateFile,
+            int providerVersion) throws IOException {
+        /* The first partition tells how many there are */
+        int nbPartitions = readPartitionInfo(existingStateFile, 0);
+        fSsid = ssid;
+        fPartitions = new HistoryTreeBackend[nbPartitions];
+        fQueues = null;
+        fThreads = null;
+        try {
+            for (int i = 0; i < nbPartitions; i++) {
+                File partitionFile = getPartitionFile(existingStateFile, i);
+                if (readPartitionInfo(partitionFile, i) != nbPartitions) {
+                    throw new IOException("Mismatching number of partitions"); //$NON-NLS-1$
+                }
+                fPartitions[i] = new HistoryTreeBackend(ssid, partitionFile, providerVersion);
+            }
+        } catch (IOException e) {
+            for (HistoryTreeBackend partition : fPartitions) {
+                if (partition != null) {
+                    partition.dispose();
+                }
+            }
+            throw e;
+        }
+        fFinishedBuilding = true;
+    }
+
+    /**
+     * Get the file in which a given partition of a history is stored.
+     *
+     * @param stateFile
+     *            The file of the first partition
+     * @param partition
+     *            The partition number
+     * @return The file of this partition
+     */
+    public static File getPartitionFile(File stateFile, int partition) {
+        if (partition == 0) {
+            return stateFile;
+        }
+        return new File(stateFile.getPath() + '.' + partition);
+    }
+
+    /**
+     * Get the number of partitions of this history.
+     *
+     * @return The number of partitions
+     */
+    public int getNbPartitions() {
+        return fPartitions.length;
+    }
+
+    private static void writePartitionInfo(File partitionFile, int partition, int nbPartitions) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(partitionFile, "rw"); //$NON-NLS-1$
+                FileChannel fc = file.getChannel();) {
+            ByteBuffer buffer = ByteBuffer.allocate(PARTITION_INFO_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(PARTITION_MAGIC_NUMBER);
+            buffer.putInt(partition);
+            buffer.putInt(nbPartitions);
+            buffer.flip();
+            fc.write(buffer, PARTITION_INFO_POSITION);
+        }
+    }
+
+    /**
+     * Read the partition information of a partition file, and check that it
+     * is the expected partition.
+     *
+     * @return The number of partitions of the history
+     */
+    private static int readPartitionInfo(File partitionFile, int partition) throws IOException {
+        if (!partitionFile.exists()) {
+            throw new IOException("Selected state file does not exist"); //$NON-NLS-1$
+        }
+        try (RandomAccessFile file = new RandomAccessFile(partitionFile, "r"); //$NON-NLS-1$
+                FileChannel fc = file.getChannel();) {
+            ByteBuffer buffer = ByteBuffer.allocate(PARTITION_INFO_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            fc.read(buffer, PARTITION_INFO_POSITION);
+            buffer.flip();
+            if (buffer.remaining() < PARTITION_INFO_SIZE || buffer.getInt() != PARTITION_MAGIC_NUMBER) {
+                throw new IOException("Not a partition of a partitioned history"); //$NON-NLS-1$
+            }
+            int filePartition = buffer.getInt();
+            int nbPartitions = buffer.getInt();
+            if (filePartition != partition || nbPartitions <= partition) {
+                throw new IOException("Inconsistent partition information"); //$NON-NLS-1$
+            }
+            return nbPartitions;
+        }
+    }
+
+    private HistoryTreeBackend getPartition(int quark) {
+        return fPartitions[quark % fPartitions.length];
+    }
+
+    // ------------------------------------------------------------------------
+    // IStateHistoryBackend
+    // ------------------------------------------------------------------------
+
+    @Override
+    public String getSSID() {
+        return fSsid;
+    }
+
+    @Override
+    public long getStartTime() {
+        return fPartitions[0].getStartTime();
+    }
+
+    @Override
+    public long getEndTime() {
+        long endTime = Long.MIN_VALUE;
+        for (HistoryTreeBackend partition : fPartitions) {
+            endTime = Math.max(endTime, partition.getEndTime());
+        }
+        return endTime;
+    }
+
+    @Override
+    public void insertPastState(long stateStartTime, long stateEndTime,
+            int quark, ITmfStateValue value) throws TimeRangeException {
+        if (fQueues == null) {
+            throw new UnsupportedOperationException("This history was opened from existing files"); //$NON-NLS-1$
+        }
+        HTInterval interval = new HTInterval(stateStartTime, stateEndTime,
+                quark, (TmfStateValue) value);
+        fQueues.get(quark % fQueues.size()).put(interval);
+    }
+
+    @Override
+    public void finishedBuilding(long endTime) {
+        /*
+         * All the partitions have to be closed, with the same end time, before
+         * the state system writes the attribute tree in the first one.
+         */
+        stopRunningThreads(endTime);
+        for (int i = 0; i < fPartitions.length; i++) {
+            try {
+                writePartitionInfo(fPartitions[i].getSHT().getConfig().getStateFile(), i, fPartitions.length);
+            } catch (IOException e) {
+                Activator.getDefault().logError("Error writing the partition information", e); //$NON-NLS-1$
+            }
+            fPartitions[i].setFinishedBuilding(true);
+        }
+        fFinishedBuilding = true;
+    }
+
+    @Override
+    public FileInputStream supplyAttributeTreeReader() {
+        return fPartitions[0].supplyAttributeTreeReader();
+    }
+
+    @Override
+    public File supplyAttributeTreeWriterFile() {
+        return fPartitions[0].supplyAttributeTreeWriterFile();
+    }
+
+    @Override
+    public long supplyAttributeTreeWriterFilePosition() {
+        return fPartitions[0].supplyAttributeTreeWriterFilePosition();
+    }
+
+    @Override
+    public void removeFiles() {
+        for (HistoryTreeBackend partition : fPartitions) {
+            partition.removeFiles();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (!fFinishedBuilding) {
+            stopRunningThreads(Long.MAX_VALUE);
+        }
+        /*
+         * If the build was interrupted, the partitions are not marked as
+         * finished, so they will delete their files.
+         */
+        for (HistoryTreeBackend partition : fPartitions) {
+            partition.dispose();
+        }
+    }
+
+    private void stopRunningThreads(long endTime) {
+        if (fQueues == null || fThreads == null) {
+            return;
+        }
+
+        /*
+         * Send a "poison pill" in every queue first, so that the partitions
+         * are closed in parallel, then wait for all the threads to finish.
+         */
+        try {
+            for (int i = 0; i < fQueues.size(); i++) {
+                if (fThreads[i].isAlive()) {
+                    HTInterval pill = new HTInterval(-1, endTime, -1, TmfStateValue.nullValue());
+                    fQueues.get(i).put(pill);
+                    fQueues.get(i).flushInputBuffer();
+                }
+            }
+            for (Thread thread : fThreads) {
+                thread.join();
+            }
+        } catch (TimeRangeException e) {
+            Activator.getDefault().logError("Error closing state system", e); //$NON-NLS-1$
+        } catch (InterruptedException e) {
+            Activator.getDefault().logError("State system interrupted", e); //$NON-NLS-1$
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Query methods
+    // ------------------------------------------------------------------------
+
+    @Override
+    public void doQuery(List<ITmfStateInterval> currentStateInfo, long t)
+            throws TimeRangeException, StateSystemDisposedException {
+        checkValidTime(t);
+        for (HistoryTreeBackend partition : fPartitions) {
+            /* Partitions that are behind cannot have anything at t yet */
+            if (t <= partition.getEndTime()) {
+                partition.doQuery(currentStateInfo, t);
+            }
+        }
+
+        if (fFinishedBuilding) {
+            return;
+        }
+
+        /*
+         * Some intervals might have been in the queues while the query was
+         * ongoing, look for the missing ones.
+         */
+        for (int i = 0; i < currentStateInfo.size(); i++) {
+            if (currentStateInfo.get(i) == null) {
+                currentStateInfo.set(i, doSingularQuery(t, i));
+            }
+        }
+    }
+
+    @Override
+    public ITmfStateInterval doSingularQuery(long t, int attributeQuark)
+            throws TimeRangeException, StateSystemDisposedException {
+        checkValidTime(t);
+        HistoryTreeBackend partition = getPartition(attributeQuark);
+        ITmfStateInterval ret = queryPartition(partition, t, attributeQuark);
+        if (ret != null || fFinishedBuilding || fQueues == null) {
+            return ret;
+        }
+
+        /*
+         * The interval might still be in the insertion queue of the partition.
+         * BufferedBlockingQueue's iterator() is thread-safe.
+         */
+        for (ITmfStateInterval interval : fQueues.get(attributeQuark % fQueues.size())) {
+            if (interval.getAttribute() == attributeQuark && interval.intersects(t)) {
+                return interval;
+            }
+        }
+
+        /* It might have been inserted while we were iterating on the queue */
+        return queryPartition(partition, t, attributeQuark);
+    }
+
+    private static ITmfStateInterval queryPartition(HistoryTreeBackend partition,
+            long t, int attributeQuark) throws StateSystemDisposedException {
+        if (t > partition.getEndTime()) {
+            return null;
+        }
+        return partition.doSingularQuery(t, attributeQuark);
+    }
+
+    @Override
+    public void doRangeQuery(Collection<ITmfStateInterval> results, BitSet quarks,
+            QueryRange range) throws TimeRangeException, StateSystemDisposedException {
+        for (HistoryTreeBackend partition : fPartitions) {
+            partition.doRangeQuery(results, quarks, range);
+        }
+    }
+
+    private void checkValidTime(long t) {
+        long startTime = getStartTime();
+        long endTime = getEndTime();
+        if (t < startTime || t > endTime) {
+            throw new TimeRangeException(fSsid + " Time:" + t + ", Start:" + startTime + ", End:" + endTime); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+    }
+
+    @Override
+    public void debugPrint(PrintWriter writer) {
+        for (int i = 0; i < fPartitions.length; i++) {
+            writer.println("Partition " + i + ':'); //$NON-NLS-1$
+            fPartitions[i].debugPrint(writer);
+        }
+    }
+
+    /**
+     * Runnable inserting the intervals of one partition in its history tree,
+     * until it receives the "poison pill".
+     */
+    private static final class PartitionWriter implements Runnable {
+
+        private final HistoryTree fTree;
+        private final BufferedBlockingQueue<HTInterval> fQueue;
+
+        public PartitionWriter(HistoryTree tree, BufferedBlockingQueue<HTInterval> queue) {
+            fTree = tree;
+            fQueue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                HTInterval currentInterval = fQueue.take();
+                while (currentInterval.getStartTime() != -1) {
+                    fTree.insertInterval(currentInterval);
+                    currentInterval = fQueue.take();
+                }
+                if (currentInterval.getAttribute() != -1) {
+                    /* Make sure this is the "poison pill" we are waiting for */
+                    throw new IllegalStateException();
+                }
+                /* The end time of this "signal interval" is the history's */
+                fTree.closeTree(currentInterval.getEndTime());
+            } catch (TimeRangeException e) {
+                /* This should not happen */
+                Activator.getDefault().logError("Error starting the state system", e); //$NON-NLS-1$
+            }
+        }
+    }
+}
@@ -116,6 +116,28 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
         shtThread.start();
     }
 
+    /**
+     * New state history constructor, using a complete configuration object.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param config
+     *            The configuration of the new history tree
+     * @param queueSize
+     *            The size of the interval insertion queue. 2000 - 10000 usually
+     *            works well
+     * @throws IOException
+     *             If there was a problem opening the history file for writing
+     */
+    public ThreadedHistoryTreeBackend(@NonNull String ssid, HTConfig config,
+            int queueSize) throws IOException {
+        super(ssid, config);
+
+        intervalQueue = new BufferedBlockingQueue<>(queueSize / CHUNK_SIZE, CHUNK_SIZE);
+        shtThread = new Thread(this, "History Tree Thread"); //$NON-NLS-1$
+        shtThread.start();
+    }
+
     /*
      * The Threaded version does not specify an "existing file" constructor,
      * since the history is already built (and we only use the other thread
@@ -12,6 +12,7 @@
 
 package org.eclipse.tracecompass.statesystem.core;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.eclipse.jdt.annotation.NonNull;
@@ -354,4 +355,41 @@ public interface ITmfStateSystem {
      */
     @NonNull ITmfStateInterval querySingleState(long t, int attributeQuark)
             throws AttributeNotFoundException, StateSystemDisposedException;
-}
\ No newline at end of file
+
+    /**
+     * Bulk query method, returning the history of several attributes over a
+     * time range in one go. This is much more efficient than calling
+     * querySingleState() or StateSystemUtils.queryHistoryRange() for every
+     * attribute, since the backend can visit its storage only once for all
+     * the requested attributes.
+     *
+     * The "resolution points" of the query are t1, t1 + resolution, t1 + 2 *
+     * resolution, etc., as well as t2. The returned intervals are all the
+     * intervals of the requested attributes which contain at least one of
+     * those points. Use a resolution of 1 to get all the intervals
+     * intersecting [t1, t2].
+     *
+     * @param quarks
+     *            The quarks of the attributes to query
+     * @param t1
+     *            Start time of the query
+     * @param t2
+     *            End time of the query, inclusive. Only the information up to
+     *            the current end of the history will be returned.
+     * @param resolution
+     *            The step between two resolution points, must be greater than
+     *            zero
+     * @return The matching intervals, in no particular order
+     * @throws TimeRangeException
+     *             If t2 is smaller than t1, or if the resolution isn't greater
+     *             than zero
+     * @throws AttributeNotFoundException
+     *             If one of the requested quarks does not exist in the model
+     * @throws StateSystemDisposedException
+     *             If the query is sent after the state system has been disposed
+     * @since 1.1
+     */
+    @NonNull List<ITmfStateInterval> query2D(@NonNull Collection<Integer> quarks,
+            long t1, long t2, long resolution)
+            throws AttributeNotFoundException, StateSystemDisposedException;
+}
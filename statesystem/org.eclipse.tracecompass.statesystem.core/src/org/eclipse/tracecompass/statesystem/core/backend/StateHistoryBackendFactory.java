@@ -18,7 +18,11 @@ import java.io.IOException;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.InMemoryBackend;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.NullBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HTConfig.NodeFormat;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HistoryTreeBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.MappedHistoryTreeBackend;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.PartitionedHistoryTreeBackend;
 import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.ThreadedHistoryTreeBackend;
 
 /**
@@ -94,6 +98,90 @@ public final class StateHistoryBackendFactory {
         return new HistoryTreeBackend(ssid, stateFile, providerVersion, startTime);
     }
 
+    /**
+     * Create a new backend using a History Tree, specifying if the nodes
+     * should be written in the compact format. The compact format uses
+     * variable-length encodings and per-node string tables, which yields
+     * smaller history files, but such files cannot be opened with
+     * {@link #createMappedHistoryTreeBackendExistingFile}. Existing files of
+     * either format can be opened with
+     * {@link #createHistoryTreeBackendExistingFile}.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The filename/location where to store the state history (Should
+     *            end in .ht)
+     * @param providerVersion
+     *            Version of of the state provider. We will only try to reopen
+     *            existing files if this version matches the one in the
+     *            framework.
+     * @param startTime
+     *            The earliest time stamp that will be stored in the history
+     * @param queueSize
+     *            The size of the interval insertion queue between the receiver
+     *            and writer threads. 2000 - 10000 usually works well. If 0 is
+     *            specified, no queue is used and the writes happen in the same
+     *            thread.
+     * @param compact
+     *            If the nodes should be written in the compact format
+     * @return The state system backend
+     * @throws IOException
+     *             Thrown if we can't create the file for some reason
+     * @since 1.1
+     */
+    public static IStateHistoryBackend createHistoryTreeBackendNewFile(String ssid,
+            File stateFile, int providerVersion, long startTime, int queueSize, boolean compact) throws IOException {
+        return createHistoryTreeBackendNewFile(ssid, stateFile, providerVersion, startTime, queueSize, compact, false);
+    }
+
+    /**
+     * Create a new backend using a History Tree, specifying the format of the
+     * nodes and if the string values are stored in a dictionary. With a
+     * dictionary, each distinct string is written only once in the file, and
+     * the nodes only contain its id. Every query result then shares the same
+     * state value object for a given string, which reduces the memory usage
+     * of analyses storing the same strings many times.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The filename/location where to store the state history (Should
+     *            end in .ht)
+     * @param providerVersion
+     *            Version of of the state provider. We will only try to reopen
+     *            existing files if this version matches the one in the
+     *            framework.
+     * @param startTime
+     *            The earliest time stamp that will be stored in the history
+     * @param queueSize
+     *            The size of the interval insertion queue between the receiver
+     *            and writer threads. 2000 - 10000 usually works well. If 0 is
+     *            specified, no queue is used and the writes happen in the same
+     *            thread.
+     * @param compact
+     *            If the nodes should be written in the compact format
+     * @param stringDictionary
+     *            If the string values should be stored in a dictionary
+     * @return The state system backend
+     * @throws IOException
+     *             Thrown if we can't create the file for some reason
+     * @since 1.1
+     */
+    public static IStateHistoryBackend createHistoryTreeBackendNewFile(String ssid,
+            File stateFile, int providerVersion, long startTime, int queueSize,
+            boolean compact, boolean stringDictionary) throws IOException {
+        if (!compact && !stringDictionary) {
+            return createHistoryTreeBackendNewFile(ssid, stateFile, providerVersion, startTime, queueSize);
+        }
+        HTConfig config = new HTConfig(stateFile, HTConfig.DEFAULT_BLOCKSIZE, HTConfig.DEFAULT_MAXCHILDREN,
+                providerVersion, startTime, (compact ? NodeFormat.COMPACT : NodeFormat.CLASSIC), stringDictionary);
+        if (queueSize > 0) {
+            return new ThreadedHistoryTreeBackend(ssid, config, queueSize);
+        }
+        return new HistoryTreeBackend(ssid, config);
+    }
+
     /**
      * Create a new History Tree backend, but attempt to open an existing file
      * on disk. If the file cannot be found or recognized, an IOException will
@@ -115,4 +203,84 @@ public final class StateHistoryBackendFactory {
             int providerVersion) throws IOException {
         return new HistoryTreeBackend(ssid, stateFile, providerVersion);
     }
+
+    /**
+     * Open an existing, completed History Tree file in read-only mode. The
+     * file is memory-mapped and queried directly, without deserializing its
+     * nodes, which reduces the memory usage of large histories. If the file
+     * cannot be found or recognized, an IOException will be thrown.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            Filename/location of the history we want to load
+     * @param providerVersion
+     *            Expected version of of the state provider plugin.
+     * @return The state system backend
+     * @throws IOException
+     *             If we can't read the file, if it doesn't exist, is not
+     *             recognized, or if the version of the file does not match the
+     *             expected providerVersion.
+     * @since 1.1
+     */
+    public static IStateHistoryBackend createMappedHistoryTreeBackendExistingFile(String ssid, File stateFile,
+            int providerVersion) throws IOException {
+        return new MappedHistoryTreeBackend(ssid, stateFile, providerVersion);
+    }
+
+    /**
+     * Create a new backend storing its intervals in several History Trees,
+     * each one built by its own thread. The attributes are split between the
+     * trees, which allows the construction of large histories to use several
+     * cores.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            The filename/location where to store the state history
+     *            (Should end in .ht). The other partitions are stored in files
+     *            with the same name followed by the partition number.
+     * @param providerVersion
+     *            Version of of the state provider. We will only try to reopen
+     *            existing files if this version matches the one in the
+     *            framework.
+     * @param startTime
+     *            The earliest time stamp that will be stored in the history
+     * @param queueSize
+     *            The size of the interval insertion queue of each partition.
+     *            2000 - 10000 usually works well.
+     * @param nbPartitions
+     *            The number of History Trees to build in parallel
+     * @return The state system backend
+     * @throws IOException
+     *             Thrown if we can't create the files for some reason
+     * @since 1.1
+     */
+    public static IStateHistoryBackend createPartitionedHistoryTreeBackendNewFile(String ssid,
+            File stateFile, int providerVersion, long startTime, int queueSize, int nbPartitions) throws IOException {
+        return new PartitionedHistoryTreeBackend(ssid, stateFile, providerVersion, startTime, queueSize, nbPartitions);
+    }
+
+    /**
+     * Open an existing history that was built with
+     * {@link #createPartitionedHistoryTreeBackendNewFile}. If one of the files
+     * cannot be found or recognized, an IOException will be thrown.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param stateFile
+     *            Filename/location of the first partition of the history
+     * @param providerVersion
+     *            Expected version of of the state provider plugin.
+     * @return The state system backend
+     * @throws IOException
+     *             If we can't read one of the files, if it doesn't exist, is
+     *             not recognized, or if the version of the file does not match
+     *             the expected providerVersion.
+     * @since 1.1
+     */
+    public static IStateHistoryBackend createPartitionedHistoryTreeBackendExistingFile(String ssid,
+            File stateFile, int providerVersion) throws IOException {
+        return new PartitionedHistoryTreeBackend(ssid, stateFile, providerVersion);
+    }
 }
@@ -15,13 +15,16 @@ package org.eclipse.tracecompass.tmf.core.tests.request;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Path;
@@ -44,6 +47,8 @@ import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfTraceStub;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * Test suite for the TmfCoalescedEventRequest class.
  */
@@ -218,6 +223,28 @@ public class TmfCoalescedEventRequestTest {
         assertEquals("addRequest", 2147483647, coalescedRequest.getNbRequested());
     }
 
+    // ------------------------------------------------------------------------
+    // getEventNames
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void testGetEventNames() {
+        TmfCoalescedEventRequest coalescedRequest = new TmfCoalescedEventRequest(ITmfEvent.class, range1, 0, 2147483647, ExecutionType.FOREGROUND);
+        TmfEventRequest req1 = new TmfEventRequestStub(ITmfEvent.class, range1, 0, 2147483647, 200);
+        TmfEventRequest req2 = new TmfEventRequestStub(ITmfEvent.class, range1, 0, 2147483647, 200);
+        TmfEventRequest req3 = new TmfEventRequestStub(ITmfEvent.class, range1, 0, 2147483647, 200);
+        req1.setEventNames(Arrays.asList("a", "b"));
+        req2.setEventNames(Arrays.asList("b", "c"));
+
+        assertNull("getEventNames", coalescedRequest.getEventNames());
+        coalescedRequest.addRequest(req1);
+        assertEquals("getEventNames", ImmutableSet.of("a", "b"), coalescedRequest.getEventNames());
+        coalescedRequest.addRequest(req2);
+        assertEquals("getEventNames", ImmutableSet.of("a", "b", "c"), coalescedRequest.getEventNames());
+        coalescedRequest.addRequest(req3);
+        assertNull("getEventNames", coalescedRequest.getEventNames());
+    }
+
     // ------------------------------------------------------------------------
     // done
     // ------------------------------------------------------------------------
@@ -358,6 +385,8 @@ public class TmfCoalescedEventRequestTest {
     Vector<ITmfEvent> requestedEvents2;
     Vector<ITmfEvent> requestedEvents3;
 
+    volatile boolean failRequest1 = false;
+
     TmfEventRequest request1;
     TmfEventRequest request2;
     TmfEventRequest request3;
@@ -367,11 +396,19 @@ public class TmfCoalescedEventRequestTest {
     private static class TmfTestTriggerSignal extends TmfSignal {
         public final boolean forceCancel;
         public final long fIndex;
+        public final ExecutionType fExecType;
+        public final CountDownLatch fGate;
 
         public TmfTestTriggerSignal(Object source, long index, boolean cancel) {
+            this(source, index, cancel, ExecutionType.FOREGROUND, null);
+        }
+
+        public TmfTestTriggerSignal(Object source, long index, boolean cancel, ExecutionType execType, CountDownLatch gate) {
             super(source);
             forceCancel = cancel;
             fIndex = index;
+            fExecType = execType;
+            fGate = gate;
         }
     }
 
@@ -389,22 +426,32 @@ public class TmfCoalescedEventRequestTest {
 
         requestedEvents1 = new Vector<>();
         request1 = new TmfEventRequest(ITmfEvent.class, range, signal.fIndex,
-                NB_EVENTS, ExecutionType.FOREGROUND) {
+                NB_EVENTS, signal.fExecType) {
             @Override
             public void handleData(ITmfEvent event) {
                 super.handleData(event);
                 if (!isCompleted()) {
                     requestedEvents1.add(event);
+                    if (failRequest1) {
+                        throw new AssertionError("Request1 failure");
+                    }
                     if (signal.forceCancel) {
                         cancel();
                     }
+                    if (signal.fGate != null) {
+                        try {
+                            signal.fGate.await();
+                        } catch (InterruptedException e) {
+                            cancel();
+                        }
+                    }
                 }
             }
         };
 
         requestedEvents2 = new Vector<>();
         request2 = new TmfEventRequest(ITmfEvent.class, range,
-                signal.fIndex + REQUEST_OFFSET, NB_EVENTS, ExecutionType.FOREGROUND) {
+                signal.fIndex + REQUEST_OFFSET, NB_EVENTS, signal.fExecType) {
             @Override
             public void handleData(ITmfEvent event) {
                 super.handleData(event);
@@ -416,7 +463,7 @@ public class TmfCoalescedEventRequestTest {
 
         requestedEvents3 = new Vector<>();
         request3 = new TmfEventRequest(ITmfEvent.class, range,
-                signal.fIndex + 2 * REQUEST_OFFSET, NB_EVENTS, ExecutionType.FOREGROUND) {
+                signal.fIndex + 2 * REQUEST_OFFSET, NB_EVENTS, signal.fExecType) {
             @Override
             public void handleData(ITmfEvent event) {
                 super.handleData(event);
@@ -454,11 +501,15 @@ public class TmfCoalescedEventRequestTest {
     }
 
     public void runCoalescedRequest(long startIndex) throws InterruptedException {
+        runCoalescedRequest(startIndex, ExecutionType.FOREGROUND);
+    }
+
+    public void runCoalescedRequest(long startIndex, ExecutionType execType) throws InterruptedException {
 
         fTrace = setupTrace(TEST_TRACE.getFullPath());
 
         TmfSignalManager.register(this);
-        TmfTestTriggerSignal signal = new TmfTestTriggerSignal(this, startIndex, false);
+        TmfTestTriggerSignal signal = new TmfTestTriggerSignal(this, startIndex, false, execType, null);
         TmfSignalManager.dispatchSignal(signal);
 
         request1.waitForCompletion();
@@ -499,6 +550,77 @@ public class TmfCoalescedEventRequestTest {
         runCoalescedRequest(5);
     }
 
+    @Test
+    public void testFanOutCoalescedRequest() throws InterruptedException {
+        runCoalescedRequest(0, ExecutionType.BACKGROUND);
+        runCoalescedRequest(1, ExecutionType.BACKGROUND);
+        runCoalescedRequest(5, ExecutionType.BACKGROUND);
+    }
+
+    @Test
+    public void testFanOutSlowRequest() throws InterruptedException {
+
+        fTrace = setupTrace(TEST_TRACE.getFullPath());
+
+        TmfSignalManager.register(this);
+        CountDownLatch gate = new CountDownLatch(1);
+        TmfTestTriggerSignal signal = new TmfTestTriggerSignal(this, 0, false, ExecutionType.BACKGROUND, gate);
+        TmfSignalManager.dispatchSignal(signal);
+
+        try {
+            /* The other requests complete while the first one is blocked */
+            request2.waitForCompletion();
+            request3.waitForCompletion();
+            assertTrue("Request1: nbEvents", requestedEvents1.size() <= 1);
+            assertFalse("Request1: isCompleted", request1.isCompleted());
+            assertEquals("Request2: nbEvents", NB_EVENTS, requestedEvents2.size());
+            assertEquals("Request3: nbEvents", NB_EVENTS, requestedEvents3.size());
+
+            /* The first request then gets all its events, in order */
+            gate.countDown();
+            request1.waitForCompletion();
+            assertFalse("Request1: isCancelled", request1.isCancelled());
+            assertEquals("Request1: nbEvents", NB_EVENTS, requestedEvents1.size());
+            for (int i = 0; i < NB_EVENTS; i++) {
+                assertEquals("Distinct events", i + 1, requestedEvents1.get(i).getTimestamp().getValue());
+            }
+        } finally {
+            gate.countDown();
+            TmfSignalManager.deregister(this);
+            fTrace.dispose();
+            fTrace = null;
+        }
+    }
+
+    @Test
+    public void testFanOutFailingRequest() throws InterruptedException {
+
+        fTrace = setupTrace(TEST_TRACE.getFullPath());
+
+        TmfSignalManager.register(this);
+        failRequest1 = true;
+        TmfTestTriggerSignal signal = new TmfTestTriggerSignal(this, 0, false, ExecutionType.BACKGROUND, null);
+        TmfSignalManager.dispatchSignal(signal);
+
+        try {
+            /* The error fails the first request, the others still get all their events */
+            request1.waitForCompletion();
+            request2.waitForCompletion();
+            request3.waitForCompletion();
+            assertTrue("Request1: isFailed", request1.isFailed());
+            assertEquals("Request1: nbEvents", 1, requestedEvents1.size());
+            assertEquals("Request2: nbEvents", NB_EVENTS, requestedEvents2.size());
+            assertFalse("Request2: isFailed", request2.isFailed());
+            assertEquals("Request3: nbEvents", NB_EVENTS, requestedEvents3.size());
+            assertFalse("Request3: isFailed", request3.isFailed());
+        } finally {
+            failRequest1 = false;
+            TmfSignalManager.deregister(this);
+            fTrace.dispose();
+            fTrace = null;
+        }
+    }
+
     @Test
     public void testCancelCoalescedRequest() throws InterruptedException {
 
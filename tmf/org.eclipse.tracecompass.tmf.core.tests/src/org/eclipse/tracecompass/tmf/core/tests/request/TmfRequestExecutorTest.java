@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.tracecompass.internal.tmf.core.component.TmfEventThread;
+import org.eclipse.tracecompass.internal.tmf.core.request.TmfRequestExecutor;
+import org.eclipse.tracecompass.tmf.core.component.TmfEventProvider;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
+import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.TmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.location.TmfLongLocation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test suite for the scheduling of the requests by the TmfRequestExecutor
+ * class.
+ */
+@SuppressWarnings("javadoc")
+public class TmfRequestExecutorTest {
+
+    private static final long TIMEOUT = 10;
+
+    private EventSource fProvider;
+    private TmfRequestExecutor fExecutor;
+
+    /**
+     * A provider of an endless sequence of events
+     */
+    private static class EventSource extends TmfEventProvider {
+
+        public EventSource() {
+            super("EventSource", ITmfEvent.class);
+        }
+
+        @Override
+        public ITmfContext armRequest(ITmfEventRequest request) {
+            return new TmfContext(new TmfLongLocation(0L), 0);
+        }
+
+        @Override
+        public ITmfEvent getNext(ITmfContext context) {
+            long rank = context.getRank();
+            context.increaseRank();
+            return new TmfEvent(null, rank, new TmfTimestamp(rank), null, null);
+        }
+    }
+
+    /**
+     * A request counting its events, which can block on its first event
+     */
+    private static class CountingRequest extends TmfEventRequest {
+
+        private final CountDownLatch fFirstEvent = new CountDownLatch(1);
+        private final CountDownLatch fGate;
+        private volatile int fNbEvents = 0;
+
+        public CountingRequest(ExecutionType type, int nbRequested, CountDownLatch gate) {
+            super(ITmfEvent.class, TmfTimeRange.ETERNITY, 0, nbRequested, type);
+            fGate = gate;
+        }
+
+        @Override
+        public void handleData(ITmfEvent event) {
+            super.handleData(event);
+            fNbEvents++;
+            fFirstEvent.countDown();
+            if (fGate != null) {
+                try {
+                    fGate.await(TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    cancel();
+                }
+            }
+        }
+
+        public int getNbEvents() {
+            return fNbEvents;
+        }
+
+        public boolean awaitFirstEvent() throws InterruptedException {
+            return fFirstEvent.await(TIMEOUT, TimeUnit.SECONDS);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Housekeeping
+    // ------------------------------------------------------------------------
+
+    @Before
+    public void setUp() {
+        fProvider = new EventSource();
+    }
+
+    @After
+    public void tearDown() {
+        if (fExecutor != null) {
+            fExecutor.stop();
+        }
+        fProvider.dispose();
+    }
+
+    private void execute(ITmfEventRequest request) {
+        fExecutor.execute(new TmfEventThread(fProvider, request));
+    }
+
+    private void waitForIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (fExecutor.getRunningCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Tests
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void testConcurrentRequests() throws InterruptedException {
+        fExecutor = new TmfRequestExecutor(2);
+        CountDownLatch gate = new CountDownLatch(1);
+        CountingRequest request1 = new CountingRequest(ExecutionType.BACKGROUND, 10, gate);
+        CountingRequest request2 = new CountingRequest(ExecutionType.BACKGROUND, 10, gate);
+        execute(request1);
+        execute(request2);
+
+        /* Both requests run while the first one is blocked */
+        assertTrue(request1.awaitFirstEvent());
+        assertTrue(request2.awaitFirstEvent());
+        assertEquals(2, fExecutor.getRunningCount());
+        assertEquals(0, fExecutor.getQueueDepth());
+
+        gate.countDown();
+        request1.waitForCompletion();
+        request2.waitForCompletion();
+        assertEquals(10, request1.getNbEvents());
+        assertEquals(10, request2.getNbEvents());
+    }
+
+    @Test
+    public void testQueuedRequests() throws InterruptedException {
+        fExecutor = new TmfRequestExecutor(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        CountingRequest request1 = new CountingRequest(ExecutionType.BACKGROUND, 10, gate);
+        CountingRequest request2 = new CountingRequest(ExecutionType.BACKGROUND, 10, null);
+        execute(request1);
+        execute(request2);
+
+        assertTrue(request1.awaitFirstEvent());
+        assertEquals(1, fExecutor.getRunningCount());
+        assertEquals(1, fExecutor.getQueueDepth());
+        assertEquals(0, request2.getNbEvents());
+
+        gate.countDown();
+        request2.waitForCompletion();
+        assertTrue(request1.isCompleted());
+        assertEquals(10, request2.getNbEvents());
+        waitForIdle();
+        assertEquals(0, fExecutor.getRunningCount());
+        assertEquals(0, fExecutor.getQueueDepth());
+        assertTrue(fExecutor.getMaxWaitTime() > 0);
+        assertTrue(fExecutor.getAverageWaitTime() <= fExecutor.getMaxWaitTime());
+    }
+
+    @Test
+    public void testForegroundPreemption() throws InterruptedException {
+        fExecutor = new TmfRequestExecutor(1);
+        final CountingRequest background = new CountingRequest(ExecutionType.BACKGROUND, ITmfEventRequest.ALL_DATA, null);
+        execute(background);
+        assertTrue(background.awaitFirstEvent());
+
+        final int[] backgroundEvents = new int[2];
+        CountingRequest foreground = new CountingRequest(ExecutionType.FOREGROUND, 1000, null) {
+            @Override
+            public void handleData(ITmfEvent event) {
+                if (getNbEvents() == 0) {
+                    backgroundEvents[0] = background.getNbEvents();
+                }
+                super.handleData(event);
+                backgroundEvents[1] = background.getNbEvents();
+            }
+        };
+        execute(foreground);
+        foreground.waitForCompletion();
+        assertEquals(1000, foreground.getNbEvents());
+
+        /* The background request was suspended, it may read one more event */
+        assertTrue(backgroundEvents[1] - backgroundEvents[0] <= 1);
+        assertFalse(background.isCompleted());
+
+        /* Then resumed */
+        int nbEvents = background.getNbEvents();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (background.getNbEvents() == nbEvents && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(background.getNbEvents() > nbEvents);
+        background.cancel();
+        background.waitForCompletion();
+    }
+
+    @Test
+    public void testBackgroundNotStarved() throws InterruptedException {
+        fExecutor = new TmfRequestExecutor(1);
+        CountingRequest background = new CountingRequest(ExecutionType.BACKGROUND, ITmfEventRequest.ALL_DATA, null) {
+            @Override
+            public void handleData(ITmfEvent event) {
+                super.handleData(event);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    cancel();
+                }
+            }
+        };
+        execute(background);
+        assertTrue(background.awaitFirstEvent());
+
+        /* Queue more foreground work than a background request can wait for */
+        List<CountingRequest> foregrounds = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            CountingRequest foreground = new CountingRequest(ExecutionType.FOREGROUND, 5, null) {
+                @Override
+                public void handleData(ITmfEvent event) {
+                    super.handleData(event);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        cancel();
+                    }
+                }
+            };
+            foregrounds.add(foreground);
+            execute(foreground);
+        }
+        assertTrue(foregrounds.get(0).awaitFirstEvent());
+        int suspendedEvents = background.getNbEvents();
+
+        /* The background request is resumed ahead of the foreground requests, and keeps running */
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (background.getNbEvents() <= suspendedEvents + 100 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(background.getNbEvents() > suspendedEvents + 100);
+        assertFalse(foregrounds.get(foregrounds.size() - 1).isCompleted());
+
+        background.cancel();
+        for (CountingRequest foreground : foregrounds) {
+            foreground.waitForCompletion();
+            assertEquals(5, foreground.getNbEvents());
+        }
+    }
+
+    @Test
+    public void testStop() throws InterruptedException {
+        fExecutor = new TmfRequestExecutor(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        CountingRequest request1 = new CountingRequest(ExecutionType.BACKGROUND, ITmfEventRequest.ALL_DATA, gate);
+        CountingRequest request2 = new CountingRequest(ExecutionType.BACKGROUND, 10, null);
+        execute(request1);
+        execute(request2);
+        assertTrue(request1.awaitFirstEvent());
+
+        fExecutor.stop();
+        assertTrue(fExecutor.isShutdown());
+        assertTrue(request1.isCancelled());
+        assertTrue(request2.isCancelled());
+        gate.countDown();
+        request1.waitForCompletion();
+
+        CountingRequest request3 = new CountingRequest(ExecutionType.FOREGROUND, 10, null);
+        execute(request3);
+        assertTrue(request3.isCancelled());
+    }
+}
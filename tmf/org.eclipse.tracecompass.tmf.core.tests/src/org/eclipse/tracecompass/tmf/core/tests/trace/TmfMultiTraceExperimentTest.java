@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2014 Ericsson
+ * Copyright (c) 2009, 2015 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -25,11 +25,15 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.tracecompass.internal.tmf.core.trace.experiment.TmfExperimentContext;
+import org.eclipse.tracecompass.internal.tmf.core.trace.experiment.TmfExperimentPrefetcher;
+import org.eclipse.tracecompass.internal.tmf.core.trace.experiment.TmfExperimentPrefetcher.PrefetchedEvent;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
@@ -764,6 +768,166 @@ public class TmfMultiTraceExperimentTest {
         assertTrue("isCancelled", request.isCancelled());
     }
 
+    // ------------------------------------------------------------------------
+    // prefetch
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void testPrefetchIndex() {
+        TmfExperimentStub exp = new TmfExperimentStub(EXPERIMENT, setupTraces(), BLOCK_SIZE);
+        assertFalse(exp.isPrefetch());
+        exp.setPrefetch(true);
+        assertTrue(exp.isPrefetch());
+        exp.getIndexer().buildIndex(0, TmfTimeRange.ETERNITY, true);
+        assertEquals("getNbEvents", NB_EVENTS, exp.getNbEvents());
+
+        // The checkpoints were taken while the traces were read ahead
+        for (long rank : new long[] { 0, BLOCK_SIZE, BLOCK_SIZE + 1, 4 * BLOCK_SIZE + 500, NB_EVENTS - 1 }) {
+            ITmfContext context = exp.seekEvent(rank);
+            assertEquals("Context rank", rank, context.getRank());
+            ITmfEvent event = exp.getNext(context);
+            assertEquals("Event timestamp", rank + 1, event.getTimestamp().getValue());
+            context.dispose();
+        }
+        exp.dispose();
+    }
+
+    @Test
+    public void testPrefetchRequest() throws InterruptedException {
+        final TmfExperimentStub exp = new TmfExperimentStub(EXPERIMENT, setupTraces(), BLOCK_SIZE);
+        exp.setPrefetch(true);
+        final Vector<ITmfEvent> requestedEvents = new Vector<>();
+
+        final TmfTimeRange range = new TmfTimeRange(new TmfTimestamp(2001, SCALE), TmfTimestamp.BIG_CRUNCH);
+        final TmfEventRequest request = new TmfEventRequest(ITmfEvent.class,
+                range, 0, ITmfEventRequest.ALL_DATA, ExecutionType.FOREGROUND) {
+            @Override
+            public void handleData(final ITmfEvent event) {
+                super.handleData(event);
+                requestedEvents.add(event);
+            }
+        };
+        exp.sendRequest(request);
+        request.waitForCompletion();
+
+        assertEquals("nbEvents", NB_EVENTS - 2000, requestedEvents.size());
+        assertTrue("isCompleted",  request.isCompleted());
+        assertFalse("isCancelled", request.isCancelled());
+        for (int i = 0; i < requestedEvents.size(); i++) {
+            assertEquals("Distinct events", i + 2001, requestedEvents.get(i).getTimestamp().getValue());
+        }
+        exp.dispose();
+    }
+
+    @Test
+    public void testPrefetchCancel() throws InterruptedException {
+        final TmfExperimentStub exp = new TmfExperimentStub(EXPERIMENT, setupTraces(), BLOCK_SIZE);
+        exp.setPrefetch(true);
+        final int limit = 10;
+        final Vector<ITmfEvent> requestedEvents = new Vector<>();
+
+        // The traces are read ahead well past the cancellation
+        final TmfEventRequest request = new TmfEventRequest(ITmfEvent.class,
+                TmfTimeRange.ETERNITY, 0, NB_EVENTS, ExecutionType.FOREGROUND) {
+            int nbRead = 0;
+
+            @Override
+            public void handleData(final ITmfEvent event) {
+                super.handleData(event);
+                requestedEvents.add(event);
+                if (++nbRead == limit) {
+                    cancel();
+                }
+            }
+        };
+        exp.sendRequest(request);
+        request.waitForCompletion();
+
+        assertEquals("nbEvents",  limit, requestedEvents.size());
+        assertTrue("isCompleted", request.isCompleted());
+        assertTrue("isCancelled", request.isCancelled());
+        exp.dispose();
+    }
+
+    @Test
+    public void testPrefetcherEndTime() {
+        ITmfTrace trace = setupTraces()[0];
+        ITmfContext context = trace.seekEvent(0);
+
+        // The odd events up to 99, then the first one past the end time
+        TmfExperimentPrefetcher prefetcher = TmfExperimentPrefetcher.create(trace, context, new TmfTimestamp(100, SCALE), ITmfEventRequest.ALL_DATA);
+        assertNotNull(prefetcher);
+        prefetcher.start();
+        int nbEvents = 0;
+        PrefetchedEvent event = prefetcher.take();
+        while (event.getEvent() != null) {
+            nbEvents++;
+            assertEquals("Event timestamp", 2 * nbEvents - 1, event.getEvent().getTimestamp().getValue());
+            event = prefetcher.take();
+        }
+        assertEquals("nbEvents", 51, nbEvents);
+        assertEquals("Context rank", 51, context.getRank());
+        prefetcher.cancel();
+        context.dispose();
+        trace.dispose();
+    }
+
+    @Test
+    public void testPrefetcherMaxEvents() {
+        ITmfTrace trace = setupTraces()[0];
+        ITmfContext context = trace.seekEvent(0);
+
+        TmfExperimentPrefetcher prefetcher = TmfExperimentPrefetcher.create(trace, context, TmfTimestamp.BIG_CRUNCH, 10);
+        assertNotNull(prefetcher);
+        prefetcher.start();
+        int nbEvents = 0;
+        while (prefetcher.take().getEvent() != null) {
+            nbEvents++;
+        }
+        assertEquals("nbEvents", 10, nbEvents);
+        assertEquals("Context rank", 10, context.getRank());
+        prefetcher.cancel();
+        context.dispose();
+        trace.dispose();
+    }
+
+    @Test
+    public void testPrefetcherLimit() {
+        ITmfTrace trace = setupTraces()[0];
+        List<ITmfContext> contexts = new ArrayList<>();
+        List<TmfExperimentPrefetcher> prefetchers = new ArrayList<>();
+
+        // No more prefetchers than the maximum run at once
+        TmfExperimentPrefetcher prefetcher;
+        do {
+            ITmfContext context = trace.seekEvent(0);
+            contexts.add(context);
+            prefetcher = TmfExperimentPrefetcher.create(trace, context, TmfTimestamp.BIG_CRUNCH, ITmfEventRequest.ALL_DATA);
+            if (prefetcher != null) {
+                prefetcher.start();
+                prefetchers.add(prefetcher);
+            }
+        } while (prefetcher != null && prefetchers.size() <= TmfExperimentPrefetcher.MAX_RUNNING);
+        assertNull(prefetcher);
+        assertTrue(prefetchers.size() <= TmfExperimentPrefetcher.MAX_RUNNING);
+
+        // Stopped prefetchers make room for new ones
+        for (TmfExperimentPrefetcher running : prefetchers) {
+            running.cancel();
+        }
+        ITmfContext context = trace.seekEvent(0);
+        contexts.add(context);
+        prefetcher = TmfExperimentPrefetcher.create(trace, context, TmfTimestamp.BIG_CRUNCH, ITmfEventRequest.ALL_DATA);
+        assertNotNull(prefetcher);
+        prefetcher.start();
+        prefetcher.cancel();
+
+        for (ITmfContext traceContext : contexts) {
+            traceContext.dispose();
+        }
+        trace.dispose();
+    }
+
     // ------------------------------------------------------------------------
     // getTimestamp
     // ------------------------------------------------------------------------
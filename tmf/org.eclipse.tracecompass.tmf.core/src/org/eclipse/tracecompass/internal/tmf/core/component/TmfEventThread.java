@@ -53,11 +53,6 @@ public class TmfEventThread implements Runnable {
      */
     private final ExecutionType   fExecType;
 
-    /**
-     * The wrapped thread (if applicable)
-     */
-    private final TmfEventThread  fThread;
-
     private volatile CountDownLatch fLatch = new CountDownLatch(1);
 
     /**
@@ -84,32 +79,12 @@ public class TmfEventThread implements Runnable {
         fProvider = provider;
         fRequest  = request;
         fExecType = request.getExecType();
-        fThread   = null;
-    }
-
-    /**
-     * Wrapper constructor
-     *
-     * @param thread the thread to wrap
-     */
-    public TmfEventThread(TmfEventThread thread) {
-        fProvider = thread.fProvider;
-        fRequest  = thread.fRequest;
-        fExecType = thread.fExecType;
-        fThread   = thread;
     }
 
     // ------------------------------------------------------------------------
     // Getters
     // ------------------------------------------------------------------------
 
-    /**
-     * @return The wrapped thread
-     */
-    public TmfEventThread getThread() {
-        return fThread;
-    }
-
     /**
      * @return The event provider
      */
@@ -215,10 +190,10 @@ public class TmfEventThread implements Runnable {
             Activator.logError("Error in " + fProvider.getName() + " handling " + fRequest, e); //$NON-NLS-1$ //$NON-NLS-2$
             isCompleted = true;
             fRequest.fail();
+        } finally {
+            // Cleanup
+            context.dispose();
         }
-
-        // Cleanup
-        context.dispose();
     }
 
     // ------------------------------------------------------------------------
@@ -17,24 +17,48 @@ package org.eclipse.tracecompass.internal.tmf.core.request;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.collect.RingBufferBlockingQueue;
+import org.eclipse.tracecompass.internal.tmf.core.Activator;
 import org.eclipse.tracecompass.internal.tmf.core.TmfCoreTracer;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+
+import com.google.common.collect.ImmutableSet;
 
 /**
  * The TMF coalesced event request
  *
+ * By default, the events are dispatched to the sub-requests by the thread
+ * reading the trace, so the sub-requests are all as slow as the slowest of
+ * them. In fan-out mode, each sub-request gets its own thread, fed by the
+ * reading thread through a bounded queue: the trace is read at the speed of the
+ * slowest sub-request only once the queue of that sub-request is full.
+ *
  * @author Francois Chouinard
  */
 public class TmfCoalescedEventRequest extends TmfEventRequest {
 
+    // ------------------------------------------------------------------------
+    // Constants
+    // ------------------------------------------------------------------------
+
+    /** Size of the queues of the sub-requests in fan-out mode, in chunks */
+    private static final int FAN_OUT_QUEUE_SIZE = 127;
+
+    /** Number of events the reading thread queues at once in fan-out mode */
+    private static final int FAN_OUT_CHUNK_SIZE = 127;
+
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
@@ -53,6 +77,18 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
      */
     private Map<String, Set<ITmfEventRequest>> fRequestsCache = new HashMap<>();
 
+    /** Whether the events are dispatched to the sub-requests in fan-out mode */
+    private boolean fFanOut = false;
+
+    /**
+     * The consumer threads of the sub-requests, when the request runs in
+     * fan-out mode
+     */
+    private @Nullable Map<ITmfEventRequest, Consumer> fConsumers = null;
+
+    /** The thread reading the trace, which dispatches the events */
+    private @Nullable Thread fReaderThread = null;
+
     // ------------------------------------------------------------------------
     // Constructor
     // ------------------------------------------------------------------------
@@ -101,6 +137,26 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
         return fRange;
     }
 
+    /**
+     * Set whether the events are dispatched to the sub-requests in fan-out
+     * mode, each sub-request handling the events in its own thread. It has to
+     * be set before the request is started, and only makes a difference if
+     * there are several sub-requests.
+     *
+     * @param fanOut
+     *            true to dispatch the events in fan-out mode
+     */
+    public void setFanOut(boolean fanOut) {
+        fFanOut = fanOut;
+    }
+
+    /**
+     * @return true if the events are dispatched in fan-out mode
+     */
+    public boolean isFanOut() {
+        return fFanOut;
+    }
+
     // ------------------------------------------------------------------------
     // Management
     // ------------------------------------------------------------------------
@@ -184,6 +240,28 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
         }
     }
 
+    /**
+     * Get the names of the events needed by the sub-requests
+     *
+     * @return The names of the events needed by any of the sub-requests, or
+     *         null if one of them needs all the events
+     */
+    @Override
+    public @Nullable Set<String> getEventNames() {
+        if (fRequests.isEmpty()) {
+            return null;
+        }
+        ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        for (ITmfEventRequest request : fRequests) {
+            Set<String> eventNames = (request instanceof TmfEventRequest) ? ((TmfEventRequest) request).getEventNames() : null;
+            if (eventNames == null) {
+                return null;
+            }
+            builder.addAll(eventNames);
+        }
+        return builder.build();
+    }
+
     /**
      * @return The list of IDs of the sub-requests
      */
@@ -225,13 +303,24 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
         }
 
         // dispatch event to relevant requests
+        Map<ITmfEventRequest, Consumer> consumers = fConsumers;
         for (ITmfEventRequest request : requests) {
             long start = request.getIndex();
-            if (!request.isCompleted() && index >= start && request.getNbRead() < request.getNbRequested()) {
+            Consumer consumer = (consumers == null) ? null : consumers.get(request);
+            /*
+             * The events queued to a consumer are not read by its request yet,
+             * they are counted separately.
+             */
+            long nbRead = (consumer == null) ? request.getNbRead() : consumer.fNbQueued;
+            if (!request.isCompleted() && index >= start && nbRead < request.getNbRequested()) {
                 ITmfTimestamp ts = data.getTimestamp();
                 if (request.getRange().contains(ts)) {
                     if (request.getDataType().isInstance(data)) {
-                        request.handleData(data);
+                        if (consumer == null) {
+                            request.handleData(data);
+                        } else {
+                            consumer.queue(data);
+                        }
                     }
                 }
             }
@@ -245,11 +334,24 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
                 request.start();
             }
         }
+        if (fFanOut && fRequests.size() > 1) {
+            fReaderThread = Thread.currentThread();
+            Map<ITmfEventRequest, Consumer> consumers = new IdentityHashMap<>();
+            for (ITmfEventRequest request : fRequests) {
+                if (!consumers.containsKey(request)) {
+                    Consumer consumer = new Consumer(request);
+                    consumers.put(request, consumer);
+                    consumer.start();
+                }
+            }
+            fConsumers = consumers;
+        }
         super.start();
     }
 
     @Override
     public void done() {
+        stopConsumers(Completion.DONE);
         for (ITmfEventRequest request : fRequests) {
             if (!request.isCompleted()) {
                 request.done();
@@ -260,6 +362,7 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
 
     @Override
     public void fail() {
+        stopConsumers(Completion.FAIL);
         for (ITmfEventRequest request : fRequests) {
             request.fail();
         }
@@ -268,6 +371,15 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
 
     @Override
     public void cancel() {
+        /*
+         * The reading thread always ends the request with done(), fail() or
+         * cancel(), so the consumers are stopped then. A cancel from another
+         * thread cannot wait for them, they drain their queue without
+         * handling the events.
+         */
+        if (Thread.currentThread() == fReaderThread) {
+            stopConsumers(Completion.CANCEL);
+        }
         for (ITmfEventRequest request : fRequests) {
             if (!request.isCompleted()) {
                 request.cancel();
@@ -276,6 +388,115 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
         super.cancel();
     }
 
+    /**
+     * Wait for the consumers to handle all the events queued to them. Each
+     * consumer completes its request as soon as it is done, so a fast request
+     * does not wait for a slow one to complete.
+     */
+    private void stopConsumers(Completion completion) {
+        Map<ITmfEventRequest, Consumer> consumers = fConsumers;
+        if (consumers == null) {
+            return;
+        }
+        fConsumers = null;
+        for (Consumer consumer : consumers.values()) {
+            consumer.fCompletion = completion;
+            consumer.queue(END_EVENT);
+            consumer.fQueue.flushInputBuffer();
+        }
+        for (Consumer consumer : consumers.values()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Fan-out
+    // ------------------------------------------------------------------------
+
+    /** How the consumers complete their request */
+    private enum Completion {
+        DONE, FAIL, CANCEL
+    }
+
+    /** Fake event indicating the end of the events queued to a consumer */
+    private static final ITmfEvent END_EVENT = new TmfEvent(null, ITmfContext.UNKNOWN_RANK, null, null, null);
+
+    /**
+     * The thread handling the events of a sub-request in fan-out mode
+     */
+    private static final class Consumer extends Thread {
+
+        private final ITmfEventRequest fRequest;
+        /** Only the reading thread puts events, and only this thread takes them */
+        private final RingBufferBlockingQueue<ITmfEvent> fQueue = new RingBufferBlockingQueue<>(FAN_OUT_QUEUE_SIZE, FAN_OUT_CHUNK_SIZE);
+
+        /** The number of events queued, only used by the reading thread */
+        private long fNbQueued = 0;
+
+        /** Set by the reading thread before it queues the end event */
+        private Completion fCompletion = Completion.DONE;
+
+        public Consumer(ITmfEventRequest request) {
+            super("Fan-out consumer of request " + request.getRequestId()); //$NON-NLS-1$
+            setDaemon(true);
+            fRequest = request;
+        }
+
+        public void queue(ITmfEvent event) {
+            fNbQueued++;
+            fQueue.put(event);
+        }
+
+        @Override
+        public void run() {
+            ITmfEvent event = fQueue.take();
+            while (event != END_EVENT) {
+                handle(event);
+                event = fQueue.take();
+            }
+            switch (fCompletion) {
+            case FAIL:
+                fRequest.fail();
+                break;
+            case CANCEL:
+                if (!fRequest.isCompleted()) {
+                    fRequest.cancel();
+                }
+                break;
+            case DONE:
+            default:
+                if (!fRequest.isCompleted()) {
+                    fRequest.done();
+                }
+                break;
+            }
+        }
+
+        private void handle(ITmfEvent event) {
+            /* A completed request does not get the events still queued */
+            if (!fRequest.isCompleted()) {
+                try {
+                    fRequest.handleData(event);
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }
+        }
+
+        /**
+         * Fail the request after an error in its handling. The thread keeps
+         * draining the queue, or the reading thread would block on it.
+         */
+        private void fail(Throwable e) {
+            fRequest.fail();
+            Activator.logError("Error in request " + fRequest.getRequestId() + " handling its events", e); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
     @Override
     public synchronized boolean isCompleted() {
         // Firstly, check if coalescing request is completed
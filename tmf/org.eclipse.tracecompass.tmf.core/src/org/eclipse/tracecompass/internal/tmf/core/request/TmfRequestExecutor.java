@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2014 Ericsson
+ * Copyright (c) 2009, 2015 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -14,29 +14,40 @@
 
 package org.eclipse.tracecompass.internal.tmf.core.request;
 
-import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.tracecompass.internal.tmf.core.TmfCoreTracer;
 import org.eclipse.tracecompass.internal.tmf.core.component.TmfEventThread;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest.ExecutionType;
 
 /**
- * The request scheduler works with 5 slots with a specific time. It has 4 slots
- * for foreground requests and 1 slot for background requests, and it passes
- * through all the slots (foreground first and background after).
+ * The request scheduler runs up to a given number of requests at the same
+ * time. The other requests wait in two queues, one for the foreground requests
+ * and one for the background requests, and are started in order as the running
+ * requests complete.
  *
- * Example: if we have one foreground and one background request, the foreground
- * request will be executed four times more often than the background request.
+ * The foreground requests go first: when all the requests that can run are
+ * running, a new foreground request suspends a running background request and
+ * takes its place. The suspended request goes back to the head of the
+ * background queue. A background request that waited for longer than
+ * {@link #MAX_BACKGROUND_WAIT} is started before the waiting foreground
+ * requests, and is not suspended for them until the next scheduling decision,
+ * so a steady flow of foreground requests cannot starve the background
+ * requests.
+ *
+ * The scheduler only makes decisions when a request is queued or completes,
+ * the running requests are not switched at regular intervals.
  *
  * @author Francois Chouinard
  * @author Simon Delisle
- * @version 1.1
+ * @version 1.2
  */
 public class TmfRequestExecutor implements Executor {
 
@@ -44,28 +55,36 @@ public class TmfRequestExecutor implements Executor {
     // Constants
     // ------------------------------------------------------------------------
 
-    private static final long REQUEST_TIME = 100;
-    private static final int FOREGROUND_SLOT = 4;
+    /**
+     * Default number of requests running at the same time. There are at least
+     * two, so a foreground request does not always have to suspend a
+     * background request to start.
+     */
+    private static final int DEFAULT_MAX_RUNNING = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Time a background request can wait behind foreground requests */
+    private static final long MAX_BACKGROUND_WAIT = TimeUnit.SECONDS.toNanos(1);
 
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
 
-    // The request executor
+    // The request executor. The suspended requests keep their thread.
     private final ExecutorService fExecutor = Executors.newCachedThreadPool();
     private final String fExecutorName;
+    private final int fMaxRunning;
 
     // The request queues
-    private final Queue<TmfEventThread> fForegroundTasks = new ArrayBlockingQueue<>(10);
-    private final Queue<TmfEventThread> fBackgroundTasks = new ArrayBlockingQueue<>(10);
-
-    // The tasks
-    private TmfEventThread fActiveTask;
+    private final Deque<RequestTask> fForegroundTasks = new ArrayDeque<>();
+    private final Deque<RequestTask> fBackgroundTasks = new ArrayDeque<>();
 
-    private Timer fTimer;
-    private TimerTask fTimerTask;
+    // The running tasks, in the order they were started
+    private final List<RequestTask> fRunningTasks = new ArrayList<>();
 
-    private int fForegroundCycle = 0;
+    // The statistics on the time spent in the queues, in nanoseconds
+    private long fNbWaits = 0;
+    private long fTotalWaitTime = 0;
+    private long fMaxWaitTime = 0;
 
     // ------------------------------------------------------------------------
     // Constructors
@@ -75,6 +94,20 @@ public class TmfRequestExecutor implements Executor {
      * Default constructor
      */
     public TmfRequestExecutor() {
+        this(DEFAULT_MAX_RUNNING);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxRunning
+     *            the number of requests that can run at the same time
+     */
+    public TmfRequestExecutor(int maxRunning) {
+        if (maxRunning < 1) {
+            throw new IllegalArgumentException();
+        }
+        fMaxRunning = maxRunning;
         String canonicalName = fExecutor.getClass().getCanonicalName();
         fExecutorName = canonicalName.substring(canonicalName.lastIndexOf('.') + 1);
         if (TmfCoreTracer.isComponentTraced()) {
@@ -100,23 +133,48 @@ public class TmfRequestExecutor implements Executor {
         return fExecutor.isTerminated();
     }
 
-    // ------------------------------------------------------------------------
-    // Operations
-    // ------------------------------------------------------------------------
+    /**
+     * @return the number of requests that can run at the same time
+     */
+    public int getMaxRunning() {
+        return fMaxRunning;
+    }
 
     /**
-     * Initialize the executor
+     * @return the number of requests running, not counting the suspended ones
      */
-    public void init() {
-        if (fTimer != null) {
-            return;
-        }
-        // Initialize the timer for the schedSwitch
-        fTimerTask = new SchedSwitch();
-        fTimer = new Timer(true);
-        fTimer.schedule(fTimerTask, 0, REQUEST_TIME);
+    public synchronized int getRunningCount() {
+        return fRunningTasks.size();
+    }
+
+    /**
+     * @return the number of requests waiting in the queues, including the
+     *         suspended ones
+     */
+    public synchronized int getQueueDepth() {
+        return fForegroundTasks.size() + fBackgroundTasks.size();
+    }
+
+    /**
+     * @return the average time the requests waited in the queues before being
+     *         started or resumed, in nanoseconds
+     */
+    public synchronized long getAverageWaitTime() {
+        return (fNbWaits == 0) ? 0 : fTotalWaitTime / fNbWaits;
+    }
+
+    /**
+     * @return the longest time a request waited in the queues before being
+     *         started or resumed, in nanoseconds
+     */
+    public synchronized long getMaxWaitTime() {
+        return fMaxWaitTime;
     }
 
+    // ------------------------------------------------------------------------
+    // Operations
+    // ------------------------------------------------------------------------
+
     @Override
     public synchronized void execute(final Runnable command) {
 
@@ -126,84 +184,50 @@ public class TmfRequestExecutor implements Executor {
             return;
         }
 
-        // Wrap the thread in a MyThread
         TmfEventThread thread = (TmfEventThread) command;
-        TmfEventThread wrapper = new TmfEventThread(thread) {
-            @Override
-            public void run() {
-                try {
-                    command.run();
-                } finally {
-                    scheduleNext();
-                }
-            }
-        };
+        if (isShutdown()) {
+            thread.cancel();
+            return;
+        }
 
         // Add the thread to the appropriate queue
-        ExecutionType priority = thread.getExecType();
-
-        if (priority == ExecutionType.FOREGROUND) {
-            if (!fForegroundTasks.offer(wrapper)) {
-                wrapper.cancel();
-            }
+        RequestTask task = new RequestTask(thread);
+        if (thread.getExecType() == ExecutionType.FOREGROUND) {
+            fForegroundTasks.add(task);
         } else {
-            if (!fBackgroundTasks.offer(wrapper)) {
-                wrapper.cancel();
-            }
+            fBackgroundTasks.add(task);
         }
+        scheduleNext();
     }
 
     /**
-     * Timer task to trigger scheduleNext()
+     * Starts the pending requests that can run, suspending background requests
+     * for the foreground requests if needed.
      */
-    private class SchedSwitch extends TimerTask {
-
-        SchedSwitch() {
+    protected synchronized void scheduleNext() {
+        if (isShutdown()) {
+            return;
         }
-
-        @Override
-        public void run() {
-            scheduleNext();
+        /* The background tasks started ahead of the foreground tasks */
+        List<RequestTask> agedTasks = new ArrayList<>();
+        while (fRunningTasks.size() < fMaxRunning) {
+            boolean foregroundWaiting = !fForegroundTasks.isEmpty();
+            RequestTask task = pollNext();
+            if (task == null) {
+                return;
+            }
+            if (foregroundWaiting && task.fThread.getExecType() == ExecutionType.BACKGROUND) {
+                agedTasks.add(task);
+            }
+            start(task);
         }
-    }
-
-    /**
-     * Executes the next pending request, if applicable.
-     */
-    protected synchronized void scheduleNext() {
-        if (!isShutdown()) {
-            if (fActiveTask == null) {
-                schedule();
-            } else if (fActiveTask.getExecType() == ExecutionType.FOREGROUND) {
-                if (fActiveTask.getThread().isCompleted()) {
-                    fActiveTask = null;
-                    schedule();
-                } else {
-                    if (hasTasks()) {
-                        fActiveTask.getThread().suspend();
-                        if (!fForegroundTasks.offer(fActiveTask)) {
-                            fActiveTask.cancel();
-                            fActiveTask = null;
-                        }
-                        schedule();
-                    }
-                }
-
-            } else if (fActiveTask.getExecType() == ExecutionType.BACKGROUND) {
-                if (fActiveTask.getThread().isCompleted()) {
-                    fActiveTask = null;
-                    schedule();
-                } else {
-                    if (hasTasks()) {
-                        fActiveTask.getThread().suspend();
-                        if (!fBackgroundTasks.offer(fActiveTask)) {
-                            fActiveTask.cancel();
-                            fActiveTask = null;
-                        }
-                        schedule();
-                    }
-                }
+        while (!fForegroundTasks.isEmpty()) {
+            RequestTask background = getLastBackgroundTask(agedTasks);
+            if (background == null) {
+                return;
             }
+            suspend(background);
+            start(fForegroundTasks.poll());
         }
     }
 
@@ -211,24 +235,19 @@ public class TmfRequestExecutor implements Executor {
      * Stops the executor
      */
     public synchronized void stop() {
-        if (fTimerTask != null) {
-            fTimerTask.cancel();
-        }
-
-        if (fTimer != null) {
-            fTimer.cancel();
+        for (RequestTask task : fRunningTasks) {
+            task.fThread.cancel();
         }
+        fRunningTasks.clear();
 
-        if (fActiveTask != null) {
-            fActiveTask.cancel();
+        for (RequestTask task : fForegroundTasks) {
+            cancel(task);
         }
-
-        while ((fActiveTask = fForegroundTasks.poll()) != null) {
-            fActiveTask.cancel();
-        }
-        while ((fActiveTask = fBackgroundTasks.poll()) != null) {
-            fActiveTask.cancel();
+        fForegroundTasks.clear();
+        for (RequestTask task : fBackgroundTasks) {
+            cancel(task);
         }
+        fBackgroundTasks.clear();
 
         fExecutor.shutdown();
         if (TmfCoreTracer.isComponentTraced()) {
@@ -241,58 +260,107 @@ public class TmfRequestExecutor implements Executor {
     // ------------------------------------------------------------------------
 
     /**
-     * Determine which type of request (foreground or background) we schedule
-     * next
+     * Take the next request to start from the queues
      */
-    private void schedule() {
+    private RequestTask pollNext() {
+        RequestTask background = fBackgroundTasks.peek();
+        if (background != null && System.nanoTime() - background.fQueuedTime > MAX_BACKGROUND_WAIT) {
+            return fBackgroundTasks.poll();
+        }
         if (!fForegroundTasks.isEmpty()) {
-            scheduleNextForeground();
-        } else {
-            scheduleNextBackground();
+            return fForegroundTasks.poll();
         }
+        return fBackgroundTasks.poll();
     }
 
     /**
-     * Schedule the next foreground request
+     * Get the background request that was started last, which has done the
+     * least work. The requests just started because they waited for too long
+     * are not suspended for the foreground requests they were started ahead
+     * of.
      */
-    private void scheduleNextForeground() {
-        if (fForegroundCycle < FOREGROUND_SLOT || fBackgroundTasks.isEmpty()) {
-            ++fForegroundCycle;
-            fActiveTask = fForegroundTasks.poll();
-            executefActiveTask();
-        } else {
-            fActiveTask = null;
-            scheduleNextBackground();
+    private RequestTask getLastBackgroundTask(List<RequestTask> excluded) {
+        for (int i = fRunningTasks.size() - 1; i >= 0; i--) {
+            RequestTask task = fRunningTasks.get(i);
+            if (task.fThread.getExecType() == ExecutionType.BACKGROUND && !excluded.contains(task)) {
+                return task;
+            }
         }
+        return null;
     }
 
     /**
-     * Schedule the next background request
+     * Execute or resume a task
      */
-    private void scheduleNextBackground() {
-        fForegroundCycle = 0;
-        if (!fBackgroundTasks.isEmpty()) {
-            fActiveTask = fBackgroundTasks.poll();
-            executefActiveTask();
+    private void start(RequestTask task) {
+        long waitTime = System.nanoTime() - task.fQueuedTime;
+        fNbWaits++;
+        fTotalWaitTime += waitTime;
+        fMaxWaitTime = Math.max(fMaxWaitTime, waitTime);
+        if (TmfCoreTracer.isRequestTraced()) {
+            TmfCoreTracer.traceRequest(task.fThread.getRequest().getRequestId(), "STARTED after waiting " + //$NON-NLS-1$
+                    TimeUnit.NANOSECONDS.toMillis(waitTime) + " ms, " + getQueueDepth() + " requests waiting"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        fRunningTasks.add(task);
+        if (task.fStarted) {
+            task.fThread.resume();
+        } else {
+            task.fStarted = true;
+            fExecutor.execute(task);
         }
     }
 
     /**
-     * Execute or resume the active task
+     * Suspend a running background task and put it back at the head of its
+     * queue
      */
-    private void executefActiveTask() {
-        if (fActiveTask.getThread().isPaused()) {
-            fActiveTask.getThread().resume();
-        } else {
-            fExecutor.execute(fActiveTask);
+    private void suspend(RequestTask task) {
+        task.fThread.suspend();
+        fRunningTasks.remove(task);
+        task.fQueuedTime = System.nanoTime();
+        fBackgroundTasks.addFirst(task);
+    }
+
+    /**
+     * Cancel a waiting task, letting it run to its end if it was suspended
+     */
+    private static void cancel(RequestTask task) {
+        task.fThread.cancel();
+        if (task.fStarted) {
+            task.fThread.resume();
+        }
+    }
+
+    private synchronized void taskCompleted(RequestTask task) {
+        /* A task suspended just as it completed is still in its queue */
+        if (!fRunningTasks.remove(task)) {
+            fBackgroundTasks.remove(task);
         }
+        scheduleNext();
     }
 
     /**
-     * Check if the scheduler has tasks
+     * A request waiting in a queue, or running
      */
-    private boolean hasTasks() {
-        return !(fForegroundTasks.isEmpty() && fBackgroundTasks.isEmpty());
+    private final class RequestTask implements Runnable {
+
+        private final TmfEventThread fThread;
+        private long fQueuedTime = System.nanoTime();
+        private boolean fStarted = false;
+
+        public RequestTask(TmfEventThread thread) {
+            fThread = thread;
+        }
+
+        @Override
+        public void run() {
+            try {
+                fThread.run();
+            } finally {
+                taskCompleted(this);
+            }
+        }
     }
 
     // ------------------------------------------------------------------------
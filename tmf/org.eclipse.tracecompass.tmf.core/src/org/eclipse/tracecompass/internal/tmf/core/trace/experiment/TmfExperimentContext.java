@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2014 Ericsson
+ * Copyright (c) 2009, 2015 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -18,9 +18,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.NonNullUtils;
+import org.eclipse.tracecompass.internal.tmf.core.trace.experiment.TmfExperimentPrefetcher.PrefetchedEvent;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.TmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
 
 /**
  * The experiment context in TMF.
@@ -33,6 +36,10 @@ import org.eclipse.tracecompass.tmf.core.trace.TmfContext;
  * <p>
  * The last trace refers to the trace from which the last event was "consumed"
  * at the experiment level.
+ * <p>
+ * The traces with a next event are kept in a heap ordered by the timestamps of
+ * these events, and the experiment location is only built when it is
+ * requested.
  */
 public final class TmfExperimentContext extends TmfContext {
 
@@ -53,6 +60,22 @@ public final class TmfExperimentContext extends TmfContext {
     private final List<ITmfEvent> fEvents;
     private int fLastTraceRead;
 
+    /* The location and rank of each trace context after its next event */
+    private final ITmfLocation[] fNextLocations;
+    private final long[] fNextRanks;
+
+    /* The location of each trace in the experiment location */
+    private @Nullable ITmfLocation[] fLocations = null;
+    private @Nullable long[] fRanks = null;
+    private @Nullable TmfExperimentLocation fLocation = null;
+
+    /* The indexes of the traces with a next event, as a heap */
+    private final int[] fHeap;
+    private int fHeapSize = 0;
+    private boolean fHeapValid = false;
+
+    private @Nullable TmfExperimentPrefetcher[] fPrefetchers = null;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -68,7 +91,9 @@ public final class TmfExperimentContext extends TmfContext {
         fLastTraceRead = NO_TRACE;
         fContexts = new ArrayList<>(nbTraces);
         fEvents = new ArrayList<>(nbTraces);
-
+        fNextLocations = new ITmfLocation[nbTraces];
+        fNextRanks = new long[nbTraces];
+        fHeap = new int[nbTraces];
 
         /* Initialize the arrays to the requested size */
         for (int i = 0; i < nbTraces; i++) {
@@ -79,12 +104,56 @@ public final class TmfExperimentContext extends TmfContext {
 
     @Override
     public void dispose() {
+        /* The prefetchers stop using the trace contexts first */
+        TmfExperimentPrefetcher[] prefetchers = fPrefetchers;
+        if (prefetchers != null) {
+            for (TmfExperimentPrefetcher prefetcher : prefetchers) {
+                if (prefetcher != null) {
+                    prefetcher.cancel();
+                }
+            }
+            fPrefetchers = null;
+        }
         for (ITmfContext context : fContexts) {
             context.dispose();
         }
         super.dispose();
     }
 
+    // ------------------------------------------------------------------------
+    // ITmfContext
+    // ------------------------------------------------------------------------
+
+    @Override
+    public @Nullable ITmfLocation getLocation() {
+        ITmfLocation[] locations = fLocations;
+        long[] ranks = fRanks;
+        if (locations == null || ranks == null) {
+            return super.getLocation();
+        }
+        TmfExperimentLocation location = fLocation;
+        if (location == null) {
+            location = new TmfExperimentLocation(new TmfLocationArray(locations, ranks));
+            fLocation = location;
+        }
+        return location;
+    }
+
+    @Override
+    public void setLocation(@Nullable ITmfLocation location) {
+        if (location instanceof TmfExperimentLocation) {
+            TmfLocationArray locationArray = ((TmfExperimentLocation) location).getLocationInfo();
+            fLocations = locationArray.getLocations();
+            fRanks = locationArray.getRanks();
+            fLocation = (TmfExperimentLocation) location;
+        } else {
+            fLocations = null;
+            fRanks = null;
+            fLocation = null;
+            super.setLocation(location);
+        }
+    }
+
     // ------------------------------------------------------------------------
     // Accessors
     // ------------------------------------------------------------------------
@@ -123,6 +192,37 @@ public final class TmfExperimentContext extends TmfContext {
         fContexts.set(traceIndex, ctx);
     }
 
+    /**
+     * Get the prefetcher reading a trace ahead
+     *
+     * @param traceIndex
+     *            The index of the trace in the experiment
+     * @return The prefetcher of the trace, or null if it is not prefetched
+     */
+    public @Nullable TmfExperimentPrefetcher getPrefetcher(int traceIndex) {
+        TmfExperimentPrefetcher[] prefetchers = fPrefetchers;
+        return (prefetchers == null ? null : prefetchers[traceIndex]);
+    }
+
+    /**
+     * Start a prefetcher reading a trace ahead. From then on, the prefetcher
+     * owns the context of the trace, until this context is disposed.
+     *
+     * @param traceIndex
+     *            The index of the trace in the experiment
+     * @param prefetcher
+     *            The prefetcher, using the context of the trace
+     */
+    public void startPrefetcher(int traceIndex, TmfExperimentPrefetcher prefetcher) {
+        TmfExperimentPrefetcher[] prefetchers = fPrefetchers;
+        if (prefetchers == null) {
+            prefetchers = new TmfExperimentPrefetcher[getNbTraces()];
+            fPrefetchers = prefetchers;
+        }
+        prefetchers[traceIndex] = prefetcher;
+        prefetcher.start();
+    }
+
     /**
      * Get the current event for a specific trace in the experiment.
      *
@@ -145,7 +245,88 @@ public final class TmfExperimentContext extends TmfContext {
      *            The event at the context in the trace
      */
     public void setEvent(int traceIndex, ITmfEvent event) {
+        ITmfContext context = fContexts.get(traceIndex);
+        if (context == null) {
+            setEvent(traceIndex, event, null, UNKNOWN_RANK);
+        } else {
+            setEvent(traceIndex, event, context.getLocation(), context.getRank());
+        }
+    }
+
+    /**
+     * Set the context's event for a specific trace, as read ahead by its
+     * prefetcher
+     *
+     * @param traceIndex
+     *            The index of the trace in the experiment
+     * @param event
+     *            The event read ahead, with the position of the trace after
+     *            it
+     */
+    public void setEvent(int traceIndex, PrefetchedEvent event) {
+        setEvent(traceIndex, event.getEvent(), event.getLocation(), event.getRank());
+    }
+
+    private void setEvent(int traceIndex, @Nullable ITmfEvent event, @Nullable ITmfLocation location, long rank) {
         fEvents.set(traceIndex, event);
+        fNextLocations[traceIndex] = location;
+        fNextRanks[traceIndex] = rank;
+
+        /* The trace of the last event consumed is the top of the heap */
+        if (fHeapValid && fHeapSize > 0 && fHeap[0] == traceIndex) {
+            if (event == null) {
+                fHeapSize--;
+                fHeap[0] = fHeap[fHeapSize];
+            }
+            siftDown(0);
+        } else {
+            fHeapValid = false;
+        }
+    }
+
+    /**
+     * Get the index of the trace with the earliest next event. Among traces
+     * with events at the same time, the first trace of the experiment is
+     * returned.
+     *
+     * @return The index of the trace, or {@link #NO_TRACE} if no trace has a
+     *         next event
+     */
+    public int getNextTrace() {
+        if (!fHeapValid) {
+            fHeapSize = 0;
+            for (int i = 0; i < fEvents.size(); i++) {
+                if (fEvents.get(i) != null) {
+                    fHeap[fHeapSize++] = i;
+                }
+            }
+            for (int i = fHeapSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+            fHeapValid = true;
+        }
+        return (fHeapSize == 0 ? NO_TRACE : fHeap[0]);
+    }
+
+    /**
+     * Update the experiment location once the next event of a trace is
+     * consumed. The trace is now positioned after that event.
+     *
+     * @param traceIndex
+     *            The index of the trace in the experiment
+     */
+    public void updateLocation(int traceIndex) {
+        ITmfLocation[] locations = fLocations;
+        long[] ranks = fRanks;
+        if (locations == null || ranks == null) {
+            locations = new ITmfLocation[getNbTraces()];
+            ranks = new long[getNbTraces()];
+            fLocations = locations;
+            fRanks = ranks;
+        }
+        locations[traceIndex] = fNextLocations[traceIndex];
+        ranks[traceIndex] = fNextRanks[traceIndex];
+        fLocation = null;
     }
 
     /**
@@ -168,6 +349,37 @@ public final class TmfExperimentContext extends TmfContext {
         fLastTraceRead = newIndex;
     }
 
+    // ------------------------------------------------------------------------
+    // Helper methods
+    // ------------------------------------------------------------------------
+
+    private void siftDown(int position) {
+        int pos = position;
+        int trace = fHeap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= fHeapSize) {
+                break;
+            }
+            if (child + 1 < fHeapSize && isBefore(fHeap[child + 1], fHeap[child])) {
+                child++;
+            }
+            if (!isBefore(fHeap[child], trace)) {
+                break;
+            }
+            fHeap[pos] = fHeap[child];
+            pos = child;
+        }
+        fHeap[pos] = trace;
+    }
+
+    private boolean isBefore(int trace1, int trace2) {
+        ITmfEvent event1 = NonNullUtils.checkNotNull(fEvents.get(trace1));
+        ITmfEvent event2 = NonNullUtils.checkNotNull(fEvents.get(trace2));
+        int result = event1.getTimestamp().compareTo(event2.getTimestamp());
+        return (result < 0 || (result == 0 && trace1 < trace2));
+    }
+
     // ------------------------------------------------------------------------
     // Object
     // ------------------------------------------------------------------------
@@ -186,13 +398,14 @@ public final class TmfExperimentContext extends TmfContext {
         if (this == other) {
             return true;
         }
-        if (!super.equals(other)) {
-            return false;
-        }
         if (!(other instanceof TmfExperimentContext)) {
             return false;
         }
         final TmfExperimentContext o = (TmfExperimentContext) other;
+        /* The location is built on demand, it is not the one of TmfContext */
+        if (!NonNullUtils.equalsNullable(getLocation(), o.getLocation()) || getRank() != o.getRank()) {
+            return false;
+        }
         boolean isEqual = true;
         int i = 0;
         while (isEqual && (i < fContexts.size())) {
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.trace.experiment;
+
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.collect.RingBufferBlockingQueue;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
+
+/**
+ * The thread reading ahead the events of one trace of an experiment, so the
+ * traces of the experiment are read in parallel.
+ * <p>
+ * Once started, the prefetcher owns the context of the trace. Each event is
+ * queued with the location and rank of the context after reading it, which is
+ * what the experiment location needs when the event is consumed. The trace is
+ * only read as far as the request needs: the prefetcher stops after the first
+ * event past the end time of the request, or after as many events as the
+ * request wants.
+ * <p>
+ * There are never more than {@link #MAX_RUNNING} prefetchers running at once,
+ * over all the experiments and requests. The other traces are read by the
+ * thread of their request.
+ * <p>
+ * Only the thread reading the experiment context can call {@link #take} and
+ * {@link #cancel}.
+ */
+public final class TmfExperimentPrefetcher extends Thread {
+
+    /** The maximum number of prefetchers running at once */
+    public static final int MAX_RUNNING = Runtime.getRuntime().availableProcessors();
+
+    private static final Semaphore RUNNING_PERMITS = new Semaphore(MAX_RUNNING);
+
+    /** Size of the queue of read events, in chunks */
+    private static final int QUEUE_SIZE = 16;
+
+    /** Number of events read before they are handed over at once */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * An event read ahead, with the position of the trace after it
+     */
+    public static final class PrefetchedEvent {
+
+        private final @Nullable ITmfEvent fEvent;
+        private final @Nullable ITmfLocation fLocation;
+        private final long fRank;
+
+        private PrefetchedEvent(@Nullable ITmfEvent event, @Nullable ITmfLocation location, long rank) {
+            fEvent = event;
+            fLocation = location;
+            fRank = rank;
+        }
+
+        /**
+         * @return The event, or null at the end of the trace
+         */
+        public @Nullable ITmfEvent getEvent() {
+            return fEvent;
+        }
+
+        /**
+         * @return The location of the trace context after the event
+         */
+        public @Nullable ITmfLocation getLocation() {
+            return fLocation;
+        }
+
+        /**
+         * @return The rank of the trace context after the event
+         */
+        public long getRank() {
+            return fRank;
+        }
+    }
+
+    /** End of the events, either at the end of the trace or when stopped */
+    private static final PrefetchedEvent END = new PrefetchedEvent(null, null, ITmfContext.UNKNOWN_RANK);
+
+    private final ITmfTrace fTrace;
+    private final ITmfContext fContext;
+    private final ITmfTimestamp fEndTime;
+    private final long fMaxEvents;
+    private final RingBufferBlockingQueue<PrefetchedEvent> fQueue = new RingBufferBlockingQueue<>(QUEUE_SIZE, CHUNK_SIZE);
+
+    private volatile boolean fStopped = false;
+    private volatile @Nullable RuntimeException fError = null;
+
+    /** Only used by the reading thread */
+    private boolean fEnded = false;
+
+    private TmfExperimentPrefetcher(ITmfTrace trace, ITmfContext context, ITmfTimestamp endTime, long maxEvents) {
+        super("Prefetch of trace " + trace.getName()); //$NON-NLS-1$
+        setDaemon(true);
+        fTrace = trace;
+        fContext = context;
+        fEndTime = endTime;
+        fMaxEvents = maxEvents;
+    }
+
+    /**
+     * Create a prefetcher, unless the maximum number of prefetchers are
+     * already running. The prefetcher must then be started.
+     *
+     * @param trace
+     *            The trace to read
+     * @param context
+     *            The context of the trace, positioned at the next event to
+     *            read
+     * @param endTime
+     *            The end time of the request, no event is read after the
+     *            first one past it
+     * @param maxEvents
+     *            The maximum number of events to read
+     * @return The prefetcher, or null if the trace must be read without one
+     */
+    public static @Nullable TmfExperimentPrefetcher create(ITmfTrace trace, ITmfContext context, ITmfTimestamp endTime, long maxEvents) {
+        if (!RUNNING_PERMITS.tryAcquire()) {
+            return null;
+        }
+        return new TmfExperimentPrefetcher(trace, context, endTime, maxEvents);
+    }
+
+    @Override
+    public void run() {
+        try {
+            long nbRead = 0;
+            while (!fStopped && nbRead < fMaxEvents) {
+                ITmfEvent event = fTrace.getNext(fContext);
+                if (event == null) {
+                    break;
+                }
+                nbRead++;
+                fQueue.put(new PrefetchedEvent(event, fContext.getLocation(), fContext.getRank()));
+                if (event.getTimestamp().compareTo(fEndTime) > 0) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            /* Reported to the reading thread when it reaches this event */
+            fError = e;
+        } finally {
+            fQueue.put(END);
+            fQueue.flushInputBuffer();
+            RUNNING_PERMITS.release();
+        }
+    }
+
+    /**
+     * Take the next event of the trace, waiting for it to be read if needed.
+     *
+     * @return The next event, whose event is null at the end of the trace or
+     *         of the events needed by the request
+     */
+    public PrefetchedEvent take() {
+        if (fEnded) {
+            return END;
+        }
+        PrefetchedEvent event = fQueue.take();
+        if (event == END) {
+            fEnded = true;
+            RuntimeException error = fError;
+            if (error != null) {
+                throw error;
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Stop reading the trace, and wait for the thread to end. The events read
+     * ahead are discarded.
+     */
+    public void cancel() {
+        fStopped = true;
+        /* Make room for the events being queued, until the end */
+        while (!fEnded) {
+            fEnded = (fQueue.take() == END);
+        }
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
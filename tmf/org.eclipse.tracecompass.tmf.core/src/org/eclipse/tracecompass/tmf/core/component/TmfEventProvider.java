@@ -132,7 +132,6 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
     public void init(String name, Class<? extends ITmfEvent> type) {
         super.init(name);
         fType = type;
-        fExecutor.init();
 
         fSignalDepth = 0;
 
@@ -300,6 +299,13 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
                     request.getExecType());
             coalescedRequest.addRequest(request);
             coalescedRequest.setProviderFilter(this);
+            /*
+             * The background requests, such as the analyses, are fed in
+             * parallel so a slow one does not hold back the others. The
+             * foreground requests keep handling their events in order in the
+             * reading thread.
+             */
+            coalescedRequest.setFanOut(request.getExecType() == ExecutionType.BACKGROUND);
             if (TmfCoreTracer.isRequestTraced()) {
                 TmfCoreTracer.traceRequest(request.getRequestId(), "COALESCED with " + coalescedRequest.getRequestId()); //$NON-NLS-1$
                 TmfCoreTracer.traceRequest(coalescedRequest.getRequestId(), "now contains " + coalescedRequest.getSubRequestIds()); //$NON-NLS-1$
@@ -13,13 +13,18 @@
 
 package org.eclipse.tracecompass.tmf.core.request;
 
+import java.util.Collection;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.internal.tmf.core.TmfCoreTracer;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.filter.ITmfFilter;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * TmfEventRequest's are used to obtain series of events from an event provider.
  * Open ranges can be used, especially for continuous streaming.
@@ -101,6 +106,8 @@ public abstract class TmfEventRequest implements ITmfEventRequest {
 
     private ITmfFilter fEventFilter;
 
+    private @Nullable Set<String> fEventNames = null;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -252,10 +259,36 @@ public abstract class TmfEventRequest implements ITmfEventRequest {
         fEventFilter = provider;
     }
 
+    /**
+     * Get the names of the events this request needs
+     *
+     * @return The event names, or null if the request needs all the events
+     * @since 1.1
+     */
+    public @Nullable Set<String> getEventNames() {
+        return fEventNames;
+    }
+
     // ------------------------------------------------------------------------
     // Setters
     // ------------------------------------------------------------------------
 
+    /**
+     * Declare the names of the events this request needs. The event provider
+     * may then skip the other events without reading them, but it does not
+     * have to: the request must still ignore the events it does not need.
+     *
+     * Since the skipped events are not counted, this only applies to the
+     * requests for a time range, starting at index 0.
+     *
+     * @param eventNames
+     *            The event names, or null if the request needs all the events
+     * @since 1.1
+     */
+    public void setEventNames(@Nullable Collection<String> eventNames) {
+        fEventNames = (eventNames == null) ? null : ImmutableSet.copyOf(eventNames);
+    }
+
     /**
      * This method is called by the event provider to set the index
      * corresponding to the time range start time
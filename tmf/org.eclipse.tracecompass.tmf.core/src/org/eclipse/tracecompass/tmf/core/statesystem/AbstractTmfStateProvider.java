@@ -14,6 +14,8 @@ package org.eclipse.tracecompass.tmf.core.statesystem;
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
+import java.util.Collection;
+
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.collect.BufferedBlockingQueue;
@@ -86,6 +88,20 @@ public abstract class AbstractTmfStateProvider implements ITmfStateProvider {
         return fTrace.getStartTime().normalize(0, ITmfTimestamp.NANOSECOND_SCALE).getValue();
     }
 
+    /**
+     * Get the names of the events this provider handles. The other events may
+     * then not be read at all, which is much faster when a provider only
+     * handles a few event types. The provider must still ignore the events it
+     * does not handle.
+     *
+     * @return The names of the events to handle, or null if the provider
+     *         needs all the events (the default)
+     * @since 1.1
+     */
+    public @Nullable Collection<String> getEventNames() {
+        return null;
+    }
+
     @Override
     public void assignTargetStateSystem(ITmfStateSystemBuilder ssb) {
         fSS = ssb;
@@ -208,8 +224,12 @@ public abstract class AbstractTmfStateProvider implements ITmfStateProvider {
 
         private void closeStateSystem() {
             ITmfEvent event = currentEvent;
-            final long endTime = (event == null) ? 0 :
+            long endTime = (event == null) ? 0 :
                     event.getTimestamp().normalize(0, ITmfTimestamp.NANOSECOND_SCALE).getValue();
+            if (getEventNames() != null) {
+                /* The last events of the trace may have been skipped */
+                endTime = Math.max(endTime, fTrace.getEndTime().normalize(0, ITmfTimestamp.NANOSECOND_SCALE).getValue());
+            }
 
             if (fSS != null) {
                 fSS.closeHistory(endTime);
@@ -454,6 +454,10 @@ public abstract class TmfStateSystemAnalysisModule extends TmfAbstractAnalysisMo
             // sci.getTrace() will eventually return a @NonNull
             trace = checkNotNull(sci.getTrace());
 
+            if (sp instanceof AbstractTmfStateProvider) {
+                setEventNames(((AbstractTmfStateProvider) sp).getEventNames());
+            }
+
         }
 
         @Override
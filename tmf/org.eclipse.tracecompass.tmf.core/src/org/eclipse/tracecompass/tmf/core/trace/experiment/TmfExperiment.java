@@ -35,6 +35,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.internal.tmf.core.Activator;
 import org.eclipse.tracecompass.internal.tmf.core.trace.experiment.TmfExperimentContext;
 import org.eclipse.tracecompass.internal.tmf.core.trace.experiment.TmfExperimentLocation;
+import org.eclipse.tracecompass.internal.tmf.core.trace.experiment.TmfExperimentPrefetcher;
 import org.eclipse.tracecompass.internal.tmf.core.trace.experiment.TmfLocationArray;
 import org.eclipse.tracecompass.tmf.core.TmfCommonConstants;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
@@ -111,6 +112,12 @@ public class TmfExperiment extends TmfTrace implements ITmfPersistentlyIndexable
      */
     private final Lock fSyncLock = new ReentrantLock();
 
+    /**
+     * Whether the requests read the traces ahead in parallel. It only pays off
+     * when there are processors to spare, so it is off unless requested.
+     */
+    private volatile boolean fPrefetch = false;
+
     // ------------------------------------------------------------------------
     // Construction
     // ------------------------------------------------------------------------
@@ -246,6 +253,31 @@ public class TmfExperiment extends TmfTrace implements ITmfPersistentlyIndexable
         return getChildren(ITmfTrace.class);
     }
 
+    /**
+     * Set whether the event requests on this experiment read each trace ahead
+     * on its own thread. The traces are not prefetched by default. There are
+     * never more traces read ahead at once than there are processors, the
+     * other traces are read by the request thread.
+     *
+     * @param prefetch
+     *            true to prefetch the traces in the next requests
+     * @since 1.1
+     */
+    public void setPrefetch(boolean prefetch) {
+        fPrefetch = prefetch;
+    }
+
+    /**
+     * Get whether the event requests on this experiment read each trace ahead
+     * on its own thread.
+     *
+     * @return true if the traces are prefetched
+     * @since 1.1
+     */
+    public boolean isPrefetch() {
+        return fPrefetch;
+    }
+
     /**
      * Returns the timestamp of the event at the requested index. If none,
      * returns null.
@@ -273,15 +305,43 @@ public class TmfExperiment extends TmfTrace implements ITmfPersistentlyIndexable
             return null;
         }
 
+        final ITmfContext context;
         if (!TmfTimestamp.BIG_BANG.equals(request.getRange().getStartTime())
                 && request.getIndex() == 0) {
-            final ITmfContext context = seekEvent(request.getRange().getStartTime());
+            context = seekEvent(request.getRange().getStartTime());
             request.setStartIndex((int) context.getRank());
-            return context;
-
+        } else {
+            context = seekEvent(request.getIndex());
+        }
+        if (fPrefetch) {
+            startPrefetchers(context, request);
         }
+        return context;
+    }
 
-        return seekEvent(request.getIndex());
+    /**
+     * Read each trace ahead on its own thread, until the request is done with
+     * the context. The traces are then read in parallel. The traces left when
+     * the maximum number of prefetchers are running are read by the request
+     * thread.
+     */
+    private void startPrefetchers(ITmfContext context, ITmfEventRequest request) {
+        if (getNbChildren() < 2 || !(context instanceof TmfExperimentContext)) {
+            return;
+        }
+        TmfExperimentContext expContext = (TmfExperimentContext) context;
+        ITmfTimestamp endTime = request.getRange().getEndTime();
+        for (int i = 0; i < expContext.getNbTraces(); i++) {
+            ITmfContext traceContext = expContext.getContext(i);
+            /* The traces without a next event are at their end */
+            if (traceContext != null && expContext.getEvent(i) != null) {
+                TmfExperimentPrefetcher prefetcher = TmfExperimentPrefetcher.create((ITmfTrace) getChild(i), traceContext, endTime, request.getNbRequested());
+                if (prefetcher == null) {
+                    return;
+                }
+                expContext.startPrefetcher(i, prefetcher);
+            }
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -390,26 +450,22 @@ public class TmfExperiment extends TmfTrace implements ITmfPersistentlyIndexable
         // trace
         final int lastTrace = expContext.getLastTrace();
         if (lastTrace != TmfExperimentContext.NO_TRACE) {
-            final ITmfContext traceContext = expContext.getContext(lastTrace);
-            expContext.setEvent(lastTrace, ((ITmfTrace) getChild(lastTrace)).getNext(traceContext));
-            expContext.setLastTrace(TmfExperimentContext.NO_TRACE);
-        }
-
-        // Scan the candidate events and identify the "next" trace to read from
-        int trace = TmfExperimentContext.NO_TRACE;
-        ITmfTimestamp timestamp = TmfTimestamp.BIG_CRUNCH;
-        for (int i = 0; i < length; i++) {
-            final ITmfEvent event = expContext.getEvent(i);
-
-            if (event != null) {
-                final ITmfTimestamp otherTS = event.getTimestamp();
-                if (otherTS.compareTo(timestamp) < 0) {
-                    trace = i;
-                    timestamp = otherTS;
+            TmfExperimentPrefetcher prefetcher = expContext.getPrefetcher(lastTrace);
+            if (prefetcher != null) {
+                expContext.setEvent(lastTrace, prefetcher.take());
+            } else {
+                final ITmfContext traceContext = expContext.getContext(lastTrace);
+                if (traceContext == null) {
+                    throw new IllegalStateException();
                 }
+                expContext.setEvent(lastTrace, ((ITmfTrace) getChild(lastTrace)).getNext(traceContext));
             }
+            expContext.setLastTrace(TmfExperimentContext.NO_TRACE);
         }
 
+        // Identify the "next" trace to read from
+        final int trace = expContext.getNextTrace();
+
         ITmfEvent event = null;
         if (trace != TmfExperimentContext.NO_TRACE) {
             event = expContext.getEvent(trace);
@@ -417,16 +473,9 @@ public class TmfExperiment extends TmfTrace implements ITmfPersistentlyIndexable
                 updateAttributes(expContext, event);
                 expContext.increaseRank();
                 expContext.setLastTrace(trace);
-                final ITmfContext traceContext = expContext.getContext(trace);
-                if (traceContext == null) {
-                    throw new IllegalStateException();
-                }
 
                 // Update the experiment location
-                TmfLocationArray locationArray = new TmfLocationArray(
-                        ((TmfExperimentLocation) expContext.getLocation()).getLocationInfo(),
-                        trace, traceContext.getLocation(), traceContext.getRank());
-                expContext.setLocation(new TmfExperimentLocation(locationArray));
+                expContext.updateLocation(trace);
             }
         }
 